@@ -86,7 +86,7 @@ abstract public class AbstractComponentRuntime implements IComponentRuntime {
     
     protected TypedProperties properties;
     
-    private EntityNameLookup entityNameLookup;
+    private ScriptBindings scriptBindings;
     
     protected boolean interrupted = false;
     
@@ -286,39 +286,32 @@ abstract public class AbstractComponentRuntime implements IComponentRuntime {
         }
     }
     
-    protected Bindings bindEntityData(ScriptEngine scriptEngine, Message inputMessage, EntityData entityData) {
-        if (entityNameLookup == null) {
-            entityNameLookup = new EntityNameLookup(context.getFlowStep().getComponent().getInputModel());
+    /**
+     * @return the bindings of this runtime with the message bound. Headers,
+     *         flow parameters and entities are only bound again when the
+     *         message changes.
+     */
+    protected ScriptBindings getScriptBindings(Message inputMessage) {
+        if (scriptBindings == null) {
+            scriptBindings = new ScriptBindings(getInputModel());
         }
-        Bindings bindings = scriptEngine.createBindings();       
-        bindHeadersAndFlowParameters(bindings, inputMessage);
-        Model model = getInputModel();
-        bindings.put("CHANGE_TYPE", entityData.getChangeType().name());
-        bindings.put("ENTITY_NAMES", entityNameLookup.getEntityNames(entityData));                
-        Set<String> attributeIds = entityData.keySet();
-        for (String attributeId : attributeIds) {
-            ModelAttrib attribute = model.getAttributeById(attributeId);
-            if (attribute != null) {
-                ModelEntity entity = model.getEntityById(attribute.getEntityId());
-                Object value = entityData.get(attributeId);
-                @SuppressWarnings("unchecked")
-                Map<String, Object> boundEntity = (Map<String, Object>) bindings.get(entity
-                        .getName());
-                boundEntity.put(attribute.getName(), value);
-            } else {
-                log(LogLevel.WARN, "Could not find attribute in the input model with an id of " + attributeId);
-            }
+        if (scriptBindings.getInputMessage() != inputMessage) {
+            scriptBindings.bindMessage(inputMessage, context.getFlowParameters());
         }
+        return scriptBindings;
+    }
+
+    protected Bindings bindEntityData(ScriptEngine scriptEngine, Message inputMessage, EntityData entityData) {
+        ScriptBindings bindings = getScriptBindings(inputMessage);
+        bindings.bindRow(entityData);
         scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
         return bindings;
     }
 
     protected Bindings bindStringData(ScriptEngine scriptEngine, Message inputMessage, String value) {
-        Bindings bindings = scriptEngine.createBindings();
-        bindHeadersAndFlowParameters(bindings, inputMessage);
-        if (value != null) {
-        	bindings.put("text", value);
-        } else {
+        ScriptBindings bindings = getScriptBindings(inputMessage);
+        bindings.bindText(value);
+        if (value == null) {
             log(LogLevel.WARN, "Binding was unsuccessful since the value was null");
         }
         scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
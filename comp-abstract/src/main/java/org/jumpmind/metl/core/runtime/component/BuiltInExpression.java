@@ -0,0 +1,413 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles an expression that is no more than a call to one of the built in
+ * functions of {@link ModelAttributeScriptHelper} with literal arguments, a
+ * literal or <code>value</code> into a Java function.  The function calls the
+ * helper directly, so the expression is evaluated without the Groovy runtime.
+ * <p>
+ * Only what would select the same method with the same arguments in Groovy is
+ * recognized. {@link #compile(String)} returns null for anything else and the
+ * expression is left to Groovy.
+ */
+public final class BuiltInExpression {
+
+    public interface Function {
+        Object apply(ModelAttributeScriptHelper helper);
+    }
+
+    static final Object NO_MATCH = new Object();
+
+    final String text;
+
+    int position;
+
+    private BuiltInExpression(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return the function the expression compiles to or null if the
+     *         expression has to be evaluated by Groovy
+     */
+    public static Function compile(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        return new BuiltInExpression(expression).parse();
+    }
+
+    Function parse() {
+        skipWhitespace();
+        int start = position;
+        String identifier = identifier();
+        if (!"return".equals(identifier) || position == text.length() || !Character.isWhitespace(text.charAt(position))) {
+            position = start;
+        }
+        Function function = term();
+        skipWhitespace();
+        if (function != null && position < text.length() && text.charAt(position) == ';') {
+            position++;
+            skipWhitespace();
+        }
+        return function != null && position == text.length() ? function : null;
+    }
+
+    Function term() {
+        skipWhitespace();
+        int start = position;
+        String identifier = identifier();
+        if (identifier == null) {
+            Object literal = literal();
+            return literal == NO_MATCH ? null : helper -> literal;
+        } else if ("value".equals(identifier)) {
+            return helper -> helper.value;
+        } else {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '(') {
+                position++;
+                List<Object> arguments = arguments();
+                return arguments != null ? call(identifier, arguments) : null;
+            } else {
+                position = start;
+                Object literal = literal();
+                return literal == NO_MATCH ? null : helper -> literal;
+            }
+        }
+    }
+
+    List<Object> arguments() {
+        List<Object> arguments = new ArrayList<>();
+        skipWhitespace();
+        if (position < text.length() && text.charAt(position) == ')') {
+            position++;
+            return arguments;
+        }
+        while (true) {
+            skipWhitespace();
+            Object argument = literal();
+            if (argument == NO_MATCH) {
+                return null;
+            }
+            arguments.add(argument);
+            skipWhitespace();
+            if (position == text.length()) {
+                return null;
+            }
+            char c = text.charAt(position++);
+            if (c == ')') {
+                return arguments;
+            } else if (c != ',') {
+                return null;
+            }
+        }
+    }
+
+    String identifier() {
+        int start = position;
+        if (position < text.length() && Character.isJavaIdentifierStart(text.charAt(position))) {
+            position++;
+            while (position < text.length() && Character.isJavaIdentifierPart(text.charAt(position))) {
+                position++;
+            }
+        }
+        return position > start ? text.substring(start, position) : null;
+    }
+
+    /*
+     * Literals are typed as Groovy types them: whole numbers are Integer or
+     * Long and decimal numbers are BigDecimal
+     */
+    Object literal() {
+        if (position == text.length()) {
+            return NO_MATCH;
+        }
+        char c = text.charAt(position);
+        if (c == '\'' || c == '"') {
+            return string(c);
+        } else if (c == '-' || Character.isDigit(c)) {
+            return number();
+        } else {
+            String identifier = identifier();
+            if ("null".equals(identifier)) {
+                return null;
+            } else if ("true".equals(identifier)) {
+                return Boolean.TRUE;
+            } else if ("false".equals(identifier)) {
+                return Boolean.FALSE;
+            } else {
+                return NO_MATCH;
+            }
+        }
+    }
+
+    Object string(char quote) {
+        StringBuilder string = new StringBuilder();
+        position++;
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == quote) {
+                return string.toString();
+            } else if (c == '\\' && position < text.length()) {
+                c = text.charAt(position++);
+                switch (c) {
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case '\\':
+                    case '\'':
+                    case '"':
+                    case '$':
+                        string.append(c);
+                        break;
+                    default:
+                        return NO_MATCH;
+                }
+            } else if ((c == '$' && quote == '"') || c == '\n' || c == '\r') {
+                /* a GString or a multi line string */
+                return NO_MATCH;
+            } else {
+                string.append(c);
+            }
+        }
+        return NO_MATCH;
+    }
+
+    Object number() {
+        boolean negative = text.charAt(position) == '-';
+        if (negative) {
+            position++;
+        }
+        int digits = position;
+        while (position < text.length() && Character.isDigit(text.charAt(position))) {
+            position++;
+        }
+        if (position == digits) {
+            return NO_MATCH;
+        }
+        boolean decimal = false;
+        if (position + 1 < text.length() && text.charAt(position) == '.' && Character.isDigit(text.charAt(position + 1))) {
+            decimal = true;
+            position++;
+            while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                position++;
+            }
+        }
+        if (position < text.length() && (Character.isJavaIdentifierPart(text.charAt(position)) || text.charAt(position) == '.')) {
+            /* a suffix, an exponent or a method call on the number */
+            return NO_MATCH;
+        }
+        /* the minus sign is applied to the number after it is typed */
+        String number = text.substring(digits, position);
+        if (decimal) {
+            BigDecimal bigDecimal = new BigDecimal(number);
+            return negative ? bigDecimal.negate() : bigDecimal;
+        }
+        try {
+            int integer = Integer.parseInt(number);
+            return negative ? -integer : integer;
+        } catch (NumberFormatException e) {
+            try {
+                long longNumber = Long.parseLong(number);
+                return negative ? -longNumber : longNumber;
+            } catch (NumberFormatException ex) {
+                return NO_MATCH;
+            }
+        }
+    }
+
+    void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    static Function call(String name, List<Object> arguments) {
+        switch (arguments.size()) {
+            case 0:
+                return call(name);
+            case 1:
+                return call(name, arguments.get(0));
+            case 2:
+                return call(name, arguments.get(0), arguments.get(1));
+            case 3:
+                return call(name, arguments.get(0), arguments.get(1), arguments.get(2));
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    static Function call(String name) {
+        switch (name) {
+            case "nullvalue":
+                return helper -> helper.nullvalue();
+            case "integer":
+                return helper -> helper.integer();
+            case "parseInt":
+                return helper -> helper.parseInt();
+            case "parseLong":
+                return helper -> helper.parseLong();
+            case "parseDouble":
+                return helper -> helper.parseDouble();
+            case "parseBigDecimal":
+                return helper -> helper.parseBigDecimal();
+            case "lower":
+                return helper -> helper.lower();
+            case "upper":
+                return helper -> helper.upper();
+            case "trim":
+                return helper -> helper.trim();
+            case "capitalize":
+                return helper -> helper.capitalize();
+            case "currentdate":
+                return helper -> helper.currentdate();
+            case "remove":
+                return helper -> helper.remove();
+            default:
+                return null;
+        }
+    }
+
+    static Function call(String name, Object argument) {
+        if (argument instanceof String) {
+            String string = (String) argument;
+            switch (name) {
+                case "flowParameter":
+                    return helper -> helper.flowParameter(string);
+                case "messageParameter":
+                    return helper -> helper.messageParameter(string);
+                case "format":
+                    return helper -> helper.format(string);
+                case "currentdate":
+                    return helper -> helper.currentdate(string);
+                case "parsedate":
+                    return helper -> helper.parsedate(string);
+                case "formatdate":
+                    return helper -> helper.formatdate(string);
+                case "stringConstant":
+                    return helper -> helper.stringConstant(string);
+                case "getAttributeValueByName":
+                    return helper -> helper.getAttributeValueByName(string);
+                case "add":
+                    return helper -> helper.add(string);
+                default:
+                    break;
+            }
+        } else if (argument instanceof Integer) {
+            int number = (Integer) argument;
+            switch (name) {
+                case "abbreviate":
+                    return helper -> helper.abbreviate(number);
+                case "left":
+                    return helper -> helper.left(number);
+                case "right":
+                    return helper -> helper.right(number);
+                case "daysFromNow":
+                    return helper -> helper.daysFromNow(number);
+                default:
+                    break;
+            }
+        }
+        switch (name) {
+            case "nvl":
+                return helper -> helper.nvl(argument);
+            case "parseBigDecimal":
+                return helper -> helper.parseBigDecimal(argument);
+            default:
+                return null;
+        }
+    }
+
+    static Function call(String name, Object first, Object second) {
+        if (first instanceof String && second instanceof String) {
+            String firstString = (String) first;
+            String secondString = (String) second;
+            switch (name) {
+                case "replace":
+                    return helper -> helper.replace(firstString, secondString);
+                case "parsedate":
+                    return helper -> helper.parsedate(firstString, secondString);
+                case "parseAndFormatDate":
+                    return helper -> helper.parseAndFormatDate(firstString, secondString);
+                case "add":
+                    return helper -> helper.add(firstString, secondString);
+                case "subtract":
+                    return helper -> helper.subtract(firstString, secondString);
+                default:
+                    return null;
+            }
+        } else if (first instanceof String && second instanceof Integer) {
+            String string = (String) first;
+            int number = (Integer) second;
+            switch (name) {
+                case "rpad":
+                    return helper -> helper.rpad(string, number);
+                case "lpad":
+                    return helper -> helper.lpad(string, number);
+                default:
+                    break;
+            }
+        } else if (first instanceof Integer && second instanceof Integer) {
+            int start = (Integer) first;
+            int end = (Integer) second;
+            if ("substr".equals(name)) {
+                return helper -> helper.substr(start, end);
+            }
+        }
+        return null;
+    }
+
+    static Function call(String name, Object first, Object second, Object third) {
+        if ("mapChangeType".equals(name)) {
+            return helper -> {
+                helper.mapChangeType(first, second, third);
+                return null;
+            };
+        } else if ("sequence".equals(name) && (first instanceof Integer || first instanceof Long) && second instanceof Integer
+                && third instanceof String) {
+            long seed = ((Number) first).longValue();
+            int increment = (Integer) second;
+            String breakAttributeName = (String) third;
+            return helper -> helper.sequence(seed, increment, breakAttributeName);
+        }
+        return null;
+    }
+
+}
@@ -26,9 +26,12 @@ import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -69,6 +72,8 @@ public class ModelAttributeScriptHelper {
 
     static private ThreadLocal<ScriptEngine> scriptEngine = new ThreadLocal<ScriptEngine>();
 
+    static private ThreadLocal<Map<String, SimpleDateFormat>> dateParsers = ThreadLocal.withInitial(HashMap::new);
+
     public ModelAttributeScriptHelper(Message message, ComponentContext context, ModelAttrib attribute, ModelEntity entity, Model model,
             EntityData data, Object value) {
         this(context, attribute, entity, model);
@@ -354,8 +359,26 @@ public class ModelAttributeScriptHelper {
         }
     }
 
+    /*
+     * A strict parser is kept for each pattern on each thread.  What it
+     * parses completely is what FormatUtils would have parsed.  Anything else
+     * is handed to FormatUtils, which has the final say and reports the
+     * error.
+     */
     private Date parseDateFromText(String pattern, String valueToParse) {
         if (isNotBlank(valueToParse)) {
+            if (pattern != null) {
+                SimpleDateFormat parser = dateParsers.get().computeIfAbsent(pattern, p -> {
+                    SimpleDateFormat format = new SimpleDateFormat(p);
+                    format.setLenient(false);
+                    return format;
+                });
+                ParsePosition position = new ParsePosition(0);
+                Date date = parser.parse(valueToParse, position);
+                if (date != null && position.getIndex() == valueToParse.length()) {
+                    return date;
+                }
+            }
             return FormatUtils.parseDate(valueToParse, new String[] { pattern });
         } else {
             return null;
@@ -378,6 +401,22 @@ public class ModelAttributeScriptHelper {
         return value;
     }
 
+    /**
+     * Rebind the per row state and evaluate. Used with a helper that was
+     * compiled once by {@link #create(ComponentContext, ModelAttrib, ModelEntity, Model, String)}.
+     */
+    protected Object eval(Message message, EntityData data, Object value) {
+        this.message = message;
+        this.data = data;
+        this.value = value;
+        try {
+            return eval();
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Unable to evaluate groovy script.  Attribute ==> " + attribute.getName() + ".  Value ==> "
+                    + value + "." + e.getMessage(), e);
+        }
+    }
+
     public Long nextLongValueInMessage(String... attributeNamesToLookAt) {
         Long max = (Long) message.getHeader().get("_nextLongValueInMessage");
         if (max == null) {
@@ -463,13 +502,53 @@ public class ModelAttributeScriptHelper {
         return signatures.toArray(new String[signatures.size()]);
     }
 
-    public static Object eval(Message message, ComponentContext context, ModelAttrib attribute, Object value, Model model, ModelEntity entity,
-            EntityData data, String expression) {
+    protected static ScriptEngine getScriptEngine() {
         ScriptEngine engine = scriptEngine.get();
         if (engine == null) {
             engine = new GroovyScriptEngineImpl();
             scriptEngine.set(engine);
         }
+        return engine;
+    }
+
+    /**
+     * Compile an expression into a helper that can be evaluated many times.
+     * The value, row and message are bound on each call to
+     * {@link #eval(Message, EntityData, Object)}.
+     */
+    public static ModelAttributeScriptHelper create(ComponentContext context, ModelAttrib attribute, ModelEntity entity, Model model,
+            String expression) {
+        BuiltInExpression.Function function = BuiltInExpression.compile(expression);
+        if (function != null) {
+            return new ModelAttributeScriptHelper(context, attribute, entity, model) {
+                @Override
+                protected Object eval() {
+                    return function.apply(this);
+                }
+            };
+        }
+
+        ScriptEngine engine = getScriptEngine();
+        engine.put("entity", entity);
+        engine.put("model", model);
+        engine.put("attribute", attribute);
+        engine.put("context", context);
+
+        try {
+            String importString = "import org.jumpmind.metl.core.runtime.component.ModelAttributeScriptHelper;\n";
+            String code = String.format(
+                    "return new ModelAttributeScriptHelper(context, attribute, entity, model) { public Object eval() { return %s } }",
+                    expression);
+            return (ModelAttributeScriptHelper) engine.eval(importString + code);
+        } catch (ScriptException e) {
+            throw new RuntimeException("Unable to evaluate groovy script.  Attribute ==> " + attribute.getName() + "."
+                    + e.getCause().getMessage(), e);
+        }
+    }
+
+    public static Object eval(Message message, ComponentContext context, ModelAttrib attribute, Object value, Model model, ModelEntity entity,
+            EntityData data, String expression) {
+        ScriptEngine engine = getScriptEngine();
         engine.put("value", value);
         engine.put("data", data);
         engine.put("entity", entity);
@@ -0,0 +1,79 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+public class BuiltInExpressionTest {
+
+    @Test
+    public void testBuiltInFunctions() {
+        assertEquals("ABC", eval("upper()", "abc"));
+        assertEquals("abc", eval("return trim();", "  abc "));
+        assertEquals("bc", eval("substr(1, 3)", "abcd"));
+        assertEquals("007", eval("lpad('0', 3)", "7"));
+        assertEquals("a-c", eval("replace(\"b\", '-')", "abc"));
+        assertEquals("none", eval("nvl('none')", null));
+        assertEquals(42, eval("parseInt()", "42"));
+        assertEquals("2015/01/02", eval("parseAndFormatDate('yyyy-MM-dd', 'yyyy/MM/dd')", "2015-01-02"));
+    }
+
+    @Test
+    public void testLiterals() {
+        assertEquals("it's", eval("'it\\'s'", null));
+        assertEquals(-5, eval("-5", null));
+        assertEquals(3000000000L, eval("3000000000", null));
+        assertEquals(new BigDecimal("1.50"), eval("1.50", null));
+        assertNull(eval("null", "abc"));
+        assertEquals("abc", eval("value", "abc"));
+    }
+
+    @Test
+    public void testLeftToGroovy() {
+        assertNull(BuiltInExpression.compile("value.toUpperCase()"));
+        assertNull(BuiltInExpression.compile("upper() + 'x'"));
+        assertNull(BuiltInExpression.compile("\"${value}\""));
+        assertNull(BuiltInExpression.compile("substr('1', 3)"));
+        assertNull(BuiltInExpression.compile("left(1L)"));
+        assertNull(BuiltInExpression.compile("trim(); upper()"));
+        assertNull(BuiltInExpression.compile("unknown()"));
+        assertNull(BuiltInExpression.compile("return"));
+    }
+
+    @Test
+    public void testParsedateIsCached() {
+        assertNotNull(eval("parsedate('yyyy-MM-dd')", "2015-01-01"));
+        assertNull(eval("parsedate('yyyy-MM-dd', '0000-00-01')", "0000-00-01"));
+    }
+
+    protected Object eval(String expression, Object value) {
+        BuiltInExpression.Function function = BuiltInExpression.compile(expression);
+        assertNotNull(expression, function);
+        return function.apply(new ModelAttributeScriptHelper(null, null, null, null, null, null, value));
+    }
+
+}
@@ -28,6 +28,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
@@ -43,7 +44,7 @@ import org.jumpmind.metl.core.runtime.resource.JMSJndiQueueDirectory;
 import org.jumpmind.metl.core.runtime.resource.JMSJndiTopicDirectory;
 import org.jumpmind.properties.TypedProperties;
 
-public class TextFileWriter extends AbstractFileWriter {
+public class TextFileWriter extends AbstractFileWriter implements IBatchComponentRuntime {
 
     public final static String TYPE = "Text File Writer";
 
@@ -79,6 +80,8 @@ public class TextFileWriter extends AbstractFileWriter {
 
     BufferedWriter bufferedWriter = null;
 
+    boolean flushDeferred = false;
+
     IDirectory directory = null;
 
     @Override
@@ -100,6 +103,11 @@ public class TextFileWriter extends AbstractFileWriter {
         return false;
     }
 
+    @Override
+    public boolean supportsBatchHandle() {
+        return true;
+    }
+
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
 
@@ -135,7 +143,7 @@ public class TextFileWriter extends AbstractFileWriter {
                         bufferedWriter.write("");
                     }
 
-                    if (bufferedWriter != null){
+                    if (bufferedWriter != null && !flushDeferred){
                        bufferedWriter.flush();
                     }
                     
@@ -163,6 +171,29 @@ public class TextFileWriter extends AbstractFileWriter {
 
     }
     
+    /*
+     * The writer is flushed once after the batch instead of after every
+     * message of it
+     */
+    @Override
+    public void handleBatch(List<Message> inputMessages, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+        flushDeferred = true;
+        try {
+            for (int i = 0; i < inputMessages.size(); i++) {
+                handle(inputMessages.get(i), callback, unitOfWorkBoundaryReached && i == inputMessages.size() - 1);
+            }
+        } finally {
+            flushDeferred = false;
+        }
+        if (bufferedWriter != null) {
+            try {
+                bufferedWriter.flush();
+            } catch (IOException e) {
+                throw new IoException(e);
+            }
+        }
+    }
+
     private void closeDirectory() {
         if (directory != null) {
             directory.close();
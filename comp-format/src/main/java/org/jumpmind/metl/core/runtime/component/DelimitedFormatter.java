@@ -134,8 +134,7 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
                 for (AttributeFormat attribute : attributes) {
                     Object object = inputRow.get(attribute.getAttributeId());
                     if (isNotBlank(attribute.getFormatFunction())) {
-                        object = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), object, getInputModel(),
-                                attribute.getEntity(), inputRow, attribute.getFormatFunction());
+                        object = attribute.format(inputMessage, inputRow, object);
                     }
 
                     csvWriter.write(object != null ? object.toString() : null,!trimColumns);
@@ -210,6 +209,8 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
         int ordinal;
         String formatFunction;
 
+        ModelAttributeScriptHelper formatHelper;
+
         public AttributeFormat(String attributeId, ModelEntity entity, ModelAttrib attribute) {
             this.attributeId = attributeId;
             this.entity = entity;
@@ -228,6 +229,13 @@ public class DelimitedFormatter extends AbstractComponentRuntime {
             this.ordinal = ordinal;
         }
 
+        public Object format(Message message, EntityData data, Object value) {
+            if (formatHelper == null) {
+                formatHelper = ModelAttributeScriptHelper.create(context, attribute, entity, getInputModel(), formatFunction);
+            }
+            return formatHelper.eval(message, data, value);
+        }
+
         public String getFormatFunction() {
             return formatFunction;
         }
@@ -38,6 +38,7 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
@@ -75,6 +76,8 @@ public class DelimitedParser extends AbstractComponentRuntime {
 
     List<AttributeFormat> attributes = new ArrayList<AttributeFormat>();
 
+    EntityDataSchema outputSchema;
+
     @Override
     public void start() {
         delimiter = StringEscapeUtils.unescapeJava(getComponent().get(SETTING_DELIMITER, delimiter));
@@ -86,6 +89,15 @@ public class DelimitedParser extends AbstractComponentRuntime {
         if (getComponent().getOutputModel() == null) {
             throw new IllegalStateException("This component requires an output model.  Please select one.");
         }
+        outputSchema = attributes.size() > 0 ? new EntityDataSchema(getAttributeIds()) : new EntityDataSchema(getOutputModel());
+    }
+
+    protected List<String> getAttributeIds() {
+        List<String> attributeIds = new ArrayList<>(attributes.size());
+        for (AttributeFormat attribute : attributes) {
+            attributeIds.add(attribute.getAttributeId());
+        }
+        return attributeIds;
     }
 
     @Override
@@ -137,13 +149,12 @@ public class DelimitedParser extends AbstractComponentRuntime {
             csvReader.setUseTextQualifier(false);
         }
         while (csvReader.readRecord()) {
-            EntityData data = new EntityData();
+            EntityData data = new EntityData(outputSchema);
             if (attributes.size() > 0) {
                 for (AttributeFormat attribute : attributes) {
                     Object value = csvReader.get(attribute.getOrdinal() - 1);
                     if (isNotBlank(attribute.getFormatFunction())) {
-                        value = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), value, getOutputModel(), attribute.getEntity(),
-                                data, attribute.getFormatFunction());
+                        value = attribute.format(inputMessage, data, value);
                     }
 
                     data.put(attribute.getAttributeId(), value);
@@ -219,6 +230,8 @@ public class DelimitedParser extends AbstractComponentRuntime {
 
         String formatFunction;
 
+        ModelAttributeScriptHelper formatHelper;
+
         public String getAttributeId() {
             return attributeId;
         }
@@ -231,6 +244,13 @@ public class DelimitedParser extends AbstractComponentRuntime {
             this.ordinal = ordinal;
         }
 
+        public Object format(Message message, EntityData data, Object value) {
+            if (formatHelper == null) {
+                formatHelper = ModelAttributeScriptHelper.create(context, attribute, entity, getOutputModel(), formatFunction);
+            }
+            return formatHelper.eval(message, data, value);
+        }
+
         public String getFormatFunction() {
             return formatFunction;
         }
@@ -120,8 +120,7 @@ public class FixedLengthFormatter extends AbstractComponentRuntime {
         for (AttributeFormat attribute : attributesList) {
             Object value = inputRow.get(attribute.getAttributeId());
             if (isNotBlank(attribute.getFormatFunction())) {
-                value = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), value, getInputModel(), attribute.getEntity(),
-                        inputRow, attribute.getFormatFunction());
+                value = attribute.format(inputMessage, inputRow, value);
             }
             if (value != null) {
                 if (value.toString().length() > attribute.getLength()) {
@@ -175,6 +174,8 @@ public class FixedLengthFormatter extends AbstractComponentRuntime {
         int length;
         String formatFunction;
 
+        ModelAttributeScriptHelper formatHelper;
+
         public AttributeFormat(ModelAttrib attribute, ModelEntity entity) {
             this.attribute = attribute;
             this.entity = entity;
@@ -204,6 +205,13 @@ public class FixedLengthFormatter extends AbstractComponentRuntime {
             this.formatFunction = formatFunction;
         }
 
+        public Object format(Message message, EntityData data, Object value) {
+            if (formatHelper == null) {
+                formatHelper = ModelAttributeScriptHelper.create(context, attribute, entity, getInputModel(), formatFunction);
+            }
+            return formatHelper.eval(message, data, value);
+        }
+
         public String getFormatFunction() {
             return formatFunction;
         }
@@ -36,6 +36,7 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
@@ -56,6 +57,8 @@ public class FixedLengthParser extends AbstractComponentRuntime {
 
     List<AttributeFormat> attributesList;
 
+    EntityDataSchema outputSchema;
+
     @Override
     public void start() {
         if (getComponent().getOutputModel() == null) {
@@ -64,6 +67,11 @@ public class FixedLengthParser extends AbstractComponentRuntime {
         numberOfFooterLinesToSkip = getComponent().getInt(SETTING_FOOTER_LINES_TO_SKIP, 0);
         numberOfHeaderLinesToSkip = getComponent().getInt(SETTING_HEADER_LINES_TO_SKIP, 0);
         convertAttributeSettingsToAttributeFormat();
+        List<String> attributeIds = new ArrayList<>(attributesList.size());
+        for (AttributeFormat attribute : attributesList) {
+            attributeIds.add(attribute.getAttributeId());
+        }
+        outputSchema = new EntityDataSchema(attributeIds);
     }
     
     @Override
@@ -106,7 +114,7 @@ public class FixedLengthParser extends AbstractComponentRuntime {
 
     private EntityData processInputRow(Message inputMessage, String inputRow) throws IOException {
         if (attributesList.size() > 0) {
-            EntityData data = new EntityData();
+            EntityData data = new EntityData(outputSchema);
             for (AttributeFormat attribute : attributesList) {
                 int length = attribute.getLength() > inputRow.length() ? inputRow.length() : attribute.getLength();
                 Object value = null;
@@ -118,8 +126,7 @@ public class FixedLengthParser extends AbstractComponentRuntime {
 
                 inputRow = inputRow.substring(length);
                 if (isNotBlank(attribute.getFormatFunction())) {
-                    value = ModelAttributeScriptHelper.eval(inputMessage, context, attribute.getAttribute(), value, getOutputModel(), attribute.getEntity(), data,
-                            attribute.getFormatFunction());
+                    value = attribute.format(inputMessage, data, value);
                 }
 
                 data.put(attribute.getAttributeId(), value);
@@ -169,6 +176,8 @@ public class FixedLengthParser extends AbstractComponentRuntime {
         int length;
         String formatFunction;
 
+        ModelAttributeScriptHelper formatHelper;
+
         public AttributeFormat(ModelAttrib attribute, ModelEntity entity) {
             this.attribute = attribute;
             this.entity = entity;
@@ -198,6 +207,13 @@ public class FixedLengthParser extends AbstractComponentRuntime {
             this.formatFunction = formatFunction;
         }
 
+        public Object format(Message message, EntityData data, Object value) {
+            if (formatHelper == null) {
+                formatHelper = ModelAttributeScriptHelper.create(context, attribute, entity, getOutputModel(), formatFunction);
+            }
+            return formatHelper.eval(message, data, value);
+        }
+
         public String getFormatFunction() {
             return formatFunction;
         }
@@ -23,18 +23,16 @@ package org.jumpmind.metl.core.runtime.component;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jumpmind.metl.core.runtime.BinaryMessage;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
@@ -46,7 +44,24 @@ import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 
-public class Script extends AbstractComponentRuntime {
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+
+/**
+ * Runs the user's Groovy hooks as methods of a {@link ScriptHelper} subclass.
+ * The script is compiled once per distinct script text and the class is
+ * shared by every thread and every run of the step.  Only the most recently
+ * used classes are kept, so scripts that are edited and redeployed do not
+ * hold on to the classes of their old versions.  Each component runtime gets
+ * its own helper instance and binding.
+ * <p>
+ * When {@link #COMPILE_STATIC} is set the subclass is compiled with
+ * <code>@CompileStatic</code>, so names that the helper does not declare are
+ * compile errors instead of binding variables.  When a
+ * {@link #HANDLE_BATCH_SCRIPT} is set a single threaded step hands the
+ * script the content messages that are already queued in one call.
+ */
+public class Script extends AbstractComponentRuntime implements IBatchComponentRuntime {
 
     public static final String TYPE = "Script";
 
@@ -58,17 +73,29 @@ public class Script extends AbstractComponentRuntime {
 
     public final static String HANDLE_SCRIPT = "handle.msg.script";
 
+    public final static String HANDLE_BATCH_SCRIPT = "handle.batch.script";
+
     public final static String ON_FLOW_SUCCESS = "on.flow.success.script";
 
     public final static String ON_FLOW_ERROR = "on.flow.error.script";
 
+    public final static String COMPILE_STATIC = "compile.static";
+
     public static String TRANSFORM_EXPRESSION = "transform.expression";
 
-    static Map<String, ConcurrentLinkedQueue<ScriptEngine>> enginesByScript = new ConcurrentHashMap<>();
+    static final int MAX_CACHED_SCRIPT_CLASSES = 100;
+
+    static Map<String, Class<? extends groovy.lang.Script>> scriptClassesByScript = Collections
+            .synchronizedMap(new LinkedHashMap<String, Class<? extends groovy.lang.Script>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
 
-    ScriptEngine engine;
-    
-    ConcurrentLinkedQueue<ScriptEngine> engineCache;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Class<? extends groovy.lang.Script>> eldest) {
+                    return size() > MAX_CACHED_SCRIPT_CLASSES;
+                }
+            });
+
+    ScriptHelper helper;
 
     @Override
     public void start() {
@@ -76,6 +103,8 @@ public class Script extends AbstractComponentRuntime {
         String importStatements = getComponent().get(IMPORTS);
         String initScript = getComponent().get(INIT_SCRIPT);
         String handleMessageScript = getComponent().get(HANDLE_SCRIPT);
+        String handleBatchScript = getComponent().get(HANDLE_BATCH_SCRIPT);
+        boolean compileStatic = getComponent().getBoolean(COMPILE_STATIC, false);
         String methods = getComponent().get(METHODS);
         String onSuccess = getComponent().get(ON_FLOW_SUCCESS);
         String onError = getComponent().get(ON_FLOW_ERROR);
@@ -101,7 +130,12 @@ public class Script extends AbstractComponentRuntime {
             script.append(importStatements);
         }
         script.append("\n");
-        script.append(String.format("helper = new %1$s() { \n", ScriptHelper.class.getSimpleName()));
+        if (compileStatic) {
+            script.append("@groovy.transform.CompileStatic\n");
+            script.append(String.format("class StaticScriptHelper extends %1$s { \n", ScriptHelper.class.getSimpleName()));
+        } else {
+            script.append(String.format("helper = new %1$s() { \n", ScriptHelper.class.getSimpleName()));
+        }
 
         if (isNotBlank(methods)) {
             script.append("\n");
@@ -116,6 +150,10 @@ public class Script extends AbstractComponentRuntime {
             script.append("\n");
             script.append(String.format(" protected void onHandle() { %s \n} \n", handleMessageScript));
         }
+        if (isNotBlank(handleBatchScript)) {
+            script.append("\n");
+            script.append(String.format(" protected void onHandleBatch() { %s \n} \n", handleBatchScript));
+        }
         if (isNotBlank(onSuccess)) {
             script.append("\n");
             script.append(String.format(" protected void onSuccess() { %s \n} \n", onSuccess));
@@ -124,53 +162,49 @@ public class Script extends AbstractComponentRuntime {
             script.append("\n");
             script.append(String.format(" protected void onError(Throwable myError) { %s \n} \n", onError));
         }
-        script.append("\n};\n");
+        if (compileStatic) {
+            script.append("\n}\n");
+            script.append("helper = new StaticScriptHelper();\n");
+        } else {
+            script.append("\n};\n");
+        }
         String scriptString = script.toString();
         log(LogLevel.DEBUG, scriptString);
-        engineCache = enginesByScript.get(scriptString);
-        if (engineCache == null) {
-            engineCache = new ConcurrentLinkedQueue<>();
-            enginesByScript.put(scriptString, engineCache);
-        }
-
-        engine = engineCache.poll();
-        if (engine == null) {
-            engine = new GroovyScriptEngineImpl();
-            try {
-                engine.eval(scriptString);
-            } catch (ScriptException e) {
-                handleScriptException(e);
-            }
-        }
+        Class<? extends groovy.lang.Script> scriptClass = getScriptClass(scriptString);
 
-        try {
-            engine.put("component", this);
-            engine.eval("helper.init(component)");
-            engine.eval("helper.onInit()");
-        } catch (ScriptException e) {
-            handleScriptException(e);
-        }
+        Binding binding = new Binding();
+        binding.setVariable("component", this);
+        invoke(() -> InvokerHelper.createScript(scriptClass, binding).run());
+        helper = (ScriptHelper) binding.getVariable("helper");
+        invoke(() -> helper.init(this));
+        invoke(() -> helper.onInit());
 
         log.info("It took {}ms to start the script component", (System.currentTimeMillis() - ts));
     }
-    
-    @Override
-    public void stop() {
-        if (engineCache != null) {
-            engineCache.offer(engine);
+
+    /*
+     * Scripts are compiled outside of the cache's lock so one step compiling
+     * does not hold up the others.  When two runtimes compile the same script
+     * at once the class that was cached first is used.
+     */
+    protected Class<? extends groovy.lang.Script> getScriptClass(String scriptString) {
+        Class<? extends groovy.lang.Script> scriptClass = scriptClassesByScript.get(scriptString);
+        if (scriptClass == null) {
+            scriptClass = compile(scriptString);
+            Class<? extends groovy.lang.Script> cachedClass = scriptClassesByScript.putIfAbsent(scriptString, scriptClass);
+            if (cachedClass != null) {
+                scriptClass = cachedClass;
+            }
         }
+        return scriptClass;
     }
 
-    private void handleScriptException(ScriptException e) {
-        Throwable rootCause = ExceptionUtils.getRootCause(e);
-        if (rootCause != null) {
-            if (rootCause instanceof RuntimeException) {
-                throw (RuntimeException) rootCause;
-            } else {
-                throw new RuntimeException(rootCause);
-            }
-        } else {
-            throw new RuntimeException(e);
+    protected Class<? extends groovy.lang.Script> compile(String scriptString) {
+        GroovyShell shell = new GroovyShell(getClass().getClassLoader());
+        try {
+            return shell.parse(scriptString).getClass();
+        } catch (CompilationFailedException e) {
+            throw new MisconfiguredException("Unable to compile script.  " + e.getMessage(), e);
         }
     }
 
@@ -179,44 +213,58 @@ public class Script extends AbstractComponentRuntime {
         return true;
     }
 
+    @Override
+    public boolean supportsBatchHandle() {
+        return isNotBlank(getComponent().get(HANDLE_BATCH_SCRIPT));
+    }
+
     @Override
     public void handle(Message inputMessage, ISendMessageCallback messageTarget, boolean unitOfWorkBoundaryReached) {
-        invoke("setInputMessage", inputMessage);
-        invoke("setSendMessageCallback", messageTarget);
-        invoke("setUnitOfWorkBoundaryReached", unitOfWorkBoundaryReached);
-        invoke("onHandle");
+        if (helper != null) {
+            helper.setInputMessage(inputMessage);
+            helper.setSendMessageCallback(messageTarget);
+            helper.setUnitOfWorkBoundaryReached(unitOfWorkBoundaryReached);
+            invoke(() -> helper.onHandle());
+            helper.sendOutput();
+        }
+    }
+
+    @Override
+    public void handleBatch(List<Message> inputMessages, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+        if (helper != null) {
+            helper.setInputMessages(inputMessages);
+            helper.setSendMessageCallback(callback);
+            helper.setUnitOfWorkBoundaryReached(unitOfWorkBoundaryReached);
+            invoke(() -> helper.onHandleBatch());
+            helper.sendOutput();
+        }
     }
 
     @Override
     public void flowCompletedWithErrors(Throwable myError) {
-        invoke("onError", myError);
+        if (helper != null) {
+            invoke(() -> helper.onError(myError));
+        }
     }
 
     @Override
     public void flowCompleted(boolean cancelled) {
-        invoke("onSuccess");
+        if (helper != null) {
+            invoke(() -> helper.onSuccess());
+        }
     }
 
-    protected void invoke(String method, Object... args) {
-        if (engine != null) {
-            try {
-                Invocable invocable = (Invocable) engine;
-                Object helper = engine.get("helper");
-                invocable.invokeMethod(helper, method, args);
-            } catch (RuntimeException e) {
-                throw e;
-            } catch (Exception e) {
-                Throwable rootCause = ExceptionUtils.getRootCause(e);
-                if (rootCause != null) {
-                    if (rootCause instanceof RuntimeException) {
-                        throw (RuntimeException) rootCause;
-                    } else {
-                        throw new RuntimeException(rootCause);
-                    }
-                } else {
-                    throw new RuntimeException(e);
-                }
-            }
+    /*
+     * Groovy may throw checked exceptions that the hooks do not declare
+     */
+    protected void invoke(Runnable hook) {
+        try {
+            hook.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            Throwable rootCause = ExceptionUtils.getRootCause(e);
+            throw new RuntimeException(rootCause != null ? rootCause : e);
         }
     }
 
@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -64,6 +65,10 @@ import org.springframework.jdbc.core.JdbcTemplate;
  * {@link ScriptHelper#onError(Throwable)} methods using the script settings
  * provided by the component user. Groovy scripts have access to the methods and
  * the fields on this class.
+ * <p>
+ * The typed methods, like {@link #getInputRows()} and
+ * {@link #getInputAttribute(String, String)}, and the output buffers are meant
+ * for scripts that are statically compiled or that loop over a lot of rows.
  */
 public class ScriptHelper {
 
@@ -98,6 +103,12 @@ public class ScriptHelper {
      */
     protected Message inputMessage;
 
+    /**
+     * The messages that were received together. This can be accessed from the
+     * {@link #onHandleBatch()} method.
+     */
+    protected List<Message> inputMessages;
+
     /**
      * This is a handle to the API that can be used to send outbound
      * {@link Message}s.
@@ -126,6 +137,18 @@ public class ScriptHelper {
      */
     protected boolean unitOfWorkBoundaryReached;
 
+    /**
+     * Rows added to this list are sent in one entity data message after
+     * {@link #onHandle()} or {@link #onHandleBatch()} returns.
+     */
+    protected ArrayList<EntityData> outputRows = new ArrayList<>();
+
+    /**
+     * Lines added to this list are sent in one text message after
+     * {@link #onHandle()} or {@link #onHandleBatch()} returns.
+     */
+    protected ArrayList<String> outputLines = new ArrayList<>();
+
     protected IComponentRuntime componentRuntime;
     
     private EntityNameLookup entityNameLookup;
@@ -268,6 +291,66 @@ public class ScriptHelper {
         return (BasicDataSource) resource.reference();
     }
 
+    /**
+     * @return the rows of the current {@link #inputMessage} or an empty list if
+     *         it is not an entity data message
+     */
+    protected List<EntityData> getInputRows() {
+        if (inputMessage instanceof EntityDataMessage) {
+            return ((EntityDataMessage) inputMessage).getPayload();
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return the lines of the current {@link #inputMessage} or an empty list
+     *         if it is not a text message
+     */
+    protected List<String> getInputLines() {
+        if (inputMessage instanceof TextMessage) {
+            return ((TextMessage) inputMessage).getPayload();
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Look up an attribute of the input model once, so its id can be used to
+     * get values from each row.
+     * 
+     * @param entityName
+     *            The name of the {@link ModelEntity}
+     * @param attributeName
+     *            The name of the {@link ModelAttrib}
+     * @return The attribute
+     */
+    protected ModelAttrib getInputAttribute(String entityName, String attributeName) {
+        return getAttribute(flowStep.getComponent().getInputModel(), entityName, attributeName);
+    }
+
+    /**
+     * Look up an attribute of the output model once, so its id can be used to
+     * put values in each row.
+     * 
+     * @param entityName
+     *            The name of the {@link ModelEntity}
+     * @param attributeName
+     *            The name of the {@link ModelAttrib}
+     * @return The attribute
+     */
+    protected ModelAttrib getOutputAttribute(String entityName, String attributeName) {
+        return getAttribute(flowStep.getComponent().getOutputModel(), entityName, attributeName);
+    }
+
+    private ModelAttrib getAttribute(Model model, String entityName, String attributeName) {
+        ModelAttrib attribute = model != null ? model.getAttributeByName(entityName, attributeName) : null;
+        if (attribute == null) {
+            throw new MisconfiguredException("Could not find the attribute '%s.%s'", entityName, attributeName);
+        }
+        return attribute;
+    }
+
     protected Row nextRowFromInputMessage() {
         if (flowStep.getComponent().getInputModel() != null) {
             if (entityDataIterator == null && inputMessage instanceof EntityDataMessage) {
@@ -354,6 +437,18 @@ public class ScriptHelper {
      */
     protected void setInputMessage(Message inputMessage) {
         this.inputMessage = inputMessage;
+        this.entityDataIterator = null;
+    }
+
+    /**
+     * Called by the {@link Script} component to set the messages prior to
+     * calling {@link #onHandleBatch()}
+     * 
+     * @param inputMessages
+     *            Sets the input messages
+     */
+    protected void setInputMessages(List<Message> inputMessages) {
+        this.inputMessages = inputMessages;
     }
 
     /**
@@ -540,6 +635,25 @@ public class ScriptHelper {
         callback.sendEntityDataMessage(null, payload);
     }
 
+    /**
+     * Send what has been added to {@link #outputRows} and {@link #outputLines}.
+     * Called by the {@link Script} component after each call to
+     * {@link #onHandle()} or {@link #onHandleBatch()}. A sent list belongs to
+     * the message, so it is replaced with an empty list of the same capacity.
+     */
+    protected void sendOutput() {
+        if (outputRows.size() > 0) {
+            ArrayList<EntityData> payload = outputRows;
+            outputRows = new ArrayList<>(payload.size());
+            callback.sendEntityDataMessage(null, payload);
+        }
+        if (outputLines.size() > 0) {
+            ArrayList<String> payload = outputLines;
+            outputLines = new ArrayList<>(payload.size());
+            callback.sendTextMessage(null, payload);
+        }
+    }
+
     protected void onInit() {
     }
 
@@ -547,6 +661,20 @@ public class ScriptHelper {
         
     }
 
+    /**
+     * Handle the messages that were received together. By default each
+     * message is handled by {@link #onHandle()}, so only the last one can
+     * reach the unit of work boundary.
+     */
+    protected void onHandleBatch() {
+        boolean batchUnitOfWorkBoundaryReached = unitOfWorkBoundaryReached;
+        for (int i = 0; i < inputMessages.size(); i++) {
+            setInputMessage(inputMessages.get(i));
+            setUnitOfWorkBoundaryReached(batchUnitOfWorkBoundaryReached && i == inputMessages.size() - 1);
+            onHandle();
+        }
+    }
+
     protected void onError(Throwable myError) {
     }
 
@@ -40,6 +40,7 @@ public class EditScriptPanel extends AbstractComponentEditPanel {
     protected static final String SCRIPT_ON_SUCCESS = "onSuccess()";
     protected static final String SCRIPT_ON_INIT = "onInit()";
     protected static final String SCRIPT_ON_HANDLE = "onHandleMessage(inputMessage, messageTarget)";
+    protected static final String SCRIPT_ON_HANDLE_BATCH = "onHandleBatch(inputMessages, messageTarget)";
     protected static final String SCRIPT_IMPORTS = "<Imports>";
     protected static final String SCRIPT_METHODS = "<Methods>";
 
@@ -76,6 +77,8 @@ public class EditScriptPanel extends AbstractComponentEditPanel {
         select.setItemCaption(Script.INIT_SCRIPT, SCRIPT_ON_INIT);
         select.addItem(Script.HANDLE_SCRIPT);
         select.setItemCaption(Script.HANDLE_SCRIPT, SCRIPT_ON_HANDLE);
+        select.addItem(Script.HANDLE_BATCH_SCRIPT);
+        select.setItemCaption(Script.HANDLE_BATCH_SCRIPT, SCRIPT_ON_HANDLE_BATCH);
         select.addItem(Script.ON_FLOW_SUCCESS);
         select.setItemCaption(Script.ON_FLOW_SUCCESS, SCRIPT_ON_SUCCESS);
         select.addItem(Script.ON_FLOW_ERROR);
@@ -118,6 +118,7 @@ class ScriptTemplatesDialog extends ResizableWindow {
     protected void applyTemplate(Template template) {
         String script = template.script;
         applyTemplate(script, Script.HANDLE_SCRIPT, EditScriptPanel.SCRIPT_ON_HANDLE);
+        applyTemplate(script, Script.HANDLE_BATCH_SCRIPT, EditScriptPanel.SCRIPT_ON_HANDLE_BATCH);
         applyTemplate(script, Script.INIT_SCRIPT, EditScriptPanel.SCRIPT_ON_INIT);
         applyTemplate(script, Script.IMPORTS, EditScriptPanel.SCRIPT_IMPORTS);
         applyTemplate(script, Script.METHODS, EditScriptPanel.SCRIPT_METHODS);
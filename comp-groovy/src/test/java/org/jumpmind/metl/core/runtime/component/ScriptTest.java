@@ -0,0 +1,130 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.runtime.ExecutionTrackerNoOp;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+import org.jumpmind.metl.core.runtime.TextMessage;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptTest {
+
+    @Before
+    public void setup() {
+        Script.scriptClassesByScript.clear();
+    }
+
+    @Test
+    public void testScriptClassIsSharedByRuntimes() {
+        Script script = createScript(new Setting(Script.HANDLE_SCRIPT, "outputLines.addAll(getInputLines())"));
+        Script other = createScript(new Setting(Script.HANDLE_SCRIPT, "outputLines.addAll(getInputLines())"));
+        assertEquals(1, Script.scriptClassesByScript.size());
+        assertSame(script.helper.getClass(), other.helper.getClass());
+        assertNotSame(script.helper, other.helper);
+
+        createScript(new Setting(Script.HANDLE_SCRIPT, "outputLines.add('other')"));
+        assertEquals(2, Script.scriptClassesByScript.size());
+
+        SendMessageCallback<ArrayList<String>> target = new SendMessageCallback<ArrayList<String>>();
+        script.handle(text("a", "b"), target, false);
+        other.handle(text("c"), target, false);
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")), target.getPayloadList());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedScriptClassesAreEvicted() {
+        for (int i = 0; i < Script.MAX_CACHED_SCRIPT_CLASSES; i++) {
+            Script.scriptClassesByScript.put("script" + i, groovy.lang.Script.class);
+        }
+        Script.scriptClassesByScript.get("script0");
+        createScript(new Setting(Script.HANDLE_SCRIPT, "outputLines.add('new')"));
+        assertEquals(Script.MAX_CACHED_SCRIPT_CLASSES, Script.scriptClassesByScript.size());
+        assertTrue(Script.scriptClassesByScript.containsKey("script0"));
+        assertFalse(Script.scriptClassesByScript.containsKey("script1"));
+    }
+
+    @Test
+    public void testCompileStatic() {
+        Script script = createScript(new Setting(Script.COMPILE_STATIC, "true"),
+                new Setting(Script.HANDLE_SCRIPT, "for (String line : getInputLines()) { outputLines.add(line.toUpperCase()) }"));
+        assertEquals("StaticScriptHelper", script.helper.getClass().getSimpleName());
+
+        SendMessageCallback<ArrayList<String>> target = new SendMessageCallback<ArrayList<String>>();
+        script.handle(text("a", "b"), target, false);
+        assertEquals(Arrays.asList(Arrays.asList("A", "B")), target.getPayloadList());
+    }
+
+    @Test(expected = MisconfiguredException.class)
+    public void testCompileStaticRejectsUndeclaredNames() {
+        createScript(new Setting(Script.COMPILE_STATIC, "true"), new Setting(Script.HANDLE_SCRIPT, "outputLines.add(undeclared)"));
+    }
+
+    @Test
+    public void testHandleBatchScript() {
+        Script script = createScript(new Setting(Script.HANDLE_SCRIPT, "outputLines.add('one')"));
+        assertFalse(script.supportsBatchHandle());
+
+        script = createScript(new Setting(Script.HANDLE_BATCH_SCRIPT,
+                "for (Message message : inputMessages) { outputLines.addAll(message.payload) }; outputLines.add(String.valueOf(inputMessages.size()))"));
+        assertTrue(script.supportsBatchHandle());
+
+        SendMessageCallback<ArrayList<String>> target = new SendMessageCallback<ArrayList<String>>();
+        script.handleBatch(Arrays.<Message> asList(text("a"), text("b", "c"), text("d")), target, true);
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c", "d", "3")), target.getPayloadList());
+    }
+
+    protected Script createScript(Setting... settings) {
+        Flow flow = TestUtils.createFlow("TestFlow", null);
+        Component component = TestUtils.createComponent(Script.TYPE, false, null, null, null, null, null, settings);
+        FlowStep step = new FlowStep();
+        step.setComponent(component);
+        step.setName("Script");
+        flow.getFlowSteps().add(step);
+        Script script = new Script();
+        script.create(null, new ComponentContext(null, step, flow, new ExecutionTrackerNoOp(), new HashMap<>(), null, null), 1);
+        script.start();
+        return script;
+    }
+
+    protected static TextMessage text(String... lines) {
+        TextMessage message = new TextMessage("source");
+        message.setPayload(new ArrayList<>(Arrays.asList(lines)));
+        return message;
+    }
+
+}
@@ -24,6 +24,7 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -32,12 +33,13 @@ import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
 import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 
-public class Mapping extends AbstractMapping {
+public class Mapping extends AbstractMapping implements IReusableComponentRuntime {
 
     public static final String TYPE = "Mapping";
 
@@ -53,6 +55,11 @@ public class Mapping extends AbstractMapping {
 
     boolean entityPerRecord;
 
+    /* rows hold only the attributes that can be mapped to them */
+    EntityDataSchema outputSchema;
+
+    Map<String, EntityDataSchema> outputSchemasByEntityName;
+
     @Override
     public void start() {
         validate();
@@ -60,6 +67,19 @@ public class Mapping extends AbstractMapping {
                 false);
         entityPerRecord = getComponent().getBoolean(ENTITY_PER_ROW, false);
         attrToAttrMap = getAttribToAttribMap();
+        if (setUnmappedAttributesToNull) {
+            outputSchema = new EntityDataSchema(getOutputModel());
+        } else {
+            Set<String> mappedAttributeIds = new LinkedHashSet<>();
+            for (Set<String> newAttrIds : attrToAttrMap.values()) {
+                mappedAttributeIds.addAll(newAttrIds);
+            }
+            outputSchema = new EntityDataSchema(mappedAttributeIds);
+        }
+        outputSchemasByEntityName = new HashMap<>();
+        for (ModelEntity entity : getOutputModel().getModelEntities()) {
+            outputSchemasByEntityName.put(entity.getName(), new EntityDataSchema(entity));
+        }
     }
 
     @Override
@@ -67,6 +87,15 @@ public class Mapping extends AbstractMapping {
         return false;
     }
 
+    @Override
+    public boolean supportsReuse() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+    }
+
     protected void validate() {
         String message = "The ";
         if (getComponent().getInputModel() == null) {
@@ -122,7 +151,7 @@ public class Mapping extends AbstractMapping {
                             .getName();
                     EntityData outputRow = outputRows.get(entityName);
                     if (outputRow == null) {
-                        outputRow = new EntityData();
+                        outputRow = new EntityData(outputSchemasByEntityName.get(entityName));
                         outputRow.setChangeType(inputRow.getChangeType());
                         outputRows.put(entityName, outputRow);
                         
@@ -140,7 +169,7 @@ public class Mapping extends AbstractMapping {
                             .getName();                    
                     EntityData outputRow = outputRows.get(entityName);
                     if (outputRow == null) {
-                        outputRow = new EntityData();
+                        outputRow = new EntityData(outputSchemasByEntityName.get(entityName));
                         outputRows.put(entityName, outputRow);   
                     }
                     if (!outputRow.containsKey(attr.getId())) {
@@ -163,7 +192,7 @@ public class Mapping extends AbstractMapping {
     protected ArrayList<EntityData> mapInputToOutput(EntityData inputRow) {
         ArrayList<EntityData> outputPayload = new ArrayList<EntityData>();
 
-        EntityData outputRow = new EntityData();
+        EntityData outputRow = new EntityData(outputSchema);
         outputRow.setChangeType(inputRow.getChangeType());
 
         for (Entry<String, Object> attrEntry : inputRow.entrySet()) {
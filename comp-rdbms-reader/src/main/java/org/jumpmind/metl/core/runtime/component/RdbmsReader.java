@@ -23,11 +23,16 @@ package org.jumpmind.metl.core.runtime.component;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -35,6 +40,13 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jumpmind.db.sql.SqlException;
 import org.jumpmind.metl.core.model.Model;
@@ -44,10 +56,13 @@ import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
 import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.LogUtils;
+import org.jumpmind.metl.core.util.ThreadUtils;
 import org.jumpmind.properties.TypedProperties;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -75,6 +90,24 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
     
     public static final String SQL_STATEMENT = "SQL STATEMENT";    
 
+    public final static String PARTITION_COLUMN = "partition.column";
+
+    public final static String PARTITION_COUNT = "partition.count";
+
+    public final static String PARTITION_LOWER_BOUND = "partition.lower.bound";
+
+    public final static String PARTITION_UPPER_BOUND = "partition.upper.bound";
+
+    public final static String PARTITION_PRESERVE_ORDER = "partition.preserve.order";
+
+    static final String PARTITION_LOWER_PARAM = "metl_partition_lower";
+
+    static final String PARTITION_UPPER_PARAM = "metl_partition_upper";
+
+    static final int PARTITION_QUEUE_CAPACITY = 4;
+
+    static final ArrayList<EntityData> END_OF_PARTITION = new ArrayList<>(0);
+
     List<String> sqls;
 
     String runWhen = PER_UNIT_OF_WORK;
@@ -92,6 +125,19 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
     int rowReadDuringHandle;
     
     String unitOfWork = COMPONENT_LIFETIME;
+
+
+    String partitionColumn;
+
+    int partitionCount = 1;
+
+    String partitionLowerBound;
+
+    String partitionUpperBound;
+
+    boolean partitionPreserveOrder = false;
+
+    ExecutorService partitionExecutor;
     
     @Override
     public void start() {
@@ -104,6 +150,28 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
         runWhen = properties.get(RUN_WHEN, runWhen);
         unitOfWork = properties.get(UNIT_OF_WORK, unitOfWork);
         queryTimeout = properties.getInt(QUERY_TIMEOUT, queryTimeout);
+        partitionColumn = properties.get(PARTITION_COLUMN);
+        partitionCount = properties.getInt(PARTITION_COUNT, partitionCount);
+        partitionLowerBound = properties.get(PARTITION_LOWER_BOUND);
+        partitionUpperBound = properties.get(PARTITION_UPPER_BOUND);
+        partitionPreserveOrder = properties.is(PARTITION_PRESERVE_ORDER, partitionPreserveOrder);
+        if (isPartitioned()) {
+            String prefix = String.format("%s-partition", LogUtils.normalizeName(context.getFlowStep().getName()));
+            partitionExecutor = ThreadUtils.createFixedThreadPool(prefix, partitionCount, partitionCount);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (partitionExecutor != null) {
+            partitionExecutor.shutdownNow();
+            partitionExecutor = null;
+        }
+        super.stop();
+    }
+
+    protected boolean isPartitioned() {
+        return isNotBlank(partitionColumn) && partitionCount > 1;
     }
 
     @Override
@@ -152,8 +220,13 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
                 Map<String, Object> paramMap = prepareParams(sqlToExecute, inputMessage, entity, runWhen);
                 log(LogLevel.INFO, "About to run: %s", sqlToExecute);
                 log(LogLevel.INFO, "Passing params: %s", paramMap);
-                resultSetToEntityDataConverter.setSqlToExecute(sqlToExecute);
-                template.query(sqlToExecute, paramMap, resultSetToEntityDataConverter);
+                if (isPartitioned()) {
+                    sendLeftOverRows(callback, outboundPayload);
+                    readPartitions(template, sqlToExecute, paramMap, inputMessage, callback, unitOfWorkBoundaryReached);
+                } else {
+                    resultSetToEntityDataConverter.setSqlToExecute(sqlToExecute);
+                    template.query(sqlToExecute, paramMap, resultSetToEntityDataConverter);
+                }
                 if (unitOfWork.equalsIgnoreCase(SQL_STATEMENT)) {
                     sendLeftOverRows(callback, outboundPayload);
                     callback.sendControlMessage();
@@ -174,6 +247,323 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
             outboundPayload.clear();
         } 
     }
+
+    /**
+     * Splits the query into ranges of the partition column and runs each range
+     * concurrently on its own pooled connection. Batches are sent from the
+     * component thread as the partitions produce them, in partition order when
+     * the order is to be preserved.
+     */
+    protected void readPartitions(NamedParameterJdbcTemplate template, String sql, Map<String, Object> paramMap,
+            Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+        if (partitionPreserveOrder) {
+            checkPartitionOrder(sql, partitionColumn);
+        }
+        Object[] bounds = getPartitionBounds(template, sql, paramMap);
+        List<Object> boundaries = getPartitionBoundaries(bounds[0], bounds[1], partitionCount);
+        int partitions = boundaries.size() + 1;
+        log(LogLevel.INFO, "Reading %d partition(s) on %s between %s and %s", partitions, partitionColumn, bounds[0], bounds[1]);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        BlockingQueue<ArrayList<EntityData>> sharedQueue = partitionPreserveOrder ? null
+                : new LinkedBlockingQueue<>(PARTITION_QUEUE_CAPACITY * partitions);
+        List<BlockingQueue<ArrayList<EntityData>>> queues = new ArrayList<>(partitions);
+        List<Future<?>> futures = new ArrayList<>(partitions);
+        try {
+            for (int i = 0; i < partitions; i++) {
+                Object lower = i > 0 ? boundaries.get(i - 1) : null;
+                Object upper = i < boundaries.size() ? boundaries.get(i) : null;
+                String partitionSql = partitions > 1 ? addPartitionFilter(sql, getPartitionFilter(lower, upper)) : sql;
+                Map<String, Object> partitionParams = new HashMap<>(paramMap);
+                partitionParams.put(PARTITION_LOWER_PARAM, lower);
+                partitionParams.put(PARTITION_UPPER_PARAM, upper);
+                BlockingQueue<ArrayList<EntityData>> queue = sharedQueue != null ? sharedQueue
+                        : new LinkedBlockingQueue<>(PARTITION_QUEUE_CAPACITY);
+                queues.add(queue);
+                futures.add(partitionExecutor.submit(() -> {
+                    PartitionConverter converter = new PartitionConverter(inputMessage, callback, unitOfWorkBoundaryReached, queue);
+                    converter.setSqlToExecute(partitionSql);
+                    try {
+                        log(LogLevel.DEBUG, "About to run partition: %s", partitionSql);
+                        template.query(partitionSql, partitionParams, converter);
+                        converter.send();
+                    } catch (Throwable ex) {
+                        error.compareAndSet(null, ex);
+                    } finally {
+                        try {
+                            queue.put(END_OF_PARTITION);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }));
+            }
+
+            long ts = System.currentTimeMillis();
+            int finished = 0;
+            while (finished < partitions && error.get() == null) {
+                checkForInterruption();
+                BlockingQueue<ArrayList<EntityData>> queue = sharedQueue != null ? sharedQueue : queues.get(finished);
+                ArrayList<EntityData> batch = queue.poll(1, TimeUnit.SECONDS);
+                if (batch == END_OF_PARTITION) {
+                    finished++;
+                } else if (batch != null) {
+                    rowReadDuringHandle += batch.size();
+                    getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber, batch.size());
+                    callback.sendEntityDataMessage(null, batch);
+                }
+
+                long newTs = System.currentTimeMillis();
+                if (newTs - ts > 10000) {
+                    getExecutionTracker().updateStatistics(threadNumber, context);
+                    ts = newTs;
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new CancellationException();
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        Throwable ex = error.get();
+        if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        } else if (ex != null) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected Object[] getPartitionBounds(NamedParameterJdbcTemplate template, String sql, Map<String, Object> paramMap) {
+        Object[] bounds = new Object[2];
+        if (isBlank(partitionLowerBound) || isBlank(partitionUpperBound)) {
+            String boundsSql = getPartitionBoundsSql(sql, partitionColumn);
+            log(LogLevel.INFO, "Looking up partition bounds: %s", boundsSql);
+            try {
+                bounds = template.query(boundsSql, paramMap, (ResultSetExtractor<Object[]>) rs -> rs.next()
+                        ? new Object[] { JdbcUtils.getResultSetValue(rs, 1), JdbcUtils.getResultSetValue(rs, 2) } : new Object[2]);
+            } catch (DataAccessException ex) {
+                throw new MisconfiguredException(String.format(
+                        "Could not look up the bounds of the partition column %s.  It must be a column of the tables in the from clause, named the way the where clause would refer to it: %s",
+                        partitionColumn, boundsSql), ex);
+            }
+        }
+        if (isNotBlank(partitionLowerBound)) {
+            bounds[0] = parsePartitionBound(resolveFlowParams(partitionLowerBound));
+        }
+        if (isNotBlank(partitionUpperBound)) {
+            bounds[1] = parsePartitionBound(resolveFlowParams(partitionUpperBound));
+        }
+        return bounds;
+    }
+
+    /**
+     * The bounds are looked up on the tables the query reads, the same way
+     * the partition filter is applied, so the partition column does not have
+     * to be selected and is named the way the where clause would name it.
+     */
+    protected static String getPartitionBoundsSql(String sql, String partitionColumn) {
+        int[] clauses = findTopLevelClauses(sql);
+        if (clauses[3] < 0) {
+            throw new MisconfiguredException("Partitioned reads need a query with a from clause: %s", sql);
+        }
+        return String.format("select min(%s), max(%s) %s", partitionColumn, partitionColumn,
+                sql.substring(clauses[3], clauses[1]).trim());
+    }
+
+    /**
+     * Partitions are sent one after the other in ascending order of the
+     * partition column. That is only the order of the query if it has no order
+     * by clause or if it is ordered by the partition column ascending first.
+     */
+    protected static void checkPartitionOrder(String sql, String partitionColumn) {
+        String orderBy = sql.substring(findTopLevelClauses(sql)[2]).trim();
+        if (orderBy.toLowerCase().startsWith("order")) {
+            String firstTerm = orderBy.substring("order".length()).trim().replaceFirst("(?i)^by\\s+", "").split("[,;]")[0];
+            String[] words = firstTerm.trim().split("\\s+");
+            boolean ascending = words.length < 2 || !words[1].equalsIgnoreCase("desc");
+            if (!ascending || !getColumnName(words[0]).equalsIgnoreCase(getColumnName(partitionColumn))) {
+                throw new MisconfiguredException(
+                        "To preserve the order of the partitions the query must be ordered by the partition column %s ascending first: %s",
+                        partitionColumn, sql);
+            }
+        }
+    }
+
+    private static String getColumnName(String column) {
+        return column.substring(column.lastIndexOf('.') + 1).replaceAll("[\"`\\[\\]]", "");
+    }
+
+    /**
+     * The first range also picks up nulls and values below the lower bound and
+     * the last range is open ended, so every row is read exactly once no matter
+     * how accurate the bounds are.
+     */
+    protected String getPartitionFilter(Object lower, Object upper) {
+        if (lower == null) {
+            return String.format("(%s < :%s or %s is null)", partitionColumn, PARTITION_UPPER_PARAM, partitionColumn);
+        } else if (upper == null) {
+            return String.format("%s >= :%s", partitionColumn, PARTITION_LOWER_PARAM);
+        } else {
+            return String.format("%s >= :%s and %s < :%s", partitionColumn, PARTITION_LOWER_PARAM, partitionColumn,
+                    PARTITION_UPPER_PARAM);
+        }
+    }
+
+    protected static Object parsePartitionBound(String text) {
+        text = text.trim();
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+        }
+        try {
+            return Timestamp.valueOf(text);
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            return new Timestamp(java.sql.Date.valueOf(text).getTime());
+        } catch (IllegalArgumentException e) {
+        }
+        throw new MisconfiguredException("The partition bound '%s' is not a number or a date formatted as yyyy-mm-dd [hh:mm:ss]", text);
+    }
+
+    /**
+     * Returns the values that split the range between the lower and upper
+     * bound into the requested number of partitions. Numbers and dates can be
+     * split. For anything else an empty list is returned and the query is read
+     * as one partition.
+     */
+    protected static List<Object> getPartitionBoundaries(Object lower, Object upper, int partitionCount) {
+        List<Object> boundaries = new ArrayList<>();
+        BigDecimal low = toPartitionValue(lower);
+        BigDecimal high = toPartitionValue(upper);
+        if (low != null && high != null && high.compareTo(low) > 0 && partitionCount > 1) {
+            boolean dates = lower instanceof Date;
+            int scale = Math.max(low.scale(), high.scale());
+            scale = dates || scale <= 0 ? 0 : scale + Integer.toString(partitionCount).length();
+            BigDecimal range = high.subtract(low);
+            BigDecimal last = low;
+            for (int i = 1; i < partitionCount; i++) {
+                BigDecimal boundary = low.add(range.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(partitionCount), scale,
+                        RoundingMode.FLOOR));
+                if (boundary.compareTo(last) > 0) {
+                    if (dates) {
+                        boundaries.add(new Timestamp(boundary.longValue()));
+                    } else if (scale == 0 && boundary.toBigInteger().bitLength() < 64) {
+                        boundaries.add(boundary.longValue());
+                    } else {
+                        boundaries.add(boundary.stripTrailingZeros());
+                    }
+                    last = boundary;
+                }
+            }
+        }
+        return boundaries;
+    }
+
+    private static BigDecimal toPartitionValue(Object value) {
+        if (value instanceof Date) {
+            return BigDecimal.valueOf(((Date) value).getTime());
+        } else if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the filter to the top level where clause of the query, or adds a
+     * where clause in front of any group by, having, order by or row limiting
+     * clause.
+     */
+    protected static String addPartitionFilter(String sql, String filter) {
+        int[] clauses = findTopLevelClauses(sql);
+        int whereIndex = clauses[0];
+        int endIndex = clauses[1];
+        StringBuilder partitionSql = new StringBuilder();
+        if (whereIndex >= 0) {
+            int conditionIndex = whereIndex + "where".length();
+            partitionSql.append(sql.substring(0, conditionIndex)).append(" (").append(filter).append(") and (");
+            partitionSql.append(sql.substring(conditionIndex, endIndex).trim()).append("\n)");
+        } else {
+            partitionSql.append(sql.substring(0, endIndex).trim()).append("\nwhere ").append(filter);
+        }
+        if (endIndex < sql.length()) {
+            partitionSql.append(" ").append(sql.substring(endIndex));
+        }
+        return partitionSql.toString();
+    }
+
+    /**
+     * Returns the index of the top level where keyword (-1 if there is none),
+     * the index of the first clause that follows the where clause and the index
+     * of the top level order by (or the end of the statement if there is none)
+     * and the index of the top level from keyword (-1 if there is none).
+     */
+    protected static int[] findTopLevelClauses(String sql) {
+        String lower = sql.toLowerCase();
+        int length = lower.length();
+        int whereIndex = -1;
+        int endIndex = length;
+        int orderByIndex = -1;
+        int fromIndex = -1;
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            char c = lower.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int close = lower.indexOf(c, i + 1);
+                i = close < 0 ? length : close;
+            } else if (lower.startsWith("/*", i)) {
+                int close = lower.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 1;
+            } else if (lower.startsWith("--", i)) {
+                int close = lower.indexOf('\n', i);
+                i = close < 0 ? length : close;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ';') {
+                endIndex = Math.min(endIndex, i);
+                orderByIndex = orderByIndex < 0 ? i : orderByIndex;
+                break;
+            } else if (depth == 0 && Character.isLetter(c) && (i == 0 || !isIdentifierPart(lower.charAt(i - 1)))) {
+                int wordEnd = i;
+                while (wordEnd < length && isIdentifierPart(lower.charAt(wordEnd))) {
+                    wordEnd++;
+                }
+                String word = lower.substring(i, wordEnd);
+                if (word.equals("from") && fromIndex < 0) {
+                    fromIndex = i;
+                } else if (fromIndex >= 0) {
+                    if (word.equals("union") || word.equals("intersect") || word.equals("except") || word.equals("minus")) {
+                        throw new MisconfiguredException("Partitioned reads do not support compound queries: %s", sql);
+                    } else if (word.equals("where") && whereIndex < 0 && endIndex == length) {
+                        whereIndex = i;
+                    } else if (word.equals("group") || word.equals("having") || word.equals("order") || word.equals("limit")
+                            || word.equals("offset") || word.equals("fetch") || word.equals("for")) {
+                        endIndex = Math.min(endIndex, i);
+                        if (word.equals("order") && orderByIndex < 0) {
+                            orderByIndex = i;
+                        }
+                    }
+                }
+                i = wordEnd - 1;
+            }
+        }
+        return new int[] { whereIndex, endIndex, orderByIndex < 0 ? length : orderByIndex, fromIndex };
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+    }
     
     private ArrayList<String> getAttributeIds(String sql, ResultSetMetaData meta, Map<Integer, String> sqlEntityHints) throws SQLException {
         ArrayList<String> attributeIds = new ArrayList<String>();
@@ -473,6 +863,8 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
 
         ArrayList<EntityData> payload;
 
+        long ts = System.currentTimeMillis();
+
         public ResultSetToEntityDataConverter(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkLastMessage,
                 ArrayList<EntityData> payload) {
             this.inputMessage = inputMessage;
@@ -487,16 +879,24 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
             ResultSetMetaData meta = rs.getMetaData();
             Map<Integer, String> columnHints = getSqlColumnEntityHints(sqlToExecute);
             ArrayList<String> attributeIds = getAttributeIds(sqlToExecute, meta, columnHints);
-            long ts = System.currentTimeMillis();
+            /* rows hold only the attributes the query selects */
+            Set<String> selectedAttributeIds = new LinkedHashSet<>();
+            for (String attributeId : attributeIds) {
+                if (isNotBlank(attributeId)) {
+                    selectedAttributeIds.add(attributeId);
+                }
+            }
+            EntityDataSchema outputSchema = new EntityDataSchema(selectedAttributeIds);
+            int[] attributeIndexes = new int[attributeIds.size()];
+            for (int i = 0; i < attributeIndexes.length; i++) {
+                attributeIndexes[i] = outputSchema.indexOf(attributeIds.get(i));
+            }
             while (rs.next()) {
                 if (outputRecCount++ % rowsPerMessage == 0 && payload != null && !payload.isEmpty()) {
-                    callback.sendEntityDataMessage(null, payload);
-                    payload.clear();
+                    send();
                 }
 
-                getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-
-                EntityData rowData = new EntityData();
+                EntityData rowData = new EntityData(outputSchema);
                 rowData.setChangeType(entityChangeType);
                 for (int i = 1; i <= meta.getColumnCount(); i++) {
                     String attributeId = attributeIds.get(i - 1);
@@ -505,29 +905,74 @@ public class RdbmsReader extends AbstractRdbmsComponentRuntime {
                         if (trimColumns && value instanceof String) {
                             value = value.toString().trim();
                         }
-                        rowData.put(attributeId, value);
+                        int attributeIndex = attributeIndexes[i - 1];
+                        if (attributeIndex >= 0) {
+                            rowData.putAt(attributeIndex, value);
+                        } else {
+                            rowData.put(attributeId, value);
+                        }
                     }
                 }
-                rowReadDuringHandle++;
                 payload.add(rowData);
+                rowRead();
                 if (context.getDeployment() != null && context.getDeployment().asLogLevel() == LogLevel.DEBUG) {
                     logEntityAttributes(rowData);
                 }
-
-                long newTs = System.currentTimeMillis();
-                if (newTs - ts > 10000) {
-                    getExecutionTracker().updateStatistics(threadNumber, context);
-                    ts = newTs;
-                }
             }
             return payload;
         }
 
+        protected void send() {
+            callback.sendEntityDataMessage(null, payload);
+            payload.clear();
+        }
+
+        protected void rowRead() {
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+            rowReadDuringHandle++;
+            long newTs = System.currentTimeMillis();
+            if (newTs - ts > 10000) {
+                getExecutionTracker().updateStatistics(threadNumber, context);
+                ts = newTs;
+            }
+        }
+
         public void setSqlToExecute(String sqlToExecute) {
             this.sqlToExecute = sqlToExecute;
         }
     }
 
+    /**
+     * Runs on a partition thread and hands its batches to the component thread,
+     * which does the sending and the row accounting.
+     */
+    class PartitionConverter extends ResultSetToEntityDataConverter {
+
+        BlockingQueue<ArrayList<EntityData>> queue;
+
+        public PartitionConverter(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkLastMessage,
+                BlockingQueue<ArrayList<EntityData>> queue) {
+            super(inputMessage, callback, unitOfWorkLastMessage, new ArrayList<EntityData>());
+            this.queue = queue;
+        }
+
+        @Override
+        protected void send() {
+            if (!payload.isEmpty()) {
+                try {
+                    queue.put(new ArrayList<EntityData>(payload));
+                } catch (InterruptedException e) {
+                    throw new CancellationException();
+                }
+                payload.clear();
+            }
+        }
+
+        @Override
+        protected void rowRead() {
+        }
+    }
+
     public void setRunWhen(String runWhen) {
         this.runWhen = runWhen;
     }
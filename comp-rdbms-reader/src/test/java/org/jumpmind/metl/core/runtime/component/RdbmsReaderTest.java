@@ -22,6 +22,9 @@ package org.jumpmind.metl.core.runtime.component;
 
 import static org.junit.Assert.assertEquals;
 
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
@@ -80,6 +83,82 @@ public class RdbmsReaderTest {
         }
         assertEquals(errorFound,false);
     }
+
+    @Test
+    public void testAddPartitionFilter() {
+        assertEquals("select a, b from test\nwhere a >= 1",
+                RdbmsReader.addPartitionFilter("select a, b from test", "a >= 1"));
+        assertEquals("select a, b from test where (a >= 1) and (b = 'x' or b in (select b from other where c = 1)\n) order by a",
+                RdbmsReader.addPartitionFilter("select a, b from test where b = 'x' or b in (select b from other where c = 1) order by a", "a >= 1"));
+        assertEquals("select a, count(*) from test\nwhere a >= 1 group by a",
+                RdbmsReader.addPartitionFilter("select a, count(*) from test group by a", "a >= 1"));
+        assertEquals("select t.order /* test.order */ from test t\nwhere a >= 1 ;",
+                RdbmsReader.addPartitionFilter("select t.order /* test.order */ from test t;", "a >= 1"));
+
+        boolean errorFound = false;
+        try {
+            RdbmsReader.addPartitionFilter("select a from test union select a from other", "a >= 1");
+        } catch (MisconfiguredException e) {
+            errorFound = true;
+        }
+        assertEquals(errorFound, true);
+    }
+
+    @Test
+    public void testGetPartitionBoundsSql() {
+        assertEquals("select min(o.id), max(o.id) from orders o join lines l on l.order_id = o.id where l.qty > :qty",
+                RdbmsReader.getPartitionBoundsSql(
+                        "select o.id as order_id, l.qty from orders o join lines l on l.order_id = o.id where l.qty > :qty order by o.id",
+                        "o.id"));
+        assertEquals("select min(a), max(a) from test",
+                RdbmsReader.getPartitionBoundsSql("select a, count(*) from test group by a;", "a"));
+
+        boolean errorFound = false;
+        try {
+            RdbmsReader.getPartitionBoundsSql("values (1)", "a");
+        } catch (MisconfiguredException e) {
+            errorFound = true;
+        }
+        assertEquals(errorFound, true);
+    }
+
+    @Test
+    public void testCheckPartitionOrder() {
+        RdbmsReader.checkPartitionOrder("select a, b from test", "a");
+        RdbmsReader.checkPartitionOrder("select t.a, t.b from test t order by t.a, t.b;", "t.a");
+        RdbmsReader.checkPartitionOrder("select a, b from test order by A asc limit 10", "a");
+
+        boolean errorFound = false;
+        try {
+            RdbmsReader.checkPartitionOrder("select a, b from test order by b, a", "a");
+        } catch (MisconfiguredException e) {
+            errorFound = true;
+        }
+        assertEquals(errorFound, true);
+
+        errorFound = false;
+        try {
+            RdbmsReader.checkPartitionOrder("select a, b from test order by a desc", "a");
+        } catch (MisconfiguredException e) {
+            errorFound = true;
+        }
+        assertEquals(errorFound, true);
+    }
+
+    @Test
+    public void testGetPartitionBoundaries() {
+        assertEquals(Arrays.asList(25l, 50l, 75l), RdbmsReader.getPartitionBoundaries(0, 100l, 4));
+        assertEquals(Arrays.asList(1l), RdbmsReader.getPartitionBoundaries(0, 2, 4));
+        assertEquals(0, RdbmsReader.getPartitionBoundaries(5, 5, 4).size());
+        assertEquals(0, RdbmsReader.getPartitionBoundaries("a", "z", 4).size());
+
+        List<Object> boundaries = RdbmsReader.getPartitionBoundaries(Timestamp.valueOf("2020-01-01 00:00:00"),
+                Timestamp.valueOf("2020-01-03 00:00:00"), 2);
+        assertEquals(Arrays.asList(Timestamp.valueOf("2020-01-02 00:00:00")), boundaries);
+
+        assertEquals(Arrays.asList(RdbmsReader.parsePartitionBound("0.5")),
+                RdbmsReader.getPartitionBoundaries(RdbmsReader.parsePartitionBound("0.0"), RdbmsReader.parsePartitionBound("1.0"), 2));
+    }
     
 
 }
@@ -23,6 +23,12 @@ package org.jumpmind.metl.core.runtime.component;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -59,8 +65,11 @@ import org.jumpmind.metl.core.runtime.resource.IDatasourceRuntime;
 import org.jumpmind.metl.core.util.LogUtils;
 import org.jumpmind.properties.TypedProperties;
 import org.jumpmind.util.FormatUtils;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.support.JdbcUtils;
 
-public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
+public class RdbmsWriter extends AbstractRdbmsComponentRuntime implements IBatchComponentRuntime {
 
     public static final String TYPE = "RDBMS Writer";
     public final static String CATALOG = "catalog";
@@ -73,6 +82,7 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     public final static String ATTRIBUTE_INSERT_ENABLED = "insert.enabled";
     public final static String ATTRIBUTE_UPDATE_ENABLED = "update.enabled";
     public final static String BATCH_MODE = "batch.mode";
+    public final static String BATCH_SIZE = "batch.size";
     public final static String CONTINUE_ON_ERROR = "continue.on.error";
     public final static String TABLE_SUFFIX = "table.suffix";
     public final static String TABLE_PREFIX = "table.prefix";
@@ -94,6 +104,7 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     int inboundEntityDataCount = 0;
     int totalStatementCount = 0;
     boolean batchMode = false;
+    int batchSize = 1000;
     IDatabasePlatform databasePlatform;
     List<TargetTableDefintion> targetTables;
     Throwable error;
@@ -101,6 +112,12 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
     Map<TargetTableDefintion, WriteStats> statsMap = new HashMap<>();
     long lastStatsLogTime = System.currentTimeMillis();
     long sqlDuration = 0;
+    Connection batchConnection;
+    boolean batchAutoCommit;
+    boolean supportsSavepoints;
+    TargetTableDefintion pendingTableDefinition;
+    TargetTable pendingTable;
+    List<EntityData> pendingRows = new ArrayList<EntityData>();
 
     @Override
     public void start() {
@@ -117,6 +134,7 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
 
         TypedProperties properties = getTypedProperties();
         batchMode = properties.is(BATCH_MODE, batchMode);
+        batchSize = properties.getInt(BATCH_SIZE, batchSize);
         useCachedMetadata = properties.is(USE_CACHED_METADATA, useCachedMetadata);
         replaceRows = properties.is(REPLACE);
         continueOnError = properties.is(CONTINUE_ON_ERROR, continueOnError);
@@ -126,9 +144,9 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         fitToColumn = properties.is(FIT_TO_COLUMN);
         tableSuffix = properties.get(TABLE_SUFFIX, "");
         autoCreateTable = properties.is(AUTO_CREATE_TABLE, false);
-        
-        if (batchMode && insertFallback) {
-            throw new MisconfiguredException("Insert fallback is not supported in batch mode");
+
+        if (batchSize < 1) {
+            throw new MisconfiguredException("The batch size must be greater than zero");
         }
 
         if (tableSuffix == null) {
@@ -156,6 +174,11 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         return false;
     }
 
+    @Override
+    public boolean supportsBatchHandle() {
+        return true;
+    }
+
     @Override
     public void handle(final Message inputMessage, final ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         if (inputMessage instanceof EntityDataMessage) {
@@ -163,44 +186,13 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
             lastPreparedDml = null;
 
             if (error == null) {
-                if (databasePlatform == null) {
-                    if (getResourceRuntime() == null) {
-                        throw new RuntimeException("The data source resource has not been configured.  Please configure it.");
-                    }
-                    DataSource dataSource = (DataSource) getResourceReference();
-                    databasePlatform = JdbcDatabasePlatformFactory.createNewPlatformInstance(dataSource, new SqlTemplateSettings(),
-                            quoteIdentifiers, false);
-                }
-                if (targetTables == null) {
-                    Model model = getInputModel();
-                    targetTables = new ArrayList<TargetTableDefintion>();
-                    for (ModelEntity entity : model.getModelEntities()) {
-                        String tableName = tablePrefix + entity.getName() + tableSuffix;
-                        IDatasourceRuntime resource = (IDatasourceRuntime)getResourceRuntime();
-                        Table table = resource != null ? resource.getTableFromCache(catalogName, schemaName, tableName) : null;
-                        if (table == null || !useCachedMetadata) {
-                            table = databasePlatform.getTableFromCache(catalogName, schemaName, tableName, true);
-                            if (resource != null) {
-                                resource.putTableInCache(catalogName, schemaName, tableName, table);
-                            }
-                        }
-                        if (table == null && autoCreateTable) {
-                            table = createTableFromEntity(entity, tableName);
-                            log(LogLevel.INFO, "Creating table: " + table.getName() + "  on db: " + databasePlatform.getDataSource().toString());
-                            databasePlatform.createTables(false, false, table);
-                        }
-                        if (table != null) {
-                            targetTables.add(new TargetTableDefintion(entity, new TargetTable(DmlType.UPDATE, entity, table.copy()),
-                                    new TargetTable(DmlType.INSERT, entity, table.copy()),
-                                    new TargetTable(DmlType.DELETE, entity, table.copy())));
-                        }
-                    }
-                }
+                initTargetTables();
 
                 ArrayList<EntityData> inputRows = ((EntityDataMessage) inputMessage).getPayload();
-                if (inputRows != null && inputRows.size() > 0) {
+                if (batchMode) {
+                    writeBatches(Collections.singletonList(inputMessage), unitOfWorkBoundaryReached);
+                } else if (inputRows != null && inputRows.size() > 0) {
                     ISqlTransaction transaction = databasePlatform.getSqlTemplate().startSqlTransaction();
-                    transaction.setInBatchMode(batchMode);
                     try {
                         write(transaction, (EntityDataMessage)inputMessage, callback, unitOfWorkBoundaryReached);
                         transaction.commit();
@@ -221,16 +213,164 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
                 }
             }
 
-            if (targetTables != null) {
-                for (TargetTableDefintion targetTable : targetTables) {
-                    targetTable.getDeleteTable().getRowValues().clear();
-                    targetTable.getInsertTable().getRowValues().clear();
-                    targetTable.getUpdateTable().getRowValues().clear();
+            clearTargetTables();
+        } else if (batchMode && unitOfWorkBoundaryReached && error == null) {
+            results.clear();
+            writeBatches(Collections.<Message> emptyList(), true);
+            if (callback != null && results.size() > 0) {
+                callback.sendTextMessage(null, convertResultsToTextPayload(results));
+            }
+            clearTargetTables();
+        }
+    }
+
+    /**
+     * The entity messages of a batch are written one after another and one
+     * set of results is sent for all of them.  Each message is still sorted
+     * on its own so that rows are applied in the order they were sent.  In
+     * batch mode the rows of all of the messages are added to the open JDBC
+     * batches, which are committed once if the batch ends the unit of work.
+     * Otherwise the messages are written in a single transaction.
+     */
+    @Override
+    public void handleBatch(List<Message> inputMessages, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+        if (error != null) {
+            return;
+        }
+
+        results.clear();
+        lastPreparedDml = null;
+        if (batchMode) {
+            try {
+                writeBatches(inputMessages, unitOfWorkBoundaryReached);
+            } finally {
+                clearTargetTables();
+            }
+            if (callback != null && results.size() > 0) {
+                callback.sendTextMessage(null, convertResultsToTextPayload(results));
+            }
+            return;
+        }
+
+        ISqlTransaction transaction = null;
+        try {
+            for (Message inputMessage : inputMessages) {
+                if (inputMessage instanceof EntityDataMessage) {
+                    ArrayList<EntityData> inputRows = ((EntityDataMessage) inputMessage).getPayload();
+                    if (inputRows != null && inputRows.size() > 0) {
+                        if (transaction == null) {
+                            initTargetTables();
+                            transaction = databasePlatform.getSqlTemplate().startSqlTransaction();
+                        }
+                        write(transaction, (EntityDataMessage) inputMessage, callback, unitOfWorkBoundaryReached);
+                        clearTargetTables();
+                    }
+                }
+            }
+            if (transaction != null) {
+                transaction.commit();
+            }
+        } catch (Throwable ex) {
+            error = ex;
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            if (ex instanceof RuntimeException) {
+                throw (RuntimeException) ex;
+            } else {
+                throw new RuntimeException(ex);
+            }
+        } finally {
+            if (transaction != null) {
+                transaction.close();
+            }
+            clearTargetTables();
+        }
+        if (callback != null && results.size() > 0) {
+            callback.sendTextMessage(null, convertResultsToTextPayload(results));
+        }
+    }
+
+    protected void initTargetTables() {
+        if (databasePlatform == null) {
+            if (getResourceRuntime() == null) {
+                throw new RuntimeException("The data source resource has not been configured.  Please configure it.");
+            }
+            DataSource dataSource = (DataSource) getResourceReference();
+            databasePlatform = JdbcDatabasePlatformFactory.createNewPlatformInstance(dataSource, new SqlTemplateSettings(),
+                    quoteIdentifiers, false);
+        }
+        if (targetTables == null) {
+            Model model = getInputModel();
+            targetTables = new ArrayList<TargetTableDefintion>();
+            for (ModelEntity entity : model.getModelEntities()) {
+                String tableName = tablePrefix + entity.getName() + tableSuffix;
+                IDatasourceRuntime resource = (IDatasourceRuntime)getResourceRuntime();
+                Table table = resource != null ? resource.getTableFromCache(catalogName, schemaName, tableName) : null;
+                if (table == null || !useCachedMetadata) {
+                    table = databasePlatform.getTableFromCache(catalogName, schemaName, tableName, true);
+                    if (resource != null) {
+                        resource.putTableInCache(catalogName, schemaName, tableName, table);
+                    }
+                }
+                if (table == null && autoCreateTable) {
+                    table = createTableFromEntity(entity, tableName);
+                    log(LogLevel.INFO, "Creating table: " + table.getName() + "  on db: " + databasePlatform.getDataSource().toString());
+                    databasePlatform.createTables(false, false, table);
+                }
+                if (table != null) {
+                    targetTables.add(new TargetTableDefintion(entity, new TargetTable(DmlType.UPDATE, entity, table.copy()),
+                            new TargetTable(DmlType.INSERT, entity, table.copy()),
+                            new TargetTable(DmlType.DELETE, entity, table.copy())));
                 }
             }
-        } 
+        }
+    }
+
+    protected void clearTargetTables() {
+        clearRowValues();
+        if (targetTables != null) {
+            for (TargetTableDefintion targetTable : targetTables) {
+                targetTable.getDeleteTable().setBatchResult(null);
+                targetTable.getInsertTable().setBatchResult(null);
+                targetTable.getUpdateTable().setBatchResult(null);
+            }
+        }
     }
     
+    protected void clearRowValues() {
+        if (targetTables != null) {
+            for (TargetTableDefintion targetTable : targetTables) {
+                targetTable.getDeleteTable().getRowValues().clear();
+                targetTable.getInsertTable().getRowValues().clear();
+                targetTable.getUpdateTable().getRowValues().clear();
+            }
+        }
+    }
+
+    /**
+     * Batched rows that were not committed at the end of a unit of work are
+     * committed when the step stops, unless this writer failed.
+     */
+    @Override
+    public void stop() {
+        if (batchConnection != null) {
+            try {
+                if (error == null) {
+                    commitBatches();
+                } else {
+                    batchConnection.rollback();
+                }
+            } catch (SQLException ex) {
+                error = ex;
+                throw databasePlatform.getSqlTemplate().translate(ex);
+            } finally {
+                closeBatchConnection();
+            }
+        }
+        super.stop();
+    }
+
     @Override
     public void flowCompleted(boolean cancelled) {
         writeStats(true);
@@ -266,27 +406,21 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         return table;
     }
 
-    private Object[] getValues(boolean isUpdate, TargetTable modelTable, EntityData inputRow) {
-        ArrayList<Object> data = new ArrayList<Object>();
-        for (TargetColumn modelColumn : modelTable.getTargetColumns()) {
-            if ((isUpdate && modelColumn.isUpdateEnabled()) || (!isUpdate && modelColumn.isInsertEnabled())) {
-                Object value = inputRow.get(modelColumn.getModelAttribute().getId());
-                if (fitToColumn && value != null && value instanceof String) {
-                    value = fitToColumn(modelTable.getTable(), modelColumn.getModelAttribute().getName(), (String) value);
-                }
-                data.add(value);
-            }
-        }
+    private Object[] getValues(TargetTable modelTable, EntityData inputRow) {
+        return getValues(modelTable, inputRow, new Object[modelTable.getParameterColumns().length]);
+    }
 
-        ArrayList<Object> keyValues = new ArrayList<Object>();
-        for (TargetColumn modelColumn : modelTable.getKeyTargetColumns()) {
-            if ((isUpdate && modelColumn.isUpdateEnabled()) || (!isUpdate && modelColumn.isInsertEnabled())) {
-                keyValues.add(inputRow.get(modelColumn.getModelAttribute().getId()));
+    private Object[] getValues(TargetTable modelTable, EntityData inputRow, Object[] values) {
+        TargetColumn[] parameterColumns = modelTable.getParameterColumns();
+        boolean[] keyParameters = modelTable.getKeyParameters();
+        for (int i = 0; i < parameterColumns.length; i++) {
+            Object value = inputRow.get(parameterColumns[i].getModelAttribute().getId());
+            if (fitToColumn && !keyParameters[i] && value instanceof String) {
+                value = fitToColumn(modelTable.getTable(), parameterColumns[i].getModelAttribute().getName(), (String) value);
             }
+            values[i] = value;
         }
-
-        return modelTable.getStatement().getValueArray(data.toArray(new Object[data.size()]),
-                keyValues.toArray(new Object[keyValues.size()]));
+        return values;
     }
 
     private void sortAndStoreRowsByTableAndOperation(List<EntityData> inputRows) {
@@ -350,7 +484,7 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
 
     private void executeSqlDeletes(TargetTable targetTable, ISqlTransaction transaction, WriteStats stats) {
         for (EntityData inputRow : targetTable.getRowValues()) {
-            Object[] rowData = getValues(false, targetTable, inputRow);
+            Object[] rowData = getValues(targetTable, inputRow);
             int count = executeSql(targetTable, transaction, rowData);
             stats.deleteCount += count;
         }
@@ -362,22 +496,20 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
 
         for (EntityData inputRow : targetUpdateTable.getRowValues()) {
-            Object[] rowData = getValues(false, targetUpdateTable, inputRow);
+            Object[] rowData = getValues(targetUpdateTable, inputRow);
             int count = executeSql(targetUpdateTable, transaction, rowData);
             stats.updateCount += count;
-            if (!batchMode) {
-                if (insertFallback && count == 0) {
-                    log.debug("Falling back to insert");
-                    rowData = getValues(false, targetInsertTable, inputRow);
-                    count = executeSql(targetInsertTable, transaction, rowData);
-                    stats.fallbackInsertCount += count;
-                } else if (count == 0 && !continueOnError) {
-                    throw new SqlException(String.format("Failed to update row: \n%s\nWith values: \n%s\nWith types: \n%s\n",
-                            targetUpdateTable.getStatement().getSql(), Arrays.toString(rowData),
-                            Arrays.toString(targetUpdateTable.getStatement().getTypes())));
-                } else if (count == 0) {
-                    stats.ignoredCount++;
-                }
+            if (insertFallback && count == 0) {
+                log.debug("Falling back to insert");
+                rowData = getValues(targetInsertTable, inputRow);
+                count = executeSql(targetInsertTable, transaction, rowData);
+                stats.fallbackInsertCount += count;
+            } else if (count == 0 && !continueOnError) {
+                throw new SqlException(String.format("Failed to update row: \n%s\nWith values: \n%s\nWith types: \n%s\n",
+                        targetUpdateTable.getStatement().getSql(), Arrays.toString(rowData),
+                        Arrays.toString(targetUpdateTable.getStatement().getTypes())));
+            } else if (count == 0) {
+                stats.ignoredCount++;
             }
         }
     }
@@ -388,13 +520,13 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
 
         for (EntityData inputRow : targetInsertTable.getRowValues()) {
             try {
-                Object[] rowData = getValues(false, targetInsertTable, inputRow);
+                Object[] rowData = getValues(targetInsertTable, inputRow);
                 int count = executeSql(targetInsertTable, transaction, rowData);
                 stats.insertCount += count;
             } catch (UniqueKeyException e) {
                 if (replaceRows) {
                     log.debug("Falling back to update");
-                    Object[] rowData = getValues(false, targetUpdateTable, inputRow);
+                    Object[] rowData = getValues(targetUpdateTable, inputRow);
                     int count = execute(transaction, targetUpdateTable.getStatement(), new Object(), rowData);
                     stats.fallbackUpdateCount += count;
                 } else if (!continueOnError) {
@@ -416,6 +548,321 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         return count;
     }
 
+    /**
+     * Adds the rows of the messages to JDBC batches on a connection that stays
+     * open across messages. A batch is executed when it holds batch.size rows
+     * or when the next rows need a different statement, and the work is
+     * committed when the unit of work ends. Rows that fail in a batch are
+     * rerun on their own so that the failure is handled the same way as it is
+     * outside of batch mode.
+     */
+    private void writeBatches(List<Message> inputMessages, boolean unitOfWorkBoundaryReached) {
+        try {
+            for (Message inputMessage : inputMessages) {
+                List<EntityData> inputRows = inputMessage instanceof EntityDataMessage ? ((EntityDataMessage) inputMessage).getPayload()
+                        : null;
+                if (inputRows != null && inputRows.size() > 0) {
+                    initTargetTables();
+                    openBatchConnection();
+                    sortAndStoreRowsByTableAndOperation(inputRows);
+                    for (TargetTableDefintion targetTableDefinition : targetTables) {
+                        addToBatch(targetTableDefinition, targetTableDefinition.getDeleteTable());
+                        addToBatch(targetTableDefinition, targetTableDefinition.getUpdateTable());
+                        addToBatch(targetTableDefinition, targetTableDefinition.getInsertTable());
+                    }
+                    clearRowValues();
+                }
+            }
+            if (unitOfWorkBoundaryReached) {
+                commitBatches();
+            }
+        } catch (Throwable ex) {
+            error = ex;
+            rollbackBatches();
+            if (ex instanceof SQLException) {
+                throw databasePlatform.getSqlTemplate().translate((SQLException) ex);
+            } else if (ex instanceof RuntimeException) {
+                throw (RuntimeException) ex;
+            } else {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    private void openBatchConnection() throws SQLException {
+        if (batchConnection == null) {
+            DataSource dataSource = databasePlatform.getDataSource();
+            Connection connection = dataSource.getConnection();
+            try {
+                batchAutoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                supportsSavepoints = connection.getMetaData().supportsSavepoints();
+            } catch (SQLException ex) {
+                JdbcUtils.closeConnection(connection);
+                throw ex;
+            }
+            batchConnection = connection;
+        }
+    }
+
+    private void addToBatch(TargetTableDefintion targetTableDefinition, TargetTable targetTable) throws SQLException {
+        List<EntityData> rows = targetTable.getRowValues();
+        if (rows.size() > 0) {
+            if (pendingTable != targetTable) {
+                executePendingBatch();
+                pendingTable = targetTable;
+                pendingTableDefinition = targetTableDefinition;
+            }
+            PreparedStatement ps = targetTable.prepareStatement(batchConnection);
+            for (EntityData row : rows) {
+                targetTable.bind(ps, row);
+                ps.addBatch();
+                pendingRows.add(row);
+                if (pendingRows.size() >= batchSize) {
+                    executePendingBatch();
+                }
+            }
+        }
+    }
+
+    private void commitBatches() throws SQLException {
+        if (batchConnection != null) {
+            executePendingBatch();
+            batchConnection.commit();
+            writeStats(false);
+        }
+    }
+
+    private void rollbackBatches() {
+        if (batchConnection != null) {
+            try {
+                batchConnection.rollback();
+            } catch (SQLException ex) {
+                log.warn("Failed to roll back the batch", ex);
+            } finally {
+                closeBatchConnection();
+            }
+        }
+    }
+
+    private void closeBatchConnection() {
+        if (batchConnection != null) {
+            if (targetTables != null) {
+                for (TargetTableDefintion targetTableDefinition : targetTables) {
+                    targetTableDefinition.getDeleteTable().closeStatement();
+                    targetTableDefinition.getUpdateTable().closeStatement();
+                    targetTableDefinition.getInsertTable().closeStatement();
+                }
+            }
+            try {
+                batchConnection.setAutoCommit(batchAutoCommit);
+            } catch (SQLException ex) {
+                log.debug("Failed to restore auto commit", ex);
+            }
+            JdbcUtils.closeConnection(batchConnection);
+            batchConnection = null;
+        }
+        pendingRows.clear();
+        pendingTable = null;
+        pendingTableDefinition = null;
+    }
+
+    private void executePendingBatch() throws SQLException {
+        if (pendingRows.size() > 0) {
+            checkForInterruption();
+            List<EntityData> rows = new ArrayList<EntityData>(pendingRows);
+            pendingRows.clear();
+            int[] counts = executeBatch(pendingTable, rows);
+            WriteStats stats = getStats(pendingTableDefinition);
+            if (pendingTable == pendingTableDefinition.getDeleteTable()) {
+                applyDeleteCounts(pendingTable, rows, counts, stats);
+            } else if (pendingTable == pendingTableDefinition.getUpdateTable()) {
+                applyUpdateCounts(pendingTableDefinition, rows, counts, stats);
+            } else {
+                applyInsertCounts(pendingTableDefinition, rows, counts, stats);
+            }
+        }
+    }
+
+    /*
+     * Statement.SUCCESS_NO_INFO means the row was applied but the number of
+     * rows it affected is unknown.  Deletes and inserts count it as one row.
+     */
+    private void applyDeleteCounts(TargetTable targetTable, List<EntityData> rows, int[] counts, WriteStats stats) throws SQLException {
+        for (int i = 0; i < counts.length; i++) {
+            int count = counts[i] == Statement.EXECUTE_FAILED ? executeRow(targetTable, rows.get(i)) : knownCount(counts[i]);
+            stats.deleteCount += count;
+            addBatchResult(targetTable, count);
+        }
+    }
+
+    /*
+     * The update count decides whether a row falls back to an insert or
+     * fails, so updates with an unknown count are run again on their own to
+     * find out.  Fallback inserts are not batched.
+     */
+    private void applyUpdateCounts(TargetTableDefintion targetTableDefinition, List<EntityData> rows, int[] counts, WriteStats stats)
+            throws SQLException {
+        TargetTable targetUpdateTable = targetTableDefinition.getUpdateTable();
+        TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
+        boolean countRequired = insertFallback || !continueOnError;
+        for (int i = 0; i < counts.length; i++) {
+            EntityData inputRow = rows.get(i);
+            int count;
+            if (counts[i] == Statement.EXECUTE_FAILED || (counts[i] == Statement.SUCCESS_NO_INFO && countRequired)) {
+                count = executeRow(targetUpdateTable, inputRow);
+            } else {
+                count = knownCount(counts[i]);
+            }
+            stats.updateCount += count;
+            addBatchResult(targetUpdateTable, count);
+            if (insertFallback && count == 0) {
+                log.debug("Falling back to insert");
+                count = executeRow(targetInsertTable, inputRow);
+                stats.fallbackInsertCount += count;
+                addBatchResult(targetInsertTable, count);
+            } else if (count == 0 && !continueOnError) {
+                throw new SqlException(String.format("Failed to update row: \n%s\nWith values: \n%s\nWith types: \n%s\n",
+                        targetUpdateTable.getStatement().getSql(), Arrays.toString(getValues(targetUpdateTable, inputRow)),
+                        Arrays.toString(targetUpdateTable.getStatement().getTypes())));
+            } else if (count == 0) {
+                stats.ignoredCount++;
+            }
+        }
+    }
+
+    private void applyInsertCounts(TargetTableDefintion targetTableDefinition, List<EntityData> rows, int[] counts, WriteStats stats)
+            throws SQLException {
+        TargetTable targetUpdateTable = targetTableDefinition.getUpdateTable();
+        TargetTable targetInsertTable = targetTableDefinition.getInsertTable();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != Statement.EXECUTE_FAILED) {
+                int count = knownCount(counts[i]);
+                stats.insertCount += count;
+                addBatchResult(targetInsertTable, count);
+            } else {
+                EntityData inputRow = rows.get(i);
+                try {
+                    int count = executeRow(targetInsertTable, inputRow);
+                    stats.insertCount += count;
+                    addBatchResult(targetInsertTable, count);
+                } catch (UniqueKeyException e) {
+                    if (replaceRows) {
+                        log.debug("Falling back to update");
+                        int count = executeRow(targetUpdateTable, inputRow);
+                        stats.fallbackUpdateCount += count;
+                        addBatchResult(targetUpdateTable, count);
+                    } else if (!continueOnError) {
+                        throw e;
+                    } else {
+                        stats.ignoredCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int knownCount(int count) {
+        return count == Statement.SUCCESS_NO_INFO ? 1 : count;
+    }
+
+    /**
+     * Executes the rows that were added to the statement's batch and returns
+     * an update count for each of them. Rows that have to be rerun on their
+     * own are reported as {@link Statement#EXECUTE_FAILED}. When a batch fails
+     * it is rolled back to a savepoint taken before it ran, because databases
+     * like PostgreSQL abort the transaction on the first failure, and then
+     * every row of the batch is rerun. Without savepoints only the failed row
+     * and the rows the driver did not get to are rerun.
+     */
+    private int[] executeBatch(TargetTable targetTable, List<EntityData> rows) throws SQLException {
+        PreparedStatement ps = targetTable.prepareStatement(batchConnection);
+        Savepoint savepoint = setSavepoint();
+        int[] counts;
+        long ts = System.currentTimeMillis();
+        try {
+            counts = ps.executeBatch();
+            releaseSavepoint(savepoint);
+        } catch (BatchUpdateException ex) {
+            log.debug("Batch failed, rows will be retried individually", ex);
+            ps.clearBatch();
+            counts = new int[rows.size()];
+            Arrays.fill(counts, Statement.EXECUTE_FAILED);
+            if (savepoint != null) {
+                batchConnection.rollback(savepoint);
+            } else if (ex.getUpdateCounts() != null) {
+                int[] updateCounts = ex.getUpdateCounts();
+                System.arraycopy(updateCounts, 0, counts, 0, Math.min(updateCounts.length, counts.length));
+            }
+        } finally {
+            sqlDuration += System.currentTimeMillis() - ts;
+        }
+        return counts;
+    }
+
+    private int executeRow(TargetTable targetTable, EntityData inputRow) throws SQLException {
+        PreparedStatement ps = targetTable.prepareStatement(batchConnection);
+        DmlStatement dmlStatement = targetTable.getStatement();
+        Object[] data = targetTable.bind(ps, inputRow);
+        Savepoint savepoint = setSavepoint();
+        long ts = System.currentTimeMillis();
+        try {
+            int count = ps.executeUpdate();
+            releaseSavepoint(savepoint);
+            return count;
+        } catch (SQLException e) {
+            if (savepoint != null) {
+                batchConnection.rollback(savepoint);
+                releaseSavepoint(savepoint);
+            }
+            SqlException ex = databasePlatform.getSqlTemplate().translate(e);
+            if (!(replaceRows && ex instanceof UniqueKeyException)) {
+                if (continueOnError) {
+                    log(LogLevel.WARN, String.format("Failed to run the following sql: \n%s\nWith values: \n%s\nWith types: \n%s\n."
+                            + "Continue on Error flag set - Continuing load",
+                            dmlStatement.getSql(), Arrays.toString(data), Arrays.toString(dmlStatement.getTypes())));
+                    return 0;
+                } else {
+                    log(LogLevel.ERROR, String.format("Failed to run the following sql: \n%s\nWith values: \n%s\nWith types: \n%s\n",
+                            dmlStatement.getSql(), Arrays.toString(data), Arrays.toString(dmlStatement.getTypes())));
+                    throw ex;
+                }
+            } else {
+                throw ex;
+            }
+        } finally {
+            sqlDuration += System.currentTimeMillis() - ts;
+        }
+    }
+
+    private Savepoint setSavepoint() throws SQLException {
+        return supportsSavepoints ? batchConnection.setSavepoint() : null;
+    }
+
+    private void releaseSavepoint(Savepoint savepoint) {
+        if (savepoint != null) {
+            try {
+                batchConnection.releaseSavepoint(savepoint);
+            } catch (SQLException ex) {
+                log.debug("Failed to release savepoint", ex);
+            }
+        }
+    }
+
+    private void addBatchResult(TargetTable targetTable, int count) {
+        if (count > 0) {
+            Result result = targetTable.getBatchResult();
+            if (result == null) {
+                result = new Result(targetTable.getStatement().getSql(), 0);
+                targetTable.setBatchResult(result);
+                results.add(result);
+            }
+            result.numberRowsAffected += count;
+            totalStatementCount++;
+            getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber, count);
+        }
+    }
+
     private void write(ISqlTransaction transaction, EntityDataMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkLastMessage) {
         sortAndStoreRowsByTableAndOperation(inputMessage.getPayload());
         executeSqlByTableAndOperation(transaction);
@@ -550,6 +997,10 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         this.batchMode = batchMode;
     }
 
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public void setFitToColumn(boolean fitToColumn) {
         this.fitToColumn = fitToColumn;
     }
@@ -651,6 +1102,11 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
         List<TargetColumn> keyTargetColumns = new ArrayList<TargetColumn>();
         List<TargetColumn> targetColumns = new ArrayList<TargetColumn>();
         List<EntityData> rowValues = new ArrayList<EntityData>();
+        TargetColumn[] parameterColumns;
+        boolean[] keyParameters;
+        Object[] values;
+        PreparedStatement preparedStatement;
+        Result batchResult;
 
         public TargetTable(DmlType dmlType, ModelEntity entity, Table table) {
             this.table = table;
@@ -697,6 +1153,79 @@ public class RdbmsWriter extends AbstractRdbmsComponentRuntime {
                     targetColumns.add(new TargetColumn(attr, column));
                 }
             }
+
+            /*
+             * 
+             * Work out once which column goes into each statement parameter
+             * 
+             */
+            List<TargetColumn> sourceColumns = new ArrayList<TargetColumn>();
+            for (TargetColumn targetColumn : targetColumns) {
+                if (targetColumn.isInsertEnabled()) {
+                    sourceColumns.add(targetColumn);
+                }
+            }
+            int columnCount = sourceColumns.size();
+            for (TargetColumn targetColumn : keyTargetColumns) {
+                if (targetColumn.isInsertEnabled()) {
+                    sourceColumns.add(targetColumn);
+                }
+            }
+            Object[] positions = new Object[sourceColumns.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            positions = statement.getValueArray(Arrays.copyOfRange(positions, 0, columnCount),
+                    Arrays.copyOfRange(positions, columnCount, positions.length));
+            parameterColumns = new TargetColumn[positions.length];
+            keyParameters = new boolean[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                int position = (Integer) positions[i];
+                parameterColumns[i] = sourceColumns.get(position);
+                keyParameters[i] = position >= columnCount;
+            }
+            values = new Object[parameterColumns.length];
+        }
+
+        public PreparedStatement prepareStatement(Connection connection) throws SQLException {
+            if (preparedStatement == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Preparing dml: {}", statement.getSql());
+                }
+                preparedStatement = connection.prepareStatement(statement.getSql());
+            }
+            return preparedStatement;
+        }
+
+        public Object[] bind(PreparedStatement ps, EntityData inputRow) throws SQLException {
+            getValues(this, inputRow, values);
+            int[] types = statement.getTypes();
+            for (int i = 0; i < values.length; i++) {
+                int type = types != null && i < types.length ? types[i] : SqlTypeValue.TYPE_UNKNOWN;
+                StatementCreatorUtils.setParameterValue(ps, i + 1, type, values[i]);
+            }
+            return values;
+        }
+
+        public void closeStatement() {
+            JdbcUtils.closeStatement(preparedStatement);
+            preparedStatement = null;
+        }
+
+        public TargetColumn[] getParameterColumns() {
+            return parameterColumns;
+        }
+
+        public boolean[] getKeyParameters() {
+            return keyParameters;
+        }
+
+        public Result getBatchResult() {
+            return batchResult;
+        }
+
+        public void setBatchResult(Result batchResult) {
+            this.batchResult = batchResult;
         }
 
         public DmlStatement getStatement() {
@@ -0,0 +1,150 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.sql.Row;
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.ControlMessage;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.ExecutionTrackerNoOp;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.util.NameValue;
+import org.jumpmind.metl.core.utils.DbTestUtils;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RdbmsWriterTest {
+
+    IDatabasePlatform platform;
+
+    @Before
+    public void setup() throws Exception {
+        platform = DbTestUtils.createDatabasePlatform();
+        platform.getSqlTemplate().update("create table ORDERS (ID varchar(10) not null primary key, AMOUNT decimal(10,2))");
+    }
+
+    @After
+    public void tearDown() {
+        platform.getSqlTemplate().update("drop table ORDERS");
+    }
+
+    @Test
+    public void testBatchIsWrittenInOrderAndCommittedOnce() {
+        RdbmsWriter writer = createWriter(true);
+        SendMessageCallback<ArrayList<String>> target = new SendMessageCallback<ArrayList<String>>();
+        writer.handleBatch(Arrays.asList(message(row("o1", 1, ChangeType.ADD)),
+                message(row("o1", 2, ChangeType.CHG), row("o2", 3, ChangeType.ADD)), message(row("o2", null, ChangeType.DEL))),
+                target, true);
+
+        List<Row> rows = platform.getSqlTemplate().query("select ID, AMOUNT from ORDERS order by ID");
+        assertEquals(1, rows.size());
+        assertEquals("o1", rows.get(0).getString("ID"));
+        assertEquals(0, new BigDecimal("2").compareTo(new BigDecimal(rows.get(0).getString("AMOUNT"))));
+        assertEquals(1, target.getPayloadList().size());
+        writer.stop();
+    }
+
+    @Test
+    public void testBatchIsCommittedAtTheEndOfTheUnitOfWork() {
+        RdbmsWriter writer = createWriter(true);
+        SendMessageCallback<ArrayList<String>> target = new SendMessageCallback<ArrayList<String>>();
+        writer.handleBatch(Arrays.asList(message(row("o1", 1, ChangeType.ADD)), message(row("o2", 2, ChangeType.ADD))), target,
+                false);
+        assertNotNull(writer.batchConnection);
+
+        writer.handleBatch(Arrays.<Message> asList(message(row("o3", 3, ChangeType.ADD)), new ControlMessage("source")), target,
+                true);
+        assertEquals(3, platform.getSqlTemplate().queryForInt("select count(*) from ORDERS"));
+        writer.stop();
+    }
+
+    @Test
+    public void testBatchIsWrittenInOneTransactionOutsideOfBatchMode() {
+        RdbmsWriter writer = createWriter(false);
+        SendMessageCallback<ArrayList<String>> target = new SendMessageCallback<ArrayList<String>>();
+        writer.handleBatch(Arrays.asList(message(row("o1", 1, ChangeType.ADD)), message(row("o1", 2, ChangeType.CHG))), target,
+                true);
+
+        List<Row> rows = platform.getSqlTemplate().query("select AMOUNT from ORDERS where ID='o1'");
+        assertEquals(0, new BigDecimal("2").compareTo(new BigDecimal(rows.get(0).getString("AMOUNT"))));
+        assertEquals(1, target.getPayloadList().size());
+        writer.stop();
+    }
+
+    protected RdbmsWriter createWriter(boolean batchMode) {
+        Flow flow = TestUtils.createFlow("TestFlow", null);
+        Component component = TestUtils.createComponent(RdbmsWriter.TYPE, false, null, createModel(), null, null, null);
+        FlowStep step = new FlowStep();
+        step.setComponent(component);
+        flow.getFlowSteps().add(step);
+        RdbmsWriter writer = new RdbmsWriter();
+        writer.setContext(new ComponentContext(null, step, flow, new ExecutionTrackerNoOp(), null, null, null));
+        writer.databasePlatform = platform;
+        writer.batchMode = batchMode;
+        return writer;
+    }
+
+    protected static EntityDataMessage message(EntityData... rows) {
+        EntityDataMessage message = new EntityDataMessage("source");
+        message.setPayload(new ArrayList<>(Arrays.asList(rows)));
+        return message;
+    }
+
+    protected static EntityData row(String id, Object amount, ChangeType changeType) {
+        EntityData row = new EntityData(new NameValue("id", id), new NameValue("amount", amount));
+        row.setChangeType(changeType);
+        return row;
+    }
+
+    protected static Model createModel() {
+        ModelEntity orders = new ModelEntity("orders", "ORDERS");
+        ModelAttrib id = new ModelAttrib("id", orders.getId(), "ID");
+        id.setDataType(DataType.VARCHAR);
+        id.setPk(true);
+        orders.addModelAttribute(id);
+        ModelAttrib amount = new ModelAttrib("amount", orders.getId(), "AMOUNT");
+        amount.setDataType(DataType.DECIMAL);
+        orders.addModelAttribute(amount);
+        Model model = new Model();
+        model.getModelEntities().add(orders);
+        return model;
+    }
+
+}
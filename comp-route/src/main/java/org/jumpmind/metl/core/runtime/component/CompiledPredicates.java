@@ -0,0 +1,120 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+/**
+ * Groovy expressions that are compiled once into a single script class.  Each
+ * expression becomes a method of the class, so all of them are evaluated
+ * against the same binding without being parsed or looked up again.  Names
+ * that an expression does not declare are resolved from the binding, the
+ * same as when the expression is evaluated by a script engine.
+ * <p>
+ * An instance is not thread safe.  Each component runtime compiles its own.
+ */
+public abstract class CompiledPredicates extends Script {
+
+    int size;
+
+    public static CompiledPredicates compile(String... expressions) {
+        return compile(Arrays.asList(expressions));
+    }
+
+    public static CompiledPredicates compile(List<String> expressions) {
+        StringBuilder source = new StringBuilder("Object evaluate(int index) {\n  switch (index) {\n");
+        for (int i = 0; i < expressions.size(); i++) {
+            source.append("    case ").append(i).append(": return __predicate").append(i).append("()\n");
+        }
+        source.append("  }\n  return null\n}\n");
+        for (int i = 0; i < expressions.size(); i++) {
+            source.append("Object __predicate").append(i).append("() {\n").append(expressions.get(i)).append("\n}\n");
+        }
+
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.setScriptBaseClass(CompiledPredicates.class.getName());
+        GroovyShell shell = new GroovyShell(CompiledPredicates.class.getClassLoader(), new Binding(), configuration);
+        try {
+            CompiledPredicates predicates = (CompiledPredicates) shell.parse(source.toString());
+            predicates.size = expressions.size();
+            return predicates;
+        } catch (CompilationFailedException e) {
+            throw new MisconfiguredException("Unable to compile expression.  " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the value of the expression at the index
+     */
+    public abstract Object evaluate(int index);
+
+    public boolean matches(int index) {
+        return Boolean.TRUE.equals(evaluate(index));
+    }
+
+    /**
+     * Evaluate the expressions in order in one pass.
+     *
+     * @param matches
+     *            set to whether each expression evaluated to true
+     * @param firstMatchOnly
+     *            stop at the first expression that is true
+     * @return the number of expressions that were true
+     */
+    public int match(boolean[] matches, boolean firstMatchOnly) {
+        Arrays.fill(matches, false);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (matches(i)) {
+                matches[i] = true;
+                count++;
+                if (firstMatchOnly) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Resolve names that are not declared by the expressions from the
+     * variables.  The map is kept, so it may be updated between evaluations.
+     */
+    @SuppressWarnings({ "rawtypes" })
+    public void bind(Map variables) {
+        setBinding(new Binding(variables));
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
@@ -30,17 +30,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javax.script.Bindings;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptException;
-
-import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 import org.jumpmind.exception.IoException;
 import org.jumpmind.metl.core.model.FlowStepLink;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MisconfiguredException;
 import org.jumpmind.metl.core.runtime.TextMessage;
@@ -50,7 +45,7 @@ import org.jumpmind.properties.TypedProperties;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-public class ContentRouter extends AbstractComponentRuntime {
+public class ContentRouter extends AbstractComponentRuntime implements IReusableComponentRuntime {
 
     public static final String TYPE = "Content Router";
 
@@ -60,7 +55,9 @@ public class ContentRouter extends AbstractComponentRuntime {
 
     List<Route> routes;
 
-    ScriptEngine scriptEngine;
+    CompiledPredicates predicates;
+
+    boolean[] matches;
 
     boolean onlyRouteFirstMatch;
 
@@ -70,7 +67,6 @@ public class ContentRouter extends AbstractComponentRuntime {
 
     @Override
     public void start() {
-        scriptEngine = new GroovyScriptEngineImpl();
         TypedProperties properties = getTypedProperties();
         rowsPerMessage = properties.getLong(ROWS_PER_MESSAGE);
         String json = getComponent().get(SETTING_CONFIG);
@@ -91,6 +87,15 @@ public class ContentRouter extends AbstractComponentRuntime {
                 throw new IoException(e);
             }
         }
+
+        if (routes != null) {
+            List<String> expressions = new ArrayList<>(routes.size());
+            for (Route route : routes) {
+                expressions.add(route.getMatchExpression());
+            }
+            predicates = CompiledPredicates.compile(expressions);
+            matches = new boolean[routes.size()];
+        }
     }
 
     @Override
@@ -98,6 +103,16 @@ public class ContentRouter extends AbstractComponentRuntime {
         return true;
     }
 
+    @Override
+    public boolean supportsReuse() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        targetStepsThatNeedControlMessages.clear();
+    }
+
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         if (inputMessage instanceof EntityDataMessage) {
@@ -119,31 +134,27 @@ public class ContentRouter extends AbstractComponentRuntime {
         Map<String, ArrayList<EntityData>> outboundMessages = new HashMap<String, ArrayList<EntityData>>();
         ArrayList<EntityData> inputDatas = inputMessage.getPayload();
 
+        ScriptBindings bindings = bindMessage(inputMessage);
         for (EntityData entityData : inputDatas) {
             getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-            bindEntityData(scriptEngine, inputMessage, entityData);
             if (routes != null) {
-                for (Route route : routes) {
-                    try {
-                        if (Boolean.TRUE.equals(scriptEngine.eval(route.getMatchExpression()))) {
-                            ArrayList<EntityData> outboundPayload = outboundMessages.get(route.getTargetStepId());
-                            if (outboundPayload != null && outboundPayload.size() >= rowsPerMessage) {
-                                outboundMessages.remove(route.getTargetStepId());
-                                callback.sendEntityDataMessage(null, outboundPayload, route.getTargetStepId());
-                                targetStepsThatNeedControlMessages.add(route.getTargetStepId());
-                                outboundPayload = null;
-                            }
-                            if (outboundPayload == null) {
-                                outboundPayload = new ArrayList<EntityData>();
-                                outboundMessages.put(route.getTargetStepId(), outboundPayload);
-                            }
-                            outboundPayload.add(entityData.copy());
-                            if (onlyRouteFirstMatch) {
-                                break;
-                            }
+                bindings.bindRow(entityData);
+                predicates.match(matches, onlyRouteFirstMatch);
+                for (int i = 0; i < matches.length; i++) {
+                    if (matches[i]) {
+                        Route route = routes.get(i);
+                        ArrayList<EntityData> outboundPayload = outboundMessages.get(route.getTargetStepId());
+                        if (outboundPayload != null && outboundPayload.size() >= rowsPerMessage) {
+                            outboundMessages.remove(route.getTargetStepId());
+                            callback.sendEntityDataMessage(null, outboundPayload, route.getTargetStepId());
+                            targetStepsThatNeedControlMessages.add(route.getTargetStepId());
+                            outboundPayload = null;
+                        }
+                        if (outboundPayload == null) {
+                            outboundPayload = new ArrayList<EntityData>();
+                            outboundMessages.put(route.getTargetStepId(), outboundPayload);
                         }
-                    } catch (ScriptException e) {
-                        throw new RuntimeException(e);
+                        outboundPayload.add(entityData.copy());
                     }
                 }
             }
@@ -156,21 +167,14 @@ public class ContentRouter extends AbstractComponentRuntime {
     }
 
     protected void handleControlMessages(ControlMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
-        Bindings bindings = scriptEngine.createBindings();
-        bindHeadersAndFlowParameters(bindings, inputMessage);
-        scriptEngine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
         if (routes != null) {
-            for (Route route : routes) {
-                try {
-                    if (Boolean.TRUE.equals(scriptEngine.eval(route.getMatchExpression()))) {
-                        callback.sendControlMessage(inputMessage.getHeader(), route.getTargetStepId());
-                        targetStepsThatNeedControlMessages.remove(route.getTargetStepId());
-                        if (onlyRouteFirstMatch) {
-                            break;
-                        }
-                    }
-                } catch (ScriptException e) {
-                    throw new RuntimeException(e);
+            bindMessage(inputMessage);
+            predicates.match(matches, onlyRouteFirstMatch);
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i]) {
+                    Route route = routes.get(i);
+                    callback.sendControlMessage(inputMessage.getHeader(), route.getTargetStepId());
+                    targetStepsThatNeedControlMessages.remove(route.getTargetStepId());
                 }
             }
         }
@@ -179,30 +183,29 @@ public class ContentRouter extends AbstractComponentRuntime {
     protected void handleStringListPayload(TextMessage inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
         Map<String, ArrayList<String>> outboundMessages = new HashMap<String, ArrayList<String>>();
         ArrayList<String> inputDatas = (ArrayList<String>) inputMessage.getPayload();
+        ScriptBindings bindings = bindMessage(inputMessage);
         for (String data : inputDatas) {
             getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-            bindStringData(scriptEngine, inputMessage, data);
             if (routes != null) {
-                for (Route route : routes) {
-                    try {
-                        if (Boolean.TRUE.equals(scriptEngine.eval(route.getMatchExpression()))) {
-                            ArrayList<String> outboundPayload = outboundMessages.get(route.getTargetStepId());
-                            if (outboundPayload == null) {
-                                outboundPayload = new ArrayList<String>();
-                                outboundMessages.put(route.getTargetStepId(), outboundPayload);
-                            }
-                            if (outboundPayload.size() >= rowsPerMessage) {
-                                outboundMessages.remove(route.getTargetStepId());
-                                callback.sendTextMessage(null, outboundPayload, route.getTargetStepId());
-                                targetStepsThatNeedControlMessages.add(route.getTargetStepId());
-                            }
-                            outboundPayload.add(data);
-                            if (onlyRouteFirstMatch) {
-                                break;
-                            }
+                if (data == null) {
+                    log(LogLevel.WARN, "Binding was unsuccessful since the value was null");
+                }
+                bindings.bindText(data);
+                predicates.match(matches, onlyRouteFirstMatch);
+                for (int i = 0; i < matches.length; i++) {
+                    if (matches[i]) {
+                        Route route = routes.get(i);
+                        ArrayList<String> outboundPayload = outboundMessages.get(route.getTargetStepId());
+                        if (outboundPayload == null) {
+                            outboundPayload = new ArrayList<String>();
+                            outboundMessages.put(route.getTargetStepId(), outboundPayload);
+                        }
+                        if (outboundPayload.size() >= rowsPerMessage) {
+                            outboundMessages.remove(route.getTargetStepId());
+                            callback.sendTextMessage(null, outboundPayload, route.getTargetStepId());
+                            targetStepsThatNeedControlMessages.add(route.getTargetStepId());
                         }
-                    } catch (ScriptException e) {
-                        throw new RuntimeException(e);
+                        outboundPayload.add(data);
                     }
                 }
             }
@@ -215,6 +218,14 @@ public class ContentRouter extends AbstractComponentRuntime {
 
     }
 
+    protected ScriptBindings bindMessage(Message inputMessage) {
+        ScriptBindings bindings = getScriptBindings(inputMessage);
+        if (predicates != null) {
+            predicates.bind(bindings);
+        }
+        return bindings;
+    }
+
     static public class Route implements Serializable {
         
         private static final long serialVersionUID = 1L;
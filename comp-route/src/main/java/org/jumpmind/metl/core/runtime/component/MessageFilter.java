@@ -20,11 +20,6 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
-import javax.script.Bindings;
-import javax.script.ScriptEngine;
-import javax.script.ScriptException;
-
-import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.Message;
@@ -40,7 +35,7 @@ public class MessageFilter extends AbstractComponentRuntime {
 
     public final static String MESSAGE_TYPE_TO_FILTER_CONTROL = "CONTROL";
 
-    ScriptEngine scriptEngine;
+    CompiledPredicates predicate;
 
     @Override
     public boolean supportsStartupMessages() {
@@ -49,30 +44,32 @@ public class MessageFilter extends AbstractComponentRuntime {
 
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
-        if (scriptEngine == null) {
-            scriptEngine = new GroovyScriptEngineImpl();
-        }
-
         String messageTypeToFilter = properties.get(SETTING_MESSAGE_TYPE_TO_FILTER);
-        String expression = properties.get(SETTING_FILTER_EXPRESSION);
-        Bindings bindings = scriptEngine.createBindings();
-        bindHeadersAndFlowParameters(bindings, inputMessage);
-        try {
-            if (MESSAGE_TYPE_TO_FILTER_CONTENT.equals(messageTypeToFilter) && inputMessage instanceof ContentMessage) {
-                if (Boolean.TRUE.equals(scriptEngine.eval(expression, bindings))) {
-                    callback.forward(inputMessage);
-                }
-            } else if (MESSAGE_TYPE_TO_FILTER_CONTROL.equals(messageTypeToFilter) && inputMessage instanceof ControlMessage) {
-                if (Boolean.TRUE.equals(scriptEngine.eval(expression, bindings))) {
-                    callback.sendControlMessage();
-                }
-            } else if (inputMessage instanceof ControlMessage) {
+        if (MESSAGE_TYPE_TO_FILTER_CONTENT.equals(messageTypeToFilter) && inputMessage instanceof ContentMessage) {
+            if (matches(inputMessage)) {
+                callback.forward(inputMessage);
+            }
+        } else if (MESSAGE_TYPE_TO_FILTER_CONTROL.equals(messageTypeToFilter) && inputMessage instanceof ControlMessage) {
+            if (matches(inputMessage)) {
                 callback.sendControlMessage();
             }
-        } catch (ScriptException e) {
-            throw new RuntimeException(e);
+        } else if (inputMessage instanceof ControlMessage) {
+            callback.sendControlMessage();
         }
 
     }
 
+    /*
+     * The filter expression is compiled the first time it is needed and is
+     * evaluated against the same bindings for every message
+     */
+    protected boolean matches(Message inputMessage) {
+        ScriptBindings bindings = getScriptBindings(inputMessage);
+        if (predicate == null) {
+            predicate = CompiledPredicates.compile(properties.get(SETTING_FILTER_EXPRESSION));
+            predicate.bind(bindings);
+        }
+        return predicate.matches(0);
+    }
+
 }
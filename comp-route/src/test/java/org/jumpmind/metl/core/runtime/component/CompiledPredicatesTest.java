@@ -0,0 +1,74 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jumpmind.metl.core.runtime.MisconfiguredException;
+import org.junit.Test;
+
+public class CompiledPredicatesTest {
+
+    @Test
+    public void testMatchAgainstUpdatedVariables() {
+        CompiledPredicates predicates = CompiledPredicates.compile("TEST_TABLE_1.COL1=='Route to 1'",
+                "def count = COUNT\ncount > 2", "return CHANGE_TYPE == 'ADD'");
+        Map<String, Object> entity = new HashMap<>();
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("TEST_TABLE_1", entity);
+        predicates.bind(variables);
+
+        entity.put("COL1", "Route to 1");
+        variables.put("COUNT", 3);
+        variables.put("CHANGE_TYPE", "ADD");
+        boolean[] matches = new boolean[predicates.size()];
+        assertEquals(3, predicates.match(matches, false));
+        assertArrayEquals(new boolean[] { true, true, true }, matches);
+
+        entity.put("COL1", "Route to 2");
+        variables.put("COUNT", 1);
+        assertEquals(1, predicates.match(matches, false));
+        assertArrayEquals(new boolean[] { false, false, true }, matches);
+    }
+
+    @Test
+    public void testFirstMatchOnly() {
+        CompiledPredicates predicates = CompiledPredicates.compile("true", "'true'", "true");
+        predicates.bind(new HashMap<>());
+        boolean[] matches = new boolean[predicates.size()];
+        assertEquals(1, predicates.match(matches, true));
+        assertArrayEquals(new boolean[] { true, false, false }, matches);
+        assertFalse(predicates.matches(1));
+        assertTrue(predicates.matches(2));
+    }
+
+    @Test(expected = MisconfiguredException.class)
+    public void testInvalidExpression() {
+        CompiledPredicates.compile("COL1 ==== 1");
+    }
+
+}
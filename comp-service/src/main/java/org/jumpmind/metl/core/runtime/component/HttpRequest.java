@@ -26,7 +26,7 @@ import static org.jumpmind.metl.core.runtime.FlowConstants.REQUEST_VALUE_PARAMET
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 
-public class HttpRequest extends AbstractHttpRequestResponse implements IHasSecurity {
+public class HttpRequest extends AbstractHttpRequestResponse implements IHasSecurity, IReusableComponentRuntime {
 
     public static final String PATH = "path";
 
@@ -41,6 +41,15 @@ public class HttpRequest extends AbstractHttpRequestResponse implements IHasSecu
     public HttpRequest() {
     }
 
+    @Override
+    public boolean supportsReuse() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+    }
+
     @Override
     public SecurityScheme getSecurityType() {
         return SecurityScheme.valueOf(properties.get(SECURITY_SCHEME, SecurityScheme.NONE.name()));
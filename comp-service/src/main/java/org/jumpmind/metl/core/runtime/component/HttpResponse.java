@@ -30,7 +30,7 @@ import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 
-public class HttpResponse extends AbstractHttpRequestResponse implements IHasResults {
+public class HttpResponse extends AbstractHttpRequestResponse implements IHasResults, IReusableComponentRuntime {
 
     public static final String TYPE = "16170152-eee5-11e5-9ce9-5e5517507c66";
     
@@ -43,7 +43,18 @@ public class HttpResponse extends AbstractHttpRequestResponse implements IHasRes
 
     @Override
     public void start() {
+        reset();
+    }
+
+    @Override
+    public boolean supportsReuse() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
         response = new StringBuilder();
+        detectedFormat = null;
     }
 
     @Override
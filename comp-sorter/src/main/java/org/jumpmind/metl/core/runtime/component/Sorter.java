@@ -20,38 +20,36 @@
  */
 package org.jumpmind.metl.core.runtime.component;
 
-import java.sql.Types;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.PriorityQueue;
 
-import org.apache.commons.lang.ObjectUtils;
-import org.h2.Driver;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jumpmind.exception.IoException;
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.ComponentAttribSetting;
+import org.jumpmind.metl.core.model.DataType;
 import org.jumpmind.metl.core.model.Model;
 import org.jumpmind.metl.core.model.ModelAttrib;
 import org.jumpmind.metl.core.model.ModelEntity;
-import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.EntityDataReader;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
+import org.jumpmind.metl.core.runtime.EntityDataWriter;
 import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 import org.jumpmind.properties.TypedProperties;
-import org.jumpmind.db.model.Column;
-import org.jumpmind.db.model.IIndex;
-import org.jumpmind.db.model.IndexColumn;
-import org.jumpmind.db.model.Table;
-import org.jumpmind.db.platform.IDatabasePlatform;
-import org.jumpmind.db.platform.JdbcDatabasePlatformFactory;
-import org.jumpmind.db.sql.SqlTemplateSettings;
-import org.jumpmind.db.util.ResettableBasicDataSource;
-import org.jumpmind.metl.core.model.Component;
-import org.jumpmind.metl.core.model.ComponentAttribSetting;
-import org.jumpmind.metl.core.model.DataType;
 
 public class Sorter extends AbstractComponentRuntime {
 
@@ -63,30 +61,31 @@ public class Sorter extends AbstractComponentRuntime {
 
     public final static String ATTRIBUTE_SORTER_ENABLED = "sort.enabled";
 
+    public final static String MEMORY_BUDGET_MB = "memory.budget.mb";
+
+    final static int MAX_MERGE_RUNS = 64;
+
     int rowsPerMessage;
 
-    IDatabasePlatform databasePlatform;
+    long memoryBudget = 64 * 1024 * 1024;
 
-    RdbmsWriter databaseWriter;
-    
     String sortAttributeId;
 
     ArrayList<ComponentAttribSetting> sortKeyAttributeIdList = new ArrayList<>();
     
-    List<EntityData> sortedRecords = new ArrayList<EntityData>();
-    
     List<ModelEntity> entities;
 
-    String databaseName;
-
-    Throwable error;
-    
     boolean entitySort = true;
+
+    List<SortGroup> sortGroups;
+
+    long bufferedSize;
     
     @Override
     public void start() {
         TypedProperties properties = getTypedProperties();
         rowsPerMessage = properties.getInt(ROWS_PER_MESSAGE);
+        memoryBudget = properties.getLong(MEMORY_BUDGET_MB, memoryBudget / 1024 / 1024) * 1024 * 1024;
         String sortAttribute = properties.get(SORT_ATTRIBUTE);
         Model inputModel = this.getComponent().getInputModel();
         Component component = context.getFlowStep().getComponent();
@@ -131,7 +130,21 @@ public class Sorter extends AbstractComponentRuntime {
         	throw new IllegalStateException(
         			"Sort attribute must be a valid 'entity.attribute' in the input model. "
         			+ "Or at least one attribute must be specified to sort on in the component editor.");
-        }        
+        }
+
+        /*
+         * A single sort attribute sorts whole rows. Otherwise each entity is
+         * sorted and sent on its own by the sort attributes that belong to it.
+         */
+        sortGroups = new ArrayList<>();
+        if (entitySort) {
+            sortGroups.add(new SortGroup(null, getSortAttributes(inputModel, null)));
+        } else {
+            for (ModelEntity entity : entities) {
+                sortGroups.add(new SortGroup(entity, getSortAttributes(inputModel, entity)));
+            }
+        }
+        bufferedSize = 0;
     }
     
     @Override
@@ -141,227 +154,534 @@ public class Sorter extends AbstractComponentRuntime {
 
     @Override
     public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
-    	if (inputMessage instanceof EntityDataMessage) {
-            if (!entitySort) {
-	            createDatabase();
-	            loadIntoDatabase(inputMessage);
-            }
-            
+        if (inputMessage instanceof EntityDataMessage) {
             ArrayList<EntityData> payload = ((EntityDataMessage)inputMessage).getPayload();
             for (int i = 0; i < payload.size(); i++) {
                 getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
-                
-                if (entitySort) {
-                	EntityData record = payload.get(i);
-                	sortedRecords.add(record);
+                EntityData record = payload.get(i);
+                for (SortGroup sortGroup : sortGroups) {
+                    EntityData data = sortGroup.project(record);
+                    if (data != null) {
+                        sortGroup.add(data);
+                        bufferedSize += data.estimateSize();
+                    }
+                }
+            }
+
+            if (bufferedSize > memoryBudget) {
+                for (SortGroup sortGroup : sortGroups) {
+                    sortGroup.spill();
                 }
+                bufferedSize = 0;
+            }
+        }
+
+        if (unitOfWorkBoundaryReached) {
+            try {
+                for (SortGroup sortGroup : sortGroups) {
+                    sortGroup.send(callback);
+                }
+            } finally {
+                for (SortGroup sortGroup : sortGroups) {
+                    sortGroup.clear();
+                }
+                bufferedSize = 0;
+            }
+        }
+        getComponentStatistics().setMemoryUsed(threadNumber, bufferedSize);
+    }
+
+    @Override
+    public void stop() {
+        if (sortGroups != null) {
+            for (SortGroup sortGroup : sortGroups) {
+                sortGroup.clear();
+            }
+        }
+        super.stop();
+    }
+
+    protected List<ModelAttrib> getSortAttributes(Model inputModel, ModelEntity entity) {
+        List<ModelAttrib> sortAttributes = new ArrayList<>();
+        for (ComponentAttribSetting componentAttribute : sortKeyAttributeIdList) {
+            ModelAttrib attribute = inputModel.getAttributeById(componentAttribute.getAttributeId());
+            if (attribute != null && (entity == null || entity.getId().equals(attribute.getEntityId()))) {
+                sortAttributes.add(attribute);
             }
-    	}
-
-    	if (unitOfWorkBoundaryReached && error == null) {
-    		if (entitySort) {
-    			ArrayList<EntityData> dataToSend = new ArrayList<EntityData>();
-    			
-    			sort();
-
-    			for (EntityData record : sortedRecords) {
-    				if (dataToSend.size() >= rowsPerMessage) {
-    					callback.sendEntityDataMessage(null, dataToSend);
-    					dataToSend = new ArrayList<EntityData>();
-    				}
-    				dataToSend.add(record);
-    			}
-
-    			sortedRecords.clear();
-
-    			if (dataToSend != null && dataToSend.size() > 0) {
-    				callback.sendEntityDataMessage(null, dataToSend);
-    			}
-    		} else {
-    			sortData(callback);
-    		}
-    	}
+        }
+        return sortAttributes;
+    }
+
+    /**
+     * Nulls sort first and values that could not be converted to the type of
+     * their sort attribute sort last. Everything else has been converted by
+     * {@link #toSortValue(Object, SortType)} to a single type per sort
+     * attribute. Only attributes without a known type can hold values of
+     * different classes and those are ordered by class name first so that
+     * the order stays consistent.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected static int compareValues(Object value1, Object value2) {
+        if (value1 == value2) {
+            return 0;
+        } else if (value1 == null) {
+            return -1;
+        } else if (value2 == null) {
+            return 1;
+        } else if (value1 instanceof Unconverted != value2 instanceof Unconverted) {
+            return value1 instanceof Unconverted ? 1 : -1;
+        } else if (!value1.getClass().equals(value2.getClass())) {
+            return value1.getClass().getName().compareTo(value2.getClass().getName());
+        } else {
+            return ((Comparable) value1).compareTo(value2);
+        }
+    }
+
+    protected static SortType getSortType(ModelAttrib attribute) {
+        DataType dataType = attribute.getDataType();
+        if (dataType == null) {
+            return SortType.OTHER;
+        } else if (dataType.isNumeric()) {
+            return SortType.NUMBER;
+        } else if (dataType.isTimestamp()) {
+            return SortType.TIME;
+        } else if (dataType.isBoolean()) {
+            return SortType.BOOLEAN;
+        } else if (dataType.isString()) {
+            return SortType.TEXT;
+        } else {
+            return SortType.OTHER;
+        }
+    }
+
+    protected static Object toSortValue(Object value, SortType type) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case NUMBER:
+                return toNumber(value);
+            case TIME:
+                if (value instanceof Date) {
+                    return ((Date) value).getTime();
+                } else if (value instanceof Number) {
+                    return ((Number) value).longValue();
+                }
+                break;
+            case BOOLEAN:
+                if (value instanceof Boolean) {
+                    return value;
+                } else if ("true".equalsIgnoreCase(value.toString().trim())) {
+                    return Boolean.TRUE;
+                } else if ("false".equalsIgnoreCase(value.toString().trim())) {
+                    return Boolean.FALSE;
+                }
+                break;
+            case TEXT:
+                return value.toString();
+            default:
+                if (value instanceof Number) {
+                    return toNumber(value);
+                } else if (value instanceof Date) {
+                    return ((Date) value).getTime();
+                } else if (value instanceof Comparable) {
+                    return value;
+                }
+                break;
+        }
+        return new Unconverted(value.toString());
     }
 
-    private void sort() {
-    	Collections.sort(sortedRecords, new Comparator<EntityData>() {
-    		@Override
-    		public int compare(EntityData o1, EntityData o2) {
-    			Object obj1 = o1.get(sortAttributeId);
-    			Object obj2 = o2.get(sortAttributeId);
-    			if ((obj1 instanceof Comparable || obj1 == null)
-    					&& (obj2 instanceof Comparable || obj2 == null)) {
-    				return ObjectUtils.compare((Comparable<?>) obj1, (Comparable<?>) obj2);
-    			} else {
-    				String str1 = obj1 != null ? obj1.toString() : null;
-    				String str2 = obj2 != null ? obj2.toString() : null;
-    				return ObjectUtils.compare(str1, str2);
-    			}
-    		}
-    	});
+    private static Object toNumber(Object value) {
+        if (value instanceof BigDecimal) {
+            return value;
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return new Unconverted(value.toString());
+        }
+    }
+
+    private void sendRows(ISendMessageCallback callback, ArrayList<EntityData> dataToSend) {
+        if (dataToSend.size() > 0) {
+            callback.sendEntityDataMessage(null, dataToSend);
+            dataToSend.clear();
+        }
+    }
+
+    /**
+     * How the values of a sort attribute are compared. Values are converted
+     * to one type per attribute so that every pair of values compares the
+     * same way.
+     */
+    enum SortType {
+        NUMBER, TIME, BOOLEAN, TEXT, OTHER
+    }
+
+    /**
+     * A value that could not be converted to the type of its sort attribute.
+     * These are compared by their string value.
+     */
+    static final class Unconverted implements Comparable<Unconverted> {
+        final String value;
+
+        Unconverted(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Unconverted o) {
+            return value.compareTo(o.value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Unconverted && value.equals(((Unconverted) obj).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+
+    static class SortRow {
+        Object[] keys;
+        Object[] primaryKey;
+        EntityData data;
+
+        SortRow(Object[] keys, Object[] primaryKey, EntityData data) {
+            this.keys = keys;
+            this.primaryKey = primaryKey;
+            this.data = data;
+        }
+    }
+
+    static class SortRowComparator implements Comparator<SortRow> {
+        boolean byPrimaryKey;
+
+        SortRowComparator(boolean byPrimaryKey) {
+            this.byPrimaryKey = byPrimaryKey;
+        }
+
+        @Override
+        public int compare(SortRow o1, SortRow o2) {
+            Object[] keys1 = byPrimaryKey ? o1.primaryKey : o1.keys;
+            Object[] keys2 = byPrimaryKey ? o2.primaryKey : o2.keys;
+            for (int i = 0; i < keys1.length; i++) {
+                int result = compareValues(keys1[i], keys2[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+    }
+
+    interface RowSink {
+        void accept(EntityData data) throws IOException;
+    }
+
+    /**
+     * Rows are buffered and sorted in memory. When the memory budget is used
+     * up they are written out as a sorted run, and the runs are merged when
+     * the rows are sent. A merge reads from at most {@link #MAX_MERGE_RUNS}
+     * files at a time.
+     * <p>
+     * When an entity has primary key attributes a row replaces any earlier
+     * row with the same key, like the database the sorter used to load rows
+     * into. The runs of such an entity are sorted by primary key and keep only
+     * the latest row for a key. When the rows are sent the runs are merged by
+     * primary key, keeping the row from the latest run, and the rows that are
+     * left are sorted again by the sort attributes. Nothing is held in memory
+     * per key, but rows with the same sort values come out in primary key
+     * order rather than in the order they arrived.
+     */
+    class SortGroup {
+        ModelEntity entity;
+        /* rows of an entity group hold only that entity's attributes, whole rows keep their own schema */
+        EntityDataSchema schema;
+        String[] sortAttributeIds;
+        SortType[] sortTypes;
+        String[] keyAttributeIds;
+        SortType[] keyTypes;
+        SortRowComparator comparator = new SortRowComparator(false);
+        SortRowComparator keyComparator;
+        /* true until the rows have been reduced to the latest row for each primary key */
+        boolean replaceByKey;
+        ArrayList<SortRow> rows = new ArrayList<>();
+        long rowsSize;
+        List<File> runs = new ArrayList<>();
+
+        SortGroup(ModelEntity entity, List<ModelAttrib> sortAttributes) {
+            this.entity = entity;
+            this.schema = entity != null ? new EntityDataSchema(entity) : null;
+            this.sortAttributeIds = new String[sortAttributes.size()];
+            this.sortTypes = new SortType[sortAttributes.size()];
+            for (int i = 0; i < sortAttributes.size(); i++) {
+                sortAttributeIds[i] = sortAttributes.get(i).getId();
+                sortTypes[i] = getSortType(sortAttributes.get(i));
+            }
+            if (entity != null) {
+                List<ModelAttrib> keyAttributes = new ArrayList<>();
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    if (attribute.isPk()) {
+                        keyAttributes.add(attribute);
+                    }
+                }
+                if (keyAttributes.size() > 0) {
+                    keyAttributeIds = new String[keyAttributes.size()];
+                    keyTypes = new SortType[keyAttributes.size()];
+                    for (int i = 0; i < keyAttributeIds.length; i++) {
+                        keyAttributeIds[i] = keyAttributes.get(i).getId();
+                        keyTypes[i] = getSortType(keyAttributes.get(i));
+                    }
+                    keyComparator = new SortRowComparator(true);
+                    replaceByKey = true;
+                }
+            }
+        }
+
+        /**
+         * @return the part of the row this group sorts or null if the row
+         *         has no values for this group's entity
+         */
+        EntityData project(EntityData record) {
+            if (entity == null) {
+                return record;
+            }
+            boolean found = false;
+            for (ModelAttrib attribute : entity.getModelAttributes()) {
+                if (record.containsKey(attribute.getId())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (found) {
+                EntityData data = new EntityData(schema);
+                data.setChangeType(record.getChangeType());
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    data.put(attribute.getId(), record.get(attribute.getId()));
+                }
+                return data;
+            } else {
+                return null;
+            }
+        }
+
+        void add(EntityData data) {
+            if (schema == null) {
+                schema = data.getSchema();
+            }
+            rows.add(toSortRow(data));
+        }
+
+        SortRow toSortRow(EntityData data) {
+            Object[] keys = new Object[sortAttributeIds.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = toSortValue(data.get(sortAttributeIds[i]), sortTypes[i]);
+            }
+            Object[] primaryKey = null;
+            if (keyAttributeIds != null) {
+                primaryKey = new Object[keyAttributeIds.length];
+                for (int i = 0; i < primaryKey.length; i++) {
+                    primaryKey[i] = toSortValue(data.get(keyAttributeIds[i]), keyTypes[i]);
+                }
+            }
+            return new SortRow(keys, primaryKey, data);
+        }
+
+        /**
+         * Sorts the buffered rows the way a run is written. While rows are
+         * still replaced by primary key they are sorted by key and only the
+         * last row for each key is returned. The sort is stable, so that is
+         * the one that arrived last.
+         */
+        List<SortRow> sortRows() {
+            if (replaceByKey) {
+                Collections.sort(rows, keyComparator);
+                List<SortRow> latest = new ArrayList<>(rows.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    if (i == rows.size() - 1 || keyComparator.compare(rows.get(i), rows.get(i + 1)) != 0) {
+                        latest.add(rows.get(i));
+                    }
+                }
+                return latest;
+            } else {
+                Collections.sort(rows, comparator);
+                return rows;
+            }
+        }
+
+        void spill() {
+            if (rows.size() > 0) {
+                List<SortRow> sortedRows = sortRows();
+                File file = null;
+                EntityDataWriter writer = null;
+                try {
+                    file = File.createTempFile("metl-sort", ".run");
+                    runs.add(file);
+                    writer = new EntityDataWriter(new FileOutputStream(file));
+                    for (SortRow row : sortedRows) {
+                        writer.write(row.data);
+                    }
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new IoException(e);
+                } finally {
+                    IOUtils.closeQuietly(writer);
+                }
+                log(LogLevel.DEBUG, "Spilled %d rows to %s", sortedRows.size(), file);
+                rows.clear();
+                rowsSize = 0;
+            }
+        }
+
+        void send(ISendMessageCallback callback) {
+            ArrayList<EntityData> dataToSend = new ArrayList<EntityData>();
+            if (runs.size() == 0) {
+                List<SortRow> sortedRows = sortRows();
+                if (replaceByKey) {
+                    Collections.sort(sortedRows, comparator);
+                }
+                for (SortRow row : sortedRows) {
+                    dataToSend.add(row.data);
+                    if (dataToSend.size() >= rowsPerMessage) {
+                        sendRows(callback, dataToSend);
+                    }
+                }
+            } else {
+                spill();
+                try {
+                    if (replaceByKey) {
+                        replaceRowsByKey();
+                    }
+                    reduceRuns();
+                    log(LogLevel.INFO, "Merging %d sorted runs", runs.size());
+                    merge(new ArrayList<>(runs), false, data -> {
+                        dataToSend.add(data);
+                        if (dataToSend.size() >= rowsPerMessage) {
+                            sendRows(callback, dataToSend);
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new IoException(e);
+                }
+            }
+            sendRows(callback, dataToSend);
+        }
+
+        /**
+         * Merges the runs by primary key and sorts the latest row for each
+         * key into new runs by the sort attributes.
+         */
+        void replaceRowsByKey() throws IOException {
+            reduceRuns();
+            List<File> keyRuns = new ArrayList<>(runs);
+            runs.clear();
+            replaceByKey = false;
+            merge(keyRuns, true, data -> {
+                rows.add(toSortRow(data));
+                rowsSize += data.estimateSize();
+                if (rowsSize > memoryBudget) {
+                    spill();
+                }
+            });
+            spill();
+        }
+
+        /**
+         * Merges the oldest runs until no more than {@link #MAX_MERGE_RUNS}
+         * are left. The merged run takes the place of the runs it replaced.
+         */
+        void reduceRuns() throws IOException {
+            while (runs.size() > MAX_MERGE_RUNS) {
+                List<File> mergeRuns = new ArrayList<>(runs.subList(0, MAX_MERGE_RUNS));
+                runs.subList(0, MAX_MERGE_RUNS).clear();
+                File file = File.createTempFile("metl-sort", ".run");
+                runs.add(0, file);
+                EntityDataWriter writer = null;
+                try {
+                    writer = new EntityDataWriter(new FileOutputStream(file));
+                    merge(mergeRuns, replaceByKey, writer::write);
+                    writer.flush();
+                } finally {
+                    IOUtils.closeQuietly(writer);
+                }
+            }
+        }
+
+        /**
+         * Merges the runs into the sink. Merged runs are deleted. Ties are
+         * taken from the earlier run so that the sort stays stable. When the
+         * runs are merged by primary key only the row from the latest run is
+         * passed on for each key.
+         */
+        void merge(List<File> mergeRuns, boolean byPrimaryKey, RowSink sink) throws IOException {
+            SortRowComparator order = byPrimaryKey ? keyComparator : comparator;
+            PriorityQueue<RunCursor> queue = new PriorityQueue<>(mergeRuns.size(), (o1, o2) -> {
+                int result = order.compare(o1.row, o2.row);
+                return result != 0 ? result : Integer.compare(o1.run, o2.run);
+            });
+            List<RunCursor> cursors = new ArrayList<>(mergeRuns.size());
+            try {
+                for (int i = 0; i < mergeRuns.size(); i++) {
+                    RunCursor cursor = new RunCursor(i, mergeRuns.get(i));
+                    cursors.add(cursor);
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                while (!queue.isEmpty()) {
+                    checkForInterruption();
+                    RunCursor cursor = queue.poll();
+                    SortRow row = cursor.row;
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                    /* a run holds one row per key, so a row with the same key that follows is from a later run */
+                    if (!byPrimaryKey || queue.isEmpty() || order.compare(row, queue.peek().row) != 0) {
+                        sink.accept(row.data);
+                    }
+                }
+            } finally {
+                for (RunCursor cursor : cursors) {
+                    IOUtils.closeQuietly(cursor.reader);
+                }
+                for (File file : mergeRuns) {
+                    FileUtils.deleteQuietly(file);
+                    runs.remove(file);
+                }
+            }
+        }
+
+        void clear() {
+            rows.clear();
+            rowsSize = 0;
+            for (File file : runs) {
+                FileUtils.deleteQuietly(file);
+            }
+            runs.clear();
+            replaceByKey = keyComparator != null;
+        }
+
+        class RunCursor {
+            int run;
+            EntityDataReader reader;
+            SortRow row;
+
+            RunCursor(int run, File file) throws IOException {
+                this.run = run;
+                this.reader = new EntityDataReader(new FileInputStream(file), schema);
+            }
+
+            boolean next() throws IOException {
+                EntityData data = reader.read();
+                row = data != null ? toSortRow(data) : null;
+                return row != null;
+            }
+        }
     }
 
-	private void sortData(ISendMessageCallback callback) {
-		Map<ModelEntity, String> sqls = new HashMap<>();
-		boolean addOrderBy = false;
-		for (ModelEntity entity : entities) {
-			StringBuilder sql = new StringBuilder("select ");
-			appendColumns(sql, entity);
-			sql.append(" from " + entity.getName() + "_1 ");
-			
-			// check to see if any one attribute of the entity is flagged to sort by before adding the 'order by' clause 
-			for (ComponentAttribSetting componentAttribute : sortKeyAttributeIdList) {
-				for (ModelAttrib attribute : entity.getModelAttributes()) {
-					if (componentAttribute.getAttributeId().equals(attribute.getId())) {
-						addOrderBy = true;
-						break;
-					}
-				}
-				if (addOrderBy) {
-					break;
-				}
-			}
-			
-			if (addOrderBy) {
-				sql.append(" order by ");
-				appendSortColumns(sql, entity);
-			}
-			
-			log(LogLevel.INFO, "Generated sort sql: %s", sql);
-			sqls.put(entity, sql.toString());
-			addOrderBy = false;
-		}
-		
-		RdbmsReader reader = new RdbmsReader();
-		reader.setDataSource(databasePlatform.getDataSource());
-		reader.setContext(context);
-		reader.setComponentDefinition(componentDefinition);
-		reader.setRowsPerMessage(rowsPerMessage);
-		reader.setThreadNumber(threadNumber);
-		
-		for (ModelEntity entity : entities) {
-			reader.setSql(sqls.get(entity));
-			reader.handle(new ControlMessage(this.context.getFlowStep().getId()), callback, false);
-			info("Read %d  records for %s", reader.getRowReadDuringHandle(), entity.getName());
-		}
-		
-		ResettableBasicDataSource ds = databasePlatform.getDataSource();
-		
-		ds.close();
-		
-		databasePlatform = null;
-		databaseName = null;
-		databaseWriter = null;
-	}
-
-	
-	protected void appendColumns(StringBuilder sql, ModelEntity entity) {
-		for (ModelAttrib attribute : entity.getModelAttributes()) {
-			sql.append(attribute.getName()).append(" /* ")
-				.append(entity.getName()).append(".").append(attribute.getName())
-				.append(" */").append(",");
-		}
-		sql.replace(sql.length() - 1, sql.length(), "");
-	}
-
-
-	protected void appendSortColumns(StringBuilder sql, ModelEntity entity) {
-		for (ComponentAttribSetting componentAttribute : sortKeyAttributeIdList) {
-			for (ModelAttrib attribute : entity.getModelAttributes()) {
-				if (componentAttribute.getAttributeId().equals(attribute.getId())) {
-					sql.append(attribute.getName()).append(",");
-					break;
-				}
-			}
-		}
-		sql.replace(sql.length() - 1, sql.length(), "");
-	}
-
-	protected void loadIntoDatabase(Message message) {
-		String tableSuffix = "_1";
-		
-		if (databaseWriter == null) {
-			databaseWriter = new RdbmsWriter();
-			databaseWriter.setDatabasePlatform(databasePlatform);
-			databaseWriter.setComponentDefinition(componentDefinition);
-			databaseWriter.setReplaceRows(true);
-			databaseWriter.setContext(context);
-			databaseWriter.setThreadNumber(threadNumber);
-		}
-		
-		if (tableSuffix != null) {
-			databaseWriter.setTableSuffix(tableSuffix);
-			try {
-				databaseWriter.handle(message, null, false);
-			} finally {
-				error = databaseWriter.getError();
-			}
-		}
-	}
-
-	protected void createDatabase() {
-		if (databasePlatform == null) {
-			ResettableBasicDataSource ds = new ResettableBasicDataSource();
-			ds.setDriverClassName(Driver.class.getName());
-			ds.setMaxActive(1);
-			ds.setInitialSize(1);
-			ds.setMinIdle(1);
-			ds.setMaxIdle(1);
-			databaseName = UUID.randomUUID().toString();
-			ds.setUrl("jdbc:h2:mem:" + databaseName);
-			databasePlatform = JdbcDatabasePlatformFactory.createNewPlatformInstance(ds,
-					new SqlTemplateSettings(), true, false);
-			
-			Model inputModel = context.getFlowStep().getComponent().getInputModel();
-			List<ModelEntity> entities = inputModel.getModelEntities();
-			for (ModelEntity entity : entities) {
-				Table table = new Table();
-				table.setName(entity.getName() + "_1");
-				List<ModelAttrib> attributes = entity.getModelAttributes();
-				for (ModelAttrib attribute : attributes) {
-					DataType dataType = attribute.getDataType();
-					Column column = new Column(attribute.getName());
-					if (dataType.isNumeric()) {
-						column.setTypeCode(Types.DECIMAL);
-					} else if (dataType.isBoolean()) {
-						column.setTypeCode(Types.BOOLEAN);
-					} else if (dataType.isTimestamp()) {
-						column.setTypeCode(Types.TIMESTAMP);
-					} else if (dataType.isBinary()) {
-						column.setTypeCode(Types.BLOB);
-					} else {
-						column.setTypeCode(Types.LONGVARCHAR);
-					}
-					
-					column.setPrimaryKey(attribute.isPk());
-					table.addColumn(column);
-				}
-				
-				alterCaseToMatchLogicalCase(table);
-				databasePlatform.createTables(false, false, table);
-			}
-			
-			log(LogLevel.INFO, "Creating databasePlatform with the following url: %s", ds.getUrl());
-		}
-	}
-
-
-	private void alterCaseToMatchLogicalCase(Table table) {
-		table.setName(table.getName().toUpperCase());
-		
-		Column[] columns = table.getColumns();
-		for (Column column : columns) {
-			column.setName(column.getName().toUpperCase());
-		}
-		
-		IIndex[] indexes = table.getIndices();
-		for (IIndex index : indexes) {
-			index.setName(index.getName().toUpperCase());
-			
-			IndexColumn[] indexColumns = index.getColumns();
-			for (IndexColumn indexColumn : indexColumns) {
-				indexColumn.setName(indexColumn.getName().toUpperCase());
-			}
-		}
-	}
 }
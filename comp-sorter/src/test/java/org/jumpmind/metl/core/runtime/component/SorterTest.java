@@ -0,0 +1,217 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.ComponentAttribSetting;
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.ExecutionTrackerNoOp;
+import org.jumpmind.metl.core.util.NameValue;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.Test;
+
+public class SorterTest {
+
+    @Test
+    public void testSortInMemory() {
+        Sorter sorter = createSorter(createModel(false), "ORDERS.AMOUNT", null);
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter,
+                Arrays.asList(row("o1", "10"), row("o2", 9), row("o3", new BigDecimal("2.5"))), Arrays.asList(row("o4", 100L)));
+        assertEquals(Arrays.asList("o3", "o2", "o1", "o4"), ids(target));
+        assertEquals(2, target.getPayloadList().size());
+    }
+
+    @Test
+    public void testNullsFirstAndUnconvertedLast() {
+        Sorter sorter = createSorter(createModel(false), "ORDERS.AMOUNT", null);
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter,
+                Arrays.asList(row("o1", "abc"), row("o2", 5), row("o3", null), row("o4", "-1"), row("o5", "ab")));
+        assertEquals(Arrays.asList("o3", "o4", "o2", "o5", "o1"), ids(target));
+    }
+
+    @Test
+    public void testSpillAndMerge() {
+        Sorter sorter = createSorter(createModel(false), "ORDERS.AMOUNT", null);
+        sorter.memoryBudget = 0;
+        Random random = new Random(42);
+        List<List<EntityData>> messages = new ArrayList<>();
+        for (int i = 0; i < Sorter.MAX_MERGE_RUNS + 10; i++) {
+            messages.add(Arrays.asList(row("o" + i, random.nextInt(1000)), row("p" + i, random.nextInt(1000))));
+        }
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter, messages.toArray(new List[messages.size()]));
+        List<EntityData> rows = rows(target);
+        assertEquals(messages.size() * 2, rows.size());
+        for (int i = 1; i < rows.size(); i++) {
+            int previous = ((Number) rows.get(i - 1).get("amount")).intValue();
+            int current = ((Number) rows.get(i).get("amount")).intValue();
+            assertEquals(true, previous <= current);
+        }
+    }
+
+    @Test
+    public void testMultipleSortKeys() {
+        List<ComponentAttribSetting> attributeSettings = new ArrayList<>();
+        attributeSettings.add(new ComponentAttribSetting("region", Sorter.SORTER_ATTRIBUTE_ORDINAL, "1"));
+        attributeSettings.add(new ComponentAttribSetting("amount", Sorter.SORTER_ATTRIBUTE_ORDINAL, "2"));
+        Sorter sorter = createSorter(createModel(false), null, attributeSettings);
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter,
+                Arrays.asList(row("o1", "east", 20), row("o2", "west", 1), row("o3", "east", 3), row("o4", null, 7)));
+        assertEquals(Arrays.asList("o4", "o3", "o1", "o2"), ids(target));
+    }
+
+    @Test
+    public void testRowsReplacedByPrimaryKey() {
+        List<ComponentAttribSetting> attributeSettings = new ArrayList<>();
+        attributeSettings.add(new ComponentAttribSetting("amount", Sorter.SORTER_ATTRIBUTE_ORDINAL, "1"));
+        Sorter sorter = createSorter(createModel(true), null, attributeSettings);
+        sorter.memoryBudget = 0;
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter,
+                Arrays.asList(row("o1", "east", 5), row("o2", "east", 3)), Arrays.asList(row("o1", "west", 1)));
+        List<EntityData> rows = rows(target);
+        assertEquals(Arrays.asList("o1", "o2"), ids(target));
+        assertEquals("west", rows.get(0).get("region"));
+    }
+
+    @Test
+    public void testRowsReplacedByPrimaryKeyInMemory() {
+        List<ComponentAttribSetting> attributeSettings = new ArrayList<>();
+        attributeSettings.add(new ComponentAttribSetting("amount", Sorter.SORTER_ATTRIBUTE_ORDINAL, "1"));
+        Sorter sorter = createSorter(createModel(true), null, attributeSettings);
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter,
+                Arrays.asList(row("o1", "east", 5), row("o2", "east", 3), row("o1", "north", 4)), Arrays.asList(row("o1", "west", 1)));
+        List<EntityData> rows = rows(target);
+        assertEquals(Arrays.asList("o1", "o2"), ids(target));
+        assertEquals("west", rows.get(0).get("region"));
+    }
+
+    @Test
+    public void testRowsReplacedByPrimaryKeyAcrossMergedRuns() {
+        List<ComponentAttribSetting> attributeSettings = new ArrayList<>();
+        attributeSettings.add(new ComponentAttribSetting("amount", Sorter.SORTER_ATTRIBUTE_ORDINAL, "1"));
+        Sorter sorter = createSorter(createModel(true), null, attributeSettings);
+        sorter.memoryBudget = 0;
+        List<List<EntityData>> messages = new ArrayList<>();
+        Map<String, Integer> latestAmounts = new HashMap<>();
+        for (int i = 0; i < Sorter.MAX_MERGE_RUNS * 2; i++) {
+            messages.add(Arrays.asList(row("o" + (i % 5), "east", 1000 - i), row("p" + i, "west", i)));
+            latestAmounts.put("o" + (i % 5), 1000 - i);
+        }
+        SendMessageCallback<ArrayList<EntityData>> target = sort(sorter, messages.toArray(new List[messages.size()]));
+        List<EntityData> rows = rows(target);
+        assertEquals(messages.size() + 5, rows.size());
+        for (int i = 1; i < rows.size(); i++) {
+            int previous = ((Number) rows.get(i - 1).get("amount")).intValue();
+            int current = ((Number) rows.get(i).get("amount")).intValue();
+            assertEquals(true, previous <= current);
+        }
+        List<Object> ids = ids(target);
+        for (Map.Entry<String, Integer> entry : latestAmounts.entrySet()) {
+            Number amount = (Number) rows.get(ids.indexOf(entry.getKey())).get("amount");
+            assertEquals(entry.getValue().intValue(), amount.intValue());
+        }
+    }
+
+    protected Sorter createSorter(Model model, String sortAttribute, List<ComponentAttribSetting> attributeSettings) {
+        Flow flow = TestUtils.createFlow("TestFlow", null);
+        Component component = TestUtils.createComponent(Sorter.TYPE, false, null, model, null, null,
+                attributeSettings != null ? attributeSettings : new ArrayList<>(),
+                new Setting(Sorter.ROWS_PER_MESSAGE, "3"), new Setting(Sorter.SORT_ATTRIBUTE, sortAttribute));
+        FlowStep step = new FlowStep();
+        step.setComponent(component);
+        flow.getFlowSteps().add(step);
+        Sorter sorter = new Sorter();
+        sorter.setContext(new ComponentContext(null, step, flow, new ExecutionTrackerNoOp(), null, null, null));
+        sorter.start();
+        return sorter;
+    }
+
+    @SafeVarargs
+    protected final SendMessageCallback<ArrayList<EntityData>> sort(Sorter sorter, List<EntityData>... messages) {
+        SendMessageCallback<ArrayList<EntityData>> target = new SendMessageCallback<ArrayList<EntityData>>();
+        for (int i = 0; i < messages.length; i++) {
+            EntityDataMessage inputMessage = new EntityDataMessage("");
+            inputMessage.setPayload(new ArrayList<>(messages[i]));
+            sorter.handle(inputMessage, target, i == messages.length - 1);
+        }
+        sorter.stop();
+        return target;
+    }
+
+    protected static List<EntityData> rows(SendMessageCallback<ArrayList<EntityData>> target) {
+        List<EntityData> rows = new ArrayList<>();
+        for (ArrayList<EntityData> payload : target.getPayloadList()) {
+            rows.addAll(payload);
+        }
+        return rows;
+    }
+
+    protected static List<Object> ids(SendMessageCallback<ArrayList<EntityData>> target) {
+        List<Object> ids = new ArrayList<>();
+        for (EntityData data : rows(target)) {
+            ids.add(data.get("id"));
+        }
+        return ids;
+    }
+
+    protected static EntityData row(String id, Object amount) {
+        return new EntityData(new NameValue("id", id), new NameValue("amount", amount));
+    }
+
+    protected static EntityData row(String id, String region, Object amount) {
+        return new EntityData(new NameValue("id", id), new NameValue("region", region), new NameValue("amount", amount));
+    }
+
+    protected static Model createModel(boolean primaryKey) {
+        ModelEntity orders = new ModelEntity("orders", "ORDERS");
+        ModelAttrib id = new ModelAttrib("id", orders.getId(), "ID");
+        id.setDataType(DataType.VARCHAR);
+        id.setPk(primaryKey);
+        orders.addModelAttribute(id);
+        ModelAttrib region = new ModelAttrib("region", orders.getId(), "REGION");
+        region.setDataType(DataType.VARCHAR);
+        orders.addModelAttribute(region);
+        ModelAttrib amount = new ModelAttrib("amount", orders.getId(), "AMOUNT");
+        amount.setDataType(DataType.DECIMAL);
+        orders.addModelAttribute(amount);
+        Model model = new Model();
+        model.getModelEntities().add(orders);
+        return model;
+    }
+
+}
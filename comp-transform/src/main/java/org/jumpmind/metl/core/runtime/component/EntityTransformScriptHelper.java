@@ -0,0 +1,169 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.Message;
+
+/**
+ * Evaluates the transform expressions of all of the transformed attributes of
+ * one entity.  {@link #create(ComponentContext, ModelEntity, Model, List, List)}
+ * compiles the expressions into a single subclass with a method per
+ * attribute.  Expressions that are a call to a built in function are
+ * compiled to a {@link BuiltInExpression} instead.  The message and row are
+ * bound once per row and the attribute and value are bound before each
+ * expression is evaluated.
+ * <p>
+ * An instance is not thread safe. {@link #copy()} returns an instance of the
+ * same compiled class for another thread.  Copies share the component
+ * context, so expressions that keep state in it, like sequence(), must not
+ * be evaluated by more than one copy at a time.
+ */
+public class EntityTransformScriptHelper extends ModelAttributeScriptHelper implements Cloneable {
+
+    protected ModelAttrib[] attributes;
+
+    /* attributes that hold nested entities are transformed by the caller */
+    protected boolean[] nested;
+
+    /* the built in function of each attribute, if its expression is one */
+    protected BuiltInExpression.Function[] functions;
+
+    public EntityTransformScriptHelper(ComponentContext context, ModelEntity entity, Model model, ModelAttrib[] attributes) {
+        super(context, null, entity, model);
+        this.attributes = attributes;
+        this.nested = new boolean[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            DataType dataType = attributes[i].getDataType();
+            nested[i] = DataType.ARRAY.equals(dataType) || DataType.REF.equals(dataType);
+        }
+    }
+
+    /**
+     * @return the value of the transform expression of the attribute at the
+     *         index
+     */
+    protected Object eval(int index) {
+        return value;
+    }
+
+    /**
+     * Put the transformed value of each of the attributes into the outbound
+     * row, unless the expression removed it. An attribute that holds nested
+     * entities is skipped when it has a value.
+     */
+    public void transform(Message message, EntityData data, EntityData outData) {
+        this.message = message;
+        this.data = data;
+        for (int i = 0; i < attributes.length; i++) {
+            Object value = data.get(attributes[i].getId());
+            if (value != null && nested[i]) {
+                continue;
+            }
+            this.attribute = attributes[i];
+            this.value = value;
+            try {
+                value = functions != null && functions[i] != null ? functions[i].apply(this) : eval(i);
+            } catch (Exception e) {
+                throw new RuntimeException("Groovy script evaluation resulted in an exception.  Attribute ==> " + attribute.getName()
+                        + ".  Value ==> " + (value == null ? "null" : value.toString()) + ".  Payload ==>\n"
+                        + context.getFlowStep().getComponent().toRow(data, false, false), e);
+            }
+            if (value != REMOVE_ATTRIBUTE) {
+                outData.put(attribute.getId(), value);
+            }
+        }
+    }
+
+    public ModelAttrib[] getAttributes() {
+        return attributes;
+    }
+
+    public EntityTransformScriptHelper copy() {
+        try {
+            EntityTransformScriptHelper copy = (EntityTransformScriptHelper) clone();
+            copy.message = null;
+            copy.data = null;
+            copy.attribute = null;
+            copy.value = null;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static EntityTransformScriptHelper create(ComponentContext context, ModelEntity entity, Model model,
+            List<ModelAttrib> attributes, List<String> expressions) {
+        ModelAttrib[] attributeArray = attributes.toArray(new ModelAttrib[attributes.size()]);
+        BuiltInExpression.Function[] functions = new BuiltInExpression.Function[expressions.size()];
+        boolean scripted = false;
+        for (int i = 0; i < expressions.size(); i++) {
+            functions[i] = BuiltInExpression.compile(expressions.get(i));
+            scripted |= functions[i] == null;
+        }
+        if (!scripted) {
+            EntityTransformScriptHelper helper = new EntityTransformScriptHelper(context, entity, model, attributeArray);
+            helper.functions = functions;
+            return helper;
+        }
+
+        ScriptEngine engine = getScriptEngine();
+        engine.put("entity", entity);
+        engine.put("model", model);
+        engine.put("attributes", attributeArray);
+        engine.put("context", context);
+
+        StringBuilder code = new StringBuilder("import org.jumpmind.metl.core.runtime.component.EntityTransformScriptHelper;\n");
+        code.append("return new EntityTransformScriptHelper(context, entity, model, attributes) {\n");
+        code.append("  protected Object eval(int index) {\n    switch (index) {\n");
+        for (int i = 0; i < expressions.size(); i++) {
+            if (functions[i] == null) {
+                code.append("      case ").append(i).append(": return __transform").append(i).append("()\n");
+            }
+        }
+        code.append("    }\n    return value\n  }\n");
+        for (int i = 0; i < expressions.size(); i++) {
+            if (functions[i] == null) {
+                code.append("  Object __transform").append(i).append("() {\n").append(expressions.get(i)).append("\n  }\n");
+            }
+        }
+        code.append("}");
+
+        try {
+            EntityTransformScriptHelper helper = (EntityTransformScriptHelper) engine.eval(code.toString());
+            helper.functions = functions;
+            return helper;
+        } catch (ScriptException e) {
+            throw new RuntimeException("Unable to evaluate groovy script.  Entity ==> " + entity.getName() + "."
+                    + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()), e);
+        }
+    }
+
+}
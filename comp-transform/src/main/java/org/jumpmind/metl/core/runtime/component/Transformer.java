@@ -24,15 +24,14 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
-import javax.script.ScriptException;
-
-import org.apache.commons.collections.CollectionUtils;
-import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 import org.jumpmind.metl.core.model.ComponentAttribSetting;
 import org.jumpmind.metl.core.model.DataType;
 import org.jumpmind.metl.core.model.Model;
@@ -43,6 +42,7 @@ import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+import org.jumpmind.metl.core.util.ThreadUtils;
 
 public class Transformer extends AbstractComponentRuntime {
 
@@ -52,18 +52,34 @@ public class Transformer extends AbstractComponentRuntime {
     
     public static String PASS_ALONG_CONTROL_MESSAGES = "pass.along.control.messages";
 
+    public static String TRANSFORM_IN_PARALLEL = "transform.in.parallel";
+
+    /*
+     * expressions that keep state in the component context or the message
+     * header depend on the order rows are evaluated in
+     */
+    static final Pattern STATEFUL_EXPRESSION = Pattern.compile("\\b(sequence|nextLongValueInMessage)\\s*\\(|\\bcontext\\b");
+
     Map<String, String> transformsByAttributeId = new HashMap<String, String>();
-    
-    GroovyScriptEngineImpl scriptEngine;
-    
-    Map<String, ModelAttributeScriptHelper> helpers = new HashMap<>();
-       
-    long totalTime = 0;
-    long totalCalls = 0;
+
+    /* how each attribute of the input model is handled, by attribute id */
+    Map<String, AttributeTransform> attributeTransforms = new HashMap<>();
+
+    /* the entities of the input model that have transformed attributes */
+    List<EntityTransform> entityTransforms = new ArrayList<>();
+
+    /* the compiled helper of each entity transform, compiled when first needed */
+    EntityTransformScriptHelper[] helpers;
+
+    boolean transformInParallel;
+
+    ExecutorService transformThreads;
     
     @Override
     public void start() {
         transformsByAttributeId.clear();
+        attributeTransforms.clear();
+        entityTransforms.clear();
         
         List<ComponentAttribSetting> settings = getComponent().getAttributeSettings();
         for (ComponentAttribSetting setting : settings) {
@@ -73,6 +89,53 @@ public class Transformer extends AbstractComponentRuntime {
                 }
             }
         }     
+
+        Model inputModel = getInputModel();
+        if (inputModel != null) {
+            for (ModelEntity entity : inputModel.getModelEntities()) {
+                EntityTransform entityTransform = new EntityTransform(entity, entityTransforms.size());
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    String transform = transformsByAttributeId.get(attribute.getId());
+                    if (isNotBlank(transform)) {
+                        entityTransform.attributes.add(attribute);
+                        entityTransform.expressions.add(transform);
+                    }
+                }
+                boolean transformed = entityTransform.attributes.size() > 0;
+                if (transformed) {
+                    entityTransforms.add(entityTransform);
+                }
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    attributeTransforms.put(attribute.getId(), new AttributeTransform(attribute,
+                            transformed ? entityTransform.index : -1, transformsByAttributeId.containsKey(attribute.getId())));
+                }
+            }
+        }
+        helpers = new EntityTransformScriptHelper[entityTransforms.size()];
+        transformInParallel = properties.is(TRANSFORM_IN_PARALLEL, false);
+        if (transformInParallel) {
+            for (String transform : transformsByAttributeId.values()) {
+                if (STATEFUL_EXPRESSION.matcher(transform).find()) {
+                    log.info("Rows are transformed one at a time because the expression '{}' depends on the order of the rows",
+                            transform);
+                    transformInParallel = false;
+                    break;
+                }
+            }
+        }
+        if (transformInParallel && transformThreads == null) {
+            int threadCount = Runtime.getRuntime().availableProcessors();
+            transformThreads = ThreadUtils.createFixedThreadPool(getFlowStep().getName() + "-transform", threadCount, threadCount);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (transformThreads != null) {
+            transformThreads.shutdownNow();
+            transformThreads = null;
+        }
+        super.stop();
     }
     
     @Override
@@ -80,129 +143,166 @@ public class Transformer extends AbstractComponentRuntime {
         return false;
     }   
     
-    protected Set<String> getAllAttributesForIncludedEntities(EntityData data) {
-        Set<String> allAttributesForIncludedEntities = new HashSet<>();
-        Model inputModel = getComponent().getInputModel();
-        Set<String> attributeIds = data.keySet();
-        for (String attributeId : attributeIds) {
-            ModelAttrib attribute = inputModel.getAttributeById(attributeId);
-            if (attribute != null) {
-                ModelEntity entity = inputModel.getEntityById(attribute.getEntityId());
-                List<ModelAttrib> attributes = entity.getModelAttributes();
-                for (ModelAttrib modelAttribute : attributes) {
-                    allAttributesForIncludedEntities.add(modelAttribute.getId());
-                }
-            } else {
-                log.warn("Found an attribute that wasn't in the configured model.  The attribute id was: {}", attributeId);
-            }
-        }
-        return allAttributesForIncludedEntities;
-    }
-
     @Override
 	public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
-        if (scriptEngine == null) {
-            scriptEngine = new GroovyScriptEngineImpl();
-        }
-        totalTime = 0;
 		if (inputMessage instanceof EntityDataMessage) {
-			Model inputModel = getComponent().getInputModel();
 			List<EntityData> inDatas = ((EntityDataMessage)inputMessage).getPayload();
-			ArrayList<EntityData> outDatas = new ArrayList<EntityData>(inDatas != null ? inDatas.size() : 0);
+			ArrayList<EntityData> outDatas = null;
 
-			if (inDatas != null) {
-				for (EntityData inData : inDatas) {
-					outDatas.add(processEntity(inData, inputMessage, inputModel, true));
-				}
+			if (inDatas != null && transformInParallel && inDatas.size() > 1) {
+			    outDatas = processInParallel(inDatas, inputMessage);
+			} else {
+			    outDatas = new ArrayList<EntityData>(inDatas != null ? inDatas.size() : 0);
+			    if (inDatas != null) {
+			        for (EntityData inData : inDatas) {
+			            outDatas.add(processEntity(inData, inputMessage, helpers));
+			        }
+			    }
 			}
 			callback.sendEntityDataMessage(null, outDatas);
-			
-			if (totalCalls > 0) {
-			   log.debug("It took " + (totalTime/totalCalls) + "ms on average to call eval");
-			}
-						
 		} else if (inputMessage instanceof ControlMessage && properties.is(PASS_ALONG_CONTROL_MESSAGES, false)) {
 		        callback.sendControlMessage();
 		}
 	}
-    
-    @SuppressWarnings("unchecked")
-    protected EntityData processEntity(EntityData inData, Message inputMessage, Model inputModel,
-    		boolean isRoot) {
-
-    		EntityData outData = new EntityData();
-		outData.setChangeType(inData.getChangeType());
-		Set<String> attributeIds = new HashSet<String>();
-		attributeIds.addAll(inData.keySet());					
-		attributeIds.addAll(CollectionUtils.intersection(getAllAttributesForIncludedEntities(inData), transformsByAttributeId.keySet()));		
-		for (String attributeId : attributeIds) {
-			processAttribute(attributeId, inData, outData, inputMessage, inputModel);
-		}
-		getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
 
-		return outData;
+    /*
+     * Rows whose expressions keep no state are independent of each other, so
+     * they can be split across the step's own transform threads.  Each part
+     * gets its own copies of the compiled helpers because a helper holds the
+     * row it is evaluating.  The outbound rows keep the order of the inbound
+     * rows.
+     */
+    protected ArrayList<EntityData> processInParallel(List<EntityData> inDatas, Message inputMessage) {
+        for (EntityTransform entityTransform : entityTransforms) {
+            getHelper(entityTransform, helpers);
+        }
+        EntityData[] outDatas = new EntityData[inDatas.size()];
+        int parts = Math.min(Runtime.getRuntime().availableProcessors(), outDatas.length);
+        List<Callable<Void>> tasks = new ArrayList<>(parts);
+        for (int p = 0; p < parts; p++) {
+            final int part = p;
+            tasks.add(() -> {
+                EntityTransformScriptHelper[] partHelpers = new EntityTransformScriptHelper[helpers.length];
+                for (int i = 0; i < helpers.length; i++) {
+                    partHelpers[i] = helpers[i].copy();
+                }
+                for (int i = part; i < outDatas.length; i += parts) {
+                    outDatas[i] = processEntity(inDatas.get(i), inputMessage, partHelpers);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : transformThreads.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        ArrayList<EntityData> list = new ArrayList<>(outDatas.length);
+        for (EntityData outData : outDatas) {
+            list.add(outData);
+        }
+        return list;
     }
 
-    protected ArrayList<EntityData> processEntityArray(ArrayList<EntityData> inDatas, Message inputMessage, Model inputModel,
-            boolean isRoot) {
+    /*
+     * Attributes that are not transformed are copied and then each entity
+     * with a value in the row evaluates all of its transforms at once
+     */
+    @SuppressWarnings("unchecked")
+    protected EntityData processEntity(EntityData inData, Message inputMessage, EntityTransformScriptHelper[] helpers) {
+        EntityData outData = new EntityData(inData.getSchema());
+        outData.setChangeType(inData.getChangeType());
+        boolean[] includedEntities = new boolean[helpers.length];
+        for (Map.Entry<String, Object> entry : inData.entrySet()) {
+            String attributeId = entry.getKey();
+            Object value = entry.getValue();
+            AttributeTransform attributeTransform = attributeTransforms.get(attributeId);
+            if (attributeTransform == null) {
+                log.warn("Found an attribute that wasn't in the configured model.  The attribute id was: {}", attributeId);
+                outData.put(attributeId, value);
+                continue;
+            }
+            if (attributeTransform.entityIndex >= 0) {
+                includedEntities[attributeTransform.entityIndex] = true;
+            }
+            if (value != null && attributeTransform.array) {
+                outData.put(attributeId, processEntityArray((ArrayList<EntityData>) value, inputMessage, helpers));
+            } else if (value != null && attributeTransform.ref) {
+                outData.put(attributeId, processEntity((EntityData) value, inputMessage, helpers));
+            } else if (!attributeTransform.transformed) {
+                outData.put(attributeId, value);
+            }
+        }
+        for (int i = 0; i < includedEntities.length; i++) {
+            if (includedEntities[i]) {
+                getHelper(entityTransforms.get(i), helpers).transform(inputMessage, inData, outData);
+            }
+        }
+        getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
+        return outData;
+    }
 
+    protected ArrayList<EntityData> processEntityArray(ArrayList<EntityData> inDatas, Message inputMessage,
+            EntityTransformScriptHelper[] helpers) {
         ArrayList<EntityData> outDatas = new ArrayList<EntityData>();
         for (EntityData inData:inDatas) {
-            outDatas.add(processEntity(inData, inputMessage, inputModel, isRoot));
+            outDatas.add(processEntity(inData, inputMessage, helpers));
         }
         return outDatas;
     }    
 
-    @SuppressWarnings("unchecked")
-    protected void processAttribute(String attributeId, EntityData inData, EntityData outData, Message inputMessage, Model inputModel) {
-        String transform = transformsByAttributeId.get(attributeId);
-        Object value = inData.get(attributeId);
-        ModelAttrib attribute = inputModel.getAttributeById(attributeId);
-
-        if (value != null && attribute.getDataType().equals(DataType.ARRAY)) {
-            outData.put(attributeId, processEntityArray((ArrayList<EntityData>) value, inputMessage, inputModel, false));
-        } else if (value != null && attribute.getDataType().equals(DataType.REF)) {
-            outData.put(attributeId, processEntity((EntityData) value, inputMessage, inputModel, false));
-        } else {
-            if (isNotBlank(transform)) {
-                ModelEntity entity = inputModel.getEntityById(attribute.getEntityId());
-                ModelAttributeScriptHelper helper = helpers.get(attribute.getId());
-                if (helper == null) {
-                    long ts = System.currentTimeMillis();
-                    scriptEngine.put("entity", entity);
-                    scriptEngine.put("attribute", attribute);
-                    scriptEngine.put("context", context);
-                    scriptEngine.put("model", getInputModel());
-                    try {
-                        String importString = "import org.jumpmind.metl.core.runtime.component.ModelAttributeScriptHelper;\n";
-                        String code = String.format(
-                                "return new ModelAttributeScriptHelper(context, attribute, entity, model) { public Object eval() { %s \n } }",
-                                transform);
-                        helper = (ModelAttributeScriptHelper) scriptEngine.eval(importString + code);
-                        helpers.put(attribute.getId(), helper);
-                    } catch (ScriptException e) {
-                        throw new RuntimeException("Unable to evaluate groovy script.  Attribute ==> " + attribute.getName() + ".  Value ==> "
-                                + (value == null ? "null" : value.toString()) + "." + e.getCause().getMessage(), e);
-                    }
-                    log.debug("It took " + (System.currentTimeMillis() - ts) + "ms to create class");
-                }
-                helper.setData(inData);
-                helper.setValue(value);
-                helper.setMessage(inputMessage);
-                long ts = System.currentTimeMillis();
-                try {
-                    value = helper.eval();
-                } catch (Exception e) {
-                    throw new RuntimeException("Groovy script evaluation resulted in an exception.  Attribute ==> " + attribute.getName()
-                            + ".  Value ==> " + (value == null ? "null" : value.toString()) + ".  Payload ==>\n"
-                            + getComponent().toRow(inData, false, false), e);
-                }
-                totalTime += (System.currentTimeMillis() - ts);
-                totalCalls++;
-            }
-            if (value != ModelAttributeScriptHelper.REMOVE_ATTRIBUTE) {
-                outData.put(attributeId, value);
-            }
+    protected EntityTransformScriptHelper getHelper(EntityTransform entityTransform, EntityTransformScriptHelper[] helpers) {
+        EntityTransformScriptHelper helper = helpers[entityTransform.index];
+        if (helper == null) {
+            long ts = System.currentTimeMillis();
+            helper = EntityTransformScriptHelper.create(context, entityTransform.entity, getInputModel(),
+                    entityTransform.attributes, entityTransform.expressions);
+            helpers[entityTransform.index] = helper;
+            log.debug("It took " + (System.currentTimeMillis() - ts) + "ms to create class");
+        }
+        return helper;
+    }
+
+    static class EntityTransform {
+
+        ModelEntity entity;
+
+        int index;
+
+        List<ModelAttrib> attributes = new ArrayList<>();
+
+        List<String> expressions = new ArrayList<>();
+
+        EntityTransform(ModelEntity entity, int index) {
+            this.entity = entity;
+            this.index = index;
+        }
+    }
+
+    static class AttributeTransform {
+
+        int entityIndex;
+
+        boolean transformed;
+
+        boolean array;
+
+        boolean ref;
+
+        AttributeTransform(ModelAttrib attribute, int entityIndex, boolean transformed) {
+            this.entityIndex = entityIndex;
+            this.transformed = transformed;
+            this.array = DataType.ARRAY.equals(attribute.getDataType());
+            this.ref = DataType.REF.equals(attribute.getDataType());
         }
     }
 }
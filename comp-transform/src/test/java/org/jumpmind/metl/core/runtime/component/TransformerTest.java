@@ -0,0 +1,189 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.ComponentAttribSetting;
+import org.jumpmind.metl.core.model.DataType;
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.ExecutionTrackerNoOp;
+import org.jumpmind.metl.core.util.NameValue;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+public class TransformerTest {
+
+    Transformer transformer;
+
+    @After
+    public void tearDown() {
+        if (transformer != null) {
+            transformer.stop();
+        }
+    }
+
+    @Test
+    public void testTransformsAreCompiledIntoOneClassPerEntity() {
+        List<ComponentAttribSetting> transforms = new ArrayList<>();
+        transforms.add(new ComponentAttribSetting("label", Transformer.TRANSFORM_EXPRESSION, "getAttributeValueByName('ID') + '-' + value"));
+        transforms.add(new ComponentAttribSetting("region", Transformer.TRANSFORM_EXPRESSION, "upper()"));
+        transformer = createTransformer(transforms, false);
+
+        List<EntityData> rows = transform(row("o1", "east", "a"), row("o2", null, "b"));
+        assertEquals("o1-a", rows.get(0).get("label"));
+        assertEquals("EAST", rows.get(0).get("region"));
+        assertEquals("o2-b", rows.get(1).get("label"));
+        assertNull(rows.get(1).get("region"));
+        assertEquals("o1", rows.get(0).get("id"));
+
+        EntityTransformScriptHelper helper = transformer.helpers[0];
+        assertNotNull(helper);
+        assertTrue(helper.getClass() != EntityTransformScriptHelper.class);
+        assertEquals(2, helper.getAttributes().length);
+
+        rows = transform(row("o3", "west", "c"));
+        assertEquals("o3-c", rows.get(0).get("label"));
+        assertSame(helper, transformer.helpers[0]);
+    }
+
+    @Test
+    public void testBuiltInTransformsAreNotScripted() {
+        List<ComponentAttribSetting> transforms = new ArrayList<>();
+        transforms.add(new ComponentAttribSetting("region", Transformer.TRANSFORM_EXPRESSION, "upper()"));
+        transformer = createTransformer(transforms, false);
+
+        List<EntityData> rows = transform(row("o1", "east", "a"));
+        assertEquals("EAST", rows.get(0).get("region"));
+        assertEquals("a", rows.get(0).get("label"));
+        assertSame(EntityTransformScriptHelper.class, transformer.helpers[0].getClass());
+    }
+
+    @Test
+    public void testRowsAreTransformedInParallelInOrder() {
+        List<ComponentAttribSetting> transforms = new ArrayList<>();
+        transforms.add(new ComponentAttribSetting("label", Transformer.TRANSFORM_EXPRESSION, "Thread.currentThread().getName()"));
+        transforms.add(new ComponentAttribSetting("region", Transformer.TRANSFORM_EXPRESSION, "getAttributeValueByName('ID') + value"));
+        transformer = createTransformer(transforms, true);
+        assertTrue(transformer.transformInParallel);
+        assertNotNull(transformer.transformThreads);
+
+        EntityData[] inDatas = new EntityData[1000];
+        for (int i = 0; i < inDatas.length; i++) {
+            inDatas[i] = row("o" + i, "-r", null);
+        }
+        List<EntityData> rows = transform(inDatas);
+        assertEquals(inDatas.length, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals("o" + i, rows.get(i).get("id"));
+            assertEquals("o" + i + "-r", rows.get(i).get("region"));
+            assertTrue(((String) rows.get(i).get("label")).startsWith("Transformer-transform-"));
+        }
+
+        transformer.stop();
+        assertNull(transformer.transformThreads);
+        transformer = null;
+    }
+
+    @Test
+    public void testSequenceIsNotTransformedInParallel() {
+        List<ComponentAttribSetting> transforms = new ArrayList<>();
+        transforms.add(new ComponentAttribSetting("label", Transformer.TRANSFORM_EXPRESSION, "sequence(1, 1, 'REGION')"));
+        transformer = createTransformer(transforms, true);
+        assertFalse(transformer.transformInParallel);
+        assertNull(transformer.transformThreads);
+
+        EntityData[] inDatas = new EntityData[100];
+        for (int i = 0; i < inDatas.length; i++) {
+            inDatas[i] = row("o" + i, "east", null);
+        }
+        List<EntityData> rows = transform(inDatas);
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(Long.valueOf(i + 1), rows.get(i).get("label"));
+        }
+    }
+
+    protected Transformer createTransformer(List<ComponentAttribSetting> transforms, boolean inParallel) {
+        Model model = createModel();
+        Flow flow = TestUtils.createFlow("TestFlow", null);
+        Component component = TestUtils.createComponent(Transformer.TYPE, false, null, model, model, null, transforms,
+                new Setting(Transformer.TRANSFORM_IN_PARALLEL, Boolean.toString(inParallel)));
+        FlowStep step = new FlowStep();
+        step.setComponent(component);
+        step.setName("Transformer");
+        flow.getFlowSteps().add(step);
+        Transformer transformer = new Transformer();
+        transformer.create(null, new ComponentContext(null, step, flow, new ExecutionTrackerNoOp(), null, null, null), 1);
+        transformer.start();
+        return transformer;
+    }
+
+    protected List<EntityData> transform(EntityData... rows) {
+        SendMessageCallback<ArrayList<EntityData>> target = new SendMessageCallback<ArrayList<EntityData>>();
+        EntityDataMessage inputMessage = new EntityDataMessage("");
+        ArrayList<EntityData> payload = new ArrayList<>();
+        for (EntityData row : rows) {
+            payload.add(row);
+        }
+        inputMessage.setPayload(payload);
+        transformer.handle(inputMessage, target, true);
+        assertEquals(1, target.getPayloadList().size());
+        return target.getPayloadList().get(0);
+    }
+
+    protected static EntityData row(String id, String region, String label) {
+        return new EntityData(new NameValue("id", id), new NameValue("region", region), new NameValue("label", label));
+    }
+
+    protected static Model createModel() {
+        ModelEntity orders = new ModelEntity("orders", "ORDERS");
+        ModelAttrib id = new ModelAttrib("id", orders.getId(), "ID");
+        id.setDataType(DataType.VARCHAR);
+        orders.addModelAttribute(id);
+        ModelAttrib region = new ModelAttrib("region", orders.getId(), "REGION");
+        region.setDataType(DataType.VARCHAR);
+        orders.addModelAttribute(region);
+        ModelAttrib label = new ModelAttrib("label", orders.getId(), "LABEL");
+        label.setDataType(DataType.VARCHAR);
+        orders.addModelAttribute(label);
+        Model model = new Model();
+        model.getModelEntities().add(orders);
+        return model;
+    }
+
+}
@@ -25,6 +25,8 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
 
+import org.apache.commons.io.FileUtils;
+
 public class ExecutionStep extends AbstractObject {
 
     private static final long serialVersionUID = 1L;
@@ -59,6 +61,10 @@ public class ExecutionStep extends AbstractObject {
     
     private long queueDuration = 0;
 
+    private long reservedMemory = 0;
+
+    private long usedMemory = 0;
+
     public long getHandleDuration() {
         return handleDuration;
     }
@@ -197,4 +203,28 @@ public class ExecutionStep extends AbstractObject {
         return queueDuration;
     }
 
+    public void setReservedMemory(long reservedMemory) {
+        this.reservedMemory = reservedMemory;
+    }
+
+    public long getReservedMemory() {
+        return reservedMemory;
+    }
+
+    public String getReservedMemoryString() {
+        return FileUtils.byteCountToDisplaySize(reservedMemory);
+    }
+
+    public void setUsedMemory(long usedMemory) {
+        this.usedMemory = usedMemory;
+    }
+
+    public long getUsedMemory() {
+        return usedMemory;
+    }
+
+    public String getUsedMemoryString() {
+        return FileUtils.byteCountToDisplaySize(usedMemory);
+    }
+
 }
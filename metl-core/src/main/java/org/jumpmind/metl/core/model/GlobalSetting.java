@@ -47,6 +47,41 @@ public class GlobalSetting extends Setting {
     
     public static final int DEFAULT_AUDIT_EVENT_RETENTION_IN_DAYS = 30;
 
+    public static final String EXECUTION_LOG_QUEUE_BUDGET_BYTES = "execution.log.queue.budget.bytes";
+    public static final String EXECUTION_LOG_FLUSH_BYTES = "execution.log.flush.bytes";
+    public static final String EXECUTION_LOG_FLUSH_INTERVAL_MS = "execution.log.flush.interval.ms";
+
+    public static final long DEFAULT_EXECUTION_LOG_QUEUE_BUDGET_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_EXECUTION_LOG_FLUSH_BYTES = 64 * 1024;
+    public static final long DEFAULT_EXECUTION_LOG_FLUSH_INTERVAL_MS = 1000;
+
+    public static final String EXECUTION_TRACKING_LEVEL = "execution.tracking.level";
+    public static final String EXECUTION_TRACKING_SAMPLE_INTERVAL = "execution.tracking.sample.interval";
+
+    public static final String DEFAULT_EXECUTION_TRACKING_LEVEL = "LEAN";
+    public static final int DEFAULT_EXECUTION_TRACKING_SAMPLE_INTERVAL = 100;
+
+    public static final String STEP_SCHEDULER_ENABLED = "step.scheduler.enabled";
+    public static final String STEP_SCHEDULER_PARALLELISM = "step.scheduler.parallelism";
+
+    public static final boolean DEFAULT_STEP_SCHEDULER_ENABLED = false;
+
+    public static final String FLOW_RUNTIME_POOL_SIZE = "flow.runtime.pool.size";
+
+    public static final int DEFAULT_FLOW_RUNTIME_POOL_SIZE = 0;
+
+    public static final String FLOW_QUEUE_MEMORY_MB = "flow.queue.memory.mb";
+
+    public static final int DEFAULT_FLOW_QUEUE_MEMORY_MB = 512;
+
+    public static final String AGENT_MEMORY_BUDGET_MB = "agent.memory.budget.mb";
+
+    public static final int DEFAULT_AGENT_MEMORY_BUDGET_MB = 0;
+
+    public static final String STEP_FUSION_ENABLED = "step.fusion.enabled";
+
+    public static final boolean DEFAULT_STEP_FUSION_ENABLED = false;
+
     public final static String LDAP_HOST = "console.auth.ldap.host";
     public final static String LDAP_BASE_DN = "console.auth.ldap.baseDN";
     public final static String LDAP_SEARCH_ATR = "console.auth.ldap.searchAttribute";
@@ -60,6 +60,8 @@ public class Model extends AbstractNamedObject implements IAuditable {
 
     boolean deleted = false;
 
+    transient volatile ModelIndex index;
+
     public Model() {
         this.modelEntities = new ArrayList<ModelEntity>();
         this.modelRelations = new ArrayList<ModelRelation>();
@@ -116,40 +118,151 @@ public class Model extends AbstractNamedObject implements IAuditable {
 		this.type = type;
 	}
 
-	public ModelEntity getEntityById(String entityId) {
-        for (ModelEntity entity : modelEntities) {
-            if (entity.getId().equalsIgnoreCase(entityId)) {
-                return entity;
+    public ModelEntity getEntityById(String entityId) {
+        if (entityId == null) {
+            return null;
+        }
+        ModelIndex index = getIndex();
+        ModelEntity entity = index.getEntityById(entityId);
+        if (entity == null && !index.isMiss("entityById", entityId)) {
+            entity = findEntityById(entityId);
+            if (entity != null) {
+                invalidateIndex();
+            } else {
+                index.addMiss("entityById", entityId);
             }
         }
-        return null;
+        return entity;
     }
 
     public ModelEntity getEntityByName(String entityName) {
+        if (entityName == null) {
+            return null;
+        }
+        ModelIndex index = getIndex();
+        ModelEntity indexed = index.getEntityByName(entityName);
+        if (indexed != null && entityName.equalsIgnoreCase(indexed.getName())) {
+            return indexed;
+        } else if (indexed == null && index.isMiss("entityByName", entityName)) {
+            return null;
+        }
+        ModelEntity entity = findEntityByName(entityName);
+        if (indexed != null || entity != null) {
+            invalidateIndex();
+        } else {
+            index.addMiss("entityByName", entityName);
+        }
+        return entity;
+    }
+
+    public ModelAttrib getAttributeById(String attributeId) {
+        if (attributeId == null) {
+            return null;
+        }
+        ModelIndex index = getIndex();
+        ModelAttrib attribute = index.getAttributeById(attributeId);
+        if (attribute == null && !index.isMiss("attributeById", attributeId)) {
+            attribute = findAttributeById(attributeId);
+            if (attribute != null) {
+                invalidateIndex();
+            } else {
+                index.addMiss("attributeById", attributeId);
+            }
+        }
+        return attribute;
+    }
+
+    public ModelAttrib getAttributeByName(String entityName, String attributeName) {
+        if (entityName == null || attributeName == null) {
+            return null;
+        }
+        ModelIndex index = getIndex();
+        ModelAttrib indexed = index.getAttributeByName(entityName, attributeName);
+        if (indexed != null && attributeName.equalsIgnoreCase(indexed.getName())) {
+            ModelEntity entity = getEntityById(indexed.getEntityId());
+            if (entity != null && entityName.equalsIgnoreCase(entity.getName())) {
+                return indexed;
+            }
+        } else if (indexed == null && index.isMiss("attributeByName", entityName, attributeName)) {
+            return null;
+        }
+        ModelEntity entity = findEntityByName(entityName);
+        ModelAttrib attribute = entity != null ? entity.findModelAttributeByName(attributeName) : null;
+        if (indexed != null || attribute != null) {
+            invalidateIndex();
+        } else {
+            index.addMiss("attributeByName", entityName, attributeName);
+        }
+        return attribute;
+    }
+
+    public List<ModelAttrib> getAttributesByName(String attributeName) {
+        if (attributeName == null) {
+            return new ArrayList<ModelAttrib>();
+        }
+        ModelIndex index = getIndex();
+        List<ModelAttrib> indexed = index.getAttributesByName(attributeName);
+        boolean current = !indexed.isEmpty();
+        for (ModelAttrib attribute : indexed) {
+            current &= attributeName.equalsIgnoreCase(attribute.getName());
+        }
+        if (current) {
+            return new ArrayList<ModelAttrib>(indexed);
+        } else if (indexed.isEmpty() && index.isMiss("attributesByName", attributeName)) {
+            return new ArrayList<ModelAttrib>();
+        }
+        List<ModelAttrib> attributes = findAttributesByName(attributeName);
+        if (!indexed.isEmpty() || !attributes.isEmpty()) {
+            invalidateIndex();
+        } else {
+            index.addMiss("attributesByName", attributeName);
+        }
+        return attributes;
+    }
+
+    /**
+     * Discard the lookup index so it is rebuilt from the current entities and
+     * attributes on the next lookup. A lookup that hits a renamed entry or
+     * misses for the first time falls back to scanning the model. Repeated
+     * misses are answered by the index, so entities or attributes that are
+     * added, renamed or removed in place are only seen reliably after the
+     * index is invalidated.
+     */
+    public void invalidateIndex() {
+        this.index = null;
+    }
+
+    ModelIndex getIndex() {
+        ModelIndex index = this.index;
+        if (index == null) {
+            index = new ModelIndex(modelEntities);
+            this.index = index;
+        }
+        return index;
+    }
+
+    protected ModelEntity findEntityById(String entityId) {
         for (ModelEntity entity : modelEntities) {
-            if (entity.getName().equalsIgnoreCase(entityName)) {
+            if (entity.getId().equalsIgnoreCase(entityId)) {
                 return entity;
             }
         }
         return null;
     }
 
-    public ModelAttrib getAttributeById(String attributeId) {
+    protected ModelEntity findEntityByName(String entityName) {
         for (ModelEntity entity : modelEntities) {
-            for (ModelAttrib modelAttribute : entity.getModelAttributes()) {
-                if (modelAttribute.getId().equalsIgnoreCase(attributeId)) {
-                    return modelAttribute;
-                }
+            if (entity.getName().equalsIgnoreCase(entityName)) {
+                return entity;
             }
         }
         return null;
     }
 
-    public ModelAttrib getAttributeByName(String entityName, String attributeName) {
-        ModelEntity entity = getEntityByName(entityName);
-        if (entity != null) {
+    protected ModelAttrib findAttributeById(String attributeId) {
+        for (ModelEntity entity : modelEntities) {
             for (ModelAttrib modelAttribute : entity.getModelAttributes()) {
-                if (modelAttribute.getName().equalsIgnoreCase(attributeName)) {
+                if (modelAttribute.getId().equalsIgnoreCase(attributeId)) {
                     return modelAttribute;
                 }
             }
@@ -157,7 +270,7 @@ public class Model extends AbstractNamedObject implements IAuditable {
         return null;
     }
 
-    public List<ModelAttrib> getAttributesByName(String attributeName) {
+    protected List<ModelAttrib> findAttributesByName(String attributeName) {
         List<ModelAttrib> attributes = new ArrayList<ModelAttrib>();
         for (ModelEntity entity : modelEntities) {
             for (ModelAttrib modelAttribute : entity.getModelAttributes()) {
@@ -175,6 +288,7 @@ public class Model extends AbstractNamedObject implements IAuditable {
 
     public void setModelEntities(List<ModelEntity> modelEntities) {
         this.modelEntities = modelEntities;
+        invalidateIndex();
     }
     
     public List<ModelRelation> getModelRelations() {
@@ -277,6 +391,23 @@ public class Model extends AbstractNamedObject implements IAuditable {
     }
     
     public ModelAttrib getModelAttribByTypeEntityId(String typeEntityId) {
+        ModelIndex index = getIndex();
+        ModelAttrib indexed = index.getAttributeByTypeEntityId(typeEntityId);
+        if (indexed != null && typeEntityId.equalsIgnoreCase(indexed.getTypeEntityId())) {
+            return indexed;
+        } else if (indexed == null && index.isMiss("attributeByTypeEntityId", typeEntityId)) {
+            return null;
+        }
+        ModelAttrib attribute = findModelAttribByTypeEntityId(typeEntityId);
+        if (indexed != null || attribute != null) {
+            invalidateIndex();
+        } else {
+            index.addMiss("attributeByTypeEntityId", typeEntityId);
+        }
+        return attribute;
+    }
+
+    protected ModelAttrib findModelAttribByTypeEntityId(String typeEntityId) {
         for (ModelEntity entity:this.getModelEntities()) {
             for (ModelAttrib attrib : entity.getModelAttributes()) {
                 if (typeEntityId.equalsIgnoreCase(attrib.getTypeEntityId())) {
@@ -21,7 +21,9 @@
 package org.jumpmind.metl.core.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ModelEntity extends AbstractNamedObject implements IAuditable, Comparable<ModelEntity> {
 
@@ -35,6 +37,8 @@ public class ModelEntity extends AbstractNamedObject implements IAuditable, Comp
     
     String description;
 
+    transient volatile Map<String, ModelAttrib> attributesByName;
+
     public ModelEntity() {
         modelAttributes = new ArrayList<ModelAttrib>();
     }
@@ -51,18 +55,44 @@ public class ModelEntity extends AbstractNamedObject implements IAuditable, Comp
 
     public void setModelAttributes(List<ModelAttrib> modelAttributes) {
         this.modelAttributes = modelAttributes;
+        this.attributesByName = null;
     }
 
     public void addModelAttribute(ModelAttrib modelAttribute) {
         modelAttribute.setAttributeOrder(modelAttributes.size());
         this.modelAttributes.add(modelAttribute);
+        this.attributesByName = null;
     }
 
     public void removeModelAttribute(ModelAttrib modelAttribute) {
         this.modelAttributes.remove(modelAttribute);
+        this.attributesByName = null;
     }
 
     public ModelAttrib getModelAttributeByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        Map<String, ModelAttrib> attributesByName = this.attributesByName;
+        if (attributesByName == null) {
+            attributesByName = new HashMap<String, ModelAttrib>();
+            for (ModelAttrib modelAttribute : modelAttributes) {
+                ModelIndex.putFirst(attributesByName, modelAttribute.getName(), modelAttribute);
+            }
+            this.attributesByName = attributesByName;
+        }
+        ModelAttrib indexed = attributesByName.get(ModelIndex.key(name));
+        if (indexed != null && name.equalsIgnoreCase(indexed.getName())) {
+            return indexed;
+        }
+        ModelAttrib attribute = findModelAttributeByName(name);
+        if (indexed != null || attribute != null) {
+            this.attributesByName = null;
+        }
+        return attribute;
+    }
+
+    protected ModelAttrib findModelAttributeByName(String name) {
         for (ModelAttrib modelAttribute : modelAttributes) {
             if (modelAttribute.getName().equalsIgnoreCase(name)) {
                 return modelAttribute;
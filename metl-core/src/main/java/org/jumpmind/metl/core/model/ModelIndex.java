@@ -0,0 +1,146 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable lookup tables for the entities and attributes of a {@link Model}.
+ * Keys are lower cased so lookups keep the case insensitive semantics of the
+ * linear scans they replace. When more than one entity or attribute matches a
+ * key, the first one in model order wins, just as it did with the scans.
+ * <p>
+ * Keys that were looked up and not found in the model are remembered so a
+ * repeated miss does not scan the model again.
+ */
+final class ModelIndex {
+
+    final Map<String, ModelEntity> entitiesById;
+
+    final Map<String, ModelEntity> entitiesByName;
+
+    final Map<String, ModelAttrib> attributesById;
+
+    final Map<String, List<ModelAttrib>> attributesByName;
+
+    final Map<String, Map<String, ModelAttrib>> attributesByEntityName;
+
+    final Map<String, ModelAttrib> attributesByTypeEntityId;
+
+    final Set<String> misses = ConcurrentHashMap.newKeySet();
+
+    ModelIndex(List<ModelEntity> entities) {
+        entitiesById = new HashMap<String, ModelEntity>();
+        entitiesByName = new HashMap<String, ModelEntity>();
+        attributesById = new HashMap<String, ModelAttrib>();
+        attributesByName = new HashMap<String, List<ModelAttrib>>();
+        attributesByEntityName = new HashMap<String, Map<String, ModelAttrib>>();
+        attributesByTypeEntityId = new HashMap<String, ModelAttrib>();
+        if (entities != null) {
+            for (ModelEntity entity : entities) {
+                putFirst(entitiesById, entity.getId(), entity);
+                Map<String, ModelAttrib> attributesForEntity = null;
+                String entityName = key(entity.getName());
+                if (entityName != null && !entitiesByName.containsKey(entityName)) {
+                    entitiesByName.put(entityName, entity);
+                    attributesForEntity = new HashMap<String, ModelAttrib>();
+                    attributesByEntityName.put(entityName, attributesForEntity);
+                }
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    putFirst(attributesById, attribute.getId(), attribute);
+                    putFirst(attributesByTypeEntityId, attribute.getTypeEntityId(), attribute);
+                    String attributeName = key(attribute.getName());
+                    if (attributeName != null) {
+                        List<ModelAttrib> list = attributesByName.get(attributeName);
+                        if (list == null) {
+                            list = new ArrayList<ModelAttrib>(1);
+                            attributesByName.put(attributeName, list);
+                        }
+                        list.add(attribute);
+                        if (attributesForEntity != null && !attributesForEntity.containsKey(attributeName)) {
+                            attributesForEntity.put(attributeName, attribute);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    ModelEntity getEntityById(String entityId) {
+        return entitiesById.get(key(entityId));
+    }
+
+    ModelEntity getEntityByName(String entityName) {
+        return entitiesByName.get(key(entityName));
+    }
+
+    ModelAttrib getAttributeById(String attributeId) {
+        return attributesById.get(key(attributeId));
+    }
+
+    ModelAttrib getAttributeByName(String entityName, String attributeName) {
+        Map<String, ModelAttrib> attributes = attributesByEntityName.get(key(entityName));
+        return attributes != null ? attributes.get(key(attributeName)) : null;
+    }
+
+    List<ModelAttrib> getAttributesByName(String attributeName) {
+        List<ModelAttrib> attributes = attributesByName.get(key(attributeName));
+        return attributes != null ? attributes : Collections.<ModelAttrib> emptyList();
+    }
+
+    ModelAttrib getAttributeByTypeEntityId(String typeEntityId) {
+        return attributesByTypeEntityId.get(key(typeEntityId));
+    }
+
+    boolean isMiss(String lookup, String... keys) {
+        return misses.contains(missKey(lookup, keys));
+    }
+
+    void addMiss(String lookup, String... keys) {
+        misses.add(missKey(lookup, keys));
+    }
+
+    static String missKey(String lookup, String... keys) {
+        StringBuilder missKey = new StringBuilder(lookup);
+        for (String key : keys) {
+            missKey.append('\u0000').append(key(key));
+        }
+        return missKey.toString();
+    }
+
+    static <T> void putFirst(Map<String, T> map, String key, T value) {
+        key = key(key);
+        if (key != null && !map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    static String key(String value) {
+        return value != null ? value.toLowerCase() : null;
+    }
+
+}
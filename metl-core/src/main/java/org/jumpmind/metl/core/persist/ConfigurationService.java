@@ -513,6 +513,7 @@ public class ConfigurationService extends AbstractService
         		
         }
         AbstractObjectNameBasedSorter.sort(entities);
+        model.invalidateIndex();
         return model;
     }
     
@@ -25,6 +25,7 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -42,8 +43,10 @@ import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.IDatabasePlatform;
 import org.jumpmind.db.sql.ISqlRowMapper;
 import org.jumpmind.db.sql.ISqlTemplate;
+import org.jumpmind.db.sql.ISqlTransaction;
 import org.jumpmind.db.sql.Row;
 import org.jumpmind.db.sql.mapper.StringMapper;
+import org.jumpmind.metl.core.model.AbstractObject;
 import org.jumpmind.metl.core.model.Execution;
 import org.jumpmind.metl.core.model.ExecutionStatus;
 import org.jumpmind.metl.core.model.ExecutionStep;
@@ -79,6 +82,55 @@ public class ExecutionService extends AbstractService implements IExecutionServi
         this.purgeScheduler.scheduleWithFixedDelay(new PurgeExecutionHandler(), firstScheduledRunTime, periodInMs);
     }
 
+    /**
+     * Execution steps are updated (or inserted when the update does not find
+     * them) together in a single transaction. Other objects are saved one at
+     * a time.
+     */
+    @Override
+    public void save(List<? extends AbstractObject> objects) {
+        List<ExecutionStep> steps = new ArrayList<>(objects.size());
+        for (AbstractObject object : objects) {
+            if (object instanceof ExecutionStep) {
+                steps.add((ExecutionStep) object);
+            } else {
+                save(object);
+            }
+        }
+
+        if (steps.size() > 0) {
+            String columns = "execution_id, thread_number, flow_step_id, component_name, approximate_order, status, messages_received, "
+                    + "messages_produced, payload_received, payload_produced, entities_processed, start_time, end_time, handle_duration, queue_duration, "
+                    + "reserved_memory, used_memory";
+            String updateSql = String.format("update %1$s_execution_step set %2$s=? where id=?", tablePrefix,
+                    columns.replace(", ", "=?, "));
+            String insertSql = String.format("insert into %1$s_execution_step (%2$s, id) values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
+                    tablePrefix, columns);
+            int[] types = new int[] { Types.CHAR, Types.INTEGER, Types.CHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR,
+                    Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.TIMESTAMP, Types.TIMESTAMP,
+                    Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.CHAR };
+            ISqlTransaction transaction = databasePlatform.getSqlTemplate().startSqlTransaction();
+            try {
+                for (ExecutionStep step : steps) {
+                    Object[] args = new Object[] { step.getExecutionId(), step.getThreadNumber(), step.getFlowStepId(),
+                            step.getComponentName(), step.getApproximateOrder(), step.getStatus(), step.getMessagesReceived(),
+                            step.getMessagesProduced(), step.getPayloadReceived(), step.getPayloadProduced(),
+                            step.getEntitiesProcessed(), step.getStartTime(), step.getEndTime(), step.getHandleDuration(),
+                            step.getQueueDuration(), step.getReservedMemory(), step.getUsedMemory(), step.getId() };
+                    if (transaction.prepareAndExecute(updateSql, args, types) == 0) {
+                        transaction.prepareAndExecute(insertSql, args, types);
+                    }
+                }
+                transaction.commit();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            } finally {
+                transaction.close();
+            }
+        }
+    }
+
     public Execution findExecution(String id) {
         Execution e = new Execution();
         e.setId(id);
@@ -34,6 +34,8 @@ public interface IExecutionService {
 
     public void save(AbstractObject object);
 
+    public void save(List<? extends AbstractObject> objects);
+
     public List<Execution> findExecutions(Map<String, Object> params, int limit);
 
     public Execution findExecution(String id);
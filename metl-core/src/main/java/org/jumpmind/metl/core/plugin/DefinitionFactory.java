@@ -24,10 +24,14 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.jumpmind.metl.core.plugin.PluginConstants.DEFINTION_TYPE_COMPONENT;
 import static org.jumpmind.metl.core.plugin.PluginConstants.DEFINTION_TYPE_RESOURCE;
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.ENABLED;
+import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.DEFAULT_INBOUND_QUEUE_MEMORY_MB;
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.INBOUND_QUEUE_CAPACITY;
+import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.INBOUND_QUEUE_MEMORY_MB;
+import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.INBOUND_QUEUE_SPILL;
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.LOG_INPUT;
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.LOG_OUTPUT;
 import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.NOTES;
+import static org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants.SHARE_OUTBOUND_PAYLOAD;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -374,6 +378,13 @@ public class DefinitionFactory implements IDefinitionFactory {
                                     .add(new XMLSetting(LOG_OUTPUT, "Log Output", "false", Type.BOOLEAN, false));
                             xmlComponent.getSettings().getSetting()
                                     .add(new XMLSetting(INBOUND_QUEUE_CAPACITY, "Inbound Queue Capacity", "100", Type.INTEGER, true));
+                            xmlComponent.getSettings().getSetting()
+                                    .add(new XMLSetting(INBOUND_QUEUE_MEMORY_MB, "Inbound Queue Memory (MB)",
+                                            Integer.toString(DEFAULT_INBOUND_QUEUE_MEMORY_MB), Type.INTEGER, false));
+                            xmlComponent.getSettings().getSetting()
+                                    .add(new XMLSetting(INBOUND_QUEUE_SPILL, "Inbound Queue Spill To Disk", "false", Type.BOOLEAN, false));
+                            xmlComponent.getSettings().getSetting()
+                                    .add(new XMLSetting(SHARE_OUTBOUND_PAYLOAD, "Share Outbound Payload", "false", Type.BOOLEAN, false));
                             xmlComponent.getSettings().getSetting().add(new XMLSetting(NOTES, "Notes", null, Type.MULTILINE_TEXT, false));
                         } else {
                             if (!classLoader.equals(componentsById.get(id).getClassLoader())) {
@@ -95,6 +95,15 @@ public class XMLComponentDefinition extends XMLAbstractDefinition {
     @XmlAttribute(required = false)
     protected boolean supportsMultipleThreads;
 
+    @XmlAttribute(required = false)
+    protected boolean changesInputPayload = true;
+
+    @XmlAttribute(required = false)
+    protected boolean blocking;
+
+    @XmlAttribute(required = false)
+    protected boolean fusable;
+
     @XmlAttribute(required = false)
     protected boolean inputOutputModelsMatch;
 
@@ -177,6 +186,30 @@ public class XMLComponentDefinition extends XMLAbstractDefinition {
         this.supportsMultipleThreads = supportsMultipleThreads;
     }
 
+    public boolean isChangesInputPayload() {
+        return changesInputPayload;
+    }
+
+    public void setChangesInputPayload(boolean changesInputPayload) {
+        this.changesInputPayload = changesInputPayload;
+    }
+
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    public void setBlocking(boolean blocking) {
+        this.blocking = blocking;
+    }
+
+    public boolean isFusable() {
+        return fusable;
+    }
+
+    public void setFusable(boolean fusable) {
+        this.fusable = fusable;
+    }
+
     public void setFlowManipulatorClassName(String flowManipulatorClassName) {
         this.flowManipulatorClassName = flowManipulatorClassName;
     }
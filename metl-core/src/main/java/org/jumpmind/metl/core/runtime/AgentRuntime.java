@@ -34,6 +34,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledFuture;
 
@@ -49,6 +50,7 @@ import org.jumpmind.metl.core.model.Flow;
 import org.jumpmind.metl.core.model.FlowName;
 import org.jumpmind.metl.core.model.FlowParameter;
 import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.GlobalSetting;
 import org.jumpmind.metl.core.model.Notification;
 import org.jumpmind.metl.core.model.ProjectVersion;
 import org.jumpmind.metl.core.model.ProjectVersionDepends;
@@ -64,6 +66,7 @@ import org.jumpmind.metl.core.plugin.XMLResourceDefinition;
 import org.jumpmind.metl.core.runtime.component.IComponentDeploymentListener;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntimeFactory;
 import org.jumpmind.metl.core.runtime.component.Results;
+import org.jumpmind.metl.core.runtime.flow.FlowExecutionPlan;
 import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
 import org.jumpmind.metl.core.runtime.resource.IResourceRuntime;
 import org.jumpmind.metl.core.runtime.subscribe.ISubscribeManager;
@@ -109,6 +112,10 @@ public class AgentRuntime {
 
     ExecutorService flowStepsExecutionThreads;
 
+    ExecutorService flowStepsScheduler;
+
+    MemoryGovernor memoryGovernor;
+
     ThreadPoolTaskScheduler flowExecutionScheduler;
 
     ScheduledFuture<?> agentRequestHandler;
@@ -121,6 +128,10 @@ public class AgentRuntime {
 
     Map<AgentDeploy, List<FlowRuntime>> runningFlows = Collections.synchronizedMap(new HashMap<>());
 
+    Map<AgentDeploy, FlowRuntimePool> flowRuntimePools = new ConcurrentHashMap<>();
+
+    Map<AgentDeploy, FlowExecutionPlan> executionPlans = new ConcurrentHashMap<>();
+
     public AgentRuntime(Agent agent, IOperationsService operationsService, IConfigurationService configurationService,
             IExecutionService executionService, IComponentRuntimeFactory componentFactory, IDefinitionFactory definitionFactory,
             IHttpRequestMappingRegistry httpRequestMappingRegistry, ISubscribeManager subscribeManager) {
@@ -190,6 +201,30 @@ public class AgentRuntime {
 
             this.globalSettings = operationsService.findGlobalSettingsAsMap();
 
+            /*
+             * Optionally share a work stealing pool across all flows on this
+             * agent. Steps that do not block run as tasks on this pool instead
+             * of holding on to a thread each.
+             */
+            TypedProperties settings = new TypedProperties();
+            settings.putAll(globalSettings);
+            if (settings.is(GlobalSetting.STEP_SCHEDULER_ENABLED, GlobalSetting.DEFAULT_STEP_SCHEDULER_ENABLED)) {
+                int parallelism = settings.getInt(GlobalSetting.STEP_SCHEDULER_PARALLELISM, 0);
+                if (parallelism <= 0) {
+                    parallelism = Runtime.getRuntime().availableProcessors();
+                }
+                this.flowStepsScheduler = ThreadUtils.createWorkStealingPool(namePrefix + "-step", parallelism);
+            }
+
+            /*
+             * Optionally admit executions only when the memory their queues
+             * may hold fits in the agent's memory budget
+             */
+            long memoryBudget = settings.getLong(GlobalSetting.AGENT_MEMORY_BUDGET_MB, GlobalSetting.DEFAULT_AGENT_MEMORY_BUDGET_MB);
+            if (memoryBudget > 0) {
+                this.memoryGovernor = new MemoryGovernor(memoryBudget * 1024 * 1024);
+            }
+
             List<AgentDeploy> deployments = new ArrayList<AgentDeploy>(agent.getAgentDeployments());
             for (AgentDeploy deployment : deployments) {
                 deploy(deployment);
@@ -255,11 +290,22 @@ public class AgentRuntime {
                 this.flowExecutionScheduler = null;
             }
 
+            flowRuntimePools.values().forEach(pool -> pool.close());
+            flowRuntimePools.clear();
+            executionPlans.clear();
+
             if (flowStepsExecutionThreads != null) {
                 this.flowStepsExecutionThreads.shutdownNow();
                 this.flowStepsExecutionThreads = null;
             }
 
+            if (flowStepsScheduler != null) {
+                this.flowStepsScheduler.shutdownNow();
+                this.flowStepsScheduler = null;
+            }
+
+            this.memoryGovernor = null;
+
             Collection<IResourceRuntime> resourceCollection = deployedResources.values();
             for (IResourceRuntime resource : resourceCollection) {
                 log.info("Stopping the {} resource on the {} agent", resource.getResource().getName(), agent.getName());
@@ -352,6 +398,15 @@ public class AgentRuntime {
                 deployment.setStatus(DeploymentStatus.ENABLED.name());
                 deployment.setMessage("");
                 deployed.add(agentProjectVersionFlowDeployment);
+                executionPlans.remove(deployment);
+                try {
+                    getExecutionPlan(agentProjectVersionFlowDeployment);
+                } catch (Exception e) {
+                    log.warn("Failed to build the execution plan for '{}'", deployment.getName(), e);
+                }
+                if (flow.isWebService()) {
+                    getFlowRuntimePool(deployment);
+                }
                 log.info("Flow '{}' has been deployed", deployment.getName());
             } catch (Exception e) {
                 log.warn("Failed to start '{}'", deployment.getName(), e);
@@ -482,9 +537,93 @@ public class AgentRuntime {
 
     public FlowRuntime createFlowRuntime(String userId, AgentDeploy deployment, Map<String, String> runtimeParameters) throws Exception {
         String executionId = createExecutionId();
-        return new FlowRuntime(executionId, userId, findDeployed(deployment), agent, componentRuntimeFactory, definitionFactory,
-                flowStepsExecutionThreads, operationsService, configurationService, executionService, deployedResources, null, globalSettings,
-                runtimeParameters);
+        AgentProjectVersionFlowDeployment agentProjectVersionFlowDeployment = findDeployed(deployment);
+        FlowRuntime flowRuntime = new FlowRuntime(executionId, userId, agentProjectVersionFlowDeployment, agent, componentRuntimeFactory,
+                definitionFactory, flowStepsExecutionThreads, operationsService, configurationService, executionService, deployedResources,
+                null, globalSettings, runtimeParameters, getExecutionPlan(agentProjectVersionFlowDeployment));
+        flowRuntime.setStepScheduler(flowStepsScheduler);
+        flowRuntime.setMemoryGovernor(memoryGovernor);
+        return flowRuntime;
+    }
+
+    /*
+     * Hand out an initialized flow runtime from the deployment's pool when
+     * flow runtimes are pooled.  It must be given back with
+     * releaseFlowRuntime after it has executed so that components which were
+     * kept started are either pooled again or stopped.
+     */
+    public FlowRuntime borrowFlowRuntime(String userId, AgentDeploy deployment, Map<String, String> runtimeParameters) throws Exception {
+        FlowRuntimePool pool = getFlowRuntimePool(deployment);
+        if (pool == null) {
+            return createFlowRuntime(userId, deployment, runtimeParameters);
+        }
+        FlowRuntime flowRuntime = pool.borrow();
+        flowRuntime.reset(createExecutionId(), userId, runtimeParameters);
+        flowRuntime.setStepScheduler(flowStepsScheduler);
+        flowRuntime.setMemoryGovernor(memoryGovernor);
+        return flowRuntime;
+    }
+
+    public void releaseFlowRuntime(AgentDeploy deployment, FlowRuntime flowRuntime) {
+        FlowRuntimePool pool = flowRuntimePools.get(deployment);
+        if (pool != null && pool.getDeployment() == flowRuntime.getAgentProjectVersionFlowDeployment()) {
+            pool.release(flowRuntime);
+        } else {
+            /* the deployment was stopped or redeployed while the flow executed */
+            flowRuntime.stopComponentRuntimes();
+        }
+    }
+
+    protected FlowRuntimePool getFlowRuntimePool(AgentDeploy deployment) {
+        TypedProperties settings = new TypedProperties();
+        if (globalSettings != null) {
+            settings.putAll(globalSettings);
+        }
+        int size = settings.getInt(GlobalSetting.FLOW_RUNTIME_POOL_SIZE, GlobalSetting.DEFAULT_FLOW_RUNTIME_POOL_SIZE);
+        AgentProjectVersionFlowDeployment agentProjectVersionFlowDeployment = findDeployed(deployment);
+        if (size <= 0 || agentProjectVersionFlowDeployment == null || agent.isAutoRefresh()) {
+            closeFlowRuntimePool(deployment);
+            return null;
+        }
+        return flowRuntimePools.compute(deployment, (d, pool) -> {
+            if (pool != null && pool.getDeployment() == agentProjectVersionFlowDeployment && pool.getSize() == size) {
+                return pool;
+            }
+            if (pool != null) {
+                pool.close();
+            }
+            FlowRuntimePool newPool = new FlowRuntimePool(agentProjectVersionFlowDeployment, size,
+                    () -> new FlowRuntime(createExecutionId(), null, agentProjectVersionFlowDeployment, agent, componentRuntimeFactory,
+                            definitionFactory, flowStepsExecutionThreads, operationsService, configurationService, executionService,
+                            deployedResources, null, globalSettings, null, getExecutionPlan(agentProjectVersionFlowDeployment)));
+            if (flowExecutionScheduler != null) {
+                flowExecutionScheduler.execute(() -> newPool.prewarm());
+            }
+            return newPool;
+        });
+    }
+
+    /*
+     * The execution plan of a deployment is built once and shared by its
+     * executions.  It is rebuilt when the deployment's flow changes.
+     */
+    protected FlowExecutionPlan getExecutionPlan(AgentProjectVersionFlowDeployment deployment) {
+        if (deployment == null || agent.isAutoRefresh()) {
+            return null;
+        }
+        FlowExecutionPlan plan = executionPlans.get(deployment.getAgentDeployment());
+        if (plan == null || !plan.isFor(deployment.getFlow())) {
+            plan = new FlowExecutionPlan(deployment.getFlow(), definitionFactory, configurationService);
+            executionPlans.put(deployment.getAgentDeployment(), plan);
+        }
+        return plan;
+    }
+
+    protected void closeFlowRuntimePool(AgentDeploy deployment) {
+        FlowRuntimePool pool = flowRuntimePools.remove(deployment);
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     public Results execute(String userId, AgentDeploy deployment, Map<String, String> runtimeParameters) throws Exception {
@@ -523,6 +662,9 @@ public class AgentRuntime {
             }
         }
         
+        closeFlowRuntimePool(deployment);
+        executionPlans.remove(deployment);
+
         AgentProjectVersionFlowDeployment agentProjectVersionFlowDeployment = findDeployed(deployment);
         if (agentProjectVersionFlowDeployment != null) {
             doComponentDeploymentEvent(agentProjectVersionFlowDeployment,
@@ -633,7 +775,9 @@ public class AgentRuntime {
                 List<Notification> notifications = operationsService.findNotificationsForDeployment(deployment.getAgentDeployment());
                 flowRuntime = new FlowRuntime(executionId, userId, deployment, agent, componentRuntimeFactory, definitionFactory,
                         flowStepsExecutionThreads, operationsService, configurationService, executionService, deployedResources,
-                        notifications, globalSettings, runtimeParameters);
+                        notifications, globalSettings, runtimeParameters, getExecutionPlan(deployment));
+                flowRuntime.setStepScheduler(flowStepsScheduler);
+                flowRuntime.setMemoryGovernor(memoryGovernor);
                 addToRunning(deployment.getAgentDeployment(), flowRuntime);
                 flowRuntime.execute();
             } catch (Exception e) {
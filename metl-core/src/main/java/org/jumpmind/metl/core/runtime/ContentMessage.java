@@ -30,6 +30,8 @@ abstract public class ContentMessage<T extends Serializable> extends Message {
     
     T payload;
 
+    boolean shared;
+
     public ContentMessage(String originatingStepId, T payload) {
         super(originatingStepId);
         this.payload = payload;
@@ -46,6 +48,19 @@ abstract public class ContentMessage<T extends Serializable> extends Message {
     public void setPayload(T payload) {
         this.payload = payload;
     }
+
+    /**
+     * The rows of a shared payload were not copied when it was sent and may
+     * also be referenced by another step. A component that changes the
+     * payload must work on a copy.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
     
     public String getTextFromPayload() {
         StringBuilder b = new StringBuilder();
@@ -24,6 +24,8 @@ public class ControlMessage extends Message {
 
 	private static final long serialVersionUID = 1L;
 
+	boolean synthetic;
+
 	public ControlMessage() {
 	    this(null);
     }
@@ -31,6 +33,18 @@ public class ControlMessage extends Message {
 	public ControlMessage(String originatingFlowStepId) {
 	    super(originatingFlowStepId);
     }
-	
-	
+
+	/**
+	 * A step makes up a synthetic control message for its own component when
+	 * the last source it was waiting on shuts down without ending its unit of
+	 * work. It was not sent by any source and is not counted as inbound.
+	 */
+	public boolean isSynthetic() {
+	    return synthetic;
+	}
+
+	public void setSynthetic(boolean synthetic) {
+	    this.synthetic = synthetic;
+	}
+
 }
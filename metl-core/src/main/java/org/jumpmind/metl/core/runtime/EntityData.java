@@ -20,12 +20,38 @@
  */
 package org.jumpmind.metl.core.runtime;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
 import org.jumpmind.metl.core.util.NameValue;
 import org.jumpmind.util.LinkedCaseInsensitiveMap;
 
-public class EntityData extends LinkedCaseInsensitiveMap<Object> {
+/**
+ * A row of attribute values keyed (case insensitively) by attribute id.
+ * <p>
+ * When created with an {@link EntityDataSchema} the values of the attributes
+ * known to the schema are held in an array indexed by attribute ordinal and
+ * only unknown attributes fall back to a map. Rows created without a schema
+ * behave like a plain case insensitive map. Either way the row is a regular
+ * {@link Map} so components and scripts can use it as they always have. The
+ * serialized form is written by hand now that the row no longer extends
+ * {@link LinkedCaseInsensitiveMap}, so it is versioned apart from the rows of
+ * earlier releases.
+ */
+public class EntityData extends AbstractMap<String, Object> implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = 2L;
 
-    private static final long serialVersionUID = 1L;
+    private static final Object NOT_SET = new Object();
 
     public enum ChangeType {
         ADD, CHG, DEL
@@ -33,9 +59,23 @@ public class EntityData extends LinkedCaseInsensitiveMap<Object> {
 
     ChangeType changeType = ChangeType.ADD;
 
+    transient EntityDataSchema schema;
+
+    transient Object[] values;
+
+    transient int valueCount;
+
+    transient LinkedCaseInsensitiveMap<Object> otherValues;
+
+    transient Set<Map.Entry<String, Object>> entrySet;
+
     public EntityData() {
     }
 
+    public EntityData(EntityDataSchema schema) {
+        initSchema(schema);
+    }
+
     public EntityData(NameValue... nameValues) {
         if (nameValues != null) {
             for (NameValue nameValue : nameValues) {
@@ -44,6 +84,14 @@ public class EntityData extends LinkedCaseInsensitiveMap<Object> {
         }
     }
 
+    protected void initSchema(EntityDataSchema schema) {
+        this.schema = schema;
+        if (schema != null) {
+            this.values = new Object[schema.size()];
+            Arrays.fill(this.values, NOT_SET);
+        }
+    }
+
     public EntityData copy() {
         return (EntityData) this.clone();
     }
@@ -56,4 +104,325 @@ public class EntityData extends LinkedCaseInsensitiveMap<Object> {
         this.changeType = changeType;
     }
 
+    public EntityDataSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * A rough estimate of the heap used by this row, good enough to decide
+     * when buffered rows should be spilled.
+     */
+    public long estimateSize() {
+        long size = 96;
+        if (values != null) {
+            for (Object value : values) {
+                if (value != NOT_SET) {
+                    size += estimateSize(value);
+                }
+            }
+        }
+        if (otherValues != null) {
+            for (Object value : otherValues.values()) {
+                size += estimateSize(value);
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return 56 + 2 * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return 32 + ((byte[]) value).length;
+        } else if (value != null) {
+            return 40;
+        } else {
+            return 16;
+        }
+    }
+
+    /**
+     * Get a value by the ordinal its attribute has in this row's schema.
+     */
+    public Object getAt(int index) {
+        Object value = values[index];
+        return value == NOT_SET ? null : value;
+    }
+
+    /**
+     * Set a value by the ordinal its attribute has in this row's schema.
+     */
+    public Object putAt(int index, Object value) {
+        Object old = values[index];
+        values[index] = value;
+        if (old == NOT_SET) {
+            valueCount++;
+            return null;
+        } else {
+            return old;
+        }
+    }
+
+    protected int indexOf(Object key) {
+        return schema != null ? schema.indexOf(key) : -1;
+    }
+
+    protected LinkedCaseInsensitiveMap<Object> getOtherValues() {
+        if (otherValues == null) {
+            otherValues = new LinkedCaseInsensitiveMap<Object>();
+        }
+        return otherValues;
+    }
+
+    @Override
+    public int size() {
+        return valueCount + (otherValues != null ? otherValues.size() : 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return values[index] != NOT_SET;
+        } else {
+            return otherValues != null && otherValues.containsKey(key);
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return getAt(index);
+        } else {
+            return otherValues != null ? otherValues.get(key) : null;
+        }
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return putAt(index, value);
+        } else {
+            return getOtherValues().put(key, value);
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return removeAt(index);
+        } else {
+            return otherValues != null ? otherValues.remove(key) : null;
+        }
+    }
+
+    protected Object removeAt(int index) {
+        Object old = values[index];
+        if (old == NOT_SET) {
+            return null;
+        } else {
+            values[index] = NOT_SET;
+            valueCount--;
+            return old;
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (values != null) {
+            Arrays.fill(values, NOT_SET);
+            valueCount = 0;
+        }
+        if (otherValues != null) {
+            otherValues.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public Object clone() {
+        try {
+            EntityData copy = (EntityData) super.clone();
+            copy.entrySet = null;
+            if (values != null) {
+                copy.values = values.clone();
+            }
+            if (otherValues != null) {
+                copy.otherValues = new LinkedCaseInsensitiveMap<Object>();
+                copy.otherValues.putAll(otherValues);
+            }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(schema);
+        out.writeInt(size());
+        for (Map.Entry<String, Object> entry : entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initSchema((EntityDataSchema) in.readObject());
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            put((String) in.readObject(), in.readObject());
+        }
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public int size() {
+            return EntityData.this.size();
+        }
+
+        @Override
+        public void clear() {
+            EntityData.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        int nextIndex = -1;
+
+        int lastIndex = -1;
+
+        Iterator<Map.Entry<String, Object>> otherIterator;
+
+        boolean lastFromOther;
+
+        EntryIterator() {
+            advance();
+        }
+
+        void advance() {
+            nextIndex++;
+            while (values != null && nextIndex < values.length && values[nextIndex] == NOT_SET) {
+                nextIndex++;
+            }
+        }
+
+        boolean hasNextIndexed() {
+            return values != null && nextIndex < values.length;
+        }
+
+        Iterator<Map.Entry<String, Object>> otherIterator() {
+            if (otherIterator == null && otherValues != null) {
+                otherIterator = otherValues.entrySet().iterator();
+            }
+            return otherIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNextIndexed()) {
+                return true;
+            } else {
+                Iterator<Map.Entry<String, Object>> other = otherIterator();
+                return other != null && other.hasNext();
+            }
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (hasNextIndexed()) {
+                lastIndex = nextIndex;
+                lastFromOther = false;
+                advance();
+                return new IndexedEntry(lastIndex);
+            } else {
+                Iterator<Map.Entry<String, Object>> other = otherIterator();
+                if (other == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, Object> entry = other.next();
+                lastIndex = -1;
+                lastFromOther = true;
+                return entry;
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (lastFromOther) {
+                otherIterator.remove();
+                lastFromOther = false;
+            } else if (lastIndex >= 0) {
+                removeAt(lastIndex);
+                lastIndex = -1;
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    class IndexedEntry implements Map.Entry<String, Object> {
+
+        int index;
+
+        IndexedEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return schema.getAttributeId(index);
+        }
+
+        @Override
+        public Object getValue() {
+            return getAt(index);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return putAt(index, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = getKey();
+            Object value = getValue();
+            return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
 }
@@ -0,0 +1,171 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.jumpmind.metl.core.runtime.EntityDataWriter.*;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+
+/**
+ * Reads {@link EntityData} rows written by {@link EntityDataWriter}. Rows are
+ * created with the schema passed in, if there is one.
+ */
+public class EntityDataReader implements Closeable {
+
+    DataInputStream in;
+
+    EntityDataSchema schema;
+
+    List<String> attributeIds = new ArrayList<>();
+
+    public EntityDataReader(InputStream in, EntityDataSchema schema) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        this.schema = schema;
+    }
+
+    /**
+     * @return the next row or null at the end of the stream
+     */
+    public EntityData read() throws IOException {
+        int changeType = in.read();
+        if (changeType < 0) {
+            return null;
+        }
+        EntityData data = schema != null ? new EntityData(schema) : new EntityData();
+        data.setChangeType(changeType > 0 ? ChangeType.values()[changeType - 1] : null);
+        int size = readNumber();
+        for (int i = 0; i < size; i++) {
+            data.put(readAttributeId(), readValue());
+        }
+        return data;
+    }
+
+    /**
+     * Read a group of rows written by {@link EntityDataWriter#writeRows(List)}
+     */
+    public ArrayList<EntityData> readRows() throws IOException {
+        int count = readNumber();
+        ArrayList<EntityData> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            EntityData data = read();
+            if (data == null) {
+                throw new EOFException();
+            }
+            rows.add(data);
+        }
+        return rows;
+    }
+
+    protected String readAttributeId() throws IOException {
+        int number = readNumber();
+        if ((number & 1) == 1) {
+            String attributeId = new String(readBytes(), StandardCharsets.UTF_8);
+            attributeIds.add(attributeId);
+            return attributeId;
+        } else {
+            return attributeIds.get(number >>> 1);
+        }
+    }
+
+    protected Object readValue() throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(), StandardCharsets.UTF_8);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BIG_DECIMAL:
+                int scale = in.readInt();
+                return new BigDecimal(new BigInteger(readBytes()), scale);
+            case DOUBLE:
+                return in.readDouble();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case SQL_TIME:
+                return new java.sql.Time(in.readLong());
+            case DATE:
+                return new Date(in.readLong());
+            case BYTES:
+                return readBytes();
+            case BIG_INTEGER:
+                return new BigInteger(readBytes());
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case SERIALIZED:
+                return SerializationUtils.deserialize(readBytes());
+            default:
+                throw new StreamCorruptedException("Unknown value type " + type);
+        }
+    }
+
+    protected byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[readNumber()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    protected int readNumber() throws IOException {
+        int number = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            number |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return number;
+            }
+        }
+        throw new StreamCorruptedException("Malformed number");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+
+/**
+ * Assigns each attribute of a {@link Model} a fixed ordinal so that
+ * {@link EntityData} rows can store their values in an array instead of a
+ * hash map. A schema is meant to be built once when a step starts and shared
+ * by every row the step produces.
+ * <p>
+ * Each row allocates an array the size of its schema, so a schema should only
+ * hold the attributes its rows can have, like those of one entity or those a
+ * step is configured to produce.
+ */
+public class EntityDataSchema implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    String[] attributeIds;
+
+    Map<String, Integer> indexes;
+
+    /**
+     * A schema for rows that may hold any attribute of the model
+     */
+    public EntityDataSchema(Model model) {
+        List<String> ids = new ArrayList<String>();
+        if (model != null) {
+            for (ModelEntity entity : model.getModelEntities()) {
+                for (ModelAttrib attribute : entity.getModelAttributes()) {
+                    ids.add(attribute.getId());
+                }
+            }
+        }
+        init(ids.toArray(new String[ids.size()]));
+    }
+
+    public EntityDataSchema(ModelEntity entity) {
+        List<ModelAttrib> attributes = entity.getModelAttributes();
+        String[] ids = new String[attributes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = attributes.get(i).getId();
+        }
+        init(ids);
+    }
+
+    public EntityDataSchema(Collection<String> attributeIds) {
+        init(attributeIds.toArray(new String[attributeIds.size()]));
+    }
+
+    public EntityDataSchema(String... attributeIds) {
+        init(attributeIds);
+    }
+
+    protected void init(String[] attributeIds) {
+        this.attributeIds = attributeIds;
+        this.indexes = new HashMap<String, Integer>(attributeIds.length * 4);
+        for (int i = 0; i < attributeIds.length; i++) {
+            String id = attributeIds[i];
+            if (!indexes.containsKey(id)) {
+                indexes.put(id, i);
+            }
+            String lowerCaseId = id.toLowerCase();
+            if (!indexes.containsKey(lowerCaseId)) {
+                indexes.put(lowerCaseId, i);
+            }
+        }
+    }
+
+    /**
+     * @return the ordinal of the attribute (matched case insensitively) or -1
+     *         if the attribute is not part of this schema
+     */
+    public int indexOf(Object attributeId) {
+        if (attributeId instanceof String) {
+            String id = (String) attributeId;
+            Integer index = indexes.get(id);
+            if (index == null) {
+                index = indexes.get(id.toLowerCase());
+            }
+            return index != null ? index : -1;
+        } else {
+            return -1;
+        }
+    }
+
+    public String getAttributeId(int index) {
+        return attributeIds[index];
+    }
+
+    public int size() {
+        return attributeIds.length;
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Writes {@link EntityData} rows in a compact binary format that is read back
+ * by {@link EntityDataReader}. Attribute ids are written once per stream and
+ * referred to by number after that. Common value types are written natively
+ * and anything else is written using java serialization.
+ */
+public class EntityDataWriter implements Closeable {
+
+    static final int NULL = 0;
+    static final int STRING = 1;
+    static final int INTEGER = 2;
+    static final int LONG = 3;
+    static final int BIG_DECIMAL = 4;
+    static final int DOUBLE = 5;
+    static final int TRUE = 6;
+    static final int FALSE = 7;
+    static final int TIMESTAMP = 8;
+    static final int SQL_DATE = 9;
+    static final int SQL_TIME = 10;
+    static final int DATE = 11;
+    static final int BYTES = 12;
+    static final int BIG_INTEGER = 13;
+    static final int FLOAT = 14;
+    static final int SHORT = 15;
+    static final int SERIALIZED = 16;
+
+    DataOutputStream out;
+
+    Map<String, Integer> attributeNumbers = new HashMap<>();
+
+    public EntityDataWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+
+    public void write(EntityData data) throws IOException {
+        out.writeByte(data.getChangeType() != null ? data.getChangeType().ordinal() + 1 : 0);
+        writeNumber(data.size());
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            writeAttributeId(entry.getKey());
+            writeValue(entry.getValue());
+        }
+    }
+
+    /**
+     * Write a count followed by the rows so the group can be read back as a
+     * unit by {@link EntityDataReader#readRows()}.
+     */
+    public void writeRows(List<EntityData> rows) throws IOException {
+        writeNumber(rows.size());
+        for (EntityData data : rows) {
+            write(data);
+        }
+    }
+
+    protected void writeAttributeId(String attributeId) throws IOException {
+        Integer number = attributeNumbers.get(attributeId);
+        if (number == null) {
+            number = attributeNumbers.size();
+            attributeNumbers.put(attributeId, number);
+            writeNumber(number << 1 | 1);
+            writeBytes(attributeId.getBytes(StandardCharsets.UTF_8));
+        } else {
+            writeNumber(number << 1);
+        }
+    }
+
+    protected void writeValue(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(decimal.scale());
+            writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.writeByte(TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (value.getClass().equals(java.sql.Date.class)) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value.getClass().equals(java.sql.Time.class)) {
+            out.writeByte(SQL_TIME);
+            out.writeLong(((Date) value).getTime());
+        } else if (value.getClass().equals(Date.class)) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes((byte[]) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            writeBytes(SerializationUtils.serialize((Serializable) value));
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    protected void writeBytes(byte[] bytes) throws IOException {
+        writeNumber(bytes.length);
+        out.write(bytes);
+    }
+
+    protected void writeNumber(int number) throws IOException {
+        while ((number & ~0x7F) != 0) {
+            out.writeByte((number & 0x7F) | 0x80);
+            number >>>= 7;
+        }
+        out.writeByte(number);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
@@ -20,12 +20,15 @@
  */
 package org.jumpmind.metl.core.runtime;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
 import org.jumpmind.metl.core.model.FlowStep;
 import org.jumpmind.metl.core.runtime.component.ComponentContext;
+import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
+import org.jumpmind.metl.core.runtime.component.Histogram;
 import org.jumpmind.metl.core.util.LogUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +41,9 @@ public class ExecutionTrackerLogger implements IExecutionTracker {
     
     String executionId;
     
-    Map<String, Long> stepStartTimes = new HashMap<String, Long>();
+    Map<String, Long> stepStartTimes = new ConcurrentHashMap<String, Long>();
+
+    Map<String, AtomicInteger> stepThreadsFinished = new ConcurrentHashMap<String, AtomicInteger>();
 
     public ExecutionTrackerLogger(AgentProjectVersionFlowDeployment deployment) {
         this.deployment = deployment;
@@ -59,20 +64,18 @@ public class ExecutionTrackerLogger implements IExecutionTracker {
 
     @Override
     public void beforeHandle(int threadNumber, ComponentContext context) {
-        FlowStep flowStep = context.getFlowStep();
-        String msg = String.format(
-                "[%s] Handling message for deployment: %s for component: %s", executionId, 
-                deployment.getName(), flowStep.getName());
-        log.debug(msg);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Handling message for deployment: {} for component: {}", executionId,
+                    deployment.getName(), context.getFlowStep().getName());
+        }
     }
 
     @Override
     public void afterHandle(int threadNumber, ComponentContext context, Throwable error) {
-        FlowStep flowStep = context.getFlowStep();
-        String msg = String.format(
-                "[%s] Finished handling message for deployment: %s for component: %s", executionId, 
-                deployment.getName(), flowStep.getName());
-        log.debug(msg);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Finished handling message for deployment: {} for component: {}", executionId,
+                    deployment.getName(), context.getFlowStep().getName());
+        }
     }
     
     @Override
@@ -98,6 +101,22 @@ public class ExecutionTrackerLogger implements IExecutionTracker {
                 "[%s] Finished flow step for deployment: %s for component: %s in %s", executionId, 
                 deployment.getName(), flowStep.getName(), LogUtils.formatDuration(duration));
         log.info(msg);
+        /* the statistics cover every thread of the step, so they are logged once the last thread finishes */
+        int threadsFinished = stepThreadsFinished.computeIfAbsent(flowStep.getId(), id -> new AtomicInteger()).incrementAndGet();
+        ComponentStatistics stats = context.getComponentStatistics();
+        if (threadsFinished >= context.getComponentRuntimeByThread().size() && stats != null
+                && stats.getHandleTimes().getCount() > 0) {
+            msg = String.format(
+                    "[%s] Statistics for component: %s handle time (ms) %s, queue wait time (ms) %s, inbound payload size %s",
+                    executionId, flowStep.getName(), formatPercentiles(stats.getHandleTimes()),
+                    formatPercentiles(stats.getWaitTimes()), formatPercentiles(stats.getInboundPayloadSizes()));
+            log.info(msg);
+        }
+    }
+
+    protected String formatPercentiles(Histogram histogram) {
+        return String.format("p50=%d p99=%d max=%d", histogram.getPercentile(50), histogram.getPercentile(99),
+                histogram.getMax());
     }
     
     @Override
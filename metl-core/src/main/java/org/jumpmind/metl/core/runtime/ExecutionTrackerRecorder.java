@@ -23,8 +23,8 @@ package org.jumpmind.metl.core.runtime;
 import static org.apache.commons.lang.StringUtils.abbreviate;
 
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
 import org.jumpmind.metl.core.model.Agent;
@@ -33,10 +33,12 @@ import org.jumpmind.metl.core.model.Execution;
 import org.jumpmind.metl.core.model.ExecutionStatus;
 import org.jumpmind.metl.core.model.ExecutionStep;
 import org.jumpmind.metl.core.model.ExecutionStepLog;
+import org.jumpmind.metl.core.model.GlobalSetting;
 import org.jumpmind.metl.core.persist.IExecutionService;
 import org.jumpmind.metl.core.runtime.component.ComponentContext;
 import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
 import org.jumpmind.metl.core.runtime.flow.AsyncRecorder;
+import org.jumpmind.properties.TypedProperties;
 import org.jumpmind.util.AppUtils;
 
 public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
@@ -45,11 +47,21 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
 
     AsyncRecorder recorder;
 
+    ExecutorService threadService;
+
     Agent agent;
 
     Map<String, ExecutionStep> steps;
 
-    Map<ExecutionStep, Date> lastStatUpdate = new HashMap<ExecutionStep, Date>();
+    Map<ExecutionStep, Date> lastStatUpdate = new ConcurrentHashMap<ExecutionStep, Date>();
+
+    Map<ComponentContext, Map<Integer, Long>> lastSampleTimes = new ConcurrentHashMap<ComponentContext, Map<Integer, Long>>();
+
+    ExecutionTrackingLevel trackingLevel;
+
+    int sampleInterval;
+
+    boolean recordSteps;
 
     Date startTime;
 
@@ -58,19 +70,36 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
     String parameters;
 
     public ExecutionTrackerRecorder(Agent agent, AgentProjectVersionFlowDeployment agentDeployment, ExecutorService threadService,
-            IExecutionService executionService, String userId, String parameters) {
+            IExecutionService executionService, String userId, String parameters, Map<String, String> globalSettings) {
         super(agentDeployment);
         this.agent = agent;
         this.userId = userId;
         this.parameters = parameters;
-        this.recorder = new AsyncRecorder(executionService);
-        threadService.execute(this.recorder);
+        this.threadService = threadService;
+        TypedProperties settings = new TypedProperties();
+        if (globalSettings != null) {
+            settings.putAll(globalSettings);
+        }
+        this.recorder = new AsyncRecorder(executionService,
+                settings.getLong(GlobalSetting.EXECUTION_LOG_QUEUE_BUDGET_BYTES, GlobalSetting.DEFAULT_EXECUTION_LOG_QUEUE_BUDGET_BYTES),
+                settings.getLong(GlobalSetting.EXECUTION_LOG_FLUSH_BYTES, GlobalSetting.DEFAULT_EXECUTION_LOG_FLUSH_BYTES),
+                settings.getLong(GlobalSetting.EXECUTION_LOG_FLUSH_INTERVAL_MS, GlobalSetting.DEFAULT_EXECUTION_LOG_FLUSH_INTERVAL_MS));
+        this.recordSteps = !agentDeployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString());
+        this.trackingLevel = ExecutionTrackingLevel.parse(
+                settings.get(GlobalSetting.EXECUTION_TRACKING_LEVEL, GlobalSetting.DEFAULT_EXECUTION_TRACKING_LEVEL));
+        this.sampleInterval = Math.max(1,
+                settings.getInt(GlobalSetting.EXECUTION_TRACKING_SAMPLE_INTERVAL, GlobalSetting.DEFAULT_EXECUTION_TRACKING_SAMPLE_INTERVAL));
     }
 
     @Override
     public void beforeFlow(String executionId, Map<String, String> flowParameters) {
         super.beforeFlow(executionId, flowParameters);
-        this.steps = new HashMap<String, ExecutionStep>();
+        /*
+         * The recorder thread is not started until the flow is, so a tracker
+         * that is never used does not hold on to a thread
+         */
+        threadService.execute(this.recorder);
+        this.steps = new ConcurrentHashMap<String, ExecutionStep>();
         this.startTime = new Date();
         this.recorder.record(getExecution());
     }
@@ -120,30 +149,63 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
     public void flowStepStarted(int threadNumber, ComponentContext context) {
         super.flowStepStarted(threadNumber, context);
         ExecutionStep step = getExecutionStep(threadNumber, context);
-        if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString())) {
+        if (recordSteps) {
             this.recorder.record(step);
         }
     }
 
+    /*
+     * In the lean tracking level only the first message, every Nth message
+     * after it and the first message after the step has not been updated for
+     * the time between updates go on to update the step.  Without the time a
+     * step that handles few messages would not show progress until it
+     * finished.  The count comes from the component statistics which are
+     * kept anyway, so messages that are not sampled cost a counter read and
+     * a clock read.
+     */
+    protected boolean isSampled(long count, long timeSinceLastSample) {
+        return trackingLevel == ExecutionTrackingLevel.DETAILED || count <= 1 || count % sampleInterval == 0
+                || timeSinceLastSample >= TIME_BETWEEN_MESSAGE_UPDATES_IN_MS;
+    }
+
+    protected boolean isSampled(int threadNumber, ComponentContext context, boolean inbound) {
+        ComponentStatistics stats = context.getComponentStatistics();
+        if (stats == null) {
+            return true;
+        }
+        Map<Integer, Long> times = lastSampleTimes.get(context);
+        Long lastSampleTime = times != null ? times.get(threadNumber) : null;
+        long timeSinceLastSample = lastSampleTime != null ? System.currentTimeMillis() - lastSampleTime : Long.MAX_VALUE;
+        return isSampled(inbound ? stats.getNumberInboundMessages(threadNumber) : stats.getNumberOutboundMessages(threadNumber),
+                timeSinceLastSample);
+    }
+
+    protected void statisticsRecorded(int threadNumber, ComponentContext context, ExecutionStep step) {
+        long now = System.currentTimeMillis();
+        lastStatUpdate.put(step, new Date(now));
+        lastSampleTimes.computeIfAbsent(context, key -> new ConcurrentHashMap<Integer, Long>()).put(threadNumber, now);
+    }
+
     protected ExecutionStep getExecutionStep(int threadNumber, ComponentContext context) {
         String id = context.getFlowStep().getId() + "-" + threadNumber;
-        ExecutionStep step = steps.get(id);
-        if (step == null) {
-            step = new ExecutionStep();
+        return steps.computeIfAbsent(id, key -> {
+            ExecutionStep step = new ExecutionStep();
             step.setStatus(ExecutionStatus.READY.name());
             step.setExecutionId(executionId);
             step.setThreadNumber(threadNumber);
             step.setApproximateOrder(context.getFlowStep().getApproximateOrder());
             step.setComponentName(context.getFlowStep().getComponent().getName());
             step.setFlowStepId(context.getFlowStep().getId());
-            this.steps.put(id, step);
-        }
-        return step;
+            return step;
+        });
     }
 
     @Override
     public void beforeHandle(int threadNumber, ComponentContext context) {
         super.beforeHandle(threadNumber, context);
+        if (!isSampled(threadNumber, context, true)) {
+            return;
+        }
 
         ExecutionStep step = getExecutionStep(threadNumber, context);
         Date lastUpdateTime = step.getLastUpdateTime();
@@ -156,7 +218,7 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
                 step.setStatus(ExecutionStatus.RUNNING.name());
             }
             step.setLastUpdateTime(new Date());
-            if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString())) {
+            if (recordSteps) {
                 this.recorder.record(step);
             }
         }
@@ -165,6 +227,9 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
     @Override
     public void updateStatistics(int threadNumber, ComponentContext context) {
         super.updateStatistics(threadNumber, context);
+        if (!isSampled(threadNumber, context, false)) {
+            return;
+        }
         ExecutionStep step = getExecutionStep(threadNumber, context);
         Date lastUpdateTime = lastStatUpdate.get(step);
         if (lastUpdateTime == null || (System.currentTimeMillis() - lastUpdateTime.getTime() > TIME_BETWEEN_MESSAGE_UPDATES_IN_MS)) {
@@ -177,10 +242,12 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
                 step.setPayloadReceived(stats.getNumberInboundPayload(threadNumber));
                 step.setHandleDuration(stats.getTimeSpentInHandle(threadNumber));
                 step.setQueueDuration(stats.getTimeSpentWaiting(threadNumber));
-                lastStatUpdate.put(step, new Date());
+                step.setReservedMemory(stats.getReservedMemory());
+                step.setUsedMemory(stats.getPeakMemoryUsed(threadNumber) + stats.getPeakQueueMemoryUsed());
+                statisticsRecorded(threadNumber, context, step);
             }
             step.setLastUpdateTime(new Date());
-            if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString())) {
+            if (recordSteps) {
                this.recorder.record(step);
             }
         }
@@ -189,6 +256,9 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
     @Override
     public void afterHandle(int threadNumber, ComponentContext context, Throwable error) {
         super.afterHandle(threadNumber, context, error);
+        if (error == null && !isSampled(threadNumber, context, true)) {
+            return;
+        }
         ExecutionStep step = getExecutionStep(threadNumber, context);
         Date lastUpdateTime = lastStatUpdate.get(step);
 
@@ -203,10 +273,12 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
                 step.setPayloadReceived(stats.getNumberInboundPayload(threadNumber));
                 step.setHandleDuration(stats.getTimeSpentInHandle(threadNumber));
                 step.setQueueDuration(stats.getTimeSpentWaiting(threadNumber));
-                lastStatUpdate.put(step, new Date());
+                step.setReservedMemory(stats.getReservedMemory());
+                step.setUsedMemory(stats.getPeakMemoryUsed(threadNumber) + stats.getPeakQueueMemoryUsed());
+                statisticsRecorded(threadNumber, context, step);
             }
             step.setLastUpdateTime(new Date());
-            if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString())) {
+            if (recordSteps) {
                 this.recorder.record(step);
             }
         }
@@ -238,11 +310,12 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
             step.setPayloadReceived(stats.getNumberInboundPayload(threadNumber));
             step.setHandleDuration(stats.getTimeSpentInHandle(threadNumber));
             step.setQueueDuration(stats.getTimeSpentWaiting(threadNumber));
-            lastStatUpdate.put(step, new Date());
+            step.setReservedMemory(stats.getReservedMemory());
+            step.setUsedMemory(stats.getPeakMemoryUsed(threadNumber) + stats.getPeakQueueMemoryUsed());
+            statisticsRecorded(threadNumber, context, step);
         }
         step.setLastUpdateTime(new Date());
-        if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString()) || 
-                ExecutionStatus.ERROR.toString().equals(step.getStatus())) {
+        if (recordSteps || ExecutionStatus.ERROR.toString().equals(step.getStatus())) {
            this.recorder.record(step);
         }
     }
@@ -264,8 +337,8 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
 
     @Override
     public void log(int threadNumber, LogLevel level, ComponentContext context, String output, Object... args) {
-        if (deployment.asLogLevel().log(level)) {
-            boolean isError = level.equals(LogLevel.ERROR);
+        boolean isError = level.equals(LogLevel.ERROR);
+        if (deployment.asLogLevel().log(level) && (recordSteps || isError)) {
             ExecutionStepLog log = new ExecutionStepLog();
             log.setExecutionStepId(getExecutionStep(threadNumber, context).getId());
             log.setLevel(level.name());
@@ -273,9 +346,7 @@ public class ExecutionTrackerRecorder extends ExecutionTrackerLogger {
                 output = String.format(output, args);
             }
             log.setLogText(output);
-            if (!deployment.getAgentDeployment().getLogLevel().equals(LogLevel.OFF.toString()) || isError) {
-               this.recorder.record(log);
-            }
+            this.recorder.record(log);
         }
     }
 
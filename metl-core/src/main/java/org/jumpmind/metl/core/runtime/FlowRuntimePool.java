@@ -0,0 +1,130 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
+import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Idle, initialized flow runtimes for a deployment.  Building a flow runtime
+ * creates all of the step and component runtimes, so deployments that are
+ * executed once per request borrow one that has already been built.  Only
+ * flow runtimes whose components can be reused are pooled.  Their components
+ * stay started while they are idle and are reset, not restarted, before the
+ * next execution.  A flow runtime that is not kept is stopped.
+ */
+class FlowRuntimePool {
+
+    final Logger log = LoggerFactory.getLogger(getClass());
+
+    AgentProjectVersionFlowDeployment deployment;
+
+    Supplier<FlowRuntime> factory;
+
+    BlockingQueue<FlowRuntime> idle;
+
+    int size;
+
+    volatile boolean closed;
+
+    FlowRuntimePool(AgentProjectVersionFlowDeployment deployment, int size, Supplier<FlowRuntime> factory) {
+        this.deployment = deployment;
+        this.size = size;
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    AgentProjectVersionFlowDeployment getDeployment() {
+        return deployment;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    FlowRuntime borrow() {
+        FlowRuntime flowRuntime = idle.poll();
+        if (flowRuntime == null) {
+            flowRuntime = create();
+        }
+        return flowRuntime;
+    }
+
+    /*
+     * A flow runtime is kept when the pool is open and has room and the
+     * execution ended cleanly.  A runtime that failed or was cancelled may
+     * have components in an unknown state.
+     */
+    synchronized void release(FlowRuntime flowRuntime) {
+        boolean keep = !closed && flowRuntime.isReusable() && !flowRuntime.isRunning() && !flowRuntime.isCancelled()
+                && flowRuntime.getAllErrors().isEmpty();
+        if (!keep || !idle.offer(flowRuntime)) {
+            flowRuntime.stopComponentRuntimes();
+        }
+    }
+
+    void prewarm() {
+        try {
+            while (!closed && idle.remainingCapacity() > 0) {
+                FlowRuntime flowRuntime = create();
+                if (!flowRuntime.isReusable()) {
+                    flowRuntime.stopComponentRuntimes();
+                    log.info("The flow runtimes for '{}' are not pooled because not all of its components can be reused",
+                            deployment.getName());
+                    break;
+                }
+                release(flowRuntime);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to prewarm the flow runtimes for '{}'", deployment.getName(), e);
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        FlowRuntime flowRuntime = idle.poll();
+        while (flowRuntime != null) {
+            flowRuntime.stopComponentRuntimes();
+            flowRuntime = idle.poll();
+        }
+    }
+
+    protected FlowRuntime create() {
+        FlowRuntime flowRuntime = factory.get();
+        flowRuntime.setReuseComponentRuntimes(true);
+        return flowRuntime;
+    }
+
+}
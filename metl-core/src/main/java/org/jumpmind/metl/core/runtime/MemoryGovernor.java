@@ -0,0 +1,146 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admits the executions of an agent against a heap budget.
+ * <p>
+ * Before an execution starts it reserves the memory its step queues may hold,
+ * which is the flow's queue memory budget capped at the agent's budget. When
+ * the reservation does not fit, the execution waits for running executions to
+ * release memory. Waiting executions are admitted in the order they arrived.
+ * Memory held by stateful components is not reserved up front, so whatever
+ * running executions use beyond their reservation also holds back new ones.
+ * An execution is always admitted when nothing else is running.
+ */
+public class MemoryGovernor {
+
+    static final long WAIT_INTERVAL_IN_MS = 1000;
+
+    final Logger log = LoggerFactory.getLogger(getClass());
+
+    final long budget;
+
+    final Map<FlowRuntime, Long> reservations = new ConcurrentHashMap<>();
+
+    final Deque<FlowRuntime> waiting = new ArrayDeque<>();
+
+    long reserved;
+
+    public MemoryGovernor(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return the bytes an execution of the flow will reserve
+     */
+    public long getReservation(FlowRuntime flowRuntime) {
+        long reservation = flowRuntime.getQueueMemoryBudget();
+        return reservation > 0 && reservation < budget ? reservation : budget;
+    }
+
+    /**
+     * Wait until there is enough memory for the execution and reserve it.
+     * 
+     * @return false if the execution was cancelled while it waited
+     */
+    public synchronized boolean admit(FlowRuntime flowRuntime) throws InterruptedException {
+        long reservation = getReservation(flowRuntime);
+        boolean logged = false;
+        waiting.add(flowRuntime);
+        try {
+            while (waiting.peek() != flowRuntime || !fits(reservation)) {
+                if (flowRuntime.isCancelled()) {
+                    return false;
+                }
+                if (!logged) {
+                    log.info("Execution {} is waiting for {} MB of memory.  {} MB is reserved and {} MB is used of the {} MB budget",
+                            flowRuntime.getExecutionId(), toMb(reservation), toMb(reserved), toMb(getUsed()), toMb(budget));
+                    logged = true;
+                }
+                wait(WAIT_INTERVAL_IN_MS);
+            }
+        } finally {
+            waiting.remove(flowRuntime);
+            notifyAll();
+        }
+        reserved += reservation;
+        reservations.put(flowRuntime, reservation);
+        flowRuntime.setReservedMemory(reservation);
+        if (logged) {
+            log.info("Execution {} was admitted", flowRuntime.getExecutionId());
+        }
+        return true;
+    }
+
+    public synchronized void release(FlowRuntime flowRuntime) {
+        Long reservation = reservations.remove(flowRuntime);
+        if (reservation != null) {
+            reserved -= reservation;
+            notifyAll();
+        }
+    }
+
+    protected boolean fits(long reservation) {
+        return reservations.isEmpty() || reserved + getOverage() + reservation <= budget;
+    }
+
+    /*
+     * What running executions use beyond what they reserved
+     */
+    protected long getOverage() {
+        long overage = 0;
+        for (Map.Entry<FlowRuntime, Long> entry : reservations.entrySet()) {
+            overage += Math.max(0, entry.getKey().getMemoryUsed() - entry.getValue());
+        }
+        return overage;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    public long getUsed() {
+        long used = 0;
+        for (FlowRuntime flowRuntime : reservations.keySet()) {
+            used += flowRuntime.getMemoryUsed();
+        }
+        return used;
+    }
+
+    protected static long toMb(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+}
@@ -21,14 +21,27 @@
 package org.jumpmind.metl.core.runtime;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
-public class MessageHeader extends LinkedHashMap<String, Serializable>implements Serializable, Cloneable {
+/**
+ * The header values of a message.
+ * <p>
+ * Outbound messages inherit the header of the message that is being handled.
+ * To keep that cheap the values are copy on write. Copying a header into an
+ * empty header shares the values and the first change to either header
+ * copies them. The key and entry views are read only. The serialized form
+ * changed with the copy on write fields, so it is versioned apart from the
+ * header of earlier releases.
+ */
+public class MessageHeader extends AbstractMap<String, Serializable> implements Serializable, Cloneable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     String executionId;
 
@@ -36,6 +49,11 @@ public class MessageHeader extends LinkedHashMap<String, Serializable>implements
 
     String originatingStepId;
 
+    /* replaced, not changed, while shared so unsynchronized readers see a complete map */
+    volatile Map<String, Serializable> values = Collections.emptyMap();
+
+    boolean shared = true;
+
     public MessageHeader(String originatingStepId) {
         this.originatingStepId = originatingStepId;
     }
@@ -77,4 +95,90 @@ public class MessageHeader extends LinkedHashMap<String, Serializable>implements
         return params;
     }
 
+    protected synchronized Map<String, Serializable> share() {
+        shared = true;
+        return values;
+    }
+
+    protected Map<String, Serializable> writable() {
+        if (shared) {
+            values = new LinkedHashMap<>(values);
+            shared = false;
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Serializable get(Object key) {
+        return values.get(key);
+    }
+
+    @Override
+    public synchronized Serializable put(String key, Serializable value) {
+        return writable().put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends Serializable> map) {
+        if (map == this || map.isEmpty()) {
+            return;
+        }
+        if (map instanceof MessageHeader) {
+            MessageHeader header = (MessageHeader) map;
+            if (header.values == values) {
+                return;
+            } else if (values.isEmpty()) {
+                Map<String, Serializable> headerValues = header.share();
+                synchronized (this) {
+                    if (values.isEmpty()) {
+                        values = headerValues;
+                        shared = true;
+                        return;
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            writable().putAll(map);
+        }
+    }
+
+    @Override
+    public synchronized Serializable remove(Object key) {
+        return values.containsKey(key) ? writable().remove(key) : null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        values = Collections.emptyMap();
+        shared = true;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Serializable>> entrySet() {
+        return Collections.unmodifiableMap(values).entrySet();
+    }
+
+    @Override
+    public Object clone() {
+        try {
+            MessageHeader copy = (MessageHeader) super.clone();
+            copy.values = share();
+            copy.shared = true;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
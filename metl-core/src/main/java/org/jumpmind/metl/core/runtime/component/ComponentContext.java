@@ -69,6 +69,21 @@ public class ComponentContext {
         this.context = new LinkedCaseInsensitiveMap<Object>();
     }
 
+    /*
+     * Clear the state of a previous execution so the context can be used
+     * again
+     */
+    public void reset(IExecutionTracker executionTracker, Map<String, String> flowParameters) {
+        this.executionTracker = executionTracker;
+        this.flowParameters.clear();
+        if (flowParameters != null) {
+            this.flowParameters.putAll(flowParameters);
+        }
+        this.componentStatistics = new ComponentStatistics();
+        this.context = new LinkedCaseInsensitiveMap<Object>();
+        this.startStep = false;
+    }
+
     public LinkedCaseInsensitiveMap<Object> getContext() {
         return context;
     }
@@ -27,6 +27,14 @@ final public class ComponentSettingsConstants {
     
     public final static String INBOUND_QUEUE_CAPACITY = "inbound.queue.capacity";     
     
+    public final static String INBOUND_QUEUE_MEMORY_MB = "inbound.queue.memory.mb";
+    
+    public final static int DEFAULT_INBOUND_QUEUE_MEMORY_MB = 64;
+
+    public final static String INBOUND_QUEUE_SPILL = "inbound.queue.spill";
+    
+    public final static String SHARE_OUTBOUND_PAYLOAD = "share.outbound.payload";
+    
     public final static String ENABLED = "enabled";
 
     public final static String LOG_INPUT = "logInput";
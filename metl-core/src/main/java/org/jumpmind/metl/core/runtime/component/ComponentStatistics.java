@@ -22,126 +22,212 @@ package org.jumpmind.metl.core.runtime.component;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counters are kept per thread number in {@link LongAdder}s so that
+ * concurrent updates are never lost and never block. The histograms are
+ * shared by all of the threads of a step.
+ * <p>
+ * Memory is an estimate in bytes. Stateful components report what their
+ * thread currently holds and the peak is kept. The step reports the peak held
+ * by its inbound queue and the agent the memory reserved for the execution.
+ */
 public class ComponentStatistics {
 
-    private Map<Integer, Integer> numberInboundMessages = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberOutboundMessages = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberEntitiesProcessed = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberInboundPayload = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> numberOutboundPayload = new ConcurrentHashMap<>();
-    private Map<Integer, Long> timeSpentInHandle = new ConcurrentHashMap<>();
-    private Map<Integer, Long> timeSpentWaiting = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> numberInboundMessages = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> numberOutboundMessages = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> numberEntitiesProcessed = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> numberInboundPayload = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> numberOutboundPayload = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> timeSpentInHandle = new ConcurrentHashMap<>();
+    private Map<Integer, LongAdder> timeSpentWaiting = new ConcurrentHashMap<>();
+    private Map<Integer, AtomicLong> memoryUsed = new ConcurrentHashMap<>();
+    private Map<Integer, AtomicLong> peakMemoryUsed = new ConcurrentHashMap<>();
+    private volatile long peakQueueMemoryUsed;
+    private volatile long reservedMemory;
+    private Histogram handleTimes = new Histogram();
+    private Histogram waitTimes = new Histogram();
+    private Histogram inboundPayloadSizes = new Histogram();
     
+    private static LongAdder counter(Map<Integer, LongAdder> counters, int thread) {
+        LongAdder counter = counters.get(thread);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(thread, k -> new LongAdder());
+        }
+        return counter;
+    }
+
+    private static long sum(Map<Integer, LongAdder> counters, int thread) {
+        LongAdder counter = counters.get(thread);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    private static void set(Map<Integer, LongAdder> counters, int thread, long value) {
+        LongAdder counter = counter(counters, thread);
+        counter.reset();
+        counter.add(value);
+    }
     
     public long getTimeSpentInHandle(int thread) {
-        Long number = timeSpentInHandle.get(thread);
-        return number != null ? number : 0;
+        return sum(timeSpentInHandle, thread);
     }
     
     public long getTimeSpentWaiting(int thread) {
-        Long number = timeSpentWaiting.get(thread);
-        return number != null ? number : 0;
+        return sum(timeSpentWaiting, thread);
     }
     
     public void incrementTimeSpentInHandle(int thread, long amount) {
+        handleTimes.record(amount);
         if (amount > 0) {
-            Long number = timeSpentInHandle.get(thread);
-            if (number != null) {
-                number = number + amount;
-            } else {
-                number = amount;
-            }
-            timeSpentInHandle.put(thread, number);
+            counter(timeSpentInHandle, thread).add(amount);
         }
     }
 
     public void incrementTimeSpentWaiting(int thread, long amount) {
+        waitTimes.record(amount);
         if (amount > 0) {
-            Long number = timeSpentWaiting.get(thread);
-            if (number != null) {
-                number = number + amount;
-            } else {
-                number = amount;
-            }
-            timeSpentWaiting.put(thread, number);
+            counter(timeSpentWaiting, thread).add(amount);
         }
     }
 
+    /**
+     * @return the distribution of the time (in milliseconds) spent in the
+     *         component's handle method per message
+     */
+    public Histogram getHandleTimes() {
+        return handleTimes;
+    }
+
+    /**
+     * @return the distribution of the time (in milliseconds) spent waiting to
+     *         queue output to a downstream step per message
+     */
+    public Histogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * @return the distribution of the number of payload items per inbound
+     *         message
+     */
+    public Histogram getInboundPayloadSizes() {
+        return inboundPayloadSizes;
+    }
+
     public int getNumberInboundMessages(int thread) {
-        Integer number = numberInboundMessages.get(thread);
-        return number != null ? number : 0;
+        return (int) sum(numberInboundMessages, thread);
     }
 
     public void setNumberInboundMessages(int thread, int numberInboundMessages) {
-        this.numberInboundMessages.put(thread, numberInboundMessages);
+        set(this.numberInboundMessages, thread, numberInboundMessages);
     }
 
     public void incrementInboundMessages(int thread) {
-        this.numberInboundMessages.put(thread, getNumberInboundMessages(thread)+1);
+        counter(numberInboundMessages, thread).increment();
     }
 
     public void setNumberOutboundMessages(int thread, int numberOutboundMessages) {
-        this.numberOutboundMessages.put(thread, numberOutboundMessages);
+        set(this.numberOutboundMessages, thread, numberOutboundMessages);
     }
 
     public int getNumberOutboundMessages(int thread) {
-        Integer number = numberOutboundMessages.get(thread);
-        return number != null ? number : 0;
+        return (int) sum(numberOutboundMessages, thread);
     }
 
     public void incrementOutboundMessages(int thread) {
-        this.numberOutboundMessages.put(thread, getNumberOutboundMessages(thread)+1);
+        counter(numberOutboundMessages, thread).increment();
     }
 
     public void setNumberEntitiesProcessed(int thread, int numberEntitiesProcessed) {
-        this.numberEntitiesProcessed.put(thread, getNumberEntitiesProcessed(thread)+1);
+        set(this.numberEntitiesProcessed, thread, numberEntitiesProcessed);
     }
 
     public int getNumberEntitiesProcessed(int thread) {
-        Integer number = numberEntitiesProcessed.get(thread);
-        return number != null ? number : 0;
+        return (int) sum(numberEntitiesProcessed, thread);
     }
 
     public void incrementNumberEntitiesProcessed(int thread) {
-        this.numberEntitiesProcessed.put(thread, getNumberEntitiesProcessed(thread)+1);
+        counter(numberEntitiesProcessed, thread).increment();
     }
 
     public void incrementNumberEntitiesProcessed(int thread, int count) {
-        this.numberEntitiesProcessed.put(thread, getNumberEntitiesProcessed(thread)+count);
+        counter(numberEntitiesProcessed, thread).add(count);
     }
     
     public void setNumberInboundPayload(int thread, int numberInboundPayload) {
-        this.numberInboundPayload.put(thread, getNumberInboundPayload(thread)+1);
+        set(this.numberInboundPayload, thread, numberInboundPayload);
     }
 
     public int getNumberInboundPayload(int thread) {
-        Integer number = numberInboundPayload.get(thread);
-        return number != null ? number : 0;
+        return (int) sum(numberInboundPayload, thread);
     }
 
     public void incrementNumberInboundPayload(int thread) {
-        this.numberInboundPayload.put(thread, getNumberInboundPayload(thread)+1);
+        incrementNumberInboundPayload(thread, 1);
     }
 
     public void incrementNumberInboundPayload(int thread, int count) {
-        this.numberInboundPayload.put(thread, getNumberInboundPayload(thread)+count);
+        inboundPayloadSizes.record(count);
+        counter(numberInboundPayload, thread).add(count);
     }
     
     public void setNumberOutboundPayload(int thread, int numberOutboundPayload) {
-        this.numberOutboundPayload.put(thread, getNumberOutboundPayload(thread)+1);
+        set(this.numberOutboundPayload, thread, numberOutboundPayload);
     }
 
     public int getNumberOutboundPayload(int thread) {
-        Integer number = numberOutboundPayload.get(thread);
-        return number != null ? number : 0;
+        return (int) sum(numberOutboundPayload, thread);
     }
 
     public void incrementNumberOutboundPayload(int thread) {
-        this.numberOutboundPayload.put(thread, getNumberOutboundPayload(thread)+1);
+        counter(numberOutboundPayload, thread).increment();
     }
 
     public void incrementNumberOutboundPayload(int thread, int count) {
-        this.numberOutboundPayload.put(thread, getNumberOutboundPayload(thread)+count);
+        counter(numberOutboundPayload, thread).add(count);
+    }
+
+    public void setMemoryUsed(int thread, long bytes) {
+        memoryUsed.computeIfAbsent(thread, k -> new AtomicLong()).set(bytes);
+        peakMemoryUsed.computeIfAbsent(thread, k -> new AtomicLong()).accumulateAndGet(bytes, Math::max);
+    }
+
+    public long getMemoryUsed(int thread) {
+        AtomicLong bytes = memoryUsed.get(thread);
+        return bytes != null ? bytes.get() : 0;
+    }
+
+    /**
+     * @return the memory currently used by all of the threads of the step
+     */
+    public long getMemoryUsed() {
+        long bytes = 0;
+        for (AtomicLong threadBytes : memoryUsed.values()) {
+            bytes += threadBytes.get();
+        }
+        return bytes;
+    }
+
+    public long getPeakMemoryUsed(int thread) {
+        AtomicLong bytes = peakMemoryUsed.get(thread);
+        return bytes != null ? bytes.get() : 0;
+    }
+
+    public void setPeakQueueMemoryUsed(long peakQueueMemoryUsed) {
+        this.peakQueueMemoryUsed = peakQueueMemoryUsed;
+    }
+
+    public long getPeakQueueMemoryUsed() {
+        return peakQueueMemoryUsed;
+    }
+
+    public void setReservedMemory(long reservedMemory) {
+        this.reservedMemory = reservedMemory;
+    }
+
+    public long getReservedMemory() {
+        return reservedMemory;
     }
 }
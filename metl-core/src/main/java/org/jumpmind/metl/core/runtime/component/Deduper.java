@@ -64,6 +64,8 @@ public class Deduper extends AbstractComponentRuntime {
 
     LinkedHashMap<String, EntityData> deduped = new LinkedHashMap<String, EntityData>();
 
+    long dedupedSize;
+
     @Override
     public void start() {
         TypedProperties properties = getTypedProperties();
@@ -121,10 +123,12 @@ public class Deduper extends AbstractComponentRuntime {
                 if (!deduped.containsKey(key)) {
                     getComponentStatistics().incrementNumberEntitiesProcessed(threadNumber);
                     deduped.put(key, entityData);
+                    dedupedSize += 40 + 2 * key.length() + entityData.estimateSize();
                 } else {
                     // else it exists, check if we need to save the first or last value and replace if necessary
                 	if (PRESERVE_LAST.equals(preserveRecord)) {
-                		deduped.put(key, entityData);
+                		EntityData replaced = deduped.put(key, entityData);
+                		dedupedSize += entityData.estimateSize() - replaced.estimateSize();
                 	}
                 }
             }
@@ -145,10 +149,12 @@ public class Deduper extends AbstractComponentRuntime {
                 }
 
                 deduped.clear();
+                dedupedSize = 0;
 
                 callback.sendEntityDataMessage(null, payload);
             }
         }
+        getComponentStatistics().setMemoryUsed(threadNumber, dedupedSize);
     }
 
 }
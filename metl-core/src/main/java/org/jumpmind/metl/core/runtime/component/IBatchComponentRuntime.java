@@ -0,0 +1,56 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.List;
+
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
+
+/**
+ * A component runtime that can handle several queued messages in one call so
+ * that work like opening a transaction or flushing a file is done once per
+ * batch instead of once per message.
+ * <p>
+ * When the step runs on a single thread it drains the content messages that
+ * are already waiting in its inbound queue and passes them in together. A
+ * batch ends at a control message or at the message that reaches a unit of
+ * work boundary, so either can only be the last message of a batch.  A
+ * fused step gets the messages its source sent while handling one message.
+ * Messages sent while a batch is handled inherit the header of the last
+ * message of the batch.
+ */
+public interface IBatchComponentRuntime extends IComponentRuntime {
+
+    /**
+     * @return whether the step should hand this runtime batches.  Checked
+     *         once, after the runtime is created and before it is started.
+     */
+    public boolean supportsBatchHandle();
+
+    /**
+     * @param unitOfWorkBoundaryReached
+     *            whether the last message of the batch reached a unit of work
+     *            boundary
+     */
+    public void handleBatch(List<Message> inputMessages, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached);
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+/**
+ * A component runtime that can be kept started and used again for the next
+ * execution of a pooled flow runtime.
+ * <p>
+ * {@link #start()} is called before the first execution only. Before each
+ * execution after that {@link #reset()} is called instead, and
+ * {@link #stop()} is called once, when the flow runtime is discarded. A
+ * flow runtime is only pooled when all of its component runtimes support
+ * reuse.
+ */
+public interface IReusableComponentRuntime extends IComponentRuntime {
+
+    /**
+     * @return whether this runtime may be kept started between executions.
+     *         Checked once, after the runtime is created and before it is
+     *         started.
+     */
+    public boolean supportsReuse();
+
+    /**
+     * Clear the state of the previous execution. Settings that were read and
+     * objects that were built in {@link #start()} are kept.
+     */
+    public void reset();
+
+}
@@ -60,6 +60,10 @@ public class Lookup extends AbstractComponentRuntime {
 
     List<Message> queuedWhileWaitingForLookup = new ArrayList<Message>();
 
+    long lookupSize;
+
+    long queuedSize;
+
     @Override
     public void start() {
         lookupInitialized = false;
@@ -104,7 +108,11 @@ public class Lookup extends AbstractComponentRuntime {
             if (inputMessage instanceof EntityDataMessage) {
                 List<EntityData> datas = ((EntityDataMessage)inputMessage).getPayload();
                 for (EntityData entityData : datas) {
-                    lookup.put(ObjectUtils.toString(entityData.get(keyAttributeId)), entityData.get(valueAttributeId));
+                    String key = ObjectUtils.toString(entityData.get(keyAttributeId));
+                    Object value = entityData.get(valueAttributeId);
+                    if (lookup.put(key, value) == null) {
+                        lookupSize += 72 + 2 * key.length() + (value instanceof String ? 2 * ((String) value).length() : 0);
+                    }
                 }
             }
             lookupInitialized = inputMessage instanceof ControlMessage;
@@ -117,14 +125,22 @@ public class Lookup extends AbstractComponentRuntime {
                         enhanceAndSend((EntityDataMessage)message, callback, unitOfWorkBoundaryReached);
                     }
                 }
+                queuedWhileWaitingForLookup.clear();
+                queuedSize = 0;
             }
         } else if (!lookupInitialized) {
             queuedWhileWaitingForLookup.add(inputMessage);
+            if (inputMessage instanceof EntityDataMessage) {
+                for (EntityData data : ((EntityDataMessage) inputMessage).getPayload()) {
+                    queuedSize += data.estimateSize();
+                }
+            }
         } else if (lookupInitialized && !(inputMessage instanceof ControlMessage)) {
             if (inputMessage instanceof EntityDataMessage) {
                 enhanceAndSend((EntityDataMessage)inputMessage, callback, unitOfWorkBoundaryReached);
             }
         }
+        getComponentStatistics().setMemoryUsed(threadNumber, lookupSize + queuedSize);
     }
 
     protected void enhanceAndSend(EntityDataMessage message, ISendMessageCallback callback, boolean unitOfWorkLastMessage) {
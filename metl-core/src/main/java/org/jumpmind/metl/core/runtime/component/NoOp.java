@@ -23,13 +23,22 @@ package org.jumpmind.metl.core.runtime.component;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.flow.ISendMessageCallback;
 
-public class NoOp extends AbstractComponentRuntime {
+public class NoOp extends AbstractComponentRuntime implements IReusableComponentRuntime {
 
     public static final String TYPE = "No Op";
 
     @Override
     public void start() {
     }
+
+    @Override
+    public boolean supportsReuse() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+    }
         
     @Override
     public boolean supportsStartupMessages() {
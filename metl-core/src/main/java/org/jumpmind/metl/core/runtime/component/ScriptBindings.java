@@ -0,0 +1,255 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.script.SimpleBindings;
+
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.Message;
+
+/**
+ * The variables that scripts and expressions are evaluated against.  The
+ * message headers, flow parameters and a map for each input model entity are
+ * bound once per message.  Binding a row only changes the row specific
+ * variables.  The entity maps are views that look their values up in the
+ * current row, so nothing is copied per row unless a script changes one.
+ * <p>
+ * Each row or line starts with the variables of its message, the same as if
+ * the bindings were created for it.  Variables that a script set or changed
+ * while evaluating the previous one are put back, and changes to an entity
+ * map never reach the row.
+ * <p>
+ * An instance is not thread safe.  Each component runtime has its own.
+ */
+public class ScriptBindings extends SimpleBindings {
+
+    Map<String, EntityView> entityViews = new LinkedHashMap<>();
+
+    EntityNameLookup entityNameLookup;
+
+    Message inputMessage;
+
+    EntityData row;
+
+    /* the variables bound for the message, to put back after a script changes them */
+    Map<String, Object> messageVariables;
+
+    boolean binding;
+
+    boolean changedByScript;
+
+    public ScriptBindings(Model model) {
+        super(new HashMap<>());
+        this.entityNameLookup = new EntityNameLookup(model);
+        if (model != null) {
+            for (ModelEntity entity : model.getModelEntities()) {
+                entityViews.put(entity.getName(), new EntityView(entity));
+            }
+        }
+    }
+
+    /**
+     * Replace all of the variables with the ones for the message.  The row
+     * variables are unset until a row is bound.
+     */
+    public void bindMessage(Message inputMessage, Map<String, String> flowParameters) {
+        binding = true;
+        try {
+            clear();
+            this.inputMessage = inputMessage;
+            this.row = null;
+            resetEntityViews();
+            putAll(entityViews);
+            putAll(inputMessage.getHeader());
+            putAll(flowParameters);
+            put("inputMessage", inputMessage);
+            put("text", null);
+            put("CHANGE_TYPE", null);
+            put("ENTITY_NAMES", Collections.emptyList());
+            messageVariables = new HashMap<>(this);
+            changedByScript = false;
+        } finally {
+            binding = false;
+        }
+    }
+
+    public void bindRow(EntityData row) {
+        binding = true;
+        try {
+            resetVariables();
+            this.row = row;
+            put("CHANGE_TYPE", row.getChangeType().name());
+            put("ENTITY_NAMES", entityNameLookup.getEntityNames(row));
+        } finally {
+            binding = false;
+        }
+    }
+
+    public void bindText(String text) {
+        binding = true;
+        try {
+            resetVariables();
+            put("text", text);
+        } finally {
+            binding = false;
+        }
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        changedByScript |= !binding;
+        return super.put(name, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        changedByScript |= !binding;
+        return super.remove(key);
+    }
+
+    protected void resetVariables() {
+        if (changedByScript && messageVariables != null) {
+            clear();
+            putAll(messageVariables);
+            changedByScript = false;
+        }
+        resetEntityViews();
+    }
+
+    protected void resetEntityViews() {
+        for (EntityView entityView : entityViews.values()) {
+            entityView.values = null;
+        }
+    }
+
+    /**
+     * @return the message that was last bound
+     */
+    public Message getInputMessage() {
+        return inputMessage;
+    }
+
+    /*
+     * The values of one entity's attributes in the current row, by attribute
+     * name.  The first change a script makes copies the values, so the
+     * change is seen until the next row is bound and the row is left as is.
+     */
+    class EntityView extends AbstractMap<String, Object> {
+
+        Map<String, String> attributeIds = new LinkedHashMap<>();
+
+        Map<String, Object> values;
+
+        EntityView(ModelEntity entity) {
+            for (ModelAttrib attribute : entity.getModelAttributes()) {
+                attributeIds.put(attribute.getName(), attribute.getId());
+            }
+        }
+
+        @Override
+        public Object get(Object name) {
+            if (values != null) {
+                return values.get(name);
+            }
+            String attributeId = attributeIds.get(name);
+            return attributeId != null && row != null ? row.get(attributeId) : null;
+        }
+
+        @Override
+        public Object put(String name, Object value) {
+            return copyValues().put(name, value);
+        }
+
+        @Override
+        public Object remove(Object name) {
+            return copyValues().remove(name);
+        }
+
+        @Override
+        public void clear() {
+            copyValues().clear();
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return values != null ? values.containsKey(name) : attributeIds.containsKey(name);
+        }
+
+        @Override
+        public int size() {
+            return values != null ? values.size() : attributeIds.size();
+        }
+
+        protected Map<String, Object> copyValues() {
+            if (values == null) {
+                Map<String, Object> copy = new LinkedHashMap<>();
+                for (String name : attributeIds.keySet()) {
+                    copy.put(name, get(name));
+                }
+                values = copy;
+            }
+            return values;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            if (values != null) {
+                return values.entrySet();
+            }
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    Iterator<String> names = attributeIds.keySet().iterator();
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return names.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            String name = names.next();
+                            return new SimpleImmutableEntry<>(name, get(name));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return attributeIds.size();
+                }
+            };
+        }
+    }
+
+}
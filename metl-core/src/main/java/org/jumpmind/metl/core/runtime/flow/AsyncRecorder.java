@@ -24,30 +24,40 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.metl.core.model.AbstractObject;
 import org.jumpmind.metl.core.model.ExecutionStepLog;
+import org.jumpmind.metl.core.model.GlobalSetting;
 import org.jumpmind.metl.core.persist.IExecutionService;
 import org.jumpmind.metl.core.util.LogUtils;
 import org.jumpmind.symmetric.csv.CsvWriter;
-import org.jumpmind.util.AppUtils;
 import org.jumpmind.util.FormatUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Persists execution tracking on a background thread.
+ * <p>
+ * Updates to the same execution or execution step are coalesced so only the
+ * latest state is saved, and every batch of them is saved in one call to the
+ * execution service. Step log records are written to their log files as they
+ * arrive but only flushed once enough bytes have been written or enough time
+ * has passed. Log records waiting to be written may use up to a byte budget.
+ * When it is used up, the threads logging wait for the recorder to catch up
+ * and drop their record if it does not.
+ */
 public class AsyncRecorder implements Runnable {
 
-    final Logger log = LoggerFactory.getLogger(getClass());
+    static final long MAX_WAIT_FOR_QUEUE_IN_MS = 5000;
 
-    protected BlockingQueue<AbstractObject> inQueue;
+    final Logger log = LoggerFactory.getLogger(getClass());
 
     protected IExecutionService executionService;
 
@@ -57,105 +67,190 @@ public class AsyncRecorder implements Runnable {
 
     protected Map<String, CsvWriter> logWriters = new HashMap<>();
 
+    protected Map<String, AbstractObject> pendingObjects = new LinkedHashMap<>();
+
+    protected List<ExecutionStepLog> pendingLogs = new ArrayList<>();
+
+    protected long pendingLogBytes;
+
+    protected long droppedLogs;
+
+    protected long queueBudgetBytes;
+
+    protected long flushBytes;
+
+    protected long flushIntervalInMs;
+
+    protected Set<CsvWriter> unflushedWriters = new HashSet<>();
+
+    protected long unflushedBytes;
+
+    protected long lastFlushTime = System.currentTimeMillis();
+
     public AsyncRecorder(IExecutionService executionService) {
-        this.inQueue = new LinkedBlockingQueue<AbstractObject>();
+        this(executionService, GlobalSetting.DEFAULT_EXECUTION_LOG_QUEUE_BUDGET_BYTES,
+                GlobalSetting.DEFAULT_EXECUTION_LOG_FLUSH_BYTES, GlobalSetting.DEFAULT_EXECUTION_LOG_FLUSH_INTERVAL_MS);
+    }
+
+    public AsyncRecorder(IExecutionService executionService, long queueBudgetBytes, long flushBytes, long flushIntervalInMs) {
         this.executionService = executionService;
+        this.queueBudgetBytes = queueBudgetBytes;
+        this.flushBytes = flushBytes;
+        this.flushIntervalInMs = Math.max(flushIntervalInMs, 1);
     }
 
     public void record(AbstractObject object) {
-        try {
-            synchronized (inQueue) {
-                inQueue.put(object);
-                inQueue.notify();
+        if (object == null) {
+            return;
+        }
+        synchronized (this) {
+            if (object instanceof ExecutionStepLog) {
+                long size = sizeOf((ExecutionStepLog) object);
+                long waitUntil = System.currentTimeMillis() + MAX_WAIT_FOR_QUEUE_IN_MS;
+                while (pendingLogs.size() > 0 && pendingLogBytes + size > queueBudgetBytes && !stopping) {
+                    long waitTime = waitUntil - System.currentTimeMillis();
+                    if (waitTime <= 0) {
+                        droppedLogs++;
+                        return;
+                    }
+                    try {
+                        wait(waitTime);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedLogs++;
+                        return;
+                    }
+                }
+                pendingLogs.add((ExecutionStepLog) object);
+                pendingLogBytes += size;
+            } else {
+                pendingObjects.put(object.getId(), object);
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            notifyAll();
         }
     }
 
-    protected void logAll() {
-        try {
-            HashSet<String> processed = new HashSet<>();
-            List<AbstractObject> toProcess = new ArrayList<>();
-            synchronized (inQueue) {
-                inQueue.drainTo(toProcess);
-                if (toProcess.isEmpty()) {
-                    inQueue.wait();
-                }
-            }
-            
-            for (int i = toProcess.size() - 1; i >= 0; i--) {
-                AbstractObject object = toProcess.get(i);
-                if (object != null && !(object instanceof ExecutionStepLog)) {
-                    if (!processed.contains(object.getId())) {
-                        executionService.save(object);
-                        processed.add(object.getId());
-                    }
-                }
+    protected long sizeOf(ExecutionStepLog stepLog) {
+        String text = stepLog.getLogText();
+        return 128 + (text != null ? 2 * Math.min(text.length(), 100000) : 0);
+    }
+
+    protected void logAll() throws InterruptedException {
+        List<AbstractObject> objects;
+        List<ExecutionStepLog> logs;
+        long dropped;
+        synchronized (this) {
+            if (pendingObjects.isEmpty() && pendingLogs.isEmpty() && !stopping) {
+                wait(unflushedWriters.isEmpty() ? 0 : flushIntervalInMs);
             }
+            objects = new ArrayList<>(pendingObjects.values());
+            logs = pendingLogs;
+            dropped = droppedLogs;
+            pendingObjects.clear();
+            pendingLogs = new ArrayList<>();
+            pendingLogBytes = 0;
+            droppedLogs = 0;
+            notifyAll();
+        }
 
-            for (int i = 0; i < toProcess.size(); i++) {
-                AbstractObject object = toProcess.get(i);
-                if (object instanceof ExecutionStepLog) {
-                    ExecutionStepLog stepLog = (ExecutionStepLog) object;
-                    String executionStepId = stepLog.getExecutionStepId();
-                    CsvWriter writer = logWriters.get(executionStepId);
-                    if (writer == null) {
-                        File logFile = new File(LogUtils.getLogDir(), executionStepId + ".log");
-                        writer = new CsvWriter(logFile.getAbsolutePath(), '"',
-                                Charset.forName("UTF-8"));
-                        logWriters.put(executionStepId, writer);
-                    }
-                    try {
-                        writer.writeRecord(new String[] { stepLog.getLevel(),
-                                FormatUtils.TIMESTAMP_FORMATTER.format(stepLog.getCreateTime()),
-                                StringUtils.abbreviate(stepLog.getLogText(), 100000) });
-                        writer.flush();
-                    } catch (IOException e) {
-                        writer.close();
-                        logWriters.remove(executionStepId);
-                        log.error("", e);
-                    }
-                }
+        if (dropped > 0) {
+            log.warn("Dropped {} step log messages because more than {} bytes of them were waiting to be written", dropped,
+                    queueBudgetBytes);
+        }
+
+        if (objects.size() > 0) {
+            try {
+                executionService.save(objects);
+            } catch (Throwable e) {
+                log.error("Failed to persist execution status", e);
             }
+        }
 
-            if (toProcess.size() == 0) {
-                AppUtils.sleep(5);
+        for (ExecutionStepLog stepLog : logs) {
+            String executionStepId = stepLog.getExecutionStepId();
+            CsvWriter writer = logWriters.get(executionStepId);
+            if (writer == null) {
+                File logFile = new File(LogUtils.getLogDir(), executionStepId + ".log");
+                writer = new CsvWriter(logFile.getAbsolutePath(), '"', Charset.forName("UTF-8"));
+                logWriters.put(executionStepId, writer);
             }
+            try {
+                String text = StringUtils.abbreviate(stepLog.getLogText(), 100000);
+                writer.writeRecord(new String[] { stepLog.getLevel(),
+                        FormatUtils.TIMESTAMP_FORMATTER.format(stepLog.getCreateTime()), text });
+                unflushedWriters.add(writer);
+                unflushedBytes += text != null ? text.length() : 0;
+            } catch (IOException e) {
+                closeWriter(executionStepId, writer);
+                log.error("", e);
+            }
+        }
+
+        if (unflushedBytes >= flushBytes || System.currentTimeMillis() - lastFlushTime >= flushIntervalInMs) {
+            flush();
+        }
+    }
 
-        } catch (Throwable e) {
-            log.error("Failed to persist log message", e);
+    protected void flush() {
+        for (CsvWriter writer : unflushedWriters) {
+            writer.flush();
         }
+        unflushedWriters.clear();
+        unflushedBytes = 0;
+        lastFlushTime = System.currentTimeMillis();
+    }
+
+    protected void closeWriter(String executionStepId, CsvWriter writer) {
+        unflushedWriters.remove(writer);
+        writer.close();
+        logWriters.remove(executionStepId);
+    }
+
+    protected synchronized boolean isDone() {
+        return stopping && pendingObjects.isEmpty() && pendingLogs.isEmpty();
     }
 
     @Override
     public void run() {
-        running = true;
+        synchronized (this) {
+            running = true;
+        }
 
         try {
-            while (!stopping || inQueue.size() > 0) {
+            while (!isDone()) {
                 try {
                     logAll();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 } catch (Throwable e) {
                     log.error("Failed to persist log message", e);
                 }
             }
-
         } finally {
-            running = false;
+            for (CsvWriter writer : logWriters.values()) {
+                writer.close();
+            }
+            logWriters.clear();
+            unflushedWriters.clear();
+            synchronized (this) {
+                running = false;
+                notifyAll();
+            }
         }
     }
 
     public void shutdown() {
-        this.stopping = true;
-
-        while (this.running) {
-            AppUtils.sleep(10);
-        }
-
-        Collection<CsvWriter> writers = logWriters.values();
-        for (CsvWriter csvWriter : writers) {
-            csvWriter.close();
+        synchronized (this) {
+            this.stopping = true;
+            notifyAll();
+            try {
+                while (this.running) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -0,0 +1,170 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.FlowStepLink;
+import org.jumpmind.metl.core.persist.IConfigurationService;
+import org.jumpmind.metl.core.plugin.IDefinitionFactory;
+import org.jumpmind.metl.core.plugin.XMLComponentDefinition;
+import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
+
+/*
+ * Everything about executing a flow that does not change from one execution
+ * to the next: the manipulated flow, the component definitions of the enabled
+ * steps and how the enabled steps are linked.  A plan is built once per
+ * deployment and shared by all of its flow runtimes.
+ */
+public class FlowExecutionPlan {
+
+    final Flow flow;
+
+    final Flow manipulatedFlow;
+
+    final List<FlowStep> flowSteps;
+
+    final Map<String, XMLComponentDefinition> componentDefinitions;
+
+    final Map<String, List<String>> targetStepIds;
+
+    final Map<String, List<String>> sourceStepIds;
+
+    final Set<String> startStepIds;
+
+    public FlowExecutionPlan(Flow flow, IDefinitionFactory definitionFactory, IConfigurationService configurationService) {
+        this.flow = flow;
+        this.manipulatedFlow = manipulateFlow(flow, definitionFactory, configurationService);
+
+        List<FlowStep> flowSteps = new ArrayList<>();
+        Map<String, XMLComponentDefinition> componentDefinitions = new HashMap<>();
+        Map<String, List<String>> targetStepIds = new HashMap<>();
+        Map<String, List<String>> sourceStepIds = new HashMap<>();
+        for (FlowStep flowStep : manipulatedFlow.getFlowSteps()) {
+            boolean enabled = flowStep.getComponent().getBoolean(AbstractComponentRuntime.ENABLED, true);
+            if (enabled) {
+                flowSteps.add(flowStep);
+                componentDefinitions.put(flowStep.getId(), definitionFactory
+                        .getComponentDefinition(flowStep.getComponent().getProjectVersionId(), flowStep.getComponent().getType()));
+                targetStepIds.put(flowStep.getId(), new ArrayList<>());
+                sourceStepIds.put(flowStep.getId(), new ArrayList<>());
+            }
+        }
+
+        /* only links between enabled steps are part of the plan */
+        for (FlowStepLink link : manipulatedFlow.getFlowStepLinks()) {
+            List<String> targets = targetStepIds.get(link.getSourceStepId());
+            List<String> sources = sourceStepIds.get(link.getTargetStepId());
+            if (targets != null && sources != null) {
+                targets.add(link.getTargetStepId());
+                sources.add(link.getSourceStepId());
+            }
+        }
+
+        Set<String> startStepIds = new HashSet<>();
+        for (FlowStep flowStep : flowSteps) {
+            List<String> sources = sourceStepIds.get(flowStep.getId());
+            sourceStepIds.put(flowStep.getId(), Collections.unmodifiableList(sources));
+            targetStepIds.put(flowStep.getId(), Collections.unmodifiableList(targetStepIds.get(flowStep.getId())));
+            if (sources.isEmpty()) {
+                startStepIds.add(flowStep.getId());
+            }
+        }
+
+        manipulatedFlow.calculateApproximateOrder();
+
+        this.flowSteps = Collections.unmodifiableList(flowSteps);
+        this.componentDefinitions = Collections.unmodifiableMap(componentDefinitions);
+        this.targetStepIds = Collections.unmodifiableMap(targetStepIds);
+        this.sourceStepIds = Collections.unmodifiableMap(sourceStepIds);
+        this.startStepIds = Collections.unmodifiableSet(startStepIds);
+    }
+
+    protected static Flow manipulateFlow(Flow flow, IDefinitionFactory definitionFactory, IConfigurationService configurationService) {
+        Flow clone = (Flow)flow.clone();
+        clone.setFlowParameters(new ArrayList<>());
+        clone.getFlowParameters().addAll(flow.getFlowParameters());
+        clone.setFlowSteps(new ArrayList<>());
+        clone.getFlowSteps().addAll(flow.getFlowSteps());
+        clone.setFlowStepLinks(new ArrayList<>());
+        clone.getFlowStepLinks().addAll(flow.getFlowStepLinks());
+
+        for (FlowStep flowStep : new ArrayList<>(clone.getFlowSteps())) {
+            XMLComponentDefinition componentDefintion = definitionFactory.getComponentDefinition(flow.getProjectVersionId(), flowStep.getComponent().getType());
+            if (isNotBlank(componentDefintion.getFlowManipulatorClassName())) {
+                try {
+                    IFlowManipulator flowManipulator = (IFlowManipulator) Class
+                            .forName(componentDefintion.getFlowManipulatorClassName())
+                            .newInstance();
+                    clone = flowManipulator.manipulate(clone, flowStep, configurationService);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return clone;
+    }
+
+    /*
+     * True when the plan was built from the given flow.  A deployment whose
+     * flow was refreshed needs a new plan.
+     */
+    public boolean isFor(Flow flow) {
+        return this.flow == flow;
+    }
+
+    public Flow getManipulatedFlow() {
+        return manipulatedFlow;
+    }
+
+    public List<FlowStep> getFlowSteps() {
+        return flowSteps;
+    }
+
+    public XMLComponentDefinition getComponentDefinition(String flowStepId) {
+        return componentDefinitions.get(flowStepId);
+    }
+
+    public List<String> getTargetStepIds(String flowStepId) {
+        return targetStepIds.get(flowStepId);
+    }
+
+    public List<String> getSourceStepIds(String flowStepId) {
+        return sourceStepIds.get(flowStepId);
+    }
+
+    public boolean isStartStep(String flowStepId) {
+        return startStepIds.contains(flowStepId);
+    }
+
+}
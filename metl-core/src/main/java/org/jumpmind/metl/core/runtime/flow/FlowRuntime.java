@@ -30,7 +30,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.mail.Message.RecipientType;
 import javax.mail.MessagingException;
@@ -47,18 +49,17 @@ import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
 import org.jumpmind.metl.core.model.Flow;
 import org.jumpmind.metl.core.model.FlowParameter;
 import org.jumpmind.metl.core.model.FlowStep;
-import org.jumpmind.metl.core.model.FlowStepLink;
+import org.jumpmind.metl.core.model.GlobalSetting;
 import org.jumpmind.metl.core.model.Notification;
 import org.jumpmind.metl.core.persist.IConfigurationService;
 import org.jumpmind.metl.core.persist.IExecutionService;
 import org.jumpmind.metl.core.persist.IOperationsService;
 import org.jumpmind.metl.core.plugin.IDefinitionFactory;
-import org.jumpmind.metl.core.plugin.XMLComponentDefinition;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.ExecutionTrackerLogger;
 import org.jumpmind.metl.core.runtime.ExecutionTrackerRecorder;
 import org.jumpmind.metl.core.runtime.IExecutionTracker;
-import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
+import org.jumpmind.metl.core.runtime.MemoryGovernor;
 import org.jumpmind.metl.core.runtime.component.ComponentContext;
 import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntime;
@@ -68,6 +69,7 @@ import org.jumpmind.metl.core.runtime.component.IHasSecurity;
 import org.jumpmind.metl.core.runtime.component.Results;
 import org.jumpmind.metl.core.runtime.resource.IResourceRuntime;
 import org.jumpmind.metl.core.runtime.resource.MailSession;
+import org.jumpmind.properties.TypedProperties;
 import org.jumpmind.util.AppUtils;
 import org.jumpmind.util.FormatUtils;
 import org.slf4j.Logger;
@@ -95,6 +97,21 @@ public class FlowRuntime {
 
     ExecutorService threadService;
 
+    Executor stepScheduler;
+
+    FlowExecutionPlan plan;
+
+    /* bytes held in memory by the inbound queues of all of the steps */
+    AtomicLong queuedBytes = new AtomicLong();
+
+    long queueMemoryBudget;
+
+    MemoryGovernor memoryGovernor;
+
+    volatile long reservedMemory;
+
+    volatile boolean cancelled;
+
     Map<String, StepRuntime> stepRuntimes;
 
     Agent agent;
@@ -125,7 +142,7 @@ public class FlowRuntime {
             Map<String, String> globalSettings) {
         this(executionId, userId, deployment, agent, componentRuntimeFactory, componentDefinitionFactory,
                 threadService, operationsService, configurationService, executionService,
-                deployedResources, notifications, globalSettings, null);
+                deployedResources, notifications, globalSettings, null, null);
     }
 
     public FlowRuntime(String executionId, String userId, AgentProjectVersionFlowDeployment deployment, Agent agent,
@@ -135,6 +152,18 @@ public class FlowRuntime {
             IConfigurationService configurationService, IExecutionService executionService,
             Map<String, IResourceRuntime> deployedResources, List<Notification> notifications,
             Map<String, String> globalSettings, Map<String, String> runtimeParameters) {
+        this(executionId, userId, deployment, agent, componentRuntimeFactory, definitionFactory,
+                threadService, operationsService, configurationService, executionService,
+                deployedResources, notifications, globalSettings, runtimeParameters, null);
+    }
+
+    public FlowRuntime(String executionId, String userId, AgentProjectVersionFlowDeployment deployment, Agent agent,
+            IComponentRuntimeFactory componentRuntimeFactory,
+            IDefinitionFactory definitionFactory,
+            ExecutorService threadService, IOperationsService operationsService,
+            IConfigurationService configurationService, IExecutionService executionService,
+            Map<String, IResourceRuntime> deployedResources, List<Notification> notifications,
+            Map<String, String> globalSettings, Map<String, String> runtimeParameters, FlowExecutionPlan plan) {
         
         if (agent.isAutoRefresh() && configurationService != null && operationsService != null) {
             deployment.setFlow(configurationService.findFlow(deployment.getFlow().getId()));
@@ -152,65 +181,126 @@ public class FlowRuntime {
         this.executionService = executionService;
         this.deployedResources = deployedResources;
         this.globalSettings = globalSettings;
+
+        TypedProperties settings = new TypedProperties();
+        if (globalSettings != null) {
+            settings.putAll(globalSettings);
+        }
+        this.queueMemoryBudget = settings.getLong(GlobalSetting.FLOW_QUEUE_MEMORY_MB, GlobalSetting.DEFAULT_FLOW_QUEUE_MEMORY_MB) * 1024 * 1024;
+        long agentMemoryBudget = settings.getLong(GlobalSetting.AGENT_MEMORY_BUDGET_MB, GlobalSetting.DEFAULT_AGENT_MEMORY_BUDGET_MB) * 1024 * 1024;
+        if (agentMemoryBudget > 0 && (queueMemoryBudget <= 0 || queueMemoryBudget > agentMemoryBudget)) {
+            /* the queues of a flow may not hold more than the agent can reserve for it */
+            this.queueMemoryBudget = agentMemoryBudget;
+        }
         
         this.flowParameters = getFlowParameters(agent, deployment);
         if (runtimeParameters != null) {
             this.flowParameters.putAll(runtimeParameters);
         }
         
-        if (threadService != null && executionService != null) {
-            this.executionTracker = new ExecutionTrackerRecorder(agent, deployment, threadService,
-                    executionService, userId, flowParameters.toString());
-        } else {
-            this.executionTracker = new ExecutionTrackerLogger(deployment);
-        }
+        this.executionTracker = createExecutionTracker(userId);
         this.stepRuntimes = new HashMap<String, StepRuntime>();
 
-        manipulatedFlow = manipulateFlow(deployment.getFlow());
+        if (plan == null || !plan.isFor(deployment.getFlow())) {
+            plan = new FlowExecutionPlan(deployment.getFlow(), definitionFactory, configurationService);
+        }
+        this.plan = plan;
+        this.manipulatedFlow = plan.getManipulatedFlow();
         
-        /* create a step runtime for every component in the flow */
-        for (FlowStep flowStep : manipulatedFlow.getFlowSteps()) {
-            boolean enabled = flowStep.getComponent().getBoolean(AbstractComponentRuntime.ENABLED,
-                    true);
-            if (enabled) {
-                ComponentContext context = new ComponentContext(deployment.getAgentDeployment(), flowStep,
-                        manipulatedFlow, executionTracker, deployedResources, flowParameters,
-                        globalSettings);
-                StepRuntime stepRuntime = new StepRuntime(componentRuntimeFactory,
-                        definitionFactory, context, this);
-                stepRuntimes.put(flowStep.getId(), stepRuntime);
-            }
+        /* create a step runtime for every enabled component in the flow */
+        for (FlowStep flowStep : plan.getFlowSteps()) {
+            ComponentContext context = new ComponentContext(deployment.getAgentDeployment(), flowStep,
+                    manipulatedFlow, executionTracker, deployedResources, flowParameters,
+                    globalSettings);
+            StepRuntime stepRuntime = new StepRuntime(componentRuntimeFactory,
+                    definitionFactory, plan.getComponentDefinition(flowStep.getId()), context, this);
+            stepRuntimes.put(flowStep.getId(), stepRuntime);
         }
 
-        List<FlowStepLink> links = manipulatedFlow.getFlowStepLinks();
-
         /* for each step runtime, set their list of msgTarget step runtimes */
         for (String stepId : stepRuntimes.keySet()) {
             List<StepRuntime> targetStepRuntimes = new ArrayList<StepRuntime>();
             List<StepRuntime> sourceStepRuntimes = new ArrayList<StepRuntime>();
-            for (FlowStepLink flowStepLink : links) {
-                if (stepId.equals(flowStepLink.getSourceStepId())) {
-                    StepRuntime runtime = stepRuntimes.get(flowStepLink.getTargetStepId());
-                    if (runtime != null) {
-                        targetStepRuntimes.add(runtime);
-                    }
-                }
-                if (stepId.equals(flowStepLink.getTargetStepId())) {
-                    StepRuntime runtime = stepRuntimes.get(flowStepLink.getSourceStepId());
-                    if (runtime != null) {
-                        sourceStepRuntimes.add(runtime);
-                    }
-                }
+            for (String targetStepId : plan.getTargetStepIds(stepId)) {
+                targetStepRuntimes.add(stepRuntimes.get(targetStepId));
+            }
+            for (String sourceStepId : plan.getSourceStepIds(stepId)) {
+                sourceStepRuntimes.add(stepRuntimes.get(sourceStepId));
             }
             StepRuntime runtime = stepRuntimes.get(stepId);
-            if (runtime != null) {
-                runtime.setTargetStepRuntimes(targetStepRuntimes);
-                runtime.setSourceStepRuntimes(sourceStepRuntimes);
+            runtime.setTargetStepRuntimes(targetStepRuntimes);
+            runtime.setSourceStepRuntimes(sourceStepRuntimes);
+        }
+
+        /*
+         * a step that is the only target of its only source is fused into
+         * that source when its component allows it.  A linear chain of such
+         * steps is handled on the thread of the step at its head.
+         */
+        if (settings.is(GlobalSetting.STEP_FUSION_ENABLED, GlobalSetting.DEFAULT_STEP_FUSION_ENABLED)) {
+            for (StepRuntime runtime : stepRuntimes.values()) {
+                runtime.setFused(runtime.isFusable());
             }
         }
+    }
+
+    protected IExecutionTracker createExecutionTracker(String userId) {
+        if (threadService != null && executionService != null) {
+            return new ExecutionTrackerRecorder(agent, agentProjectVersionFlowDeployment, threadService,
+                    executionService, userId, flowParameters.toString(), globalSettings);
+        } else {
+            return new ExecutionTrackerLogger(agentProjectVersionFlowDeployment);
+        }
+    }
+
+    /*
+     * Prepare a flow runtime that has already executed to execute again.
+     * The step and component runtimes are kept.  Only the state that belongs
+     * to an execution is reset.
+     */
+    public void reset(String executionId, String userId, Map<String, String> runtimeParameters) {
+        if (isRunning()) {
+            throw new IllegalStateException("A flow runtime cannot be reset while it is running");
+        }
+        this.executionId = executionId;
+        this.cancelled = false;
+        this.flowParameters = getFlowParameters(agent, agentProjectVersionFlowDeployment);
+        if (runtimeParameters != null) {
+            this.flowParameters.putAll(runtimeParameters);
+        }
+        this.executionTracker = createExecutionTracker(userId);
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            stepRuntime.reset(executionTracker, flowParameters);
+        }
+    }
+
+    /**
+     * @return whether the component runtimes of every step can be kept
+     *         started from one execution to the next
+     */
+    public boolean isReusable() {
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            if (!stepRuntime.isReusable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void setReuseComponentRuntimes(boolean reuseComponentRuntimes) {
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            stepRuntime.setReuseComponentRuntimes(reuseComponentRuntimes);
+        }
+    }
 
-        /* start up each step runtime */
-        manipulatedFlow.calculateApproximateOrder();        
+    /*
+     * Stop the component runtimes that were kept started for another
+     * execution.  Called when a reused flow runtime is discarded.
+     */
+    public void stopComponentRuntimes() {
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            stepRuntime.stopComponentRuntimes();
+        }
     }
 
     public AgentProjectVersionFlowDeployment getAgentProjectVersionFlowDeployment() {
@@ -246,6 +336,10 @@ public class FlowRuntime {
     }
 
     public Results execute() throws Exception {
+        if (memoryGovernor != null && !memoryGovernor.admit(this)) {
+            log.info("Execution {} was cancelled while waiting for memory", executionId);
+            return null;
+        }
         try {
             start();
         } catch (Exception ex) {
@@ -255,8 +349,14 @@ public class FlowRuntime {
                 throw new RuntimeException(ex);
             }
         } finally {
-            waitForFlowCompletion();
-            notifyStepsTheFlowIsComplete();
+            try {
+                waitForFlowCompletion();
+                notifyStepsTheFlowIsComplete();
+            } finally {
+                if (memoryGovernor != null) {
+                    memoryGovernor.release(this);
+                }
+            }
         }
 
         List<Throwable> errors = getAllErrors();
@@ -298,10 +398,22 @@ public class FlowRuntime {
             }
         }
 
-        /* each step is started as a thread */
+        /*
+         * each step is started as a thread unless a shared step scheduler is
+         * available and the step does not block, in which case it is
+         * scheduled as a task when messages are queued for it.  A fused step
+         * is handled on the thread of its source.
+         */
         for (StepRuntime stepRuntime : stepRuntimes.values()) {
-            stepRuntime.startRunning();
-            threadService.execute(stepRuntime);
+            if (stepRuntime.isFused()) {
+                stepRuntime.startRunning();
+            } else if (stepScheduler != null && stepRuntime.isSchedulable()) {
+                stepRuntime.setScheduler(stepScheduler);
+                stepRuntime.startRunning();
+            } else {
+                stepRuntime.startRunning();
+                threadService.execute(stepRuntime);
+            }
         }
 
         ControlMessage startMessage = new ControlMessage();
@@ -314,33 +426,6 @@ public class FlowRuntime {
         }
     }
 
-    protected Flow manipulateFlow(Flow flow) {        
-        Flow clone = (Flow)flow.clone();
-        clone.setFlowParameters(new ArrayList<>());
-        clone.getFlowParameters().addAll(flow.getFlowParameters());
-        clone.setFlowSteps(new ArrayList<>());
-        clone.getFlowSteps().addAll(flow.getFlowSteps());
-        clone.setFlowStepLinks(new ArrayList<>());
-        clone.getFlowStepLinks().addAll(flow.getFlowStepLinks());
-
-        for (FlowStep flowStep : new ArrayList<>(clone.getFlowSteps())) {
-            XMLComponentDefinition componentDefintion = definitionFactory.getComponentDefinition(flow.getProjectVersionId(), flowStep.getComponent().getType());
-            if (isNotBlank(componentDefintion.getFlowManipulatorClassName())) {
-                try {
-                    IFlowManipulator flowManipulator = (IFlowManipulator) Class
-                            .forName(componentDefintion.getFlowManipulatorClassName())
-                            .newInstance();
-                    clone = flowManipulator.manipulate(clone, flowStep, configurationService);
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        }
-        return clone;
-    }
-
     public static Map<String, String> getFlowParameters(Agent agent,
             AgentProjectVersionFlowDeployment agentDeployment) {
         Map<String, String> params = new HashMap<String, String>();
@@ -385,14 +470,24 @@ public class FlowRuntime {
     }
 
     /*
-     * Waiting until all steps have exited
+     * Waiting until all steps have exited.  Each step signals when it shuts
+     * down so there is no need to poll.
      */
-    public void waitForFlowCompletion() {
+    public synchronized void waitForFlowCompletion() {
         while (isRunning()) {
-            AppUtils.sleep(5);
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
     }
 
+    protected synchronized void stepFinished() {
+        notifyAll();
+    }
+
     public void notifyStepsTheFlowIsComplete() {
         List<Throwable> allErrors = getAllErrors(); 
 
@@ -458,16 +553,7 @@ public class FlowRuntime {
     protected List<StepRuntime> findStartSteps() {
         List<StepRuntime> starterSteps = new ArrayList<StepRuntime>();
         for (String stepId : stepRuntimes.keySet()) {
-            List<FlowStepLink> links = manipulatedFlow.getFlowStepLinks();
-            boolean isTargetStep = false;
-            for (FlowStepLink flowStepLink : links) {
-                if (stepRuntimes.get(flowStepLink.getSourceStepId()) != null
-                        && stepId.equals(flowStepLink.getTargetStepId())) {
-                    isTargetStep = true;
-                }
-            }
-
-            if (!isTargetStep) {
+            if (plan.isStartStep(stepId)) {
                 stepRuntimes.get(stepId).getComponentContext().setStartStep(true);
                 starterSteps.add(stepRuntimes.get(stepId));
             }
@@ -476,6 +562,7 @@ public class FlowRuntime {
     }
 
     public void cancel() {
+        cancelled = true;
         if (stepRuntimes != null) {
             for (StepRuntime stepRuntime : stepRuntimes.values()) {
                 stepRuntime.cancel();
@@ -531,6 +618,64 @@ public class FlowRuntime {
         return executionId;
     }
 
+    public AtomicLong getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public long getQueueMemoryBudget() {
+        return queueMemoryBudget;
+    }
+
+    /**
+     * @return the estimated bytes held by the step queues and by the stateful
+     *         components of this flow
+     */
+    public long getMemoryUsed() {
+        long bytes = queuedBytes.get();
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            bytes += stepRuntime.getComponentContext().getComponentStatistics().getMemoryUsed();
+        }
+        return bytes;
+    }
+
+    /*
+     * The step statistics are recreated when the steps start, so they pick
+     * the reservation up from here
+     */
+    public void setReservedMemory(long reservedMemory) {
+        this.reservedMemory = reservedMemory;
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            stepRuntime.getComponentContext().getComponentStatistics().setReservedMemory(reservedMemory);
+        }
+    }
+
+    public long getReservedMemory() {
+        return reservedMemory;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void setMemoryGovernor(MemoryGovernor memoryGovernor) {
+        this.memoryGovernor = memoryGovernor;
+        for (StepRuntime stepRuntime : stepRuntimes.values()) {
+            stepRuntime.inQueue.setMemoryTracked(memoryGovernor != null);
+        }
+    }
+
+    public MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    public void setStepScheduler(Executor stepScheduler) {
+        this.stepScheduler = stepScheduler;
+    }
+
+    public Executor getStepScheduler() {
+        return stepScheduler;
+    }
+
     public Agent getAgent() {
         return agent;
     }
@@ -0,0 +1,416 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jumpmind.exception.IoException;
+import org.jumpmind.metl.core.runtime.BinaryMessage;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.EntityDataReader;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
+import org.jumpmind.metl.core.runtime.EntityDataWriter;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.MessageHeader;
+import org.jumpmind.metl.core.runtime.TextMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The inbound queue of a step.
+ * <p>
+ * The queue is bounded by a message count and keeps an estimate of the heap
+ * used by the payloads it holds. The estimate is checked against the step's
+ * own budget and against a budget shared by all of the steps of a flow. When
+ * spilling is enabled and either budget would be exceeded, the rows of an
+ * entity message are written to a temporary file in the
+ * {@link EntityDataWriter} format and read back when the message is polled,
+ * with the schema the rows had. The message at the head of the queue is not
+ * spilled because it is the next one to be handled. Other messages, and
+ * entity messages with values that cannot be written or with rows of
+ * different schemas, are counted against the budgets but are always kept in
+ * memory. A budget of zero or less is not enforced.
+ * <p>
+ * Sizes are only estimated when spilling is enabled or when the flow's memory
+ * is tracked by a {@link org.jumpmind.metl.core.runtime.MemoryGovernor}.
+ * Otherwise nothing is counted against the budgets.
+ * <p>
+ * Sizes are estimated and spill files are written and read outside of the
+ * lock, so a producer that spills does not hold up the step that polls.
+ */
+class SpillableMessageQueue {
+
+    final Logger log = LoggerFactory.getLogger(getClass());
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    final Condition notFull = lock.newCondition();
+
+    final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    final int capacity;
+
+    final long memoryBudget;
+
+    final AtomicLong flowQueuedBytes;
+
+    final long flowMemoryBudget;
+
+    final boolean spillEnabled;
+
+    volatile boolean memoryTracked;
+
+    long queuedBytes;
+
+    volatile long peakQueuedBytes;
+
+    int spilledCount;
+
+    int spillsPending;
+
+    SpillableMessageQueue(int capacity, long memoryBudget, AtomicLong flowQueuedBytes, long flowMemoryBudget, boolean spillEnabled) {
+        this.capacity = capacity;
+        this.memoryBudget = memoryBudget;
+        this.flowQueuedBytes = flowQueuedBytes != null ? flowQueuedBytes : new AtomicLong();
+        this.flowMemoryBudget = flowMemoryBudget;
+        this.spillEnabled = spillEnabled;
+    }
+
+    public boolean offer(Message message) {
+        long size = isSizeEstimated() ? estimateSize(message) : 0;
+        boolean spill;
+        lock.lock();
+        try {
+            if (isFull()) {
+                return false;
+            }
+            spill = enqueue(message, size);
+        } finally {
+            lock.unlock();
+        }
+        if (spill) {
+            spill((EntityDataMessage) message, size);
+        }
+        return true;
+    }
+
+    public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        long size = isSizeEstimated() ? estimateSize(message) : 0;
+        long nanos = unit.toNanos(timeout);
+        boolean spill;
+        lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            spill = enqueue(message, size);
+        } finally {
+            lock.unlock();
+        }
+        if (spill) {
+            spill((EntityDataMessage) message, size);
+        }
+        return true;
+    }
+
+    public Message poll() {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.poll();
+            if (entry == null) {
+                return null;
+            }
+            notFull.signal();
+            if (entry.spillFile == null) {
+                release(entry.size);
+                return entry.message;
+            }
+            spilledCount--;
+        } finally {
+            lock.unlock();
+        }
+        return unspill(entry);
+    }
+
+    /**
+     * The payload of a message that was spilled is not read by a peek
+     */
+    public Message peek() {
+        lock.lock();
+        try {
+            Entry entry = entries.peek();
+            return entry != null ? entry.message : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - entries.size() - spillsPending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            for (Entry entry : entries) {
+                FileUtils.deleteQuietly(entry.spillFile);
+            }
+            entries.clear();
+            release(queuedBytes);
+            peakQueuedBytes = 0;
+            spilledCount = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getQueuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getPeakQueuedBytes() {
+        return peakQueuedBytes;
+    }
+
+    public int getSpilledCount() {
+        lock.lock();
+        try {
+            return spilledCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMemoryTracked(boolean memoryTracked) {
+        this.memoryTracked = memoryTracked;
+    }
+
+    protected boolean isSizeEstimated() {
+        return spillEnabled || memoryTracked;
+    }
+
+    protected boolean isFull() {
+        return entries.size() + spillsPending >= capacity;
+    }
+
+    /*
+     * Called with the lock held.  A message that is to be spilled takes its
+     * place in the capacity now and is added once it has been written.
+     */
+    protected boolean enqueue(Message message, long size) {
+        if (spillEnabled && size > 0 && !entries.isEmpty() && isOverBudget(size) && message instanceof EntityDataMessage
+                && ((EntityDataMessage) message).getPayload() != null) {
+            spillsPending++;
+            return true;
+        } else {
+            add(message, size);
+            return false;
+        }
+    }
+
+    protected void add(Message message, long size) {
+        entries.add(new Entry(message, size, null, null));
+        queuedBytes += size;
+        flowQueuedBytes.addAndGet(size);
+        if (queuedBytes > peakQueuedBytes) {
+            peakQueuedBytes = queuedBytes;
+        }
+    }
+
+    protected boolean isOverBudget(long size) {
+        return (memoryBudget > 0 && queuedBytes + size > memoryBudget)
+                || (flowMemoryBudget > 0 && flowQueuedBytes.get() + size > flowMemoryBudget);
+    }
+
+    protected void release(long size) {
+        queuedBytes -= size;
+        flowQueuedBytes.addAndGet(-size);
+    }
+
+    /*
+     * The message might have been sent to other steps as well, so it is left
+     * as it is and a header only copy of it takes its place in the queue.
+     * Rows with a value that cannot be written are kept in memory.
+     */
+    protected void spill(EntityDataMessage message, long size) {
+        ArrayList<EntityData> rows = message.getPayload();
+        EntityDataSchema schema = rows.size() > 0 ? rows.get(0).getSchema() : null;
+        File spillFile = null;
+        try {
+            if (hasSchema(rows, schema)) {
+                spillFile = File.createTempFile("metl-queue", ".spill");
+                EntityDataWriter writer = new EntityDataWriter(new FileOutputStream(spillFile));
+                try {
+                    writer.writeRows(rows);
+                } finally {
+                    writer.close();
+                }
+            } else {
+                log.debug("A message could not be spilled because its rows have different schemas.  It is kept in memory");
+            }
+        } catch (NotSerializableException e) {
+            log.debug("A message could not be spilled because it holds a {}.  It is kept in memory", e.getMessage());
+            FileUtils.deleteQuietly(spillFile);
+            spillFile = null;
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(spillFile);
+            lock.lock();
+            try {
+                spillsPending--;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw new IoException(e);
+        }
+
+        lock.lock();
+        try {
+            spillsPending--;
+            if (spillFile != null) {
+                entries.add(new Entry(copyHeader(message), 0, spillFile, schema));
+                spilledCount++;
+            } else {
+                add(message, size);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected EntityDataMessage unspill(Entry entry) {
+        EntityDataMessage message = (EntityDataMessage) entry.message;
+        EntityDataReader reader = null;
+        try {
+            reader = new EntityDataReader(new FileInputStream(entry.spillFile), entry.schema);
+            message.setPayload(reader.readRows());
+        } catch (IOException e) {
+            throw new IoException(e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+            FileUtils.deleteQuietly(entry.spillFile);
+        }
+        return message;
+    }
+
+    protected static boolean hasSchema(ArrayList<EntityData> rows, EntityDataSchema schema) {
+        for (EntityData data : rows) {
+            if (data.getSchema() != schema) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static EntityDataMessage copyHeader(EntityDataMessage message) {
+        MessageHeader header = message.getHeader();
+        EntityDataMessage copy = new EntityDataMessage(header.getOriginatingStepId());
+        copy.getHeader().putAll(header);
+        copy.getHeader().setExecutionId(header.getExecutionId());
+        copy.getHeader().setSequenceNumber(header.getSequenceNumber());
+        return copy;
+    }
+
+    protected static long estimateSize(Message message) {
+        long size = 0;
+        if (message instanceof EntityDataMessage) {
+            ArrayList<EntityData> payload = ((EntityDataMessage) message).getPayload();
+            if (payload != null) {
+                for (EntityData data : payload) {
+                    size += data.estimateSize();
+                }
+            }
+        } else if (message instanceof TextMessage) {
+            ArrayList<String> payload = ((TextMessage) message).getPayload();
+            if (payload != null) {
+                for (String string : payload) {
+                    size += 40 + 2 * (string != null ? string.length() : 0);
+                }
+            }
+        } else if (message instanceof BinaryMessage) {
+            byte[] payload = ((BinaryMessage) message).getPayload();
+            if (payload != null) {
+                size += 16 + payload.length;
+            }
+        }
+        return size;
+    }
+
+    static class Entry {
+
+        Message message;
+
+        long size;
+
+        File spillFile;
+
+        EntityDataSchema schema;
+
+        Entry(Message message, long size, File spillFile, EntityDataSchema schema) {
+            this.message = message;
+            this.size = size;
+            this.spillFile = spillFile;
+            this.schema = schema;
+        }
+    }
+
+}
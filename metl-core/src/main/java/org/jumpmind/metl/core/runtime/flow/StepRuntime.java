@@ -30,12 +30,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -48,6 +50,7 @@ import org.jumpmind.metl.core.runtime.ContentMessage;
 import org.jumpmind.metl.core.runtime.ControlMessage;
 import org.jumpmind.metl.core.runtime.EntityData;
 import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.IExecutionTracker;
 import org.jumpmind.metl.core.runtime.LogLevel;
 import org.jumpmind.metl.core.runtime.Message;
 import org.jumpmind.metl.core.runtime.MessageHeader;
@@ -57,12 +60,14 @@ import org.jumpmind.metl.core.runtime.TextMessage;
 import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
 import org.jumpmind.metl.core.runtime.component.AssertException;
 import org.jumpmind.metl.core.runtime.component.ComponentContext;
+import org.jumpmind.metl.core.runtime.component.ComponentSettingsConstants;
 import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
+import org.jumpmind.metl.core.runtime.component.IBatchComponentRuntime;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntime;
 import org.jumpmind.metl.core.runtime.component.IComponentRuntimeFactory;
+import org.jumpmind.metl.core.runtime.component.IReusableComponentRuntime;
 import org.jumpmind.metl.core.util.LogUtils;
 import org.jumpmind.metl.core.util.ThreadUtils;
-import org.jumpmind.util.AppUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,17 +81,38 @@ public class StepRuntime implements Runnable {
 
     public static final String UNIT_OF_WORK_FLOW = "Flow";
 
-    protected BlockingQueue<Message> inQueue;
+    /*
+     * The number of messages a scheduled step handles before it gives up its
+     * thread so other steps get a turn
+     */
+    static final int MAX_MESSAGES_PER_TURN = 64;
+
+    /*
+     * The most messages handed to a component that handles batches at once
+     */
+    static final int MAX_MESSAGES_PER_BATCH = 64;
+
+    protected SpillableMessageQueue inQueue;
 
     protected Executor componentRuntimeExecutor;
+
+    protected Executor scheduler;
+
+    protected SendMessageCallback scheduledTarget;
+
+    protected SendMessageCallback fusedTarget;
+
+    protected List<Message> fusedBatch;
+
+    final AtomicBoolean scheduled = new AtomicBoolean();
     
-    boolean running = false;
+    volatile boolean running = false;
     
-    boolean cancelling = false;
+    volatile boolean cancelling = false;
 
-    boolean cancelled = false;
+    volatile boolean cancelled = false;
 
-    boolean finished = false;
+    volatile boolean finished = false;
 
     Throwable error;
 
@@ -112,6 +138,10 @@ public class StepRuntime implements Runnable {
 
     Set<String> liveSourceStepIds;
 
+    Set<String> unitOfWorkSourceStepIds;
+
+    int unitOfWorkSourcesPending;
+
     int contentMessagesSentCount;
 
     int controlMessagesSentCount;
@@ -121,22 +151,54 @@ public class StepRuntime implements Runnable {
     int queueCapacity;
     
     int threadCount;
+    
+    boolean shareOutboundPayload;
+
+    boolean batchHandle;
+
+    boolean fused;
+
+    boolean reusable;
+
+    boolean reuseComponentRuntimes;
+
+    boolean componentRuntimesStarted;
 
     public StepRuntime(IComponentRuntimeFactory componentFactory, IDefinitionFactory componentDefinitionFactory, ComponentContext componentContext, FlowRuntime flowRuntime) {
+        this(componentFactory, componentDefinitionFactory, null, componentContext, flowRuntime);
+    }
+
+    public StepRuntime(IComponentRuntimeFactory componentFactory, IDefinitionFactory componentDefinitionFactory,
+            XMLComponentDefinition componentDefinition, ComponentContext componentContext, FlowRuntime flowRuntime) {
         this.flowRuntime = flowRuntime;
         this.componentContext = componentContext;
         this.queueCapacity = componentContext.getFlowStep().getComponent().getInt(AbstractComponentRuntime.INBOUND_QUEUE_CAPACITY, 1000);
-        this.inQueue = new LinkedBlockingQueue<Message>(queueCapacity);
+        long queueMemoryBudget = componentContext.getFlowStep().getComponent().getLong(ComponentSettingsConstants.INBOUND_QUEUE_MEMORY_MB,
+                ComponentSettingsConstants.DEFAULT_INBOUND_QUEUE_MEMORY_MB) * 1024 * 1024;
+        boolean queueSpill = componentContext.getFlowStep().getComponent().getBoolean(ComponentSettingsConstants.INBOUND_QUEUE_SPILL, false);
+        this.inQueue = new SpillableMessageQueue(queueCapacity, queueMemoryBudget, flowRuntime.getQueuedBytes(),
+                flowRuntime.getQueueMemoryBudget(), queueSpill);
         this.sourceStepRuntimeUnitOfWorkReceived = new HashMap<String, Boolean>();
         this.targetStepRuntimeUnitOfWorkSent = new HashSet<String>();
         this.componentRuntimeFactory = componentFactory;
         this.componentDefintionFactory = componentDefinitionFactory;
-        this.componentDefintion = componentDefintionFactory.getComponentDefinition(componentContext.getFlowStep().getComponent().getProjectVersionId(), getComponentType());        
+        this.componentDefintion = componentDefinition != null ? componentDefinition
+                : componentDefintionFactory.getComponentDefinition(componentContext.getFlowStep().getComponent().getProjectVersionId(), getComponentType());
         Component component = componentContext.getFlowStep().getComponent();
         this.threadCount = component.getInt(StepRuntime.THREAD_COUNT, 1);        
+        this.shareOutboundPayload = component.getBoolean(ComponentSettingsConstants.SHARE_OUTBOUND_PAYLOAD, false);
         for (int threadNumber = 1; threadNumber <= threadCount; threadNumber++) {
             createComponentRuntime(threadNumber);
         }
+        IComponentRuntime componentRuntime = componentContext.getComponentRuntimeByThread().get(1);
+        this.batchHandle = threadCount == 1 && componentRuntime instanceof IBatchComponentRuntime
+                && ((IBatchComponentRuntime) componentRuntime).supportsBatchHandle();
+        this.reusable = true;
+        for (IComponentRuntime runtime : componentContext.getComponentRuntimeByThread().values()) {
+            if (!(runtime instanceof IReusableComponentRuntime) || !((IReusableComponentRuntime) runtime).supportsReuse()) {
+                this.reusable = false;
+            }
+        }
     }
 
     private String getComponentType() {
@@ -170,6 +232,8 @@ public class StepRuntime implements Runnable {
         for (StepRuntime stepRuntime : sourceStepRuntimes) {
             this.liveSourceStepIds.add(stepRuntime.getComponentContext().getFlowStep().getId());
         }
+        this.unitOfWorkSourceStepIds = new HashSet<>(liveSourceStepIds);
+        this.unitOfWorkSourcesPending = unitOfWorkSourceStepIds.size();
         this.startStep = sourceStepRuntimes == null || sourceStepRuntimes.size() == 0;
     }
 
@@ -183,18 +247,165 @@ public class StepRuntime implements Runnable {
             throw new RuntimeException("Inbound queue capacity on " + componentContext.getFlowStep().getName()
                     + " not sufficient to handle inbound messages from other components in addition to inbound messages from itself.");
         }
-        if (running) {
-            while (!inQueue.offer(message, 500, TimeUnit.MILLISECONDS)) {
-                if (cancelling) {
-                    throw new CancellationException();
+        if (running && fused) {
+            handleFused(message);
+        } else if (running) {
+            /*
+             * When called from a scheduled step the pool is told that the
+             * thread might block so it can compensate with another thread
+             */
+            ForkJoinPool.managedBlock(new QueueBlocker(message));
+            signal();
+        }
+    }
+
+    /*
+     * Wake up the thread that is waiting on this step's monitor for a new
+     * message or for a state change.  A scheduled step is submitted to the
+     * scheduler instead.
+     */
+    protected synchronized void signal() {
+        notifyAll();
+        if (scheduler != null) {
+            schedule();
+        }
+    }
+
+    public boolean isSchedulable() {
+        String category = componentDefintion.getCategory();
+        return threadCount == 1 && !componentDefintion.isBlocking()
+                && ("PROCESSOR".equals(category) || "CONTROL".equals(category));
+    }
+
+    /*
+     * A step can be fused into its source when it is the only target of its
+     * only source and neither step handles messages on more than one thread.
+     * A writer or a blocking step is never fused into a step that may run on
+     * the step scheduler because it would hold a scheduler thread while it
+     * waits on I/O.
+     */
+    public boolean isFusable() {
+        if (!componentDefintion.isFusable() || threadCount > 1 || sourceStepRuntimes.size() != 1) {
+            return false;
+        }
+        StepRuntime sourceStepRuntime = sourceStepRuntimes.get(0);
+        if (sourceStepRuntime.isSchedulable()
+                && (componentDefintion.isBlocking() || "WRITER".equals(componentDefintion.getCategory()))) {
+            return false;
+        }
+        return sourceStepRuntime != this && sourceStepRuntime.threadCount == 1
+                && sourceStepRuntime.getTargetStepRuntimes().size() == 1;
+    }
+
+    public void setFused(boolean fused) {
+        this.fused = fused;
+        this.fusedTarget = fused ? createSendMessageCallback() : null;
+        this.fusedBatch = fused && batchHandle ? new ArrayList<>() : null;
+    }
+
+    public boolean isFused() {
+        return fused;
+    }
+
+    /*
+     * A fused step has no thread of its own.  Each message is handled as a
+     * nested call on the thread of the step that sent it, so messages are
+     * handled in the order they were sent.  Once the step is cancelling only
+     * the shutdown message from its source is handled.
+     */
+    protected void handleFused(Message message) {
+        if (cancelling && !(message instanceof ShutdownMessage)) {
+            return;
+        }
+        synchronized (this) {
+            if (!(message instanceof ShutdownMessage)) {
+                activeCount++;
+            }
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        try {
+            if (fusedBatch != null) {
+                batchFused(message);
+            } else {
+                dispatch(message, fusedTarget);
+            }
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+        }
+    }
+
+    /*
+     * A fused step that handles batches collects the messages its source
+     * sends while it handles a message.  The batch is handled when the source
+     * is done with its message, when it is full or when a control message or
+     * the unit of work boundary ends it, the same way a batch drained from
+     * the queue would end.
+     */
+    protected void batchFused(Message message) {
+        if (message instanceof ContentMessage || (message instanceof ControlMessage && !fusedBatch.isEmpty())) {
+            fusedBatch.add(message);
+            boolean unitOfWorkBoundaryReached = calculateUnitOfWorkLastMessage(message);
+            if (unitOfWorkBoundaryReached || message instanceof ControlMessage || fusedBatch.size() >= MAX_MESSAGES_PER_BATCH) {
+                flushFusedBatch(unitOfWorkBoundaryReached);
+            }
+        } else {
+            flushFusedBatch(false);
+            dispatch(message, fusedTarget);
+        }
+    }
+
+    protected void flushFusedBatch(boolean unitOfWorkBoundaryReached) {
+        if (fusedBatch != null && !fusedBatch.isEmpty()) {
+            List<Message> inputMessages = new ArrayList<>(fusedBatch);
+            fusedBatch.clear();
+            if (running && !cancelled) {
+                processBatchOnThread(inputMessages, unitOfWorkBoundaryReached, fusedTarget);
+            } else {
+                decrementActiveCount(inputMessages.size());
+            }
+        }
+    }
+
+    protected void flushFusedTargets() {
+        for (StepRuntime targetStepRuntime : targetStepRuntimes) {
+            if (targetStepRuntime.fusedBatch != null) {
+                Thread thread = Thread.currentThread();
+                ClassLoader previousLoader = thread.getContextClassLoader();
+                try {
+                    targetStepRuntime.flushFusedBatch(false);
+                } finally {
+                    thread.setContextClassLoader(previousLoader);
                 }
             }
         }
     }
 
+    public void setScheduler(Executor scheduler) {
+        this.scheduler = scheduler;
+        this.scheduledTarget = createSendMessageCallback();
+    }
+
+    protected void schedule() {
+        if (running && !cancelled && scheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> runScheduled());
+            } catch (RejectedExecutionException ex) {
+                log.info("The scheduler rejected {}", componentContext.getFlowStep().getName());
+                scheduled.set(false);
+                cancelled = true;
+                running = false;
+                flowRuntime.stepFinished();
+            }
+        }
+    }
+
     public void start() {
+        List<IComponentRuntime> startedRuntimes = new ArrayList<>();
         try {
-            componentContext.setComponentStatistics(new ComponentStatistics());    
+            ComponentStatistics statistics = new ComponentStatistics();
+            statistics.setReservedMemory(flowRuntime.getReservedMemory());
+            componentContext.setComponentStatistics(statistics);
             if (threadCount > 1) {
                 String prefix = String.format("%s-%s", LogUtils.normalizeName(flowRuntime.getAgent().getName()),
                         LogUtils.normalizeName(componentContext.getFlowStep().getName()));
@@ -211,14 +422,24 @@ public class StepRuntime implements Runnable {
                 ClassLoader previousLoader = thread.getContextClassLoader();
                 try {
                     thread.setContextClassLoader(componentRuntime.getClass().getClassLoader());
-                    componentRuntime.start();
+                    if (componentRuntimesStarted) {
+                        ((IReusableComponentRuntime) componentRuntime).reset();
+                    } else {
+                        componentRuntime.start();
+                        startedRuntimes.add(componentRuntime);
+                    }
                 } finally {
                     thread.setContextClassLoader(previousLoader);
 
                 }
             }
+            componentRuntimesStarted = reuseComponentRuntimes;
         } catch (RuntimeException ex) {
             recordError(1, ex);
+            /* the step will not run, so nothing else stops the runtimes that did start */
+            for (IComponentRuntime componentRuntime : startedRuntimes) {
+                stop(componentRuntime);
+            }
             throw ex;
         }
     }
@@ -263,37 +484,176 @@ public class StepRuntime implements Runnable {
              * until we get a shutdown message from one of our sources
              */
             while (running && !cancelled) {
-                /*
-                 * Continue to poll as long as the flow is running. other
-                 * components could be generating messages which could block if
-                 * we don't continue to poll
-                 */
                 Message inputMessage = null;
                 synchronized (this) {
-                    inputMessage = inQueue.poll();
-                    if (inputMessage != null && !(inputMessage instanceof ShutdownMessage)) {
-                        activeCount++;
+                    /*
+                     * Wait until a message is queued or the step stops running.
+                     * Producers signal this step's monitor after they queue a
+                     * message so there is no need to poll on an interval.
+                     */
+                    inputMessage = poll();
+                    while (inputMessage == null && running && !cancelled) {
+                        wait();
+                        inputMessage = poll();
                     }
                 }
-                if (running && !cancelled) {
-                    if (inputMessage != null) {
-                        if (inputMessage instanceof ShutdownMessage) {
-                            process((ShutdownMessage) inputMessage, target);
-                        } else {
-                            process(inputMessage, target);
-                        }
-                    } else if (running && !cancelled) {
-                        AppUtils.sleep(50);
-                    }
+                dispatch(inputMessage, target);
+            }
+        } catch (InterruptedException ex) {
+            interrupted();
+        } catch (Throwable ex) {
+            recordError(1, ex);
+        }
+    }
+
+    /*
+     * A scheduled step handles the messages that are queued, up to a limit,
+     * and then gives up its thread.  It is scheduled again when another
+     * message is queued.
+     */
+    protected void runScheduled() {
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        try {
+            int count = 0;
+            while (running && !cancelled && count++ < MAX_MESSAGES_PER_TURN) {
+                Message inputMessage = poll();
+                if (inputMessage == null) {
+                    break;
                 }
+                dispatch(inputMessage, scheduledTarget);
             }
         } catch (Throwable ex) {
             recordError(1, ex);
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            scheduled.set(false);
+            if (!inQueue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    protected synchronized Message poll() {
+        Message inputMessage = inQueue.poll();
+        if (inputMessage != null && !(inputMessage instanceof ShutdownMessage)) {
+            activeCount++;
+            componentContext.getComponentStatistics().setPeakQueueMemoryUsed(inQueue.getPeakQueuedBytes());
+        }
+        return inputMessage;
+    }
+
+    protected void dispatch(Message inputMessage, SendMessageCallback target) {
+        if (running && !cancelled && inputMessage != null) {
+            if (inputMessage instanceof ShutdownMessage) {
+                process((ShutdownMessage) inputMessage, target);
+            } else if (batchHandle && inputMessage instanceof ContentMessage) {
+                processBatch(inputMessage, target);
+            } else {
+                process(inputMessage, target);
+            }
+        }
+    }
+
+    /*
+     * Drain the content messages that are already queued behind the input
+     * message.  The batch ends at a control message, at the message that
+     * reaches a unit of work boundary or before a shutdown message.  Only
+     * the thread that handles this step polls its queue, so what is peeked
+     * is what is polled.
+     */
+    protected void processBatch(Message inputMessage, SendMessageCallback target) {
+        List<Message> inputMessages = new ArrayList<>();
+        inputMessages.add(inputMessage);
+        boolean unitOfWorkBoundaryReached = calculateUnitOfWorkLastMessage(inputMessage);
+        Message lastMessage = inputMessage;
+        while (!unitOfWorkBoundaryReached && !(lastMessage instanceof ControlMessage)
+                && inputMessages.size() < MAX_MESSAGES_PER_BATCH) {
+            Message nextMessage = inQueue.peek();
+            if (nextMessage == null || nextMessage instanceof ShutdownMessage) {
+                break;
+            }
+            lastMessage = poll();
+            inputMessages.add(lastMessage);
+            unitOfWorkBoundaryReached = calculateUnitOfWorkLastMessage(lastMessage);
+        }
+        processBatchOnThread(inputMessages, unitOfWorkBoundaryReached, target);
+    }
+
+    protected void processBatchOnThread(List<Message> inputMessages, boolean unitOfWorkBoundaryReached, SendMessageCallback callback) {
+        int threadNumber = ThreadUtils.getThreadNumber(threadCount);
+        Message lastMessage = inputMessages.get(inputMessages.size() - 1);
+        try {
+            ComponentStatistics statistics = componentContext.getComponentStatistics();
+            componentContext.getExecutionTracker().beforeHandle(threadNumber, componentContext);
+
+            IBatchComponentRuntime componentRuntime = (IBatchComponentRuntime) componentContext.getComponentRuntimeByThread()
+                    .get(threadNumber);
+            Component component = componentContext.getFlowStep().getComponent();
+            boolean logInput = component.getBoolean(AbstractComponentRuntime.LOG_INPUT, false);
+            for (int i = 0; i < inputMessages.size(); i++) {
+                Message inputMessage = inputMessages.get(i);
+                countInbound(statistics, threadNumber, inputMessage);
+                if (inputMessage instanceof ContentMessage<?> && ((ContentMessage<?>) inputMessage).isShared()
+                        && componentDefintion.isChangesInputPayload()) {
+                    inputMessage = copyMessage((ContentMessage<?>) inputMessage);
+                    inputMessages.set(i, inputMessage);
+                }
+                if (logInput) {
+                    logInput(inputMessage, callback, unitOfWorkBoundaryReached && inputMessage == lastMessage);
+                }
+            }
+            lastMessage = inputMessages.get(inputMessages.size() - 1);
+
+            /* outbound messages inherit the header of the last message of the batch */
+            callback.setCurrentInputMessage(threadNumber, lastMessage);
+            long ts = System.currentTimeMillis();
+
+            try {
+                ComponentContext.projectVersionId.set(componentContext.getManipulatedFlow().getProjectVersionId());
+                Thread.currentThread().setContextClassLoader(componentRuntime.getClass().getClassLoader());
+                componentRuntime.handleBatch(inputMessages, callback, unitOfWorkBoundaryReached);
+            } catch (CancellationException e) {
+                log.info("Handle was interrupted by cancellation for {}", componentContext.getFlowStep().getName());
+            }
+
+            statistics.incrementTimeSpentInHandle(threadNumber, System.currentTimeMillis() - ts - callback.useQueueTime(threadNumber));
+            flushFusedTargets();
+
+            boolean recursionDone = liveSourceStepIds.size() == 1 && liveSourceStepIds.contains(componentContext.getFlowStep().getId())
+                    && getActiveCountPlusQueueSize() == inputMessages.size();
+
+            if ((unitOfWorkBoundaryReached || recursionDone) && componentRuntime.getComponentDefintion().isAutoSendControlMessages()) {
+                verifyAndSendControlMessageToTargets(callback, lastMessage);
+            }
+
+            if (startStep || recursionDone) {
+                shutdown(callback, false);
+            }
+
+        } catch (Throwable ex) {
+            recordError(threadNumber, ex);
+        } finally {
+            componentContext.getExecutionTracker().afterHandle(threadNumber, componentContext, error);
+            decrementActiveCount(inputMessages.size());
         }
     }
+
+    private void interrupted() {
+        log.info("Interrupted while waiting for a message for {}", componentContext.getFlowStep().getName());
+        cancelled = true;
+        running = false;
+        flowRuntime.stepFinished();
+        Thread.currentThread().interrupt();
+    }
     
     protected synchronized void decrementActiveCount() {
-        activeCount--;
+        decrementActiveCount(1);
+    }
+
+    protected synchronized void decrementActiveCount(int count) {
+        activeCount -= count;
+        notifyAll();
     }
     
     protected synchronized int getActiveCountPlusQueueSize() {
@@ -308,8 +668,8 @@ public class StepRuntime implements Runnable {
          * race conditions.
          */
         if (threadCount > 1) {
-            while (unitOfWorkBoundaryReached && activeCount > 1) {
-                AppUtils.sleep(5);
+            if (unitOfWorkBoundaryReached) {
+                waitForOtherThreadsToGoIdle();
             }
             this.componentRuntimeExecutor.execute(() -> processOnAnotherThread(inputMessage, unitOfWorkBoundaryReached, target));    
         } else {
@@ -317,24 +677,32 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    protected synchronized void waitForOtherThreadsToGoIdle() {
+        try {
+            while (activeCount > 1) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
     protected void processOnAnotherThread(Message inputMessage, boolean unitOfWorkBoundaryReached, SendMessageCallback callback) {
         int threadNumber = ThreadUtils.getThreadNumber(threadCount);
         try {
             ComponentStatistics statistics = componentContext.getComponentStatistics();
-            statistics.incrementInboundMessages(threadNumber);
-            if (inputMessage instanceof ContentMessage<?>) {
-                Object payload = ((ContentMessage<?>)inputMessage).getPayload();
-                if (payload instanceof Collection<?>) {
-                    statistics.incrementNumberInboundPayload(threadNumber, ((Collection<?>)payload).size());
-                } else if (payload != null) {
-                    statistics.incrementNumberInboundPayload(threadNumber);
-                }
-            }
+            countInbound(statistics, threadNumber, inputMessage);
             
             componentContext.getExecutionTracker().beforeHandle(threadNumber, componentContext);            
 
             IComponentRuntime componentRuntime = componentContext.getComponentRuntimeByThread().get(threadNumber);
 
+            if (inputMessage instanceof ContentMessage<?> && ((ContentMessage<?>) inputMessage).isShared()
+                    && componentDefintion.isChangesInputPayload()) {
+                inputMessage = copyMessage((ContentMessage<?>) inputMessage);
+            }
+
             Component component = componentContext.getFlowStep().getComponent();
             boolean logInput = component.getBoolean(AbstractComponentRuntime.LOG_INPUT, false);
 
@@ -353,6 +721,7 @@ public class StepRuntime implements Runnable {
             }
             
             statistics.incrementTimeSpentInHandle(threadNumber, System.currentTimeMillis()-ts-callback.useQueueTime(threadNumber));
+            flushFusedTargets();
 
             boolean recursionDone = liveSourceStepIds.size() == 1 && liveSourceStepIds.contains(componentContext.getFlowStep().getId())
                     && getActiveCountPlusQueueSize() == 1;
@@ -378,6 +747,63 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    private void countInbound(ComponentStatistics statistics, int threadNumber, Message inputMessage) {
+        if (isSynthetic(inputMessage)) {
+            return;
+        }
+        statistics.incrementInboundMessages(threadNumber);
+        if (inputMessage instanceof ContentMessage<?>) {
+            Object payload = ((ContentMessage<?>)inputMessage).getPayload();
+            if (payload instanceof Collection<?>) {
+                statistics.incrementNumberInboundPayload(threadNumber, ((Collection<?>)payload).size());
+            } else if (payload != null) {
+                statistics.incrementNumberInboundPayload(threadNumber);
+            }
+        }
+    }
+
+    /*
+     * A shared payload is referenced by all of the targets it was sent to.
+     * Components that might change their input get a private copy.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected Message copyMessage(ContentMessage<?> message) {
+        MessageHeader header = message.getHeader();
+        ContentMessage copy = null;
+        if (message instanceof EntityDataMessage) {
+            copy = new EntityDataMessage(header.getOriginatingStepId());
+        } else if (message instanceof TextMessage) {
+            copy = new TextMessage(header.getOriginatingStepId());
+        } else if (message instanceof BinaryMessage) {
+            copy = new BinaryMessage(header.getOriginatingStepId());
+        } else {
+            return message;
+        }
+        copy.setPayload(copyPayload(message.getPayload()));
+        copy.getHeader().putAll(header);
+        copy.getHeader().setExecutionId(header.getExecutionId());
+        copy.getHeader().setSequenceNumber(header.getSequenceNumber());
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T extends Serializable> T copyPayload(T payload) {
+        if (payload instanceof ArrayList) {
+            ArrayList<?> old = (ArrayList<?>) payload;
+            ArrayList<Object> copied = new ArrayList<>(old.size());
+            for (Object object : old) {
+                if (object instanceof EntityData) {
+                    object = ((EntityData) object).copy();
+                }
+                copied.add(object);
+            }
+            payload = (T) copied;
+        } else if (payload instanceof byte[]) {
+            payload = (T) ArrayUtils.clone((byte[]) payload);
+        }
+        return payload;
+    }
+
     protected synchronized boolean idle() {
         return activeCount <= 0;
     }
@@ -392,6 +818,9 @@ public class StepRuntime implements Runnable {
 
         String fromStepId = shutdownMessage.getHeader().getOriginatingStepId();
         liveSourceStepIds.remove(fromStepId);
+        if (!cancelled && fromStepId != null && !fromStepId.equals(componentContext.getFlowStep().getId())) {
+            silentSourceShutdown(fromStepId, target);
+        }
 
         /*
          * When all of the source step runtimes have been removed or when the
@@ -414,57 +843,52 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    /*
+     * The unit of work boundary is reached when every source has sent its
+     * unit of work or has shut down without sending one.  The number of
+     * sources still pending is kept as control and shutdown messages
+     * arrive.  Once the boundary is reached every later message is past it.
+     */
     protected boolean calculateUnitOfWorkLastMessage(Message inputMessage) {
-        boolean lastMessage = true;
-        if (inputMessage instanceof ControlMessage) {
-            sourceStepRuntimeUnitOfWorkReceived.put(inputMessage.getHeader().getOriginatingStepId(), Boolean.TRUE);
-        }
-        Set<StepRuntime> activeRuntimes = new HashSet<>();
-        for (StepRuntime sourceRuntime : sourceStepRuntimes) {
-            boolean controlMessageReceived = sourceStepRuntimeUnitOfWorkReceived
-                    .get(sourceRuntime.getComponentContext().getFlowStep().getId()) != null;
-            lastMessage &= controlMessageReceived;
-            if (!controlMessageReceived) {
-                activeRuntimes.add(sourceRuntime);
-            }
-        }
-
-        if (!lastMessage) {
-            lastMessage = areStepRuntimesDead(activeRuntimes);
+        if (inputMessage instanceof ControlMessage && !isSynthetic(inputMessage)) {
+            unitOfWorkEnded(inputMessage.getHeader().getOriginatingStepId(), Boolean.TRUE);
         }
+        return unitOfWorkSourcesPending <= 0;
+    }
 
-        if (lastMessage) {
-            // TODO figure out when/how to reset the last unit of work calc
-            // sourceStepRuntimeUnitOfWorkReceived.clear();
-        }
-        return lastMessage;
+    private static boolean isSynthetic(Message message) {
+        return message instanceof ControlMessage && ((ControlMessage) message).isSynthetic();
     }
 
-    protected boolean areStepRuntimesDead(Set<StepRuntime> runtimes) {
-        for (StepRuntime stepRuntime : runtimes) {
-            if (!isStepRuntimeDead(stepRuntime)) {
-                return false;
+    private boolean unitOfWorkEnded(String sourceStepId, Boolean received) {
+        if (!sourceStepRuntimeUnitOfWorkReceived.containsKey(sourceStepId)) {
+            sourceStepRuntimeUnitOfWorkReceived.put(sourceStepId, received);
+            if (unitOfWorkSourceStepIds.contains(sourceStepId)) {
+                unitOfWorkSourcesPending--;
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
-    protected boolean isStepRuntimeDead(StepRuntime stepRuntime) {
-        if (stepRuntime.getContentMessagesSentCount() > 0
-                || stepRuntime.getControlMessagesSentCount() > 0
-                || !stepRuntime.isQueueEmpty() 
-                || !stepRuntime.idle()) {
-            return false;
-        } else {
-            List<StepRuntime> parentSteps = stepRuntime.getSourceStepRuntimes();
-            for (StepRuntime parentStep : parentSteps) {
-                boolean parentStepIsDead = parentStep.isStepRuntimeDead(parentStep);
-                if (!parentStepIsDead && parentStep.getControlMessagesSentCount() == 0) {
-                    return false;
-                }
+    /*
+     * A source that shuts down has queued all of its messages, so one that
+     * did not send a unit of work never will.  If it was the last source
+     * pending, a synthetic control message from this step is handled so
+     * that the component sees the boundary without the source being credited
+     * with sending it.  When no source sent a unit of work there is nothing
+     * to end.
+     */
+    private void silentSourceShutdown(String sourceStepId, SendMessageCallback target) {
+        if (unitOfWorkEnded(sourceStepId, Boolean.FALSE) && unitOfWorkSourcesPending <= 0
+                && sourceStepRuntimeUnitOfWorkReceived.containsValue(Boolean.TRUE)) {
+            synchronized (this) {
+                activeCount++;
             }
+            ControlMessage controlMessage = new ControlMessage(componentContext.getFlowStep().getId());
+            controlMessage.setSynthetic(true);
+            process(controlMessage, target);
         }
-        return true;
     }
 
     private void stop(IComponentRuntime componentRuntime) {
@@ -491,7 +915,10 @@ public class StepRuntime implements Runnable {
         }
 
         targetStepRuntimes.forEach(t -> shutdownTargets(t));
-        componentContext.getComponentRuntimeByThread().values().forEach(c -> stop(c));
+        /* component runtimes that are reused are stopped when the flow runtime is discarded */
+        if (!reuseComponentRuntimes) {
+            componentContext.getComponentRuntimeByThread().values().forEach(c -> stop(c));
+        }
 
         finished = true;
         running = false;
@@ -500,6 +927,9 @@ public class StepRuntime implements Runnable {
         }
 
         recordFlowStepFinished();
+
+        signal();
+        flowRuntime.stepFinished();
     }
 
     private void shutdownThreads(boolean waitForShutdown) {
@@ -529,8 +959,11 @@ public class StepRuntime implements Runnable {
         cancelling = true;
         if (isRunning()) {
             try {
-                inQueue.clear();
-                queue(new ShutdownMessage(componentContext.getFlowStep().getId(), true));
+                /* a fused step is shut down by its source */
+                if (!fused) {
+                    inQueue.clear();
+                    queue(new ShutdownMessage(componentContext.getFlowStep().getId(), true));
+                }
                 for (IComponentRuntime componentRuntime : getComponentRuntimes()) {
                     componentRuntime.interrupt();
                 }
@@ -545,6 +978,61 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    /*
+     * Clear the state of a previous execution.  The component runtimes are
+     * kept and are started again when the flow is.
+     */
+    protected synchronized void reset(IExecutionTracker executionTracker, Map<String, String> flowParameters) {
+        componentContext.reset(executionTracker, flowParameters);
+        inQueue.clear();
+        running = false;
+        cancelling = false;
+        cancelled = false;
+        finished = false;
+        error = null;
+        activeCount = 0;
+        contentMessagesSentCount = 0;
+        controlMessagesSentCount = 0;
+        componentRuntimeExecutor = null;
+        scheduler = null;
+        scheduledTarget = null;
+        scheduled.set(false);
+        if (fused) {
+            fusedTarget = createSendMessageCallback();
+        }
+        if (fusedBatch != null) {
+            fusedBatch.clear();
+        }
+        sourceStepRuntimeUnitOfWorkReceived.clear();
+        targetStepRuntimeUnitOfWorkSent.clear();
+        setSourceStepRuntimes(sourceStepRuntimes);
+    }
+
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /*
+     * Keep the component runtimes started when the step shuts down.  The next
+     * execution resets them instead of starting them again.
+     */
+    public void setReuseComponentRuntimes(boolean reuseComponentRuntimes) {
+        this.reuseComponentRuntimes = reuseComponentRuntimes && reusable;
+    }
+
+    public synchronized void stopComponentRuntimes() {
+        if (componentRuntimesStarted) {
+            componentRuntimesStarted = false;
+            for (IComponentRuntime componentRuntime : getComponentRuntimes()) {
+                try {
+                    componentRuntime.stop();
+                } catch (Exception e) {
+                    log.warn("Failed to stop {}", componentContext.getFlowStep().getName(), e);
+                }
+            }
+        }
+    }
+
     public void startRunning() {
         this.running = true;
     }
@@ -601,10 +1089,14 @@ public class StepRuntime implements Runnable {
         int threadNumber = ThreadUtils.getThreadNumber(threadCount);
 
         String source = "ENTRY";
-        try {
-            source = componentContext.getManipulatedFlow().findFlowStepWithId(header.getOriginatingStepId()).getName();
-        } catch (NullPointerException e) {
-            // Do nothing allow "ENTRY" as the source.
+        if (isSynthetic(inputMessage)) {
+            source = "SYNTHETIC";
+        } else {
+            try {
+                source = componentContext.getManipulatedFlow().findFlowStepWithId(header.getOriginatingStepId()).getName();
+            } catch (NullPointerException e) {
+                // Do nothing allow "ENTRY" as the source.
+            }
         }
 
         componentContext.getExecutionTracker().log(threadNumber, LogLevel.INFO, componentContext,
@@ -658,10 +1150,40 @@ public class StepRuntime implements Runnable {
         }
     }
 
+    class QueueBlocker implements ForkJoinPool.ManagedBlocker {
+
+        Message message;
+
+        boolean queued;
+
+        QueueBlocker(Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!queued) {
+                queued = inQueue.offer(message, 500, TimeUnit.MILLISECONDS);
+                if (!queued && cancelling) {
+                    throw new CancellationException();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!queued) {
+                queued = inQueue.offer(message);
+            }
+            return queued;
+        }
+    }
+
     class SendMessageCallback implements ISendMessageCallback {
 
-        Map<Integer, Message> currentInputMessages = new HashMap<>();
-        Map<Integer, Long> queueTime = new HashMap<>();
+        Map<Integer, Message> currentInputMessages = new ConcurrentHashMap<>();
+        Map<Integer, Long> queueTime = new ConcurrentHashMap<>();
 
         private void setCurrentInputMessage(int threadNumber, Message currentInputMessage) {
             currentInputMessages.put(threadNumber, currentInputMessage);
@@ -685,22 +1207,33 @@ public class StepRuntime implements Runnable {
             return newMessage;
         }
 
+        /*
+         * When the outbound payload is shared only the rows are shared.  The
+         * target gets its own list, so a sender may clear or reuse its list
+         * after it is sent.  When the rows may be referenced by another step
+         * the message is marked as shared and the targets that change their
+         * input copy it when it is handled.
+         */
         @SuppressWarnings("unchecked")
         private <T extends Serializable> T copy(T payload) {
-            if (payload instanceof ArrayList) {
-                ArrayList<?> old = (ArrayList<?>) payload;
-                ArrayList<Object> copied = new ArrayList<>(old.size());
-                for (Object object : old) {
-                    if (object instanceof EntityData) {
-                        object = ((EntityData) object).copy();
-                    }
-                    copied.add(object);
-                }
-                payload = (T) copied;
+            if (!shareOutboundPayload) {
+                return copyPayload(payload);
+            } else if (payload instanceof ArrayList) {
+                return (T) new ArrayList<>((ArrayList<?>) payload);
             } else if (payload instanceof byte[]) {
-                payload = (T) ArrayUtils.clone((byte[]) payload);
+                return (T) ArrayUtils.clone((byte[]) payload);
+            } else {
+                return payload;
             }
-            return payload;
+        }
+
+        /*
+         * Rows that were received shared may be forwarded, so they stay
+         * shared even when there is only one target
+         */
+        private boolean isInputShared(int threadNumber) {
+            Message inputMessage = currentInputMessages.get(threadNumber);
+            return inputMessage instanceof ContentMessage<?> && ((ContentMessage<?>) inputMessage).isShared();
         }
 
         private void sendMessage(Message message, String... targetFlowStepIds) {
@@ -726,40 +1259,54 @@ public class StepRuntime implements Runnable {
             }
             
             long ts = System.currentTimeMillis();
+            long fusedTime = 0;
 
             Collection<String> targetStepIds = targetFlowStepIds != null ? Arrays.asList(targetFlowStepIds) : Collections.emptyList();
 
+            List<StepRuntime> forwardTo = new ArrayList<>(targetStepRuntimes.size());
             for (StepRuntime targetRuntime : targetStepRuntimes) {
-                boolean forward = targetStepIds == null || targetStepIds.size() == 0
-                        || targetStepIds.contains(targetRuntime.getComponentContext().getFlowStep().getId());
-                if (forward) {
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Sending " + message.getClass().getSimpleName() + " to "
-                                    + targetRuntime.getComponentContext().getFlowStep().getName());
-                        }
-                        targetRuntime.queue(message);
-                        if (message instanceof ControlMessage) {
-                            targetStepRuntimeUnitOfWorkSent.add(targetRuntime.getComponentContext().getFlowStep().getId());
-                        }
-                    } catch (Exception e) {
-                        if (e instanceof RuntimeException) {
-                            throw (RuntimeException) e;
-                        } else {
-                            throw new RuntimeException(e);
-                        }
+                if (targetStepIds == null || targetStepIds.size() == 0
+                        || targetStepIds.contains(targetRuntime.getComponentContext().getFlowStep().getId())) {
+                    forwardTo.add(targetRuntime);
+                }
+            }
+
+            if (shareOutboundPayload && message instanceof ContentMessage<?>
+                    && (forwardTo.size() > 1 || isInputShared(threadNumber))) {
+                ((ContentMessage<?>) message).setShared(true);
+            }
+
+            for (StepRuntime targetRuntime : forwardTo) {
+                try {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Sending " + message.getClass().getSimpleName() + " to "
+                                + targetRuntime.getComponentContext().getFlowStep().getName());
+                    }
+                    long queueTs = System.currentTimeMillis();
+                    targetRuntime.queue(message);
+                    if (targetRuntime.isFused()) {
+                        fusedTime += System.currentTimeMillis() - queueTs;
+                    }
+                    if (message instanceof ControlMessage) {
+                        targetStepRuntimeUnitOfWorkSent.add(targetRuntime.getComponentContext().getFlowStep().getId());
+                    }
+                } catch (Exception e) {
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException) e;
+                    } else {
+                        throw new RuntimeException(e);
                     }
                 }
             }
             
+            /*
+             * A fused target handles the message before queue returns.  That
+             * time is recorded on the target, so it is neither time this step
+             * spent waiting nor time it spent in handle.
+             */
             long queueTime = System.currentTimeMillis()-ts;
-            Long totalQueueTime = this.queueTime.get(threadNumber);
-            if (totalQueueTime == null) {
-                totalQueueTime = 0l;
-            }
-            totalQueueTime += queueTime;
-            this.queueTime.put(threadNumber, totalQueueTime);
-            statistics.incrementTimeSpentWaiting(threadNumber, queueTime);
+            this.queueTime.merge(threadNumber, queueTime, Long::sum);
+            statistics.incrementTimeSpentWaiting(threadNumber, queueTime - fusedTime);
         }
         
         protected long useQueueTime(int threadNumber) {
@@ -22,6 +22,8 @@ package org.jumpmind.metl.core.util;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -67,6 +69,19 @@ final public class ThreadUtils {
         return Executors.newCachedThreadPool(new CustomThreadFactory(namePrefix));
     }
 
+    /*
+     * Work stealing pool in async (FIFO) mode for tasks that are submitted
+     * and never joined
+     */
+    public static ForkJoinPool createWorkStealingPool(String namePrefix, int parallelism) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName(namePrefix + "-" + threadNumber.getAndIncrement());
+            return t;
+        }, null, true);
+    }
+
     static class CustomThreadFactory implements ThreadFactory {
 
         String namePrefix;
@@ -0,0 +1,113 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModelTest {
+
+    CountingModel model;
+
+    ModelEntity customer;
+
+    ModelAttrib customerName;
+
+    @Before
+    public void setup() {
+        model = new CountingModel();
+        customer = new ModelEntity("e1", "CUSTOMER");
+        customerName = new ModelAttrib("a1", "e1", "NAME");
+        customer.addModelAttribute(customerName);
+        customer.addModelAttribute(new ModelAttrib("a2", "e1", "ID"));
+        model.getModelEntities().add(customer);
+    }
+
+    @Test
+    public void testLookupsUseIndex() {
+        assertSame(customer, model.getEntityByName("customer"));
+        assertSame(customer, model.getEntityById("E1"));
+        assertSame(customerName, model.getAttributeById("a1"));
+        assertSame(customerName, model.getAttributeByName("Customer", "name"));
+        assertEquals(1, model.getAttributesByName("NAME").size());
+        assertEquals(0, model.scans);
+    }
+
+    @Test
+    public void testRepeatedMissScansOnce() {
+        for (int i = 0; i < 3; i++) {
+            assertNull(model.getEntityByName("ORDER"));
+            assertNull(model.getEntityById("e2"));
+            assertNull(model.getAttributeById("a3"));
+            assertNull(model.getAttributeByName("CUSTOMER", "EMAIL"));
+            assertTrue(model.getAttributesByName("EMAIL").isEmpty());
+        }
+        assertEquals(4, model.scans);
+    }
+
+    @Test
+    public void testInvalidateIndexSeesAddedEntities() {
+        assertNull(model.getEntityByName("ORDER"));
+        ModelEntity order = new ModelEntity("e2", "ORDER");
+        model.getModelEntities().add(order);
+        assertNull(model.getEntityByName("ORDER"));
+        model.invalidateIndex();
+        assertSame(order, model.getEntityByName("ORDER"));
+    }
+
+    @Test
+    public void testRenamedEntityFallsBackToScan() {
+        model.getEntityByName("CUSTOMER");
+        customer.setName("CLIENT");
+        assertNull(model.getEntityByName("CUSTOMER"));
+        assertSame(customer, model.getEntityByName("CLIENT"));
+    }
+
+    static class CountingModel extends Model {
+        private static final long serialVersionUID = 1L;
+
+        int scans;
+
+        @Override
+        protected ModelEntity findEntityById(String entityId) {
+            scans++;
+            return super.findEntityById(entityId);
+        }
+
+        @Override
+        protected ModelEntity findEntityByName(String entityName) {
+            scans++;
+            return super.findEntityByName(entityName);
+        }
+
+        @Override
+        protected ModelAttrib findAttributeById(String attributeId) {
+            scans++;
+            return super.findAttributeById(attributeId);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jumpmind.metl.core.runtime.EntityData.ChangeType;
+import org.junit.Test;
+
+public class EntityDataTest {
+
+    @Test
+    public void testSchemaBackedRowBehavesLikeMap() {
+        EntityDataSchema schema = new EntityDataSchema("attr1", "Attr2", "attr3");
+        EntityData data = new EntityData(schema);
+        data.put("ATTR1", "one");
+        data.put("attr2", null);
+        data.put("other", "x");
+
+        assertEquals(3, data.size());
+        assertEquals("one", data.get("attr1"));
+        assertTrue(data.containsKey("attr2"));
+        assertFalse(data.containsKey("attr3"));
+        assertEquals("x", data.get("OTHER"));
+        assertEquals("one", data.getAt(schema.indexOf("attr1")));
+
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("attr1", "one");
+        expected.put("Attr2", null);
+        expected.put("other", "x");
+        assertEquals(expected, data);
+
+        assertEquals("one", data.remove("Attr1"));
+        assertEquals(2, data.size());
+        assertNull(data.get("attr1"));
+    }
+
+    @Test
+    public void testCopyAndIteratorRemove() {
+        EntityData data = new EntityData(new EntityDataSchema("attr1", "attr2"));
+        data.put("attr1", 1);
+        data.put("attr2", 2);
+        data.setChangeType(ChangeType.CHG);
+
+        EntityData copy = data.copy();
+        Iterator<Map.Entry<String, Object>> i = copy.entrySet().iterator();
+        i.next();
+        i.remove();
+
+        assertEquals(1, copy.size());
+        assertEquals(2, data.size());
+        assertEquals(ChangeType.CHG, copy.getChangeType());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        EntityData data = new EntityData(new EntityDataSchema("attr1"));
+        data.put("attr1", "one");
+        data.put("other", "two");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(data);
+        out.close();
+        EntityData read = (EntityData) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(data, read);
+        assertEquals(0, read.getSchema().indexOf("ATTR1"));
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        EntityData data = new EntityData();
+        data.setChangeType(ChangeType.DEL);
+        data.put("string", "one");
+        data.put("decimal", new BigDecimal("-12.340"));
+        data.put("null", null);
+        data.put("timestamp", new Timestamp(1234567890123l));
+        data.put("list", new ArrayList<Integer>(Arrays.asList(1, 2)));
+        EntityData other = new EntityData();
+        other.put("string", "two");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EntityDataWriter writer = new EntityDataWriter(bytes);
+        writer.write(data);
+        writer.write(other);
+        writer.close();
+
+        EntityDataSchema schema = new EntityDataSchema("string");
+        EntityDataReader reader = new EntityDataReader(new ByteArrayInputStream(bytes.toByteArray()), schema);
+        EntityData read = reader.read();
+        assertEquals(data, read);
+        assertEquals(ChangeType.DEL, read.getChangeType());
+        assertEquals(schema, read.getSchema());
+        assertEquals(other, reader.read());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+}
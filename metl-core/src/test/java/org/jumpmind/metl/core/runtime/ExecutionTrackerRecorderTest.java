@@ -0,0 +1,99 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jumpmind.metl.core.model.AgentDeploy;
+import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
+import org.jumpmind.metl.core.model.GlobalSetting;
+import org.jumpmind.metl.core.persist.IExecutionService;
+import org.jumpmind.metl.core.runtime.component.ComponentContext;
+import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.Test;
+
+public class ExecutionTrackerRecorderTest {
+
+    @Test
+    public void testEveryNthMessageIsSampled() {
+        ExecutionTrackerRecorder tracker = createTracker("LEAN");
+        assertTrue(tracker.isSampled(1, 0));
+        assertFalse(tracker.isSampled(5, 0));
+        assertTrue(tracker.isSampled(10, 0));
+        assertFalse(tracker.isSampled(11, 0));
+        assertTrue(tracker.isSampled(20, 0));
+    }
+
+    @Test
+    public void testMessageAfterTimeBetweenUpdatesIsSampled() {
+        ExecutionTrackerRecorder tracker = createTracker("LEAN");
+        assertFalse(tracker.isSampled(5, tracker.TIME_BETWEEN_MESSAGE_UPDATES_IN_MS - 1));
+        assertTrue(tracker.isSampled(5, tracker.TIME_BETWEEN_MESSAGE_UPDATES_IN_MS));
+    }
+
+    @Test
+    public void testEveryMessageIsSampledWhenDetailed() {
+        ExecutionTrackerRecorder tracker = createTracker("DETAILED");
+        assertTrue(tracker.isSampled(5, 0));
+        assertTrue(tracker.isSampled(11, 0));
+    }
+
+    @Test
+    public void testStepWithFewMessagesIsSampledAfterTimeBetweenUpdates() {
+        ExecutionTrackerRecorder tracker = createTracker("LEAN");
+        ComponentStatistics statistics = new ComponentStatistics();
+        ComponentContext context = mock(ComponentContext.class);
+        when(context.getComponentStatistics()).thenReturn(statistics);
+        for (int i = 0; i < 5; i++) {
+            statistics.incrementInboundMessages(1);
+        }
+        assertTrue(tracker.isSampled(1, context, true));
+
+        Map<Integer, Long> lastSampleTimes = new HashMap<>();
+        tracker.lastSampleTimes.put(context, lastSampleTimes);
+        lastSampleTimes.put(1, System.currentTimeMillis());
+        assertFalse(tracker.isSampled(1, context, true));
+        assertTrue(tracker.isSampled(2, context, true));
+
+        lastSampleTimes.put(1, System.currentTimeMillis() - tracker.TIME_BETWEEN_MESSAGE_UPDATES_IN_MS);
+        assertTrue(tracker.isSampled(1, context, true));
+    }
+
+    protected ExecutionTrackerRecorder createTracker(String trackingLevel) {
+        AgentDeploy agentDeploy = new AgentDeploy();
+        agentDeploy.setName("Deployment");
+        AgentProjectVersionFlowDeployment deployment = mock(AgentProjectVersionFlowDeployment.class);
+        when(deployment.getAgentDeployment()).thenReturn(agentDeploy);
+        Map<String, String> globalSettings = new HashMap<>();
+        globalSettings.put(GlobalSetting.EXECUTION_TRACKING_LEVEL, trackingLevel);
+        globalSettings.put(GlobalSetting.EXECUTION_TRACKING_SAMPLE_INTERVAL, "10");
+        return new ExecutionTrackerRecorder(TestUtils.createAgent("Agent", TestUtils.createFolder("Folder")), deployment, null,
+                mock(IExecutionService.class), "user", null, globalSettings);
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
+import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlowRuntimePoolTest {
+
+    List<FlowRuntime> created;
+
+    boolean reusable;
+
+    @Before
+    public void setup() {
+        created = new ArrayList<>();
+        reusable = true;
+    }
+
+    @Test
+    public void testBorrowReusesReleasedFlowRuntime() {
+        FlowRuntimePool pool = createPool(2);
+        FlowRuntime flowRuntime = pool.borrow();
+        assertEquals(1, created.size());
+        verify(flowRuntime).setReuseComponentRuntimes(true);
+
+        pool.release(flowRuntime);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(flowRuntime, pool.borrow());
+        assertEquals(1, created.size());
+        assertEquals(0, pool.getIdleCount());
+        verify(flowRuntime, never()).stopComponentRuntimes();
+    }
+
+    @Test
+    public void testBorrowCreatesWhenNoneAreIdle() {
+        FlowRuntimePool pool = createPool(2);
+        FlowRuntime first = pool.borrow();
+        FlowRuntime second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(2, created.size());
+    }
+
+    @Test
+    public void testReleaseStopsFlowRuntimeThatCannotBeReused() {
+        reusable = false;
+        FlowRuntimePool pool = createPool(2);
+        FlowRuntime flowRuntime = pool.borrow();
+        pool.release(flowRuntime);
+        assertEquals(0, pool.getIdleCount());
+        verify(flowRuntime).stopComponentRuntimes();
+    }
+
+    @Test
+    public void testReleaseStopsFlowRuntimeThatFailed() {
+        FlowRuntimePool pool = createPool(2);
+        FlowRuntime flowRuntime = pool.borrow();
+        when(flowRuntime.getAllErrors()).thenReturn(Collections.singletonList(new RuntimeException()));
+        pool.release(flowRuntime);
+        assertEquals(0, pool.getIdleCount());
+        verify(flowRuntime).stopComponentRuntimes();
+    }
+
+    @Test
+    public void testReleaseStopsFlowRuntimeThatWasCancelled() {
+        FlowRuntimePool pool = createPool(2);
+        FlowRuntime flowRuntime = pool.borrow();
+        when(flowRuntime.isCancelled()).thenReturn(true);
+        pool.release(flowRuntime);
+        assertEquals(0, pool.getIdleCount());
+        verify(flowRuntime).stopComponentRuntimes();
+    }
+
+    @Test
+    public void testReleaseBeyondSizeStopsFlowRuntime() {
+        FlowRuntimePool pool = createPool(1);
+        FlowRuntime first = pool.borrow();
+        FlowRuntime second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getIdleCount());
+        verify(first, never()).stopComponentRuntimes();
+        verify(second).stopComponentRuntimes();
+    }
+
+    @Test
+    public void testPrewarmFillsPool() {
+        FlowRuntimePool pool = createPool(3);
+        pool.prewarm();
+        assertEquals(3, pool.getIdleCount());
+        assertEquals(3, created.size());
+        pool.borrow();
+        assertEquals(3, created.size());
+    }
+
+    @Test
+    public void testPrewarmStopsWhenFlowRuntimeCannotBeReused() {
+        reusable = false;
+        FlowRuntimePool pool = createPool(3);
+        pool.prewarm();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, created.size());
+        verify(created.get(0)).stopComponentRuntimes();
+    }
+
+    @Test
+    public void testCloseStopsIdleFlowRuntimes() {
+        FlowRuntimePool pool = createPool(2);
+        pool.prewarm();
+        FlowRuntime borrowed = pool.borrow();
+
+        pool.close();
+        assertTrue(pool.isClosed());
+        assertEquals(0, pool.getIdleCount());
+        verify(created.get(1)).stopComponentRuntimes();
+        verify(borrowed, never()).stopComponentRuntimes();
+
+        /* a flow runtime that was executing when the deployment was redeployed is not kept */
+        pool.release(borrowed);
+        assertEquals(0, pool.getIdleCount());
+        verify(borrowed).stopComponentRuntimes();
+    }
+
+    protected FlowRuntimePool createPool(int size) {
+        return new FlowRuntimePool(mock(AgentProjectVersionFlowDeployment.class), size, () -> {
+            FlowRuntime flowRuntime = mock(FlowRuntime.class);
+            when(flowRuntime.isReusable()).thenReturn(reusable);
+            created.add(flowRuntime);
+            return flowRuntime;
+        });
+    }
+
+}
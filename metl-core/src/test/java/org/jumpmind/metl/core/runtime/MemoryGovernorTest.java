@@ -0,0 +1,89 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.metl.core.runtime.flow.FlowRuntime;
+import org.junit.Test;
+
+public class MemoryGovernorTest {
+
+    @Test
+    public void testReservationIsCappedAtBudget() {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        assertEquals(40, governor.getReservation(createFlowRuntime(40)));
+        assertEquals(100, governor.getReservation(createFlowRuntime(400)));
+        assertEquals(100, governor.getReservation(createFlowRuntime(0)));
+    }
+
+    @Test
+    public void testExecutionWaitsForMemory() throws Exception {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        FlowRuntime first = createFlowRuntime(60);
+        FlowRuntime second = createFlowRuntime(60);
+        assertTrue(governor.admit(first));
+        assertEquals(60, governor.getReserved());
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                if (governor.admit(second)) {
+                    admitted.countDown();
+                }
+            } catch (InterruptedException e) {
+            }
+        });
+        thread.start();
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+
+        governor.release(first);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        assertEquals(60, governor.getReserved());
+        governor.release(second);
+        assertEquals(0, governor.getReserved());
+    }
+
+    @Test
+    public void testCancelledExecutionIsNotAdmitted() throws Exception {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        FlowRuntime first = createFlowRuntime(100);
+        FlowRuntime second = createFlowRuntime(100);
+        when(second.isCancelled()).thenReturn(true);
+        assertTrue(governor.admit(first));
+        assertFalse(governor.admit(second));
+        assertEquals(100, governor.getReserved());
+    }
+
+    protected FlowRuntime createFlowRuntime(long queueMemoryBudget) {
+        FlowRuntime flowRuntime = mock(FlowRuntime.class);
+        when(flowRuntime.getQueueMemoryBudget()).thenReturn(queueMemoryBudget);
+        return flowRuntime;
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class MessageHeaderTest {
+
+    @Test
+    public void testCopyOnWrite() {
+        MessageHeader parent = new MessageHeader("step1");
+        parent.put("a", "1");
+        parent.put("b", "2");
+
+        MessageHeader child = new MessageHeader("step2");
+        child.putAll(parent);
+        assertTrue(parent.values == child.values);
+        assertEquals(parent, child);
+
+        child.put("a", "changed");
+        child.remove("b");
+        assertEquals("1", parent.get("a"));
+        assertEquals("2", parent.get("b"));
+        assertEquals("changed", child.get("a"));
+        assertNull(child.get("b"));
+
+        MessageHeader sibling = new MessageHeader("step3");
+        sibling.putAll(parent);
+        parent.put("c", "3");
+        assertNull(sibling.get("c"));
+        assertEquals(2, sibling.size());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        MessageHeader header = new MessageHeader("step");
+        header.setSequenceNumber(5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(header);
+        out.close();
+        MessageHeader copy = (MessageHeader) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(5, copy.getSequenceNumber());
+        copy.put("a", "1");
+        assertEquals("1", copy.getAsStrings().get("a"));
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.jumpmind.metl.core.model.Model;
+import org.jumpmind.metl.core.model.ModelAttrib;
+import org.jumpmind.metl.core.model.ModelEntity;
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.junit.Test;
+
+public class ScriptBindingsTest {
+
+    @Test
+    public void testRowsAreBoundThroughEntityViews() {
+        ScriptBindings bindings = new ScriptBindings(createModel());
+        EntityDataMessage message = new EntityDataMessage("step");
+        message.getHeader().put("source", "orders");
+        bindings.bindMessage(message, Collections.singletonMap("region", "east"));
+        assertEquals("orders", bindings.get("source"));
+        assertEquals("east", bindings.get("region"));
+        assertSame(message, bindings.getInputMessage());
+        assertNull(bindings.get("CHANGE_TYPE"));
+
+        Map<?, ?> order = (Map<?, ?>) bindings.get("ORDER");
+        assertNull(order.get("ID"));
+
+        EntityData row = new EntityData();
+        row.put("a1", 1);
+        row.put("a2", "NEW");
+        bindings.bindRow(row);
+        assertSame(order, bindings.get("ORDER"));
+        assertEquals(1, order.get("ID"));
+        assertEquals("NEW", order.get("STATUS"));
+        assertEquals("ADD", bindings.get("CHANGE_TYPE"));
+        assertEquals(Collections.singleton("ORDER"), bindings.get("ENTITY_NAMES"));
+
+        row = new EntityData();
+        row.put("a1", 2);
+        bindings.bindRow(row);
+        assertEquals(2, order.get("ID"));
+        assertNull(order.get("STATUS"));
+        assertEquals(2, order.size());
+    }
+
+    @Test
+    public void testMessageReplacesVariables() {
+        ScriptBindings bindings = new ScriptBindings(createModel());
+        bindings.bindMessage(new EntityDataMessage("step"), Collections.emptyMap());
+        EntityData row = new EntityData();
+        row.put("a1", 1);
+        bindings.bindRow(row);
+        bindings.put("total", 10);
+
+        bindings.bindMessage(new EntityDataMessage("step"), Collections.emptyMap());
+        assertNull(bindings.get("total"));
+        assertNull(bindings.get("CHANGE_TYPE"));
+        assertNull(((Map<?, ?>) bindings.get("ORDER")).get("ID"));
+    }
+
+    @Test
+    public void testEntityMapsAreWritableForOneRow() {
+        ScriptBindings bindings = new ScriptBindings(createModel());
+        bindings.bindMessage(new EntityDataMessage("step"), Collections.emptyMap());
+        EntityData row = new EntityData();
+        row.put("a1", 1);
+        row.put("a2", "NEW");
+        bindings.bindRow(row);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> order = (Map<String, Object>) bindings.get("ORDER");
+        order.put("STATUS", "CHANGED");
+        order.put("NOTE", "added");
+        assertEquals("CHANGED", order.get("STATUS"));
+        assertEquals("added", order.get("NOTE"));
+        assertEquals(1, order.get("ID"));
+        assertEquals(3, order.size());
+        assertEquals("NEW", row.get("a2"));
+
+        row = new EntityData();
+        row.put("a1", 2);
+        bindings.bindRow(row);
+        assertSame(order, bindings.get("ORDER"));
+        assertNull(order.get("STATUS"));
+        assertNull(order.get("NOTE"));
+        assertFalse(order.containsKey("NOTE"));
+        assertEquals(2, order.get("ID"));
+    }
+
+    @Test
+    public void testVariablesSetByScriptsAreClearedForEachRow() {
+        ScriptBindings bindings = new ScriptBindings(createModel());
+        EntityDataMessage message = new EntityDataMessage("step");
+        message.getHeader().put("source", "orders");
+        bindings.bindMessage(message, Collections.emptyMap());
+        Object order = bindings.get("ORDER");
+        EntityData row = new EntityData();
+        row.put("a1", 1);
+        bindings.bindRow(row);
+        bindings.put("total", 10);
+        bindings.put("source", "changed");
+        bindings.remove("ORDER");
+
+        bindings.bindRow(row);
+        assertFalse(bindings.containsKey("total"));
+        assertEquals("orders", bindings.get("source"));
+        assertSame(order, bindings.get("ORDER"));
+        assertEquals("ADD", bindings.get("CHANGE_TYPE"));
+
+        bindings.put("line", 1);
+        bindings.bindText("text");
+        assertFalse(bindings.containsKey("line"));
+        assertEquals("text", bindings.get("text"));
+    }
+
+    private Model createModel() {
+        ModelEntity entity = new ModelEntity("e1", "ORDER");
+        entity.addModelAttribute(new ModelAttrib("a1", "e1", "ID"));
+        entity.addModelAttribute(new ModelAttrib("a2", "e1", "STATUS"));
+        Model model = new Model();
+        model.getModelEntities().add(entity);
+        return model;
+    }
+
+}
@@ -52,7 +52,8 @@ class SendMessageCallback<T> implements ISendMessageCallback {
     
     @Override
     public void sendEntityDataMessage(Map<String, Serializable> messageHeaders, ArrayList<EntityData> payload, String... targetStepIds) {
-        payloadList.add((T) payload);        
+        /* like the step runtime, keep a list of our own so senders can reuse theirs */
+        payloadList.add((T) new ArrayList<EntityData>(payload));
         this.targetStepIds.add(Arrays.asList(targetStepIds));
     }
     
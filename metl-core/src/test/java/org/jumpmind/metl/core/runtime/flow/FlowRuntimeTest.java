@@ -0,0 +1,643 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.metl.core.model.AgentDeploy;
+import org.jumpmind.metl.core.model.AgentProjectVersionFlowDeployment;
+import org.jumpmind.metl.core.model.Component;
+import org.jumpmind.metl.core.model.ExecutionStatus;
+import org.jumpmind.metl.core.model.ExecutionStep;
+import org.jumpmind.metl.core.model.Flow;
+import org.jumpmind.metl.core.model.FlowStep;
+import org.jumpmind.metl.core.model.Folder;
+import org.jumpmind.metl.core.model.GlobalSetting;
+import org.jumpmind.metl.core.model.ProjectVersion;
+import org.jumpmind.metl.core.model.Setting;
+import org.jumpmind.metl.core.persist.IExecutionService;
+import org.jumpmind.metl.core.plugin.IDefinitionFactory;
+import org.jumpmind.metl.core.plugin.XMLComponentDefinition;
+import org.jumpmind.metl.core.plugin.XMLSettings;
+import org.jumpmind.metl.core.runtime.ControlMessage;
+import org.jumpmind.metl.core.runtime.MemoryGovernor;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.TextMessage;
+import org.jumpmind.metl.core.runtime.component.AbstractComponentRuntime;
+import org.jumpmind.metl.core.runtime.component.ComponentStatistics;
+import org.jumpmind.metl.core.runtime.component.IBatchComponentRuntime;
+import org.jumpmind.metl.core.runtime.component.IComponentRuntime;
+import org.jumpmind.metl.core.runtime.component.IComponentRuntimeFactory;
+import org.jumpmind.metl.core.runtime.component.IReusableComponentRuntime;
+import org.jumpmind.metl.core.utils.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlowRuntimeTest {
+
+    static final int MESSAGE_COUNT = 100;
+
+    Folder folder;
+
+    Flow flow;
+
+    IDefinitionFactory definitionFactory;
+
+    Map<String, String> globalSettings;
+
+    ExecutorService threadService;
+
+    ForkJoinPool stepScheduler;
+
+    @Before
+    public void setup() {
+        folder = TestUtils.createFolder("Folder");
+        flow = TestUtils.createFlow("Flow", folder);
+        definitionFactory = mock(IDefinitionFactory.class);
+        define(Emitter.class, "READER", false);
+        define(Relay.class, "PROCESSOR", false);
+        define(Collector.class, "PROCESSOR", false);
+        define(ReusableCollector.class, "PROCESSOR", false);
+        define(FailingCollector.class, "PROCESSOR", false);
+        define(Silent.class, "READER", false).setAutoSendControlMessages(false);
+        define(Joiner.class, "PROCESSOR", false);
+        define(BatchCollector.class, "PROCESSOR", false).setFusable(true);
+        define(Sleeper.class, "PROCESSOR", false).setFusable(true);
+        define(Writer.class, "WRITER", false).setFusable(true);
+        globalSettings = new HashMap<>();
+        threadService = Executors.newCachedThreadPool();
+        /*
+         * One thread is enough to run every scheduled step.  A scheduled step
+         * that blocks on a full queue must let the pool compensate or the
+         * step that would empty the queue never runs.
+         */
+        stepScheduler = new ForkJoinPool(1, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    @After
+    public void tearDown() {
+        threadService.shutdownNow();
+        stepScheduler.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void testFlowRunsOnStepScheduler() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep relay = addStep(Relay.class, new Setting(AbstractComponentRuntime.INBOUND_QUEUE_CAPACITY, "1"));
+        FlowStep collector = addStep(Collector.class, new Setting(AbstractComponentRuntime.INBOUND_QUEUE_CAPACITY, "1"));
+        link(emitter, relay);
+        link(relay, collector);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        flowRuntime.setStepScheduler(stepScheduler);
+        assertFalse(flowRuntime.stepRuntimes.get(emitter.getId()).isSchedulable());
+        assertTrue(flowRuntime.stepRuntimes.get(relay.getId()).isSchedulable());
+        assertTrue(flowRuntime.stepRuntimes.get(collector.getId()).isSchedulable());
+
+        flowRuntime.execute();
+
+        assertEquals(expectedPayload(), getComponentRuntime(flowRuntime, collector, Collector.class).payload);
+        assertEquals(Collections.singleton(Boolean.TRUE), getComponentRuntime(flowRuntime, relay, Relay.class).onScheduler);
+        assertEquals(Collections.singleton(Boolean.TRUE), getComponentRuntime(flowRuntime, collector, Collector.class).onScheduler);
+        assertEquals(Collections.singleton(Boolean.FALSE), getComponentRuntime(flowRuntime, emitter, Emitter.class).onScheduler);
+    }
+
+    @Test(timeout = 30000)
+    public void testBlockingStepKeepsItsThread() throws Exception {
+        define(Relay.class, "PROCESSOR", true);
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep relay = addStep(Relay.class);
+        FlowStep collector = addStep(Collector.class);
+        link(emitter, relay);
+        link(relay, collector);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        flowRuntime.setStepScheduler(stepScheduler);
+        assertFalse(flowRuntime.stepRuntimes.get(relay.getId()).isSchedulable());
+
+        flowRuntime.execute();
+
+        assertEquals(expectedPayload(), getComponentRuntime(flowRuntime, collector, Collector.class).payload);
+        assertEquals(Collections.singleton(Boolean.FALSE), getComponentRuntime(flowRuntime, relay, Relay.class).onScheduler);
+        assertEquals(Collections.singleton(Boolean.TRUE), getComponentRuntime(flowRuntime, collector, Collector.class).onScheduler);
+    }
+
+    @Test(timeout = 30000)
+    public void testReusedComponentsAreResetBetweenExecutions() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep collector = addStep(ReusableCollector.class);
+        link(emitter, collector);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        flowRuntime.setReuseComponentRuntimes(true);
+        assertFalse(flowRuntime.isReusable());
+        assertFalse(flowRuntime.stepRuntimes.get(emitter.getId()).isReusable());
+        assertTrue(flowRuntime.stepRuntimes.get(collector.getId()).isReusable());
+        ReusableCollector reusableCollector = getComponentRuntime(flowRuntime, collector, ReusableCollector.class);
+
+        flowRuntime.execute();
+        assertEquals(expectedPayload(), reusableCollector.payload);
+        assertEquals(1, reusableCollector.starts);
+        assertEquals(0, reusableCollector.resets);
+        assertEquals(0, reusableCollector.stops);
+
+        flowRuntime.reset("execution2", "user", null);
+        flowRuntime.execute();
+        assertEquals(expectedPayload(), reusableCollector.payload);
+        assertEquals(1, reusableCollector.starts);
+        assertEquals(1, reusableCollector.resets);
+        assertEquals(0, reusableCollector.stops);
+
+        flowRuntime.stopComponentRuntimes();
+        flowRuntime.stopComponentRuntimes();
+        assertEquals(1, reusableCollector.stops);
+    }
+
+    @Test(timeout = 30000)
+    public void testStartedRuntimesAreStoppedWhenAStartFails() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep failing = addStep(FailingCollector.class, new Setting(StepRuntime.THREAD_COUNT, "2"));
+        link(emitter, failing);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        try {
+            flowRuntime.execute();
+            fail("The step should have failed to start");
+        } catch (IllegalStateException ex) {
+        }
+
+        List<IComponentRuntime> runtimes = flowRuntime.stepRuntimes.get(failing.getId()).getComponentRuntimes();
+        assertEquals(2, runtimes.size());
+        int starts = 0;
+        for (IComponentRuntime runtime : runtimes) {
+            FailingCollector collector = (FailingCollector) runtime;
+            assertEquals(collector.starts, collector.stops);
+            starts += collector.starts;
+        }
+        assertEquals(1, starts);
+    }
+
+    @Test(timeout = 30000)
+    public void testJoinWithSilentSourceReachesUnitOfWorkBoundary() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep silent = addStep(Silent.class);
+        FlowStep joiner = addStep(Joiner.class);
+        FlowStep collector = addStep(Collector.class);
+        link(emitter, joiner);
+        link(silent, joiner);
+        link(joiner, collector);
+        Silent.released = new CountDownLatch(1);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        flowRuntime.execute();
+
+        assertTrue(flowRuntime.getAllErrors().isEmpty());
+        Joiner joinerRuntime = getComponentRuntime(flowRuntime, joiner, Joiner.class);
+        assertEquals(expectedPayload(), joinerRuntime.payload);
+        assertEquals(1, joinerRuntime.boundaries.size());
+        assertTrue(((ControlMessage) joinerRuntime.boundaries.get(0)).isSynthetic());
+        assertEquals(joiner.getId(), joinerRuntime.boundaries.get(0).getHeader().getOriginatingStepId());
+        assertEquals(1, flowRuntime.stepRuntimes.get(joiner.getId()).getControlMessagesSentCount());
+        /* the text messages and the control message from the emitter */
+        ComponentStatistics joinerStatistics = flowRuntime.stepRuntimes.get(joiner.getId()).getComponentContext()
+                .getComponentStatistics();
+        assertEquals(MESSAGE_COUNT + 1, joinerStatistics.getNumberInboundMessages(1));
+        assertEquals(expectedPayload(), getComponentRuntime(flowRuntime, collector, Collector.class).payload);
+    }
+
+    @Test(timeout = 30000)
+    public void testQueuedBatchesEndAtTheUnitOfWork() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep collector = addStep(BatchCollector.class);
+        link(emitter, collector);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        assertFalse(flowRuntime.stepRuntimes.get(collector.getId()).isFused());
+        flowRuntime.execute();
+
+        BatchCollector batchCollector = getComponentRuntime(flowRuntime, collector, BatchCollector.class);
+        assertEquals(expectedPayload(), batchCollector.payload);
+        int messageCount = 0;
+        for (Integer batchSize : batchCollector.batchSizes) {
+            assertTrue(batchSize <= StepRuntime.MAX_MESSAGES_PER_BATCH);
+            messageCount += batchSize;
+        }
+        /* the control message is batched when it was queued behind the last content message */
+        assertTrue(messageCount == MESSAGE_COUNT || messageCount == MESSAGE_COUNT + 1);
+        assertEquals(1, batchCollector.boundaries.size());
+        assertTrue(batchCollector.boundaries.get(0) instanceof ControlMessage);
+    }
+
+    @Test(timeout = 30000)
+    public void testFusedStepHandlesWhatItsSourceSentAsBatches() throws Exception {
+        globalSettings.put(GlobalSetting.STEP_FUSION_ENABLED, "true");
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep collector = addStep(BatchCollector.class);
+        link(emitter, collector);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        assertTrue(flowRuntime.stepRuntimes.get(collector.getId()).isFused());
+        flowRuntime.execute();
+
+        assertTrue(flowRuntime.getAllErrors().isEmpty());
+        BatchCollector batchCollector = getComponentRuntime(flowRuntime, collector, BatchCollector.class);
+        assertEquals(expectedPayload(), batchCollector.payload);
+        assertEquals(Arrays.asList(StepRuntime.MAX_MESSAGES_PER_BATCH, MESSAGE_COUNT - StepRuntime.MAX_MESSAGES_PER_BATCH),
+                batchCollector.batchSizes);
+        assertEquals(1, batchCollector.boundaries.size());
+        assertTrue(batchCollector.boundaries.get(0) instanceof ControlMessage);
+    }
+
+    @Test
+    public void testStepsAreNotFusedByDefault() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep collector = addStep(BatchCollector.class);
+        link(emitter, collector);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        assertTrue(flowRuntime.stepRuntimes.get(collector.getId()).isFusable());
+        assertFalse(flowRuntime.stepRuntimes.get(collector.getId()).isFused());
+    }
+
+    @Test
+    public void testWriterIsNotFusedIntoSchedulableStep() throws Exception {
+        globalSettings.put(GlobalSetting.STEP_FUSION_ENABLED, "true");
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep relay = addStep(Relay.class);
+        FlowStep writer = addStep(Writer.class);
+        FlowStep otherEmitter = addStep(Emitter.class);
+        FlowStep otherWriter = addStep(Writer.class);
+        link(emitter, relay);
+        link(relay, writer);
+        link(otherEmitter, otherWriter);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        assertFalse(flowRuntime.stepRuntimes.get(writer.getId()).isFused());
+        assertTrue(flowRuntime.stepRuntimes.get(otherWriter.getId()).isFused());
+    }
+
+    @Test(timeout = 30000)
+    public void testFusedHandleTimeIsRecordedOnTheTarget() throws Exception {
+        globalSettings.put(GlobalSetting.STEP_FUSION_ENABLED, "true");
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep sleeper = addStep(Sleeper.class);
+        link(emitter, sleeper);
+
+        FlowRuntime flowRuntime = createFlowRuntime();
+        assertTrue(flowRuntime.stepRuntimes.get(sleeper.getId()).isFused());
+        flowRuntime.execute();
+
+        ComponentStatistics emitterStatistics = flowRuntime.stepRuntimes.get(emitter.getId()).getComponentContext()
+                .getComponentStatistics();
+        ComponentStatistics sleeperStatistics = flowRuntime.stepRuntimes.get(sleeper.getId()).getComponentContext()
+                .getComponentStatistics();
+        assertTrue(sleeperStatistics.getTimeSpentInHandle(1) >= Sleeper.SLEEP_MS);
+        assertTrue(emitterStatistics.getTimeSpentWaiting(1) < Sleeper.SLEEP_MS);
+        assertTrue(emitterStatistics.getTimeSpentInHandle(1) < Sleeper.SLEEP_MS);
+    }
+
+    @Test(timeout = 30000)
+    public void testReservedMemoryIsRecordedOnTheExecutionSteps() throws Exception {
+        FlowStep emitter = addStep(Emitter.class);
+        FlowStep collector = addStep(Collector.class);
+        link(emitter, collector);
+
+        Map<String, ExecutionStep> executionSteps = new ConcurrentHashMap<>();
+        IExecutionService executionService = mock(IExecutionService.class);
+        doAnswer(invocation -> {
+            for (Object object : (List<?>) invocation.getArguments()[0]) {
+                if (object instanceof ExecutionStep) {
+                    executionSteps.put(((ExecutionStep) object).getId(), (ExecutionStep) object);
+                }
+            }
+            return null;
+        }).when(executionService).save(anyList());
+
+        FlowRuntime flowRuntime = createFlowRuntime(executionService);
+        MemoryGovernor memoryGovernor = new MemoryGovernor(1024 * 1024);
+        flowRuntime.setMemoryGovernor(memoryGovernor);
+        long reservation = memoryGovernor.getReservation(flowRuntime);
+        assertTrue(reservation > 0);
+        flowRuntime.execute();
+
+        /* the recorder saves the finished steps on its own thread */
+        while (!isDone(executionSteps.values(), 2)) {
+            Thread.sleep(10);
+        }
+        for (ExecutionStep executionStep : executionSteps.values()) {
+            assertEquals(reservation, executionStep.getReservedMemory());
+        }
+    }
+
+    protected boolean isDone(Collection<ExecutionStep> executionSteps, int count) {
+        int done = 0;
+        for (ExecutionStep executionStep : executionSteps) {
+            if (ExecutionStatus.DONE.name().equals(executionStep.getStatus())) {
+                done++;
+            }
+        }
+        return done == count;
+    }
+
+    protected XMLComponentDefinition define(Class<? extends IComponentRuntime> type, String category, boolean blocking) {
+        XMLComponentDefinition definition = new XMLComponentDefinition();
+        definition.setId(type.getSimpleName());
+        definition.setName(type.getSimpleName());
+        definition.setClassName(type.getName());
+        definition.setCategory(category);
+        definition.setBlocking(blocking);
+        definition.setSettings(new XMLSettings());
+        when(definitionFactory.getComponentDefinition(any(), eq(type.getSimpleName()))).thenReturn(definition);
+        return definition;
+    }
+
+    protected FlowStep addStep(Class<? extends IComponentRuntime> type, Setting... settings) {
+        String id = type.getSimpleName() + flow.getFlowSteps().size();
+        Component component = TestUtils.createComponent(type.getSimpleName(), false, null, null, null, null, null, settings);
+        component.setId(id);
+        component.setName(id);
+        FlowStep step = new FlowStep(component);
+        step.setId(id);
+        step.setName(id);
+        step.setFlowId(flow.getId());
+        flow.getFlowSteps().add(step);
+        return step;
+    }
+
+    protected void link(FlowStep source, FlowStep target) {
+        flow.getFlowStepLinks().add(TestUtils.createComponentLink(source, target));
+    }
+
+    protected FlowRuntime createFlowRuntime() {
+        return createFlowRuntime(null);
+    }
+
+    protected FlowRuntime createFlowRuntime(IExecutionService executionService) {
+        AgentDeploy agentDeploy = new AgentDeploy();
+        agentDeploy.setName("Deployment");
+        ProjectVersion projectVersion = new ProjectVersion();
+        projectVersion.setVersionLabel("1.0");
+        AgentProjectVersionFlowDeployment deployment = new AgentProjectVersionFlowDeployment(agentDeploy, flow, projectVersion);
+        IComponentRuntimeFactory componentRuntimeFactory = (projectVersionId, type, context, threadNumber) -> {
+            XMLComponentDefinition definition = definitionFactory.getComponentDefinition(projectVersionId, type);
+            try {
+                IComponentRuntime componentRuntime = (IComponentRuntime) Class.forName(definition.getClassName()).newInstance();
+                componentRuntime.create(definition, context, threadNumber);
+                return componentRuntime;
+            } catch (ReflectiveOperationException ex) {
+                throw new RuntimeException(ex);
+            }
+        };
+        return new FlowRuntime("execution", "user", deployment, TestUtils.createAgent("Agent", folder), componentRuntimeFactory,
+                definitionFactory, threadService, null, null, executionService, null, null, globalSettings);
+    }
+
+    protected <T extends IComponentRuntime> T getComponentRuntime(FlowRuntime flowRuntime, FlowStep step, Class<T> type) {
+        StepRuntime stepRuntime = flowRuntime.stepRuntimes.get(step.getId());
+        assertNotNull(stepRuntime);
+        return type.cast(stepRuntime.getComponentRuntimes().get(0));
+    }
+
+    protected List<String> expectedPayload() {
+        List<String> payload = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            payload.add(Integer.toString(i));
+        }
+        return payload;
+    }
+
+    static boolean isOnScheduler() {
+        return Thread.currentThread() instanceof ForkJoinWorkerThread;
+    }
+
+    public static class Emitter extends AbstractComponentRuntime {
+
+        Set<Boolean> onScheduler = Collections.synchronizedSet(new HashSet<>());
+
+        @Override
+        public boolean supportsStartupMessages() {
+            return true;
+        }
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            onScheduler.add(isOnScheduler());
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                callback.sendTextMessage(null, Integer.toString(i));
+            }
+        }
+    }
+
+    public static class Relay extends AbstractComponentRuntime {
+
+        Set<Boolean> onScheduler = Collections.synchronizedSet(new HashSet<>());
+
+        @Override
+        public boolean supportsStartupMessages() {
+            return false;
+        }
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            onScheduler.add(isOnScheduler());
+            if (inputMessage instanceof TextMessage) {
+                callback.forward(inputMessage);
+            }
+        }
+    }
+
+    public static class Collector extends AbstractComponentRuntime {
+
+        Set<Boolean> onScheduler = Collections.synchronizedSet(new HashSet<>());
+
+        List<String> payload = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public boolean supportsStartupMessages() {
+            return false;
+        }
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            onScheduler.add(isOnScheduler());
+            if (inputMessage instanceof TextMessage) {
+                payload.addAll(((TextMessage) inputMessage).getPayload());
+            }
+        }
+    }
+
+    /* shuts down without sending anything once the joiner has the other unit of work */
+    public static class Silent extends AbstractComponentRuntime {
+
+        static CountDownLatch released;
+
+        @Override
+        public boolean supportsStartupMessages() {
+            return true;
+        }
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static class Joiner extends Collector {
+
+        List<Message> boundaries = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            super.handle(inputMessage, callback, unitOfWorkBoundaryReached);
+            if (unitOfWorkBoundaryReached) {
+                boundaries.add(inputMessage);
+            } else if (inputMessage instanceof ControlMessage) {
+                Silent.released.countDown();
+            }
+            if (inputMessage instanceof TextMessage) {
+                callback.forward(inputMessage);
+            }
+        }
+    }
+
+    public static class BatchCollector extends Collector implements IBatchComponentRuntime {
+
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        List<Message> boundaries = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public boolean supportsBatchHandle() {
+            return true;
+        }
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            super.handle(inputMessage, callback, unitOfWorkBoundaryReached);
+            if (unitOfWorkBoundaryReached) {
+                boundaries.add(inputMessage);
+            }
+        }
+
+        @Override
+        public void handleBatch(List<Message> inputMessages, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            batchSizes.add(inputMessages.size());
+            for (Message inputMessage : inputMessages) {
+                handle(inputMessage, callback, unitOfWorkBoundaryReached && inputMessage == inputMessages.get(inputMessages.size() - 1));
+            }
+        }
+    }
+
+    public static class Sleeper extends Collector {
+
+        static final long SLEEP_MS = 200;
+
+        @Override
+        public void handle(Message inputMessage, ISendMessageCallback callback, boolean unitOfWorkBoundaryReached) {
+            super.handle(inputMessage, callback, unitOfWorkBoundaryReached);
+            if (payload.size() == 1) {
+                try {
+                    Thread.sleep(SLEEP_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public static class Writer extends Collector {
+    }
+
+    public static class FailingCollector extends ReusableCollector {
+
+        @Override
+        public void start() {
+            if (getThreadNumber() == 2) {
+                throw new IllegalStateException("Thread 2 failed to start");
+            }
+            super.start();
+        }
+    }
+
+    public static class ReusableCollector extends Collector implements IReusableComponentRuntime {
+
+        int starts;
+
+        int resets;
+
+        int stops;
+
+        @Override
+        public void start() {
+            starts++;
+        }
+
+        @Override
+        public boolean supportsReuse() {
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            resets++;
+            payload.clear();
+        }
+
+        @Override
+        public void stop() {
+            stops++;
+            super.stop();
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.metl.core.runtime.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jumpmind.metl.core.runtime.EntityData;
+import org.jumpmind.metl.core.runtime.EntityDataMessage;
+import org.jumpmind.metl.core.runtime.EntityDataSchema;
+import org.jumpmind.metl.core.runtime.Message;
+import org.jumpmind.metl.core.runtime.ShutdownMessage;
+import org.junit.Test;
+
+public class SpillableMessageQueueTest {
+
+    @Test
+    public void testSpillKeepsOrderAndReleasesBudget() {
+        AtomicLong flowQueuedBytes = new AtomicLong();
+        SpillableMessageQueue queue = new SpillableMessageQueue(100, 2000, flowQueuedBytes, 0, true);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(createMessage(i)));
+        }
+        queue.offer(new ShutdownMessage("step", false));
+
+        assertEquals(11, queue.size());
+        assertTrue(queue.getSpilledCount() > 0);
+        assertTrue(queue.getQueuedBytes() <= 2000);
+        assertEquals(queue.getQueuedBytes(), flowQueuedBytes.get());
+
+        for (int i = 0; i < 10; i++) {
+            EntityDataMessage message = (EntityDataMessage) queue.poll();
+            assertEquals(i, message.getHeader().getSequenceNumber());
+            assertEquals("value" + i, message.getHeader().get("key"));
+            assertEquals(5, message.getPayload().size());
+            assertEquals(i * 10 + 4, message.getPayload().get(4).get("id"));
+        }
+        assertTrue(queue.poll() instanceof ShutdownMessage);
+        assertNull(queue.poll());
+        assertEquals(0, queue.getSpilledCount());
+        assertEquals(0, queue.getQueuedBytes());
+        assertEquals(0, flowQueuedBytes.get());
+    }
+
+    @Test
+    public void testFlowBudgetIsShared() {
+        AtomicLong flowQueuedBytes = new AtomicLong();
+        SpillableMessageQueue queue1 = new SpillableMessageQueue(100, 0, flowQueuedBytes, 2000, true);
+        SpillableMessageQueue queue2 = new SpillableMessageQueue(100, 0, flowQueuedBytes, 2000, true);
+        for (int i = 0; i < 5; i++) {
+            queue1.offer(createMessage(i));
+            queue2.offer(createMessage(i));
+        }
+        /* the message at the head of each queue is always kept in memory */
+        assertEquals(2 * SpillableMessageQueue.estimateSize(createMessage(0)), flowQueuedBytes.get());
+        assertEquals(8, queue1.getSpilledCount() + queue2.getSpilledCount());
+
+        queue1.clear();
+        queue2.clear();
+        assertTrue(queue1.isEmpty());
+        assertEquals(0, flowQueuedBytes.get());
+    }
+
+    @Test
+    public void testCountCapacity() {
+        SpillableMessageQueue queue = new SpillableMessageQueue(2, 0, null, 0, false);
+        assertTrue(queue.offer(createMessage(0)));
+        assertTrue(queue.offer(createMessage(1)));
+        assertFalse(queue.offer(createMessage(2)));
+        assertEquals(0, queue.remainingCapacity());
+        Message message = queue.poll();
+        assertEquals(0, message.getHeader().getSequenceNumber());
+        assertEquals(1, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testNothingIsSpilledUnlessEnabled() {
+        AtomicLong flowQueuedBytes = new AtomicLong();
+        SpillableMessageQueue queue = new SpillableMessageQueue(100, 2000, flowQueuedBytes, 0, false);
+        queue.setMemoryTracked(true);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(createMessage(i)));
+        }
+        assertEquals(0, queue.getSpilledCount());
+        assertEquals(10 * SpillableMessageQueue.estimateSize(createMessage(0)), queue.getQueuedBytes());
+        assertEquals(queue.getQueuedBytes(), flowQueuedBytes.get());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, queue.poll().getHeader().getSequenceNumber());
+        }
+        assertEquals(0, flowQueuedBytes.get());
+    }
+
+    @Test
+    public void testSizesAreOnlyEstimatedWhenNeeded() {
+        AtomicLong flowQueuedBytes = new AtomicLong();
+        SpillableMessageQueue queue = new SpillableMessageQueue(100, 2000, flowQueuedBytes, 0, false);
+        assertTrue(queue.offer(createMessage(0)));
+        assertEquals(0, queue.getQueuedBytes());
+        assertEquals(0, flowQueuedBytes.get());
+        queue.setMemoryTracked(true);
+        assertTrue(queue.offer(createMessage(1)));
+        assertEquals(SpillableMessageQueue.estimateSize(createMessage(1)), queue.getQueuedBytes());
+        queue.poll();
+        queue.poll();
+        assertEquals(0, flowQueuedBytes.get());
+    }
+
+    @Test
+    public void testRowsThatCannotBeWrittenAreKeptInMemory() {
+        SpillableMessageQueue queue = new SpillableMessageQueue(100, 1, null, 0, true);
+        assertTrue(queue.offer(createMessage(0)));
+        EntityDataMessage message = createMessage(1);
+        message.getPayload().get(0).put("value", new Object());
+        assertTrue(queue.offer(message));
+        assertTrue(queue.offer(createMessage(2)));
+
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getSpilledCount());
+        assertEquals(100 - 3, queue.remainingCapacity());
+        assertEquals(0, queue.poll().getHeader().getSequenceNumber());
+        assertSame(message, queue.poll());
+        EntityDataMessage spilled = (EntityDataMessage) queue.poll();
+        assertEquals(2, spilled.getHeader().getSequenceNumber());
+        assertEquals(5, spilled.getPayload().size());
+        assertEquals(0, queue.getSpilledCount());
+        assertEquals(0, queue.getQueuedBytes());
+    }
+
+    @Test
+    public void testSpilledRowsKeepTheirSchema() {
+        EntityDataSchema schema = new EntityDataSchema("id", "name");
+        SpillableMessageQueue queue = new SpillableMessageQueue(100, 1, null, 0, true);
+        assertTrue(queue.offer(createMessage(0)));
+        assertTrue(queue.offer(createMessage(1, schema)));
+        EntityDataMessage mixed = createMessage(2, schema);
+        mixed.getPayload().add(new EntityData());
+        assertTrue(queue.offer(mixed));
+
+        assertEquals(1, queue.getSpilledCount());
+        queue.poll();
+        EntityDataMessage spilled = (EntityDataMessage) queue.poll();
+        assertSame(schema, spilled.getPayload().get(0).getSchema());
+        assertEquals(14, spilled.getPayload().get(4).getAt(0));
+        assertSame(mixed, queue.poll());
+    }
+
+    protected EntityDataMessage createMessage(int sequenceNumber) {
+        return createMessage(sequenceNumber, null);
+    }
+
+    protected EntityDataMessage createMessage(int sequenceNumber, EntityDataSchema schema) {
+        ArrayList<EntityData> payload = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            EntityData data = schema != null ? new EntityData(schema) : new EntityData();
+            data.put("id", sequenceNumber * 10 + i);
+            data.put("name", "name" + i);
+            payload.add(data);
+        }
+        EntityDataMessage message = new EntityDataMessage("step", payload);
+        message.getHeader().setSequenceNumber(sequenceNumber);
+        message.getHeader().put("key", "value" + sequenceNumber);
+        return message;
+    }
+
+}
@@ -345,21 +345,25 @@ public class ExecutionApi {
             }
             AgentDeploy deployment = mapping.getDeployment();
             AgentRuntime agentRuntime = agentManager.getAgentRuntime(deployment.getAgentId());
-            FlowRuntime flowRuntime = agentRuntime.createFlowRuntime(whoAreYou(request), deployment, params);
-            IHasSecurity security = flowRuntime.getHasSecurity();
-            if (enforceSecurity(security, request, response)) {
-                String executionId = flowRuntime.getExecutionId();
-                response.setHeader(HEADER_EXECUTION_ID, executionId);
-                Results results = flowRuntime.execute();
-                if (results != null) {
-                    String contentType = results.getContentType();
-                    if (isNotBlank(contentType)) {
-                        response.setContentType(contentType);
-                    } else if (isBlank(response.getContentType())) {
-                        response.setContentType("application/octet-stream;charset=utf-8");
+            FlowRuntime flowRuntime = agentRuntime.borrowFlowRuntime(whoAreYou(request), deployment, params);
+            try {
+                IHasSecurity security = flowRuntime.getHasSecurity();
+                if (enforceSecurity(security, request, response)) {
+                    String executionId = flowRuntime.getExecutionId();
+                    response.setHeader(HEADER_EXECUTION_ID, executionId);
+                    Results results = flowRuntime.execute();
+                    if (results != null) {
+                        String contentType = results.getContentType();
+                        if (isNotBlank(contentType)) {
+                            response.setContentType(contentType);
+                        } else if (isBlank(response.getContentType())) {
+                            response.setContentType("application/octet-stream;charset=utf-8");
+                        }
+                        resultPayload = results.getValue();
                     }
-                    resultPayload = results.getValue();
                 }
+            } finally {
+                agentRuntime.releaseFlowRuntime(deployment, flowRuntime);
             }
             return resultPayload;
 
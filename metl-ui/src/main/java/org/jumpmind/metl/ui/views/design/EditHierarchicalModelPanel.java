@@ -156,6 +156,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
                             }
                             if (unique) {
                                 obj.setName(newName);
+                                model.invalidateIndex();
                                 EditHierarchicalModelPanel.this.context.getConfigurationService().save(obj);
                             } else {
                                 NotifyDialog.show("Name needs to be unique", "Name needs to be unique", null, Type.WARNING_MESSAGE);
@@ -490,6 +491,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
             		childEntity.setName("New Entity");
             		childEntity.setId(UUID.randomUUID().toString());
             		model.getModelEntities().add(childEntity);
+            		model.invalidateIndex();
             		context.getConfigurationService().save(childEntity);
             		//add the attribute that references the entity
             		ModelAttrib attrib=null;
@@ -500,6 +502,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 	            		attrib.setTypeEntityId(childEntity.getId());
 	            		attrib.setName("entity ref");
 	            		parentEntity.getModelAttributes().add(attrib);
+	            		model.invalidateIndex();
 	            		context.getConfigurationService().save(attrib);
                     treeTable.setCollapsed(parentEntity, false);
                     if (model.getRootElement().getId().equalsIgnoreCase(parentEntity.getId())) {
@@ -549,6 +552,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
                 if (entity != null) {
                     a.setEntityId(entity.getId());
                     entity.addModelAttribute(a);
+                    model.invalidateIndex();
                     context.getConfigurationService().save(a);
                     addAttribute(itemId, a);
                     treeTable.setCollapsed(itemId, false);
@@ -615,6 +619,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 	        		context.getConfigurationService().delete(entity);
 	            treeTable.removeItem(entity);
 	            model.getModelEntities().remove(entity);
+	            model.invalidateIndex();
 	        }
         }
     }
@@ -625,6 +630,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
 		if (entity.getModelAttributes().contains(attribute)) {
 			context.getConfigurationService().delete(attribute);
 			entity.removeModelAttribute(attribute);
+			model.invalidateIndex();
 			treeTable.removeItem(attribute);
 		}
     }
@@ -665,6 +671,7 @@ public class EditHierarchicalModelPanel extends VerticalLayout implements IUiPan
                     }
                 }
             }
+            model.invalidateIndex();
         }
     }
 
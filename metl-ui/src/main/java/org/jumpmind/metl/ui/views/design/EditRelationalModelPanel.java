@@ -190,6 +190,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                             }
                             if (unique) {
                                 obj.setName(newName);
+                                model.invalidateIndex();
                                 EditRelationalModelPanel.this.context.getConfigurationService().save(obj);
                             } else {
                                 NotifyDialog.show("Name needs to be unique", "Name needs to be unique", null, Type.WARNING_MESSAGE);
@@ -591,6 +592,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
             e.setName("New Entity");
             e.setModelId(model.getId());
             model.getModelEntities().add(e);
+            model.invalidateIndex();
             context.getConfigurationService().save(e);
             addModelEntity(e);
             selectOnly(e);
@@ -616,6 +618,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                 if (entity != null) {
                     a.setEntityId(entity.getId());
                     entity.addModelAttribute(a);
+                    model.invalidateIndex();
                     context.getConfigurationService().save(a);
                     addModelAttribute(entity, a);
                     treeTable.setCollapsed(entity, false);
@@ -667,6 +670,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                                 model.getModelEntities().remove(itemId);
                             }
                         }
+                        model.invalidateIndex();
 
                         return true;
                     });
@@ -709,6 +713,7 @@ public class EditRelationalModelPanel extends VerticalLayout implements IUiPanel
                     }
                 }
             }
+            model.invalidateIndex();
         }
     }
 
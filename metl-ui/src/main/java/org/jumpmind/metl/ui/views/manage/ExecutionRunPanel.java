@@ -299,6 +299,10 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
                 .setWidth(140);
         stepTable.addColumn("queueDurationString", String.class).setHeaderCaption("Wait Duration")
                 .setWidth(140);
+        stepTable.addColumn("usedMemoryString", String.class).setHeaderCaption("Memory Used")
+                .setWidth(120);
+        stepTable.addColumn("reservedMemoryString", String.class).setHeaderCaption("Memory Reserved")
+                .setWidth(140);
         stepTable.setContainerDataSource(stepContainer);
         stepTable.addSelectionListener(event -> {
             String stepId = (String) stepTable.getSelectedRow();
@@ -746,6 +750,8 @@ public class ExecutionRunPanel extends VerticalLayout implements IUiPanel, IBack
                     item.getItemProperty("startTime").setValue(step.getStartTime());
                     item.getItemProperty("handleDuration").setValue(step.getHandleDuration());
                     item.getItemProperty("queueDuration").setValue(step.getQueueDuration());
+                    item.getItemProperty("usedMemory").setValue(step.getUsedMemory());
+                    item.getItemProperty("reservedMemory").setValue(step.getReservedMemory());
 
                 }
             }